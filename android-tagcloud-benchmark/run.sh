@@ -0,0 +1,9 @@
+#!/bin/sh
+# Compiles the library (without its Android classes) and the benchmarks, then runs them.
+# Arguments are passed to BenchmarkRunner, e.g.: ./run.sh -sizes 1000,10000 'Cloud\.'
+cd "$(dirname "$0")"
+rm -rf build
+mkdir -p build
+find ../android-tagcloud/src src -name '*.java' ! -name CloudView.java ! -name PaintTextMeasurer.java ! -name ViewFrameScheduler.java > build/sources.txt
+javac -encoding UTF-8 -d build @build/sources.txt || exit 1
+exec java ${JAVA_OPTS:--Xms2g -Xmx2g} -cp build es.luixal.android_tagcloud.benchmark.BenchmarkRunner "$@"
@@ -0,0 +1,57 @@
+package es.luixal.android_tagcloud.benchmark;
+
+/**
+ * A benchmarked operation.
+ * setUp() prepares the state and is not measured, run() is called repeatedly
+ * and measured.
+ */
+public abstract class Benchmark {
+
+	/** Benchmark name, used to select benchmarks from the command line */
+	private final String name;
+
+	/** Number of items processed by one call to run(), to report per item figures */
+	private final int itemsPerRun;
+
+	public Benchmark(String name) {
+		this(name, 1);
+	}
+
+	public Benchmark(String name, int itemsPerRun) {
+		this.name = name;
+		this.itemsPerRun = itemsPerRun;
+	}
+
+	/**
+	 * Prepares the state of the benchmark.
+	 */
+	public void setUp() {
+	}
+
+	/**
+	 * Releases the state of the benchmark.
+	 */
+	public void tearDown() {
+	}
+
+	/**
+	 * Runs the benchmarked operation once.
+	 * @return A value depending on the work done, so that it can't be optimized away
+	 */
+	public abstract long run();
+
+	/**
+	 * @return The benchmark name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The number of items processed by one call to run()
+	 */
+	public int getItemsPerRun() {
+		return itemsPerRun;
+	}
+
+}
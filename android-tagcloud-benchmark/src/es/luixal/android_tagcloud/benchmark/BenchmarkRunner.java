@@ -0,0 +1,212 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import es.luixal.android_tagcloud.AllocationCounter;
+
+/**
+ * Runs benchmarks and reports, for each one, the time, the allocated bytes
+ * and the garbage collections per operation.
+ * Each benchmark is warmed up, then measured over several iterations of a
+ * fixed duration; time is reported as the mean and standard deviation of
+ * the iterations.
+ *
+ * Usage: BenchmarkRunner [-sizes 1000,10000,...] [-warmup ms] [-iterations n]
+ *        [-time ms] [-out file] [regex]
+ */
+public class BenchmarkRunner {
+
+	/** Warm up duration in milliseconds */
+	private long warmupMillis = 1000;
+
+	/** Number of measured iterations */
+	private int iterations = 5;
+
+	/** Duration of each measured iteration in milliseconds */
+	private long iterationMillis = 1000;
+
+	/** Consumes benchmark results */
+	private long sink = 0;
+
+	public static void main(String[] args) throws IOException {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		int[] sizes = new int[] { 1000, 10000, 100000, 1000000 };
+		String out = null;
+		Pattern include = null;
+
+		for (int i=0; i<args.length; i++) {
+			if (args[i].equals("-sizes")) {
+				String[] values = args[++i].split(",");
+				sizes = new int[values.length];
+				for (int j=0; j<values.length; j++) {
+					sizes[j] = Integer.parseInt(values[j].trim());
+				}
+			} else if (args[i].equals("-warmup")) {
+				runner.warmupMillis = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-iterations")) {
+				runner.iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time")) {
+				runner.iterationMillis = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-out")) {
+				out = args[++i];
+			} else {
+				include = Pattern.compile(args[i]);
+			}
+		}
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		CloudBenchmarks.addTo(benchmarks, sizes);
+		FilterBenchmarks.addTo(benchmarks);
+		SpanBenchmarks.addTo(benchmarks);
+		LayoutBenchmarks.addTo(benchmarks);
+
+		PrintWriter writer = (out == null) ? null : new PrintWriter(new FileWriter(out));
+		runner.print(writer, header());
+		for (Benchmark benchmark : benchmarks) {
+			if (include == null || include.matcher(benchmark.getName()).find()) {
+				runner.print(writer, runner.run(benchmark).toString());
+			}
+		}
+		if (writer != null) {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Runs a benchmark.
+	 * @param benchmark The benchmark to run
+	 * @return The measured figures
+	 */
+	public Result run(Benchmark benchmark) {
+		benchmark.setUp();
+		try {
+			long end = System.currentTimeMillis() + warmupMillis;
+			while (System.currentTimeMillis() < end) {
+				sink += benchmark.run();
+			}
+			System.gc();
+
+			double[] nanosPerOp = new double[iterations];
+			long ops = 0;
+			long allocated = 0;
+			long gcCount = 0;
+			long gcMillis = 0;
+
+			for (int i=0; i<iterations; i++) {
+				long iterationOps = 0;
+				long gcCount0 = gcCount();
+				long gcMillis0 = gcMillis();
+				long allocated0 = AllocationCounter.currentThread();
+				long start = System.nanoTime();
+				long deadline = start + iterationMillis * 1000000L;
+				long now;
+				do {
+					sink += benchmark.run();
+					iterationOps++;
+					now = System.nanoTime();
+				} while (now < deadline);
+				allocated = (allocated0 < 0) ? -1 : allocated + AllocationCounter.currentThread() - allocated0;
+				gcCount += gcCount() - gcCount0;
+				gcMillis += gcMillis() - gcMillis0;
+				nanosPerOp[i] = (double) (now - start) / iterationOps;
+				ops += iterationOps;
+			}
+
+			return new Result(benchmark, ops, nanosPerOp, allocated, gcCount, gcMillis);
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	private void print(PrintWriter writer, String line) {
+		System.out.println(line);
+		if (writer != null) {
+			writer.println(line);
+			writer.flush();
+		}
+	}
+
+	private static String header() {
+		return String.format(Locale.ROOT, "%-44s %10s %14s %12s %12s %14s %8s %8s",
+				"Benchmark", "ops", "ns/op", "+-", "ns/item", "B/op", "gc", "gc ms");
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	/**
+	 * Figures measured for a benchmark.
+	 */
+	public static class Result {
+
+		private final Benchmark benchmark;
+		private final long ops;
+		private final double mean;
+		private final double deviation;
+		private final long allocated;
+		private final long gcCount;
+		private final long gcMillis;
+
+		Result(Benchmark benchmark, long ops, double[] nanosPerOp, long allocated, long gcCount, long gcMillis) {
+			this.benchmark = benchmark;
+			this.ops = ops;
+			this.allocated = allocated;
+			this.gcCount = gcCount;
+			this.gcMillis = gcMillis;
+
+			double sum = 0.0;
+			for (int i=0; i<nanosPerOp.length; i++) {
+				sum += nanosPerOp[i];
+			}
+			mean = sum / nanosPerOp.length;
+			double squares = 0.0;
+			for (int i=0; i<nanosPerOp.length; i++) {
+				squares += (nanosPerOp[i] - mean) * (nanosPerOp[i] - mean);
+			}
+			deviation = Math.sqrt(squares / nanosPerOp.length);
+		}
+
+		/**
+		 * @return The mean time of an operation in nanoseconds
+		 */
+		public double getNanosPerOp() {
+			return mean;
+		}
+
+		/**
+		 * @return The mean number of bytes allocated by an operation, -1 if unknown
+		 */
+		public long getBytesPerOp() {
+			return (allocated < 0) ? -1 : allocated / ops;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-44s %10d %14.1f %12.1f %12.1f %14d %8d %8d",
+					benchmark.getName(), ops, mean, deviation, mean / benchmark.getItemsPerRun(),
+					getBytesPerOp(), gcCount, gcMillis);
+		}
+	}
+
+}
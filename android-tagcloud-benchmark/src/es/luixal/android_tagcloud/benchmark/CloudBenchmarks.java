@@ -0,0 +1,178 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.util.List;
+
+import es.luixal.android_tagcloud.Cloud;
+import es.luixal.android_tagcloud.Tag;
+
+/**
+ * Benchmarks of tag ingestion and output computation.
+ * Each benchmark is run on clouds of the given sizes (number of distinct tags).
+ */
+public class CloudBenchmarks {
+
+	/** Number of words added by one operation of the ingestion benchmarks */
+	private static final int BATCH = 1000;
+
+	/** Exponent of the Zipf law of word frequencies */
+	private static final double ZIPF = 1.0;
+
+	private CloudBenchmarks() {
+	}
+
+	public static void addTo(List<Benchmark> benchmarks, int[] sizes) {
+		for (int size : sizes) {
+			benchmarks.add(addTag(size));
+			benchmarks.add(addText(size));
+			benchmarks.add(outputTags(size));
+			benchmarks.add(tags(size, "tags(name)", new Tag.NameComparatorAsc(), 50));
+			benchmarks.add(tags(size, "tags(score,all)", new Tag.ScoreComparatorDesc(), -1));
+		}
+	}
+
+	/**
+	 * Builds a cloud containing each word of a vocabulary, with a Zipf distributed score.
+	 * @param size Vocabulary size
+	 * @return The cloud
+	 */
+	static OutputCloud fullCloud(int size) {
+		OutputCloud cloud = new OutputCloud();
+		Corpus corpus = new Corpus(size, ZIPF, 42);
+		for (int i=0; i<size; i++) {
+			cloud.addTag(new Tag(corpus.getWord(i), 1.0 + 1000.0 / (i + 1)));
+		}
+		return cloud;
+	}
+
+	/**
+	 * Adds tags one by one, most of them already present in the cloud.
+	 */
+	private static Benchmark addTag(final int size) {
+		return new Benchmark("Cloud.addTag/" + size, BATCH) {
+			private Cloud cloud;
+			private String[][] batches;
+			private int next;
+
+			@Override
+			public void setUp() {
+				cloud = fullCloud(size);
+				Corpus corpus = new Corpus(size, ZIPF, 7);
+				batches = new String[64][];
+				for (int i=0; i<batches.length; i++) {
+					batches[i] = corpus.nextWords(BATCH);
+				}
+			}
+
+			@Override
+			public void tearDown() {
+				cloud = null;
+				batches = null;
+			}
+
+			@Override
+			public long run() {
+				String[] words = batches[next++ & (batches.length - 1)];
+				for (int i=0; i<words.length; i++) {
+					cloud.addTag(words[i]);
+				}
+				return cloud.size();
+			}
+		};
+	}
+
+	/**
+	 * Extracts tags from texts.
+	 */
+	private static Benchmark addText(final int size) {
+		return new Benchmark("Cloud.addText/" + size, BATCH) {
+			private Cloud cloud;
+			private String[] texts;
+			private int next;
+
+			@Override
+			public void setUp() {
+				cloud = fullCloud(size);
+				cloud.setDefaultLink("http://www.google.com/search?q=%s");
+				Corpus corpus = new Corpus(size, ZIPF, 11);
+				texts = new String[64];
+				for (int i=0; i<texts.length; i++) {
+					texts[i] = corpus.nextText(BATCH);
+				}
+			}
+
+			@Override
+			public void tearDown() {
+				cloud = null;
+				texts = null;
+			}
+
+			@Override
+			public long run() {
+				cloud.addText(texts[next++ & (texts.length - 1)]);
+				return cloud.size();
+			}
+		};
+	}
+
+	/**
+	 * Computes the output tags.
+	 */
+	private static Benchmark outputTags(final int size) {
+		return new Benchmark("Cloud.getOutputTags/" + size) {
+			private OutputCloud cloud;
+
+			@Override
+			public void setUp() {
+				cloud = fullCloud(size);
+			}
+
+			@Override
+			public void tearDown() {
+				cloud = null;
+			}
+
+			@Override
+			public long run() {
+				return cloud.outputTags().size();
+			}
+		};
+	}
+
+	/**
+	 * Computes the output tags sorted with a comparator.
+	 */
+	private static Benchmark tags(final int size, String name, final java.util.Comparator<Tag> comparator, final int maxTags) {
+		return new Benchmark("Cloud." + name + "/" + size) {
+			private Cloud cloud;
+
+			@Override
+			public void setUp() {
+				cloud = fullCloud(size);
+				cloud.setMaxTagsToDisplay(maxTags);
+			}
+
+			@Override
+			public void tearDown() {
+				cloud = null;
+			}
+
+			@Override
+			public long run() {
+				return cloud.tags(comparator).size();
+			}
+		};
+	}
+
+	/**
+	 * Cloud giving access to the output tags, as CloudView does.
+	 */
+	static class OutputCloud extends Cloud {
+
+		private static final long serialVersionUID = 1L;
+
+		List<Tag> outputTags() {
+			return getOutputTags();
+		}
+	}
+
+}
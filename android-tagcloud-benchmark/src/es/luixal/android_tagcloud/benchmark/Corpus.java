@@ -0,0 +1,125 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic corpus: a vocabulary of pronounceable words whose frequencies
+ * follow a Zipf law, as the words of natural language texts do.
+ * The same seed always gives the same vocabulary and the same word stream.
+ */
+public class Corpus {
+
+	private static final String[] SYLLABLES = {
+		"ka", "lo", "mi", "ne", "ru", "ta", "shi", "po", "ve", "da",
+		"gri", "zo", "bel", "tor", "an", "es", "qui", "fa", "wen", "dro"
+	};
+
+	/** Vocabulary, from the most frequent word to the least frequent one */
+	private final String[] words;
+
+	/** Cumulative probability of each word */
+	private final double[] cumulative;
+
+	/** Random generator of the word stream */
+	private final Random random;
+
+	/**
+	 * @param vocabularySize Number of distinct words
+	 * @param exponent Exponent of the Zipf law (1.0 for natural language)
+	 * @param seed Random seed
+	 */
+	public Corpus(int vocabularySize, double exponent, long seed) {
+		random = new Random(seed);
+		words = new String[vocabularySize];
+		cumulative = new double[vocabularySize];
+
+		StringBuilder builder = new StringBuilder();
+		for (int i=0; i<vocabularySize; i++) {
+			// encodes the rank with syllables, so that all words are distinct
+			builder.setLength(0);
+			int rank = i;
+			do {
+				builder.append(SYLLABLES[rank % SYLLABLES.length]);
+				rank /= SYLLABLES.length;
+			} while (rank > 0);
+			if (builder.length() < 3) {
+				builder.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			}
+			words[i] = builder.toString();
+		}
+
+		double sum = 0.0;
+		for (int i=0; i<vocabularySize; i++) {
+			sum += 1.0 / Math.pow(i + 1, exponent);
+			cumulative[i] = sum;
+		}
+		for (int i=0; i<vocabularySize; i++) {
+			cumulative[i] /= sum;
+		}
+	}
+
+	/**
+	 * @return The next word of the stream
+	 */
+	public String nextWord() {
+		return words[nextRank()];
+	}
+
+	/**
+	 * @return The rank of the next word of the stream (0 is the most frequent word)
+	 */
+	public int nextRank() {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min((index < 0) ? -index - 1 : index, words.length - 1);
+	}
+
+	/**
+	 * @param count Number of words
+	 * @return The next words of the stream
+	 */
+	public String[] nextWords(int count) {
+		String[] result = new String[count];
+		for (int i=0; i<count; i++) {
+			result[i] = nextWord();
+		}
+		return result;
+	}
+
+	/**
+	 * Builds a text made of sentences of the next words of the stream.
+	 * @param count Number of words
+	 * @return The text
+	 */
+	public String nextText(int count) {
+		StringBuilder builder = new StringBuilder(count * 8);
+		for (int i=0; i<count; i++) {
+			String word = nextWord();
+			if (i % 12 == 0) {
+				if (i > 0) {
+					builder.append(". ");
+				}
+				builder.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+			} else {
+				builder.append(i % 7 == 0 ? ", " : " ").append(word);
+			}
+		}
+		return builder.append('.').toString();
+	}
+
+	/**
+	 * @param rank Rank of a word
+	 * @return The word with the given rank
+	 */
+	public String getWord(int rank) {
+		return words[rank];
+	}
+
+	/**
+	 * @return The number of distinct words
+	 */
+	public int getVocabularySize() {
+		return words.length;
+	}
+
+}
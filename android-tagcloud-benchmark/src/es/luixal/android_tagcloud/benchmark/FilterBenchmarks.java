@@ -0,0 +1,127 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.filters.AndFilter;
+import es.luixal.android_tagcloud.filters.DictionaryFilter;
+import es.luixal.android_tagcloud.filters.Filter;
+import es.luixal.android_tagcloud.filters.FilterBase;
+import es.luixal.android_tagcloud.filters.MaxLengthFilter;
+import es.luixal.android_tagcloud.filters.MinLengthFilter;
+import es.luixal.android_tagcloud.filters.MultiRegExFilter;
+import es.luixal.android_tagcloud.filters.NotFilter;
+import es.luixal.android_tagcloud.filters.OrFilter;
+import es.luixal.android_tagcloud.filters.RegExFilter;
+import es.luixal.android_tagcloud.filters.SubstringFilter;
+
+/**
+ * Benchmarks of the tag filters, one tag at a time and in bulk.
+ * Each operation filters the same array of tags drawn from a Zipf distributed vocabulary.
+ */
+public class FilterBenchmarks {
+
+	/** Number of tags filtered by one operation */
+	private static final int TAGS = 10000;
+
+	/** Number of terms of the dictionaries */
+	private static final int TERMS = 1000;
+
+	/** Number of terms of the dictionary larger than the CPU caches */
+	private static final int LARGE_TERMS = 1000000;
+
+	/** Number of regular expressions */
+	private static final int REGEXS = 20;
+
+	private FilterBenchmarks() {
+	}
+
+	@SuppressWarnings("unchecked")
+	public static void addTo(List<Benchmark> benchmarks) {
+		Corpus corpus = new Corpus(100000, 1.0, 3);
+		Tag[] tags = new Tag[TAGS];
+		for (int i=0; i<TAGS; i++) {
+			tags[i] = new Tag(corpus.nextWord());
+		}
+
+		// blacklists rare words, so most lookups miss
+		List<String> terms = new ArrayList<String>();
+		for (int i=0; i<TERMS; i++) {
+			terms.add(corpus.getWord(corpus.getVocabularySize() - 1 - i * 37));
+		}
+		DictionaryFilter dictionary = new DictionaryFilter(terms);
+		DictionaryFilter bloomDictionary = new DictionaryFilter(terms);
+		bloomDictionary.setBloomFalsePositiveRate(0.01);
+
+		// names of no dictionary, to compare the set and the Bloom filter when they miss
+		Tag[] misses = new Tag[TAGS];
+		for (int i=0; i<TAGS; i++) {
+			misses[i] = new Tag(corpus.nextWord() + "-");
+		}
+		List<String> largeTerms = new ArrayList<String>(LARGE_TERMS);
+		for (int i=0; i<LARGE_TERMS; i++) {
+			largeTerms.add(corpus.getWord(i % corpus.getVocabularySize()) + "_" + i);
+		}
+		DictionaryFilter largeDictionary = new DictionaryFilter(largeTerms);
+		DictionaryFilter largeBloomDictionary = new DictionaryFilter(largeTerms);
+		largeBloomDictionary.setBloomFalsePositiveRate(0.01);
+
+		String[] regExs = new String[REGEXS];
+		RegExFilter[] regExFilters = new RegExFilter[REGEXS];
+		for (int i=0; i<REGEXS; i++) {
+			regExs[i] = corpus.getWord(i).substring(0, 2) + "[a-z]*" + corpus.getWord(i + REGEXS).substring(0, 2);
+			regExFilters[i] = new RegExFilter(regExs[i]);
+		}
+
+		List<String> substrings = new ArrayList<String>();
+		for (int i=0; i<TERMS; i++) {
+			substrings.add(corpus.getWord(corpus.getVocabularySize() - 1 - i * 53).substring(1));
+		}
+
+		add(benchmarks, "DictionaryFilter", dictionary, tags);
+		add(benchmarks, "DictionaryFilter(bloom)", bloomDictionary, tags);
+		add(benchmarks, "DictionaryFilter(miss)", dictionary, misses);
+		add(benchmarks, "DictionaryFilter(bloom,miss)", bloomDictionary, misses);
+		add(benchmarks, "DictionaryFilter(miss,1M terms)", largeDictionary, misses);
+		add(benchmarks, "DictionaryFilter(bloom,miss,1M terms)", largeBloomDictionary, misses);
+		add(benchmarks, "RegExFilter", new RegExFilter(regExs[0]), tags);
+		add(benchmarks, "OrFilter(" + REGEXS + " RegExFilter)", new OrFilter<Tag>(regExFilters), tags);
+		add(benchmarks, "MultiRegExFilter(" + REGEXS + ")", new MultiRegExFilter(regExs), tags);
+		add(benchmarks, "SubstringFilter(contains)", new SubstringFilter(SubstringFilter.Mode.CONTAINS, substrings), tags);
+		add(benchmarks, "AndFilter(min,max,dictionary)",
+				new AndFilter<Tag>(new MinLengthFilter(3), new MaxLengthFilter(12), dictionary), tags);
+		add(benchmarks, "OrFilter(And,Not)",
+				new OrFilter<Tag>(new AndFilter<Tag>(new MinLengthFilter(6), dictionary),
+						new NotFilter<Tag>(new RegExFilter(regExs[1]))), tags);
+	}
+
+	/**
+	 * Adds the benchmarks of a filter: tag by tag with accept(), and in bulk with filter().
+	 */
+	private static void add(List<Benchmark> benchmarks, String name, final Filter<Tag> filter, final Tag[] tags) {
+		benchmarks.add(new Benchmark(name + ".accept", tags.length) {
+			@Override
+			public long run() {
+				long accepted = 0;
+				for (int i=0; i<tags.length; i++) {
+					if (filter.accept(tags[i])) {
+						accepted++;
+					}
+				}
+				return accepted;
+			}
+		});
+
+		benchmarks.add(new Benchmark(name + ".filter", tags.length) {
+			private final Tag[] work = new Tag[tags.length];
+
+			@Override
+			public long run() {
+				System.arraycopy(tags, 0, work, 0, tags.length);
+				return FilterBase.filter(filter, work, tags.length);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,143 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import es.luixal.android_tagcloud.Cloud;
+import es.luixal.android_tagcloud.ColumnarTagStore;
+import es.luixal.android_tagcloud.OffHeapTagStore;
+import es.luixal.android_tagcloud.TermDictionary;
+
+/**
+ * Measures the heap retained by many clouds over the same vocabulary, as an
+ * application keeping a cloud per user or per channel would hold them, for each
+ * way of storing the tags: a HashMap (the default), a ColumnarTagStore
+ * sharing a TermDictionary, and an OffHeapTagStore.
+ * Each cloud receives its own text drawn from a single Zipf corpus. The retained
+ * heap is the used heap after a full collection, minus the used heap before the
+ * clouds were built; for the columnar store it includes the dictionary. The
+ * direct memory is the memory of the direct buffers, used by the off-heap store.
+ *
+ * Usage: FootprintDriver [-clouds n] [-words n] [-vocabulary n] [-zipf exponent] [-seed n]
+ */
+public class FootprintDriver {
+
+	private static final String HASH_MAP = "HashMap";
+	private static final String COLUMNAR = "ColumnarTagStore";
+	private static final String OFF_HEAP = "OffHeapTagStore";
+
+	private int clouds = 1000;
+
+	/** Number of words of the text of each cloud */
+	private int words = 2000;
+
+	private int vocabularySize = 50000;
+
+	private double exponent = 1.0;
+
+	private long seed = 1;
+
+	public static void main(String[] args) {
+		FootprintDriver driver = new FootprintDriver();
+		for (int i=0; i<args.length; i++) {
+			String arg = args[i];
+			String value = (i + 1 < args.length) ? args[++i] : "";
+			if (arg.equals("-clouds")) {
+				driver.clouds = Integer.parseInt(value);
+			} else if (arg.equals("-words")) {
+				driver.words = Integer.parseInt(value);
+			} else if (arg.equals("-vocabulary")) {
+				driver.vocabularySize = Integer.parseInt(value);
+			} else if (arg.equals("-zipf")) {
+				driver.exponent = Double.parseDouble(value);
+			} else if (arg.equals("-seed")) {
+				driver.seed = Long.parseLong(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+
+		System.out.println(String.format(Locale.ROOT, "# clouds=%d words=%d vocabulary=%d zipf=%.2f seed=%d java=%s heap=%dMB",
+				driver.clouds, driver.words, driver.vocabularySize, driver.exponent, driver.seed,
+				System.getProperty("java.version"), Runtime.getRuntime().maxMemory() >> 20));
+		System.out.println(String.format(Locale.ROOT, "%-18s %10s %12s %10s %12s %10s %12s %10s",
+				"Store", "tags", "retained MB", "direct MB", "B/cloud", "B/tag", "estimated MB", "terms"));
+		driver.measure(HASH_MAP);
+		driver.measure(COLUMNAR);
+		driver.measure(OFF_HEAP);
+	}
+
+	/**
+	 * Builds the clouds, measures the memory they retain and prints it.
+	 * @param store The map storing the tags of each cloud
+	 */
+	private void measure(String store) {
+		Corpus corpus = new Corpus(vocabularySize, exponent, seed);
+		long before = retainedHeap();
+		long directBefore = directMemory();
+
+		TermDictionary dictionary = store.equals(COLUMNAR) ? new TermDictionary() : null;
+		List<Cloud> list = new ArrayList<Cloud>(clouds);
+		long tags = 0;
+		long estimated = 0;
+		for (int i=0; i<clouds; i++) {
+			Cloud cloud;
+			if (store.equals(COLUMNAR)) {
+				cloud = new Cloud(new ColumnarTagStore(dictionary));
+			} else if (store.equals(OFF_HEAP)) {
+				cloud = new Cloud(new OffHeapTagStore(256));
+			} else {
+				cloud = new Cloud();
+			}
+			cloud.addText(corpus.nextText(words));
+			tags += cloud.size();
+			estimated += cloud.getEstimatedBytes();
+			list.add(cloud);
+		}
+
+		long retained = retainedHeap() - before;
+		long direct = directMemory() - directBefore;
+		long total = retained + direct;
+		System.out.println(String.format(Locale.ROOT, "%-18s %10d %12.1f %10.1f %12d %10d %12.1f %10s",
+				store, tags, retained / 1048576.0, direct / 1048576.0,
+				total / clouds, total / Math.max(1, tags), estimated / 1048576.0,
+				(dictionary != null) ? Integer.toString(dictionary.size()) : "-"));
+
+		for (Cloud cloud : list) {
+			cloud.close();
+		}
+	}
+
+	/**
+	 * @return The memory of the direct buffers
+	 */
+	private static long directMemory() {
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) {
+				return pool.getMemoryUsed();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The used heap after full collections
+	 */
+	private static long retainedHeap() {
+		long used = Long.MAX_VALUE;
+		for (int i=0; i<5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+		}
+		return used;
+	}
+
+}
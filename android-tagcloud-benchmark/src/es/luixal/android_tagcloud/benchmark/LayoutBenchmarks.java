@@ -0,0 +1,161 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.layout.CloudLayout;
+import es.luixal.android_tagcloud.layout.FlowLayout;
+import es.luixal.android_tagcloud.layout.IncrementalLayout;
+import es.luixal.android_tagcloud.layout.LayoutResult;
+import es.luixal.android_tagcloud.layout.MeasureCache;
+import es.luixal.android_tagcloud.layout.SpiralLayout;
+import es.luixal.android_tagcloud.layout.TextMeasurer;
+import es.luixal.android_tagcloud.layout.Viewport;
+
+/**
+ * Benchmarks of the cloud layouts, for output clouds of several sizes with text
+ * sizes from 10 to 60, in an area 800 wide.
+ * Paint is not available on a plain JVM, so words are measured by a fake
+ * measurer with a fixed character width, through a warm MeasureCache as in
+ * CloudView.
+ * The relayout benchmarks alternate between two clouds differing by the size of
+ * 5 tags, so that each layout only places the words of these tags again.
+ * Viewport.scroll looks up the words to draw in a band 1200 high, moved by 16
+ * at each operation over a flow layout of 20,000 tags.
+ */
+public class LayoutBenchmarks {
+
+	/** Width of the layout area */
+	private static final float WIDTH = 800;
+
+	/**
+	 * Measures each character as 0.55 times the text size.
+	 */
+	static final TextMeasurer FIXED_WIDTH = new TextMeasurer() {
+		public float getWidth(String word, int size) {
+			return 0.55f * size * word.length();
+		}
+
+		public float getAscent(int size) {
+			return 0.9f * size;
+		}
+
+		public float getDescent(int size) {
+			return 0.25f * size;
+		}
+	};
+
+	private LayoutBenchmarks() {
+	}
+
+	public static void addTo(List<Benchmark> benchmarks) {
+		int[] sizes = new int[] { 200, 2000 };
+		for (int size : sizes) {
+			benchmarks.add(layout("FlowLayout/" + size, new FlowLayout(), size));
+			benchmarks.add(layout("SpiralLayout/" + size, new SpiralLayout(), size));
+			benchmarks.add(relayout("FlowLayout.relayout/" + size, new FlowLayout(), size));
+			benchmarks.add(relayout("SpiralLayout.relayout/" + size, new SpiralLayout(), size));
+		}
+		benchmarks.add(scroll("Viewport.scroll/20000", 20000));
+	}
+
+	/**
+	 * Benchmark of the lookup of the visible words of a scrolled layout.
+	 */
+	private static Benchmark scroll(String name, final int size) {
+		return new Benchmark(name) {
+			private Viewport viewport;
+			private float height;
+			private float top = 0;
+
+			@Override
+			public void setUp() {
+				MeasureCache measurer = new MeasureCache(FIXED_WIDTH, size * 2);
+				LayoutResult result = new FlowLayout().layout(outputTags(size), measurer, WIDTH);
+				viewport = new Viewport(result, -1);
+				height = result.getHeight();
+			}
+
+			@Override
+			public long run() {
+				top += 16;
+				if (top + 1200 > height) {
+					top = 0;
+				}
+				return viewport.getWords(top, top + 1200).size();
+			}
+		};
+	}
+
+	/**
+	 * @param tags The number of tags to place
+	 */
+	static List<Tag> outputTags(int tags) {
+		CloudBenchmarks.OutputCloud cloud = CloudBenchmarks.fullCloud(tags * 10);
+		cloud.setMinWeight(10d);
+		cloud.setMaxWeight(60d);
+		cloud.setMaxTagsToDisplay(tags);
+		return cloud.outputTags();
+	}
+
+	/**
+	 * Benchmark of layouts placing the words of a few changed tags.
+	 */
+	private static Benchmark relayout(String name, final CloudLayout layout, final int size) {
+		return new Benchmark(name, size) {
+			private List<Tag> tags;
+			private List<Tag> changed;
+			private MeasureCache measurer;
+			private boolean flip = false;
+
+			@Override
+			public void setUp() {
+				tags = outputTags(size);
+				changed = new ArrayList<Tag>(tags.size());
+				for (Tag tag : tags) {
+					changed.add(new Tag(tag));
+				}
+				for (int i=1; i<=5; i++) {
+					Tag tag = changed.get(i * tags.size() / 6);
+					tag.setWeight(tag.getWeight() + 5);
+				}
+				measurer = new MeasureCache(FIXED_WIDTH, size * 2);
+				layout.layout(tags, measurer, WIDTH);
+				layout.layout(changed, measurer, WIDTH);
+			}
+
+			@Override
+			public long run() {
+				flip = !flip;
+				LayoutResult result = layout.layout(flip ? tags : changed, measurer, WIDTH);
+				return result.getBoxes().size() + (long) result.getHeight();
+			}
+		};
+	}
+
+	/**
+	 * Benchmark of layouts placing all the words.
+	 */
+	private static Benchmark layout(String name, final IncrementalLayout layout, final int size) {
+		return new Benchmark(name, size) {
+			private List<Tag> tags;
+			private MeasureCache measurer;
+
+			@Override
+			public void setUp() {
+				layout.setRelayoutThreshold(0);
+				tags = outputTags(size);
+				measurer = new MeasureCache(FIXED_WIDTH, size * 2);
+				layout.layout(tags, measurer, WIDTH);
+			}
+
+			@Override
+			public long run() {
+				LayoutResult result = layout.layout(tags, measurer, WIDTH);
+				return result.getBoxes().size() + (long) result.getHeight();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,356 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import es.luixal.android_tagcloud.AllocationCounter;
+import es.luixal.android_tagcloud.Cloud;
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.filters.DictionaryFilter;
+import es.luixal.android_tagcloud.metrics.Histogram;
+
+/**
+ * Drives a cloud with a mixed workload from several threads, and reports
+ * throughput, latency percentiles, heap high-water mark and GC time.
+ * Events are generated from a seed (see Workload) or replayed from a trace
+ * (see Trace). Thread t runs events t, t + threads, t + 2 * threads...
+ * The cloud is not thread safe: threads synchronize on it, as an application
+ * sharing a cloud would do, so latencies include the time spent waiting for it.
+ * Tag dates are the event times, relative to the start of the run: tag lifetimes
+ * follow the trace time, and the wall clock when events are paced at speed 1.
+ *
+ * Usage: LoadDriver [-events n] [-threads n] [-vocabulary n] [-zipf exponent]
+ *        [-churn fraction] [-rate events/s] [-burst probability] [-burst-length n]
+ *        [-mix tag:text:query] [-text words] [-seed n] [-speed factor]
+ *        [-max tags] [-lifetime ms] [-stopwords n] [-warmup n]
+ *        [-replay file] [-record file] [-out file]
+ */
+public class LoadDriver {
+
+	private static final String[] OPERATIONS = { "addTag", "addText", "tags" };
+
+	/** Number of threads */
+	private int threads = 4;
+
+	/** Replay speed relative to event times, 0 to run as fast as possible */
+	private double speed = 0.0;
+
+	/** Maximum number of tags to display */
+	private int maxTags = 50;
+
+	/** Tag lifetime in milliseconds, 0 for unlimited */
+	private long lifetime = 0;
+
+	/** Number of most frequent words filtered out as stop words */
+	private int stopWords = 0;
+
+	/** Events replayed single threaded on another cloud before the measure */
+	private int warmup = 100000;
+
+	public static void main(String[] args) throws IOException {
+		LoadDriver driver = new LoadDriver();
+		Workload workload = new Workload();
+		int events = 1000000;
+		String replay = null;
+		String record = null;
+		String out = null;
+		int vocabularySize = 100000;
+		double exponent = 1.0;
+		long seed = 1;
+
+		for (int i=0; i<args.length; i++) {
+			String arg = args[i];
+			String value = (i + 1 < args.length) ? args[++i] : "";
+			if (arg.equals("-events")) {
+				events = Integer.parseInt(value);
+			} else if (arg.equals("-threads")) {
+				driver.threads = Integer.parseInt(value);
+			} else if (arg.equals("-vocabulary")) {
+				vocabularySize = Integer.parseInt(value);
+				workload.setVocabularySize(vocabularySize);
+			} else if (arg.equals("-zipf")) {
+				exponent = Double.parseDouble(value);
+				workload.setExponent(exponent);
+			} else if (arg.equals("-churn")) {
+				workload.setChurn(Double.parseDouble(value));
+			} else if (arg.equals("-rate")) {
+				workload.setRate(Double.parseDouble(value));
+			} else if (arg.equals("-burst")) {
+				workload.setBurstProbability(Double.parseDouble(value));
+			} else if (arg.equals("-burst-length")) {
+				workload.setBurstLength(Integer.parseInt(value));
+			} else if (arg.equals("-mix")) {
+				String[] weights = value.split(":");
+				workload.setMix(Integer.parseInt(weights[0]), Integer.parseInt(weights[1]), Integer.parseInt(weights[2]));
+			} else if (arg.equals("-text")) {
+				workload.setTextLength(Integer.parseInt(value));
+			} else if (arg.equals("-seed")) {
+				seed = Long.parseLong(value);
+				workload.setSeed(seed);
+			} else if (arg.equals("-speed")) {
+				driver.speed = Double.parseDouble(value);
+			} else if (arg.equals("-max")) {
+				driver.maxTags = Integer.parseInt(value);
+			} else if (arg.equals("-lifetime")) {
+				driver.lifetime = Long.parseLong(value);
+			} else if (arg.equals("-stopwords")) {
+				driver.stopWords = Integer.parseInt(value);
+			} else if (arg.equals("-warmup")) {
+				driver.warmup = Integer.parseInt(value);
+			} else if (arg.equals("-replay")) {
+				replay = value;
+			} else if (arg.equals("-record")) {
+				record = value;
+			} else if (arg.equals("-out")) {
+				out = value;
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+
+		List<LoadEvent> trace = (replay != null) ? Trace.read(replay) : workload.generate(events);
+		if (record != null) {
+			Trace.write(record, trace);
+		}
+
+		// the most frequent words of the vocabulary, as a stop word list would hold them
+		List<String> stopWordList = new ArrayList<String>();
+		Corpus corpus = new Corpus(vocabularySize, exponent, seed);
+		for (int i=0; i<Math.min(driver.stopWords, vocabularySize); i++) {
+			stopWordList.add(corpus.getWord(i));
+		}
+
+		PrintWriter writer = (out == null) ? null : new PrintWriter(new FileWriter(out));
+		print(writer, "# " + ((replay != null) ? "replay=" + replay : workload.toString()) + " events=" + trace.size());
+		print(writer, "# " + driver.toString() + " java=" + System.getProperty("java.version")
+				+ " heap=" + (Runtime.getRuntime().maxMemory() >> 20) + "MB");
+		driver.run(trace, stopWordList, writer);
+		if (writer != null) {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Runs a load test and prints its report.
+	 * @param trace The events to run
+	 * @param stopWordList Words filtered out by the cloud
+	 * @param writer Writer receiving a copy of the report, may be null
+	 */
+	public void run(final List<LoadEvent> trace, List<String> stopWordList, PrintWriter writer) {
+		if (warmup > 0) {
+			Worker worker = new Worker(newCloud(stopWordList), trace.subList(0, Math.min(warmup, trace.size())), 0, 1, 0L);
+			worker.run();
+		}
+
+		final Cloud cloud = newCloud(stopWordList);
+		System.gc();
+		List<MemoryPoolMXBean> pools = heapPools();
+		for (MemoryPoolMXBean pool : pools) {
+			pool.resetPeakUsage();
+		}
+		long gcCount0 = gcCount();
+		long gcMillis0 = gcMillis();
+
+		long start = System.currentTimeMillis();
+		Worker[] workers = new Worker[threads];
+		Thread[] running = new Thread[threads];
+		for (int t=0; t<threads; t++) {
+			workers[t] = new Worker(cloud, trace, t, threads, start);
+			running[t] = new Thread(workers[t], "load-" + t);
+		}
+		long startNanos = System.nanoTime();
+		for (int t=0; t<threads; t++) {
+			running[t].start();
+		}
+		for (int t=0; t<threads; t++) {
+			try {
+				running[t].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+		long peak = 0;
+		for (MemoryPoolMXBean pool : pools) {
+			peak += pool.getPeakUsage().getUsed();
+		}
+
+		Histogram[] latencies = new Histogram[OPERATIONS.length];
+		long allocated = 0;
+		for (int op=0; op<OPERATIONS.length; op++) {
+			latencies[op] = new Histogram();
+		}
+		for (Worker worker : workers) {
+			for (int op=0; op<OPERATIONS.length; op++) {
+				latencies[op].add(worker.latencies[op]);
+			}
+			allocated = (worker.allocated < 0 || allocated < 0) ? -1 : allocated + worker.allocated;
+		}
+
+		print(writer, String.format(Locale.ROOT, "%-10s %10s %12s %10s %10s %10s %10s %10s %10s",
+				"operation", "count", "ops/s", "mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+		for (int op=0; op<OPERATIONS.length; op++) {
+			Histogram h = latencies[op];
+			print(writer, String.format(Locale.ROOT, "%-10s %10d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f",
+					OPERATIONS[op], h.getCount(), h.getCount() / seconds, h.getMean() / 1e3,
+					h.getPercentile(50) / 1e3, h.getPercentile(90) / 1e3, h.getPercentile(99) / 1e3,
+					h.getPercentile(99.9) / 1e3, h.getMax() / 1e3));
+		}
+		print(writer, String.format(Locale.ROOT,
+				"duration %.2f s, %.0f events/s, %d distinct tags, heap peak %d MB, allocated %d MB, gc %d (%d ms)",
+				seconds, trace.size() / seconds, cloud.size(), peak >> 20, (allocated < 0) ? -1 : allocated >> 20,
+				gcCount() - gcCount0, gcMillis() - gcMillis0));
+	}
+
+	private Cloud newCloud(List<String> stopWordList) {
+		Cloud cloud = new Cloud();
+		cloud.setMaxTagsToDisplay(maxTags);
+		cloud.setTagLifetime(lifetime);
+		if (! stopWordList.isEmpty()) {
+			cloud.addInputFilter(new DictionaryFilter(stopWordList));
+		}
+		return cloud;
+	}
+
+	@Override
+	public String toString() {
+		return "threads=" + threads + " speed=" + speed + " max=" + maxTags + " lifetime=" + lifetime
+				+ " stopwords=" + stopWords + " warmup=" + warmup;
+	}
+
+	private static void print(PrintWriter writer, String line) {
+		System.out.println(line);
+		if (writer != null) {
+			writer.println(line);
+			writer.flush();
+		}
+	}
+
+	private static List<MemoryPoolMXBean> heapPools() {
+		List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pools.add(pool);
+			}
+		}
+		return pools;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	/**
+	 * Runs a share of the events on a cloud and records their latencies.
+	 */
+	private class Worker implements Runnable {
+
+		private final Cloud cloud;
+		private final List<LoadEvent> trace;
+		private final int first;
+		private final int step;
+
+		/** Start of the run, origin of the tag dates and of the event schedule */
+		private final long start;
+
+		private final Histogram[] latencies = new Histogram[OPERATIONS.length];
+
+		/** Bytes allocated by the worker, -1 if unknown */
+		private long allocated = -1;
+
+		private final Comparator<Tag> byName = new Tag.NameComparatorAsc();
+		private final Comparator<Tag> byScore = new Tag.ScoreComparatorDesc();
+
+		Worker(Cloud cloud, List<LoadEvent> trace, int first, int step, long start) {
+			this.cloud = cloud;
+			this.trace = trace;
+			this.first = first;
+			this.step = step;
+			this.start = start;
+			for (int op=0; op<OPERATIONS.length; op++) {
+				latencies[op] = new Histogram();
+			}
+		}
+
+		public void run() {
+			long allocated0 = AllocationCounter.currentThread();
+			long startNanos = System.nanoTime();
+			long sink = 0;
+
+			for (int i=first; i<trace.size(); i+=step) {
+				LoadEvent event = trace.get(i);
+
+				// when paced, latency is measured from the scheduled time, so that
+				// a stalled thread accounts for the events it delayed
+				long begin;
+				if (speed > 0.0) {
+					long scheduled = startNanos + (long) (event.getTime() * 1e6 / speed);
+					long wait = scheduled - System.nanoTime();
+					if (wait > 0) {
+						try {
+							Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+					begin = scheduled;
+				} else {
+					begin = System.nanoTime();
+				}
+
+				switch (event.getType()) {
+				case TAG:
+					Tag tag = new Tag(event.getValue(), null, event.getScore(), new Date(start + event.getTime()));
+					synchronized (cloud) {
+						cloud.addTag(tag);
+					}
+					break;
+				case TEXT:
+					synchronized (cloud) {
+						cloud.addText(event.getValue());
+					}
+					break;
+				default:
+					Comparator<Tag> comparator = "name".equals(event.getValue()) ? byName : byScore;
+					synchronized (cloud) {
+						sink += cloud.tags(comparator).size();
+					}
+					break;
+				}
+				latencies[event.getType().ordinal()].record(System.nanoTime() - begin);
+			}
+
+			long allocated1 = AllocationCounter.currentThread();
+			allocated = (allocated0 < 0) ? -1 : allocated1 - allocated0;
+			if (sink < 0) {
+				System.out.println(sink);
+			}
+		}
+	}
+
+}
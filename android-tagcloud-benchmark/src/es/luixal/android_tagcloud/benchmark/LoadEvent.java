@@ -0,0 +1,65 @@
+package es.luixal.android_tagcloud.benchmark;
+
+/**
+ * An operation of a load test: a tag or a text added to the cloud, or a query
+ * of the tags to display.
+ */
+public class LoadEvent {
+
+	public enum Type {
+		/** Cloud.addTag(Tag) */
+		TAG,
+		/** Cloud.addText(String) */
+		TEXT,
+		/** Cloud.tags(Comparator) */
+		QUERY
+	}
+
+	/** Type of operation */
+	private final Type type;
+
+	/** Time of the event in milliseconds since the start of the workload */
+	private final long time;
+
+	/** Tag name, text, or sort order of a query ("name" or "score") */
+	private final String value;
+
+	/** Tag score */
+	private final double score;
+
+	public LoadEvent(Type type, long time, String value, double score) {
+		this.type = type;
+		this.time = time;
+		this.value = value;
+		this.score = score;
+	}
+
+	/**
+	 * @return The type of operation
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return The time of the event in milliseconds since the start of the workload
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return The tag name, the text, or the sort order of a query ("name" or "score")
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * @return The tag score
+	 */
+	public double getScore() {
+		return score;
+	}
+
+}
@@ -0,0 +1,143 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import es.luixal.android_tagcloud.RenderPlan;
+import es.luixal.android_tagcloud.Tag;
+
+/**
+ * Benchmarks of the computation behind CloudView.refresh(): the render plan of
+ * the cloud, built on the background thread, and one size span per tag, set on
+ * the UI thread, for output clouds of several sizes. The Android span classes
+ * are not available on a plain JVM, so spans are recorded as plain objects
+ * holding the same data.
+ * CloudView.spans creates a span per tag; CloudView.refresh reuses the spans
+ * by size like the view does; CloudView.unchanged is a refresh whose plan is
+ * the one displayed, so only the plan is built. B/op is the allocation per refresh.
+ */
+public class SpanBenchmarks {
+
+	private SpanBenchmarks() {
+	}
+
+	public static void addTo(List<Benchmark> benchmarks) {
+		int[] sizes = new int[] { 50, 500, 5000 };
+		for (final int size : sizes) {
+			benchmarks.add(new Benchmark("CloudView.spans/" + size, size) {
+				private List<Tag> tags;
+
+				@Override
+				public void setUp() {
+					CloudBenchmarks.OutputCloud cloud = CloudBenchmarks.fullCloud(size * 10);
+					cloud.setMaxWeight(80d);
+					cloud.setMaxTagsToDisplay(size);
+					tags = cloud.outputTags();
+				}
+
+				@Override
+				public long run() {
+					// same work as CloudView.refresh() and genSpannableString()
+					RenderPlan plan = RenderPlan.build(tags);
+					Span[] spans = new Span[plan.getCount()];
+					for (int i=0; i<spans.length; i++) {
+						spans[i] = new Span(plan.getSize(i), plan.getStart(i), plan.getEnd(i));
+					}
+					return plan.getText().length() + spans.length;
+				}
+			});
+			benchmarks.add(new Benchmark("CloudView.refresh/" + size, size) {
+				private List<Tag> tags;
+				private SpanPool pool;
+
+				@Override
+				public void setUp() {
+					CloudBenchmarks.OutputCloud cloud = CloudBenchmarks.fullCloud(size * 10);
+					cloud.setMaxWeight(80d);
+					cloud.setMaxTagsToDisplay(size);
+					tags = cloud.outputTags();
+					pool = new SpanPool();
+				}
+
+				@Override
+				public long run() {
+					RenderPlan plan = RenderPlan.build(tags);
+					return plan.getText().length() + pool.set(plan).length;
+				}
+			});
+			benchmarks.add(new Benchmark("CloudView.unchanged/" + size, size) {
+				private List<Tag> tags;
+				private RenderPlan lastPlan;
+
+				@Override
+				public void setUp() {
+					CloudBenchmarks.OutputCloud cloud = CloudBenchmarks.fullCloud(size * 10);
+					cloud.setMaxWeight(80d);
+					cloud.setMaxTagsToDisplay(size);
+					tags = cloud.outputTags();
+					lastPlan = RenderPlan.build(tags);
+				}
+
+				@Override
+				public long run() {
+					RenderPlan plan = RenderPlan.build(tags);
+					return plan.equals(lastPlan) ? 0 : 1;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Same pooling as CloudView.genSpannableString(): the n-th tag of a size gets
+	 * the n-th span of the size.
+	 */
+	private static class SpanPool {
+		private final ArrayList<ArrayList<Span>> spans = new ArrayList<ArrayList<Span>>();
+
+		Span[] set(RenderPlan plan) {
+			Span[] set = new Span[plan.getCount()];
+			int[] occurrences = new int[spans.size()];
+			for (int i=0; i<plan.getCount(); i++) {
+				int size = Math.max(plan.getSize(i), 0);
+				if (size >= occurrences.length) {
+					int[] grown = new int[size + 1];
+					System.arraycopy(occurrences, 0, grown, 0, occurrences.length);
+					occurrences = grown;
+				}
+				set[i] = get(size, occurrences[size]++, plan.getStart(i), plan.getEnd(i));
+			}
+			return set;
+		}
+
+		private Span get(int size, int occurrence, int start, int end) {
+			while (spans.size() <= size) {
+				spans.add(null);
+			}
+			ArrayList<Span> pool = spans.get(size);
+			if (pool == null) {
+				pool = new ArrayList<Span>();
+				spans.set(size, pool);
+			}
+			while (pool.size() <= occurrence) {
+				pool.add(new Span(size, start, end));
+			}
+			return pool.get(occurrence);
+		}
+	}
+
+	/**
+	 * Stand-in for an AbsoluteSizeSpan set on a range of the text.
+	 */
+	private static class Span {
+		final int size;
+		final int start;
+		final int end;
+
+		Span(int size, int start, int end) {
+			this.size = size;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes load test events in a text file, one event per line:
+ * <pre>
+ * time	TAG	name	score
+ * time	TEXT	text
+ * time	QUERY	name|score
+ * </pre>
+ * Fields are separated by tabs, time is in milliseconds since the start of the
+ * trace. Empty lines and lines starting with # are ignored.
+ */
+public class Trace {
+
+	private static final String UTF8 = "UTF-8";
+
+	private Trace() {
+	}
+
+	/**
+	 * Reads events from a file.
+	 * @param file File name
+	 * @return The events
+	 */
+	public static List<LoadEvent> read(String file) throws IOException {
+		List<LoadEvent> events = new ArrayList<LoadEvent>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				if (line.length() == 0 || line.charAt(0) == '#')
+					continue;
+
+				String[] fields = line.split("\t");
+				try {
+					long time = Long.parseLong(fields[0]);
+					LoadEvent.Type type = LoadEvent.Type.valueOf(fields[1]);
+					double score = (type == LoadEvent.Type.TAG) ? Double.parseDouble(fields[3]) : 0.0;
+					events.add(new LoadEvent(type, time, fields[2], score));
+				} catch (RuntimeException e) {
+					throw new IOException(file + ":" + number + ": invalid event: " + line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return events;
+	}
+
+	/**
+	 * Writes events to a file.
+	 * @param file File name
+	 * @param events The events
+	 */
+	public static void write(String file, List<LoadEvent> events) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8));
+		try {
+			for (LoadEvent event : events) {
+				writer.write(Long.toString(event.getTime()));
+				writer.write('\t');
+				writer.write(event.getType().name());
+				writer.write('\t');
+				writer.write(event.getValue().replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+				if (event.getType() == LoadEvent.Type.TAG) {
+					writer.write('\t');
+					writer.write(Double.toString(event.getScore()));
+				}
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+}
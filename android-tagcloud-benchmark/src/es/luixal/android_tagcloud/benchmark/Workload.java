@@ -0,0 +1,159 @@
+package es.luixal.android_tagcloud.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the events of a load test from a seed.
+ * Words follow a Zipf law over the vocabulary. Popularity changes over time:
+ * each simulated second, a fraction of the ranks (the churn) is given to other
+ * words, so that new terms rise and old ones fade. Bursts make a single term
+ * hot for a while, with events arriving faster. Events arrive with exponentially
+ * distributed gaps.
+ */
+public class Workload {
+
+	/** Number of distinct words */
+	private int vocabularySize = 100000;
+
+	/** Exponent of the Zipf law */
+	private double exponent = 1.0;
+
+	/** Fraction of the ranks reassigned each simulated second */
+	private double churn = 0.01;
+
+	/** Mean number of events per simulated second */
+	private double rate = 10000;
+
+	/** Probability that an event starts a burst */
+	private double burstProbability = 0.0;
+
+	/** Number of events of a burst */
+	private int burstLength = 500;
+
+	/** Relative weights of tag, text and query events */
+	private int[] mix = new int[] { 80, 15, 5 };
+
+	/** Number of words of a text */
+	private int textLength = 30;
+
+	/** Random seed */
+	private long seed = 1;
+
+	/**
+	 * Generates events.
+	 * @param count Number of events
+	 * @return The events, by increasing time
+	 */
+	public List<LoadEvent> generate(int count) {
+		Random random = new Random(seed);
+		Corpus corpus = new Corpus(vocabularySize, exponent, seed);
+
+		// word of each rank, permuted by churn
+		int[] words = new int[vocabularySize];
+		for (int i=0; i<words.length; i++) {
+			words[i] = i;
+		}
+
+		List<LoadEvent> events = new ArrayList<LoadEvent>(count);
+		int totalMix = mix[0] + mix[1] + mix[2];
+		double time = 0.0;
+		long second = 0;
+		int burstWord = -1;
+		int burstRemaining = 0;
+		StringBuilder text = new StringBuilder();
+
+		for (int i=0; i<count; i++) {
+			double gap = -Math.log(1.0 - random.nextDouble()) * 1000.0 / rate;
+			time += (burstRemaining > 0) ? gap / 10.0 : gap;
+
+			// reassigns ranks each simulated second
+			for (; second < (long) (time / 1000.0); second++) {
+				int swaps = (int) Math.round(churn * vocabularySize);
+				for (int s=0; s<swaps; s++) {
+					int a = random.nextInt(vocabularySize);
+					int b = random.nextInt(vocabularySize);
+					int w = words[a];
+					words[a] = words[b];
+					words[b] = w;
+				}
+			}
+
+			if (burstRemaining > 0) {
+				burstRemaining--;
+			} else if (burstProbability > 0.0 && random.nextDouble() < burstProbability) {
+				burstWord = words[random.nextInt(vocabularySize)];
+				burstRemaining = burstLength;
+			}
+
+			int op = random.nextInt(totalMix);
+			if (op < mix[0]) {
+				int word = (burstRemaining > 0 && random.nextBoolean()) ? burstWord : words[corpus.nextRank()];
+				events.add(new LoadEvent(LoadEvent.Type.TAG, (long) time, corpus.getWord(word), 1 + random.nextInt(5)));
+			} else if (op < mix[0] + mix[1]) {
+				text.setLength(0);
+				for (int w=0; w<textLength; w++) {
+					int word = (burstRemaining > 0 && random.nextInt(4) == 0) ? burstWord : words[corpus.nextRank()];
+					text.append(w == 0 ? "" : (w % 10 == 0) ? ". " : " ").append(corpus.getWord(word));
+				}
+				events.add(new LoadEvent(LoadEvent.Type.TEXT, (long) time, text.toString(), 0.0));
+			} else {
+				events.add(new LoadEvent(LoadEvent.Type.QUERY, (long) time, random.nextBoolean() ? "name" : "score", 0.0));
+			}
+		}
+		return events;
+	}
+
+	public void setVocabularySize(int vocabularySize) {
+		this.vocabularySize = vocabularySize;
+	}
+
+	public void setExponent(double exponent) {
+		this.exponent = exponent;
+	}
+
+	public void setChurn(double churn) {
+		this.churn = churn;
+	}
+
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	public void setBurstProbability(double burstProbability) {
+		this.burstProbability = burstProbability;
+	}
+
+	public void setBurstLength(int burstLength) {
+		this.burstLength = burstLength;
+	}
+
+	/**
+	 * @param tag Relative weight of tag events
+	 * @param text Relative weight of text events
+	 * @param query Relative weight of query events
+	 */
+	public void setMix(int tag, int text, int query) {
+		if (tag < 0 || text < 0 || query < 0 || tag + text + query == 0)
+			throw new IllegalArgumentException("Invalid mix: " + tag + ":" + text + ":" + query);
+
+		this.mix = new int[] { tag, text, query };
+	}
+
+	public void setTextLength(int textLength) {
+		this.textLength = textLength;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public String toString() {
+		return "vocabulary=" + vocabularySize + " zipf=" + exponent + " churn=" + churn + " rate=" + rate
+				+ " burst=" + burstProbability + "x" + burstLength + " mix=" + mix[0] + ":" + mix[1] + ":" + mix[2]
+				+ " text=" + textLength + " seed=" + seed;
+	}
+
+}
@@ -50,7 +50,6 @@ public class MainActivity extends Activity {
 		super.onStart();
 		CloudView cloudView = (CloudView)findViewById(R.id.cloud_view);
 		cloudView.addTags(TAGS);
-		cloudView.refresh();
 	}
 
 }
@@ -0,0 +1,9 @@
+#!/bin/sh
+# Compiles the library (without its Android classes) and its JVM extensions into
+# build/android-tagcloud-jvm.jar. Requires JDK 11 or later.
+cd "$(dirname "$0")"
+rm -rf build
+mkdir -p build/classes
+find ../android-tagcloud/src src -name '*.java' ! -name CloudView.java ! -name PaintTextMeasurer.java ! -name ViewFrameScheduler.java > build/sources.txt
+javac -encoding UTF-8 --release 11 -d build/classes @build/sources.txt || exit 1
+jar cf build/android-tagcloud-jvm.jar -C build/classes .
@@ -0,0 +1,541 @@
+package es.luixal.android_tagcloud.flow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import es.luixal.android_tagcloud.Cloud;
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.metrics.Histogram;
+
+/**
+ * Subscriber feeding a cloud with the tags of an asynchronous producer, with
+ * flow control.
+ * <ul>
+ * <li>At most getMaxQueueDepth() tags are requested and not yet added to the
+ * cloud: a producer faster than the cloud waits for demand instead of filling
+ * the memory.</li>
+ * <li>Tags are added in micro-batches: tags of the same name are summed in the
+ * batch, then the batch is added to the cloud with one call to addTags(). A batch
+ * is added when it holds getBatchSize() tags, or getMaxLatency() milliseconds
+ * after its first tag, or when flush() is called.</li>
+ * <li>The tags to display are published by getSnapshots() after the batches are
+ * added, at most one snapshot every getSnapshotInterval() milliseconds.</li>
+ * </ul>
+ * The tags of a batch are summed before the input filters of the cloud see them:
+ * a tag gets the sum of the scores and the latest date of the tags of its name,
+ * and the link of the first one. Names are not converted to the case of the
+ * cloud, so the cloud may still merge tags of a batch.
+ * The cloud is modified while synchronized on it: other threads using the cloud
+ * should synchronize on it too. The subscriber never waits for the lock of the
+ * cloud while holding its own lock, so such threads may call it. Batches are
+ * added to the cloud in the order they are completed.
+ * Settings must be given before the subscriber is subscribed.
+ */
+public class CloudSubscriber implements Flow.Subscriber<Tag>, AutoCloseable {
+
+	private final Cloud cloud;
+
+	/** Runs the latency flushes and the snapshots */
+	private final ScheduledExecutorService scheduler;
+
+	/** True if the scheduler was created by the subscriber, and is shut down by close() */
+	private final boolean ownScheduler;
+
+	private final SubmissionPublisher<List<Tag>> snapshots;
+
+	private int batchSize = 1024;
+
+	private int maxQueueDepth = 4096;
+
+	/** Maximum time in milliseconds a tag waits in a batch */
+	private long maxLatency = 50;
+
+	/** Minimum time in milliseconds between two snapshots */
+	private long snapshotInterval = 250;
+
+	private Flow.Subscription subscription = null;
+
+	/** True once the subscription is complete, failed or closed */
+	private boolean done = false;
+
+	private Throwable error = null;
+
+	/** Tags of the current batch by name, and number of tags received in the batch */
+	private final Map<String, Tag> batch = new HashMap<String, Tag>();
+	private int queued = 0;
+
+	/** Time the first tag of the batch was received */
+	private long batchStart = 0;
+
+	/** Number of tags requested and not received */
+	private long demand = 0;
+
+	private ScheduledFuture<?> latencyFlush = null;
+
+	private ScheduledFuture<?> snapshotTask = null;
+
+	/** Time of the last snapshot */
+	private long lastSnapshot = 0;
+
+	private long applied = 0;
+
+	private long batches = 0;
+
+	private long published = 0;
+
+	private long dropped = 0;
+
+	/** Time from the first tag of a batch to the end of its addition to the cloud */
+	private final Histogram batchLatencies = new Histogram();
+
+	private final Runnable flushTask = new Runnable() {
+		public void run() {
+			flush();
+		}
+	};
+
+	private final Runnable publishTask = new Runnable() {
+		public void run() {
+			synchronized (CloudSubscriber.this) {
+				snapshotTask = null;
+				if (done)
+					return;
+			}
+			List<Tag> snapshot;
+			synchronized (cloud) {
+				snapshot = snapshot();
+			}
+			synchronized (CloudSubscriber.this) {
+				if (! done && snapshot != null) {
+					publish(snapshot);
+				}
+			}
+		}
+	};
+
+	/**
+	 * Creates a subscriber with its own scheduler thread, stopped by close().
+	 * @param cloud The cloud receiving the tags
+	 */
+	public CloudSubscriber(Cloud cloud) {
+		this(cloud, newScheduler(), true);
+	}
+
+	/**
+	 * @param cloud The cloud receiving the tags
+	 * @param scheduler Runs the latency flushes and the snapshots, not shut down by close()
+	 */
+	public CloudSubscriber(Cloud cloud, ScheduledExecutorService scheduler) {
+		this(cloud, scheduler, false);
+	}
+
+	private CloudSubscriber(Cloud cloud, ScheduledExecutorService scheduler, boolean ownScheduler) {
+		this.cloud = cloud;
+		this.scheduler = scheduler;
+		this.ownScheduler = ownScheduler;
+		// snapshots are large and throttled: a subscriber more than a few behind misses the next ones
+		this.snapshots = new SubmissionPublisher<List<Tag>>(ForkJoinPool.commonPool(), 4);
+	}
+
+	private static ScheduledExecutorService newScheduler() {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "CloudSubscriber");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		return executor;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		long n;
+		synchronized (this) {
+			if (this.subscription != null || done) {
+				n = 0;
+			} else {
+				this.subscription = subscription;
+				n = maxQueueDepth;
+				demand = n;
+			}
+		}
+		if (n > 0) {
+			subscription.request(n);
+		} else {
+			subscription.cancel();
+		}
+	}
+
+	@Override
+	public void onNext(Tag tag) {
+		boolean full;
+		synchronized (this) {
+			if (done)
+				return;
+
+			demand--;
+			if (queued == 0) {
+				batchStart = System.nanoTime();
+				latencyFlush = scheduler.schedule(flushTask, maxLatency, TimeUnit.MILLISECONDS);
+			}
+			Tag previous = batch.get(tag.getName());
+			if (previous == null) {
+				batch.put(tag.getName(), tag);
+			} else {
+				previous.add(tag.getScore());
+				if (tag.getDate() != null && (previous.getDate() == null || tag.getDate().after(previous.getDate()))) {
+					previous.setDate(tag.getDate());
+				}
+			}
+			queued++;
+			full = queued >= batchSize;
+		}
+		if (full) {
+			request(applyBatch());
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		finish(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		finish(null);
+	}
+
+	/**
+	 * Adds the current batch to the cloud now.
+	 */
+	public void flush() {
+		request(applyBatch());
+	}
+
+	/**
+	 * Cancels the subscription, adds the current batch to the cloud, completes
+	 * the snapshot subscribers, and stops the scheduler if the subscriber created it.
+	 * The cloud is not closed.
+	 */
+	@Override
+	public void close() {
+		Flow.Subscription cancelled;
+		synchronized (this) {
+			cancelled = subscription;
+		}
+		if (finish(null) && cancelled != null) {
+			cancelled.cancel();
+		}
+		if (ownScheduler) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Adds the current batch to the cloud, and schedules a snapshot.
+	 * Must be called without holding the lock of the subscriber: the batch is
+	 * taken from the subscriber while holding the lock of the cloud, so that the
+	 * batches are added in order.
+	 * @return The number of tags to request
+	 */
+	private int applyBatch() {
+		int n;
+		long start;
+		RuntimeException failure = null;
+		synchronized (cloud) {
+			List<Tag> tags;
+			synchronized (this) {
+				if (latencyFlush != null) {
+					latencyFlush.cancel(false);
+					latencyFlush = null;
+				}
+				if (queued == 0)
+					return 0;
+				n = queued;
+				start = batchStart;
+				tags = new ArrayList<Tag>(batch.values());
+				batch.clear();
+				queued = 0;
+			}
+			try {
+				cloud.addTags(tags);
+			} catch (RuntimeException e) {
+				// e.g. the cloud was closed: the tags can't be added any more
+				failure = e;
+			}
+		}
+		if (failure != null) {
+			Flow.Subscription failed;
+			synchronized (this) {
+				failed = subscription;
+				if (done && error == null) {
+					// the last batch, added while the subscription ends
+					error = failure;
+				}
+			}
+			if (finish(failure) && failed != null) {
+				failed.cancel();
+			}
+			return 0;
+		}
+
+		synchronized (this) {
+			applied += n;
+			batches++;
+			batchLatencies.record(System.nanoTime() - start);
+
+			if (done)
+				return 0;
+			demand += n;
+			if (snapshotTask == null && snapshots.hasSubscribers()) {
+				long delay = Math.max(0, lastSnapshot + TimeUnit.MILLISECONDS.toNanos(snapshotInterval) - System.nanoTime());
+				snapshotTask = scheduler.schedule(publishTask, delay, TimeUnit.NANOSECONDS);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Ends the subscription: stops accepting tags, adds the current batch, then
+	 * publishes the last snapshot and completes the snapshot subscribers.
+	 * Must be called without holding the lock of the subscriber.
+	 * @param throwable The error of the subscription, null if there is none
+	 * @return True if the subscription ended now, false if it had already ended
+	 */
+	private boolean finish(Throwable throwable) {
+		synchronized (this) {
+			if (done)
+				return false;
+			done = true;
+			error = throwable;
+			if (snapshotTask != null) {
+				snapshotTask.cancel(false);
+				snapshotTask = null;
+			}
+		}
+		applyBatch();
+
+		List<Tag> snapshot = null;
+		if (snapshots.hasSubscribers()) {
+			synchronized (cloud) {
+				snapshot = snapshot();
+			}
+		}
+		Throwable failure;
+		synchronized (this) {
+			failure = error;
+			if (failure == null && snapshot != null) {
+				publish(snapshot);
+			}
+		}
+		if (failure == null) {
+			snapshots.close();
+		} else {
+			snapshots.closeExceptionally(failure);
+		}
+		return true;
+	}
+
+	/**
+	 * Copies the tags to display, sorted by name. Called holding the lock of the cloud.
+	 * @return The copy, null if the cloud is closed
+	 */
+	private List<Tag> snapshot() {
+		if (cloud.isClosed())
+			return null;
+		List<Tag> tags = cloud.tags();
+		// output tags are the tags of the cloud, and their weights change at each computation
+		List<Tag> snapshot = new ArrayList<Tag>(tags.size());
+		for (Tag tag : tags) {
+			snapshot.add(new Tag(tag));
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Publishes a snapshot. Called holding the lock of the subscriber.
+	 */
+	private void publish(List<Tag> snapshot) {
+		lastSnapshot = System.nanoTime();
+		if (snapshots.offer(snapshot, null) < 0) {
+			dropped++;
+		} else {
+			published++;
+		}
+	}
+
+	private void request(int n) {
+		Flow.Subscription s;
+		synchronized (this) {
+			s = subscription;
+		}
+		// outside the lock, a publisher may call onNext() from request()
+		if (n > 0 && s != null) {
+			s.request(n);
+		}
+	}
+
+	private synchronized void checkNotSubscribed() {
+		if (subscription != null || done)
+			throw new IllegalStateException("The subscriber is already subscribed");
+	}
+
+	/**
+	 * @return The tags to display, published after the batches are added to the cloud
+	 */
+	public Flow.Publisher<List<Tag>> getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * @return The maximum number of tags of a batch
+	 */
+	public synchronized int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize The maximum number of tags of a batch, at most the maximum queue depth
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("The batch size must be positive");
+		checkNotSubscribed();
+		synchronized (this) {
+			this.batchSize = batchSize;
+		}
+	}
+
+	/**
+	 * @return The maximum number of tags requested and not yet added to the cloud
+	 */
+	public synchronized int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * @param maxQueueDepth The maximum number of tags requested and not yet added to
+	 * the cloud. With a batch size of half the depth, the producer sends the next
+	 * batch while the current one is added.
+	 */
+	public void setMaxQueueDepth(int maxQueueDepth) {
+		if (maxQueueDepth < 1)
+			throw new IllegalArgumentException("The queue depth must be positive");
+		checkNotSubscribed();
+		synchronized (this) {
+			this.maxQueueDepth = maxQueueDepth;
+		}
+	}
+
+	/**
+	 * @return The maximum time in milliseconds a tag waits in a batch
+	 */
+	public synchronized long getMaxLatency() {
+		return maxLatency;
+	}
+
+	/**
+	 * @param maxLatency The maximum time in milliseconds a tag waits in a batch
+	 */
+	public void setMaxLatency(long maxLatency) {
+		checkNotSubscribed();
+		synchronized (this) {
+			this.maxLatency = Math.max(0, maxLatency);
+		}
+	}
+
+	/**
+	 * @return The minimum time in milliseconds between two snapshots
+	 */
+	public synchronized long getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	/**
+	 * @param snapshotInterval The minimum time in milliseconds between two snapshots
+	 */
+	public void setSnapshotInterval(long snapshotInterval) {
+		checkNotSubscribed();
+		synchronized (this) {
+			this.snapshotInterval = Math.max(0, snapshotInterval);
+		}
+	}
+
+	/**
+	 * @return The number of tags received and not yet added to the cloud
+	 */
+	public synchronized int getQueueDepth() {
+		return queued;
+	}
+
+	/**
+	 * @return The number of tags requested and not yet received
+	 */
+	public synchronized long getDemand() {
+		return demand;
+	}
+
+	/**
+	 * @return The number of tags added to the cloud, before they are summed
+	 */
+	public synchronized long getApplied() {
+		return applied;
+	}
+
+	/**
+	 * @return The number of batches added to the cloud
+	 */
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * @return The times from the first tag of each batch to the end of its
+	 * addition to the cloud, in nanoseconds
+	 */
+	public Histogram getBatchLatencies() {
+		return batchLatencies;
+	}
+
+	/**
+	 * @return The number of snapshots published
+	 */
+	public synchronized long getPublishedSnapshots() {
+		return published;
+	}
+
+	/**
+	 * @return The number of snapshots dropped because a subscriber didn't keep up
+	 */
+	public synchronized long getDroppedSnapshots() {
+		return dropped;
+	}
+
+	/**
+	 * @return True once the subscription is complete, failed or closed
+	 */
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * @return The error that ended the subscription: from the producer, or from
+	 * the cloud when a batch couldn't be added; null if there is none
+	 */
+	public synchronized Throwable getError() {
+		return error;
+	}
+
+}
@@ -0,0 +1,30 @@
+package es.luixal.android_tagcloud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A call to Cloud.addText().
+ */
+@Name("es.luixal.android_tagcloud.AddText")
+@Label("Add Text")
+@Category("Tag Cloud")
+@Description("Tags extracted from a text and added to a cloud")
+class AddTextEvent extends Event {
+
+	@Label("Characters")
+	@Description("Length of the text")
+	int chars;
+
+	@Label("Tokens")
+	@Description("Number of words extracted from the text")
+	int tokens;
+
+	@Label("Accepted Tags")
+	@Description("Number of words accepted by the input filters")
+	int accepted;
+
+}
@@ -0,0 +1,27 @@
+package es.luixal.android_tagcloud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Tags evicted from a cloud because a memory budget is exceeded.
+ */
+@Name("es.luixal.android_tagcloud.Eviction")
+@Label("Tag Eviction")
+@Category("Tag Cloud")
+@Description("Tags evicted from a cloud because a memory budget is exceeded")
+class EvictionEvent extends Event {
+
+	@Label("Evicted Tags")
+	int evicted;
+
+	@Label("Freed Memory")
+	@Description("Estimated memory of the evicted tags")
+	@DataAmount
+	long freedBytes;
+
+}
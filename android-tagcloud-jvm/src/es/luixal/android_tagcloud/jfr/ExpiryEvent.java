@@ -0,0 +1,21 @@
+package es.luixal.android_tagcloud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Tags ignored by an output computation because they are older than the tag lifetime.
+ */
+@Name("es.luixal.android_tagcloud.Expiry")
+@Label("Tag Expiry")
+@Category("Tag Cloud")
+@Description("Tags older than the tag lifetime, ignored by an output computation")
+class ExpiryEvent extends Event {
+
+	@Label("Expired Tags")
+	int expired;
+
+}
@@ -0,0 +1,169 @@
+package es.luixal.android_tagcloud.jfr;
+
+import jdk.jfr.EventType;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.filters.Filter;
+import es.luixal.android_tagcloud.metrics.CloudMetrics;
+import es.luixal.android_tagcloud.metrics.NoOpCloudMetrics;
+
+/**
+ * Metrics emitting Java Flight Recorder events, so that cloud activity can be
+ * related to the other events of a recording (CPU samples, allocations, GC):
+ * <ul>
+ * <li>es.luixal.android_tagcloud.AddText for each call to addText()</li>
+ * <li>es.luixal.android_tagcloud.OutputTags for each computation of the tags to display</li>
+ * <li>es.luixal.android_tagcloud.Expiry when tags are ignored because of their lifetime</li>
+ * <li>es.luixal.android_tagcloud.Eviction when tags are evicted because of a memory budget</li>
+ * </ul>
+ * Events are enabled and disabled through the recording settings, like JDK events.
+ * When no recording enables them, isEnabled() returns false and the cloud doesn't
+ * measure anything. Other measures are passed to a delegate, e.g. InMemoryCloudMetrics.
+ * An instance can be shared by clouds used from different threads.
+ */
+public class JfrCloudMetrics implements CloudMetrics {
+
+	private static final EventType ADD_TEXT = EventType.getEventType(AddTextEvent.class);
+
+	private static final EventType OUTPUT_TAGS = EventType.getEventType(OutputTagsEvent.class);
+
+	private static final EventType EXPIRY = EventType.getEventType(ExpiryEvent.class);
+
+	private static final EventType EVICTION = EventType.getEventType(EvictionEvent.class);
+
+	/** Metrics receiving all the measures */
+	private final CloudMetrics delegate;
+
+	/** Events begun by the current thread */
+	private final ThreadLocal<AddTextEvent> addText = new ThreadLocal<AddTextEvent>();
+	private final ThreadLocal<OutputTagsEvent> outputTags = new ThreadLocal<OutputTagsEvent>();
+	private final ThreadLocal<EvictionEvent> eviction = new ThreadLocal<EvictionEvent>();
+
+	public JfrCloudMetrics() {
+		this(NoOpCloudMetrics.INSTANCE);
+	}
+
+	/**
+	 * @param delegate Metrics receiving all the measures
+	 */
+	public JfrCloudMetrics(CloudMetrics delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return ADD_TEXT.isEnabled() || OUTPUT_TAGS.isEnabled() || EXPIRY.isEnabled() || EVICTION.isEnabled()
+				|| delegate.isEnabled();
+	}
+
+	@Override
+	public void tagsIngested(int count) {
+		delegate.tagsIngested(count);
+	}
+
+	@Override
+	public void tagsRejected(Filter<Tag> filter, int count) {
+		delegate.tagsRejected(filter, count);
+	}
+
+	@Override
+	public void tagsMerged(int count) {
+		delegate.tagsMerged(count);
+	}
+
+	@Override
+	public void tagsExpired(int count) {
+		if (EXPIRY.isEnabled()) {
+			ExpiryEvent event = new ExpiryEvent();
+			event.expired = count;
+			event.commit();
+		}
+		delegate.tagsExpired(count);
+	}
+
+	@Override
+	public void evictionStarted() {
+		if (EVICTION.isEnabled()) {
+			EvictionEvent event = new EvictionEvent();
+			event.begin();
+			eviction.set(event);
+		}
+		delegate.evictionStarted();
+	}
+
+	@Override
+	public void tagsEvicted(int count, long bytes, long nanos) {
+		EvictionEvent event = eviction.get();
+		if (event != null) {
+			eviction.remove();
+			event.end();
+			event.evicted = count;
+			event.freedBytes = bytes;
+			event.commit();
+		}
+		delegate.tagsEvicted(count, bytes, nanos);
+	}
+
+	@Override
+	public void ingestionTime(long nanos, int count) {
+		delegate.ingestionTime(nanos, count);
+	}
+
+	@Override
+	public void textStarted() {
+		if (ADD_TEXT.isEnabled()) {
+			AddTextEvent event = new AddTextEvent();
+			event.begin();
+			addText.set(event);
+		}
+		delegate.textStarted();
+	}
+
+	@Override
+	public void textAdded(int chars, int tokens, int accepted, long nanos) {
+		AddTextEvent event = addText.get();
+		if (event != null) {
+			addText.remove();
+			event.end();
+			event.chars = chars;
+			event.tokens = tokens;
+			event.accepted = accepted;
+			event.commit();
+		}
+		delegate.textAdded(chars, tokens, accepted, nanos);
+	}
+
+	@Override
+	public void outputStarted() {
+		if (OUTPUT_TAGS.isEnabled()) {
+			OutputTagsEvent event = new OutputTagsEvent();
+			event.begin();
+			outputTags.set(event);
+		}
+		delegate.outputStarted();
+	}
+
+	@Override
+	public void outputTime(long nanos, int size, int count) {
+		OutputTagsEvent event = outputTags.get();
+		if (event != null) {
+			outputTags.remove();
+			event.end();
+			event.inputSize = size;
+			event.outputSize = count;
+			event.commit();
+		}
+		delegate.outputTime(nanos, size, count);
+	}
+
+	@Override
+	public void distinctTags(int count) {
+		delegate.distinctTags(count);
+	}
+
+	@Override
+	public void estimatedBytes(long bytes) {
+		delegate.estimatedBytes(bytes);
+	}
+
+}
@@ -0,0 +1,26 @@
+package es.luixal.android_tagcloud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A computation of the tags to display (Cloud.tags(), Cloud.explain()).
+ */
+@Name("es.luixal.android_tagcloud.OutputTags")
+@Label("Output Tags")
+@Category("Tag Cloud")
+@Description("Computation of the tags to display")
+class OutputTagsEvent extends Event {
+
+	@Label("Input Size")
+	@Description("Number of tags in the cloud")
+	int inputSize;
+
+	@Label("Output Size")
+	@Description("Number of tags to display")
+	int outputSize;
+
+}
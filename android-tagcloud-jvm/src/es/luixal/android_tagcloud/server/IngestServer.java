@@ -0,0 +1,521 @@
+package es.luixal.android_tagcloud.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import es.luixal.android_tagcloud.Cloud;
+import es.luixal.android_tagcloud.Tag;
+
+/**
+ * Server receiving tags for a cloud from other processes of the same machine,
+ * over a line protocol. It listens on the loopback address only, and serves
+ * all its connections from a single thread with non-blocking NIO.
+ * Lines are UTF-8 text ending with \n (a \r before it is ignored):
+ * <ul>
+ * <li>name\tscore\ttimestamp adds a tag; the score (1 by default) and the
+ * timestamp, in milliseconds since the epoch (now by default), may be left out
+ * with their tab.</li>
+ * <li>A line without a tab is a text, added with addText(). Send a text
+ * starting with ! with a space before it.</li>
+ * <li>!top k answers the k tags to display with the highest scores (10 by
+ * default), one name\tscore\tweight line each, followed by an empty line.
+ * The tags sent before on the same connection are included.</li>
+ * <li>!flush adds the tags received so far and answers an empty line.</li>
+ * </ul>
+ * Tags and texts are added to the cloud in batches, at the latest when the
+ * server has read all the data available. Malformed lines and lines longer than
+ * the input buffer are counted and ignored.
+ * Each connection has a fixed input buffer, and stops being read while more
+ * than MAX_PENDING_OUTPUT bytes of answers wait to be sent, so memory is bounded
+ * whatever the clients send.
+ * The cloud is modified while synchronized on it: other threads using the cloud
+ * should synchronize on it too. The server stops when it finds the cloud closed,
+ * or when the cloud throws a RuntimeException, e.g. from a filter (see getError()).
+ */
+public class IngestServer implements Closeable {
+
+	/** Size of the input buffer of each connection, and maximum length of a line */
+	public static final int INPUT_BUFFER = 64 * 1024;
+
+	/** Bytes of answers waiting to be sent above which a connection isn't read */
+	public static final int MAX_PENDING_OUTPUT = 256 * 1024;
+
+	/** Number of tags, or chars of text, received before they are added to the cloud */
+	private static final int BATCH_SIZE = 4096;
+
+	private static final int DEFAULT_TOP = 10;
+
+	private final Cloud cloud;
+
+	private final Selector selector;
+
+	private final ServerSocketChannel server;
+
+	private final Thread thread;
+
+	private volatile boolean closed = false;
+
+	/** The error that stopped the server, null if there is none */
+	private volatile RuntimeException error = null;
+
+	/** Tags and text received and not yet added */
+	private final List<Tag> tags = new ArrayList<Tag>(BATCH_SIZE);
+	private final StringBuilder text = new StringBuilder();
+
+	/** Counters, written by the server thread */
+	private volatile long lines = 0;
+	private volatile long rejectedLines = 0;
+	private volatile long batches = 0;
+	private volatile long queries = 0;
+	private volatile int connections = 0;
+
+	/**
+	 * Opens a server on an ephemeral port, see getPort(), and starts its thread.
+	 * @param cloud The cloud receiving the tags
+	 * @throws IOException If the server socket can't be opened
+	 */
+	public IngestServer(Cloud cloud) throws IOException {
+		this(cloud, 0);
+	}
+
+	/**
+	 * Opens a server and starts its thread.
+	 * @param cloud The cloud receiving the tags
+	 * @param port The port, on the loopback address; 0 for an ephemeral port
+	 * @throws IOException If the server socket can't be opened
+	 */
+	public IngestServer(Cloud cloud, int port) throws IOException {
+		this.cloud = cloud;
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		try {
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			server.close();
+			selector.close();
+			throw e;
+		}
+		this.thread = new Thread(new Runnable() {
+			public void run() {
+				serve();
+			}
+		}, "IngestServer-" + getPort());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return The port the server listens on
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Stops the server: closes its connections and waits for its thread.
+	 * Tags received and not yet added are added to the cloud.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void serve() {
+		try {
+			while (! closed) {
+				selector.select();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (! closed && it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					try {
+						if (! key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+							continue;
+						}
+						Connection connection = (Connection) key.attachment();
+						if (key.isWritable()) {
+							connection.write();
+						}
+						if (key.isValid() && key.isReadable()) {
+							connection.read();
+						}
+					} catch (IOException e) {
+						// the client went away
+						disconnect(key);
+					}
+				}
+				// everything available has been read
+				flush();
+			}
+		} catch (IOException e) {
+			// the selector failed, stop serving
+		} catch (ClosedSelectorException e) {
+			// closed
+		} catch (RuntimeException e) {
+			fail(e);
+		} finally {
+			flush();
+			for (SelectionKey key : selector.keys()) {
+				try {
+					key.channel().close();
+				} catch (IOException e) {
+					// closing anyway
+				}
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// closing anyway
+			}
+			connections = 0;
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		key.attach(new Connection(key, channel));
+		connections++;
+	}
+
+	private void disconnect(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+		connections--;
+	}
+
+	/**
+	 * Stops the server after an error of the cloud.
+	 */
+	private void fail(RuntimeException e) {
+		if (error == null) {
+			error = e;
+		}
+		closed = true;
+	}
+
+	/**
+	 * Adds the tags and the text received to the cloud. They are dropped once
+	 * the server has failed.
+	 */
+	private void flush() {
+		if (tags.isEmpty() && text.length() == 0)
+			return;
+		if (error == null) {
+			synchronized (cloud) {
+				try {
+					if (cloud.isClosed()) {
+						// nothing can be added any more
+						closed = true;
+					} else {
+						if (! tags.isEmpty()) {
+							cloud.addTags(tags);
+						}
+						if (text.length() > 0) {
+							cloud.addText(text.toString());
+						}
+						batches++;
+					}
+				} catch (RuntimeException e) {
+					fail(e);
+				}
+			}
+		}
+		tags.clear();
+		text.setLength(0);
+	}
+
+	/**
+	 * Handles a line of the protocol.
+	 * @param bytes Buffer holding the line
+	 * @param start First byte of the line
+	 * @param end End of the line, before \n and \r
+	 * @param connection The connection the line was received on
+	 */
+	private void line(byte[] bytes, int start, int end, Connection connection) {
+		lines++;
+		if (end > start && bytes[start] == '!') {
+			command(new String(bytes, start + 1, end - start - 1, StandardCharsets.UTF_8), connection);
+			return;
+		}
+
+		int tab1 = indexOf(bytes, start, end, (byte) '\t');
+		if (tab1 < 0) {
+			if (text.length() > 0) {
+				text.append('\n');
+			}
+			text.append(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+			if (text.length() >= BATCH_SIZE * 8) {
+				flush();
+			}
+			return;
+		}
+
+		int tab2 = indexOf(bytes, tab1 + 1, end, (byte) '\t');
+		Tag tag;
+		try {
+			String name = new String(bytes, start, tab1 - start, StandardCharsets.UTF_8);
+			String score = ascii(bytes, tab1 + 1, (tab2 < 0) ? end : tab2);
+			tag = new Tag(name, null, score.isEmpty() ? 1.0 : Double.parseDouble(score));
+			if (tab2 >= 0) {
+				String timestamp = ascii(bytes, tab2 + 1, end);
+				if (! timestamp.isEmpty()) {
+					tag.setDate(new Date(Long.parseLong(timestamp)));
+				}
+			}
+		} catch (NumberFormatException e) {
+			rejectedLines++;
+			return;
+		}
+		if (! Cloud.isValid(tag)) {
+			rejectedLines++;
+			return;
+		}
+		tags.add(tag);
+		if (tags.size() >= BATCH_SIZE) {
+			flush();
+		}
+	}
+
+	private void command(String command, Connection connection) {
+		String[] words = command.trim().split(" +");
+		if (words[0].equals("top") && words.length <= 2) {
+			int k;
+			try {
+				k = (words.length == 2) ? Integer.parseInt(words[1]) : DEFAULT_TOP;
+			} catch (NumberFormatException e) {
+				rejectedLines++;
+				return;
+			}
+			flush();
+			List<Tag> top;
+			synchronized (cloud) {
+				if (cloud.isClosed() || error != null)
+					return;
+				try {
+					top = cloud.tags(new Tag.ScoreComparatorDesc());
+				} catch (RuntimeException e) {
+					fail(e);
+					return;
+				}
+			}
+			StringBuilder answer = new StringBuilder();
+			for (int i=0; i<top.size() && i<k; i++) {
+				Tag tag = top.get(i);
+				answer.append(tag.getName()).append('\t').append(tag.getScore()).append('\t').append(tag.getWeight()).append('\n');
+			}
+			answer.append('\n');
+			connection.send(answer.toString());
+			queries++;
+		} else if (words[0].equals("flush") && words.length == 1) {
+			flush();
+			connection.send("\n");
+		} else {
+			rejectedLines++;
+		}
+	}
+
+	private static int indexOf(byte[] bytes, int start, int end, byte b) {
+		for (int i=start; i<end; i++) {
+			if (bytes[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	private static String ascii(byte[] bytes, int start, int end) {
+		return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1).trim();
+	}
+
+	/**
+	 * @return The number of lines received, including rejected lines and commands
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return The number of malformed or too long lines
+	 */
+	public long getRejectedLines() {
+		return rejectedLines;
+	}
+
+	/**
+	 * @return The number of batches added to the cloud
+	 */
+	public long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * @return The number of top queries answered
+	 */
+	public long getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @return The number of open connections
+	 */
+	public int getConnections() {
+		return connections;
+	}
+
+	/**
+	 * @return The exception thrown by the cloud that stopped the server, null if there is none
+	 */
+	public RuntimeException getError() {
+		return error;
+	}
+
+	/**
+	 * @return True once the server has been closed, or has stopped by itself
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Client connection: its input buffer, and its answers waiting to be sent.
+	 */
+	private class Connection {
+
+		private final SelectionKey key;
+
+		private final SocketChannel channel;
+
+		private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER);
+
+		/** True while the rest of a too long line is skipped */
+		private boolean skipping = false;
+
+		private final ArrayDeque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+
+		private int pendingOutput = 0;
+
+		Connection(SelectionKey key, SocketChannel channel) {
+			this.key = key;
+			this.channel = channel;
+		}
+
+		void read() throws IOException {
+			int read = channel.read(input);
+			if (read < 0) {
+				// the lines received before are handled, a last line without \n is ignored
+				lines();
+				disconnect(key);
+				return;
+			}
+			lines();
+		}
+
+		/**
+		 * Handles the complete lines of the input buffer, until too many answers
+		 * wait to be sent.
+		 */
+		void lines() {
+			byte[] bytes = input.array();
+			int start = 0;
+			int end = input.position();
+			int i;
+			for (i=0; i<end && pendingOutput <= MAX_PENDING_OUTPUT; i++) {
+				if (bytes[i] != '\n')
+					continue;
+				if (skipping) {
+					skipping = false;
+				} else {
+					int lineEnd = (i > start && bytes[i - 1] == '\r') ? i - 1 : i;
+					line(bytes, start, lineEnd, this);
+				}
+				start = i + 1;
+			}
+
+			if (start == 0 && i == end && end == bytes.length) {
+				// a line longer than the buffer
+				if (! skipping) {
+					rejectedLines++;
+					skipping = true;
+				}
+				start = end;
+			}
+			input.position(start);
+			input.limit(end);
+			input.compact();
+			updateInterest();
+		}
+
+		void send(String answer) {
+			byte[] bytes = answer.getBytes(StandardCharsets.UTF_8);
+			output.add(ByteBuffer.wrap(bytes));
+			pendingOutput += bytes.length;
+			updateInterest();
+		}
+
+		void write() throws IOException {
+			while (! output.isEmpty()) {
+				ByteBuffer buffer = output.peek();
+				pendingOutput -= channel.write(buffer);
+				if (buffer.hasRemaining())
+					break;
+				output.poll();
+			}
+			if (pendingOutput <= MAX_PENDING_OUTPUT && input.position() > 0) {
+				// lines left in the buffer while the answers were too many
+				lines();
+			}
+			updateInterest();
+		}
+
+		private void updateInterest() {
+			if (! key.isValid())
+				return;
+			int ops = 0;
+			if (pendingOutput <= MAX_PENDING_OUTPUT) {
+				ops |= SelectionKey.OP_READ;
+			}
+			if (! output.isEmpty()) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			key.interestOps(ops);
+		}
+
+	}
+
+}
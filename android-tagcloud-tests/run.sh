@@ -0,0 +1,10 @@
+#!/bin/sh
+# Compiles the library (without its Android classes), its JVM extensions and the
+# tests, then runs the tests. Requires JDK 11 or later.
+# Arguments are passed to TestRunner, e.g.: ./run.sh 'Dictionary'
+cd "$(dirname "$0")"
+rm -rf build
+mkdir -p build/classes
+find ../android-tagcloud/src ../android-tagcloud-jvm/src src -name '*.java' ! -name CloudView.java ! -name PaintTextMeasurer.java ! -name ViewFrameScheduler.java > build/sources.txt
+javac -encoding UTF-8 --release 11 -d build/classes @build/sources.txt || exit 1
+exec java ${JAVA_OPTS:--Xmx1g} -cp build/classes es.luixal.android_tagcloud.test.TestRunner "$@"
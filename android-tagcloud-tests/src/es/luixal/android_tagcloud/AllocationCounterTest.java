@@ -0,0 +1,19 @@
+package es.luixal.android_tagcloud;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+public class AllocationCounterTest {
+
+	/** Keeps the allocated arrays reachable */
+	private Object sink;
+
+	public void testCountsAllocationsOfTheCurrentThread() {
+		assertTrue("supported on HotSpot", AllocationCounter.isSupported());
+		long before = AllocationCounter.currentThread();
+		sink = new byte[1 << 20];
+		long after = AllocationCounter.currentThread();
+		assertTrue("allocated " + (after - before), after - before >= (1 << 20));
+		assertNotNull("sink", sink);
+	}
+
+}
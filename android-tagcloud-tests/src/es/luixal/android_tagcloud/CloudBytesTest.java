@@ -0,0 +1,128 @@
+package es.luixal.android_tagcloud;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class CloudBytesTest {
+
+	private static long sumOfEstimates(Cloud cloud) {
+		long bytes = 0;
+		for (Map.Entry<String, Tag> entry : cloud.getCloud().entrySet()) {
+			bytes += TagSizes.estimate(entry.getKey(), entry.getValue());
+		}
+		return bytes;
+	}
+
+	public void testRemoveAfterLinkExpansionAndCaseChange() {
+		checkRemoveAfterLinkExpansionAndCaseChange(new HashMap<String, Tag>());
+	}
+
+	public void testRemoveFromStoresAfterLinkExpansionAndCaseChange() {
+		checkRemoveAfterLinkExpansionAndCaseChange(new ColumnarTagStore(new TermDictionary()));
+		OffHeapTagStore store = new OffHeapTagStore();
+		checkRemoveAfterLinkExpansionAndCaseChange(store);
+		store.close();
+	}
+
+	private void checkRemoveAfterLinkExpansionAndCaseChange(Map<String, Tag> tags) {
+		Cloud cloud = new Cloud(tags);
+		cloud.setTagCase(Cloud.Case.LOWER);
+		cloud.setDefaultLink("http://example.com/search?q=%s");
+		assertEquals("empty", 0, cloud.getEstimatedBytes());
+
+		cloud.addTag(new Tag("Android", 3.0));
+		cloud.addTag(new Tag("Java", 2.0));
+		cloud.addTag(new Tag("android", 1.0));
+		assertTrue("counted", cloud.getEstimatedBytes() > 0);
+
+		// tags() changes the names to the case of the cloud, getLink() expands the templates
+		for (Tag tag : cloud.tags()) {
+			assertNotNull(tag.getName(), tag.getLink());
+		}
+
+		cloud.removeTag("Android");
+		cloud.removeTag("java");
+		assertEquals("size", 0, cloud.size());
+		assertEquals("bytes", 0, cloud.getEstimatedBytes());
+	}
+
+	public void testMergeAfterLinkExpansion() {
+		Cloud cloud = new Cloud();
+		cloud.setDefaultLink("http://example.com/%s");
+		cloud.getEstimatedBytes();
+
+		Tag tag = new Tag("cloud");
+		cloud.addTag(tag);
+		tag.getLink();
+		cloud.addTag(new Tag("cloud"));
+		cloud.addTag(tag);
+		assertEquals("one tag", 1, cloud.size());
+
+		cloud.removeTag("cloud");
+		assertEquals("bytes", 0, cloud.getEstimatedBytes());
+	}
+
+	public void testEvictsLeastImportantTagsFirst() {
+		Random random = new Random(7);
+		Cloud cloud = new Cloud();
+		final List<Tag> added = new ArrayList<Tag>();
+		for (int i=0; i<2000; i++) {
+			Tag tag = new Tag("tag" + i, null, 1 + random.nextInt(50), new Date(1000000L + random.nextInt(1000)));
+			added.add(tag);
+			cloud.addTag(tag);
+		}
+		long total = cloud.getEstimatedBytes();
+		assertEquals("bytes", sumOfEstimates(cloud), total);
+
+		// expected: the least important tags, until the cloud is at 90% of its budget
+		Collections.sort(added, new Comparator<Tag>() {
+			public int compare(Tag t1, Tag t2) {
+				int comparison = Double.compare(t1.getScore(), t2.getScore());
+				if (comparison == 0) {
+					comparison = t1.getDate().compareTo(t2.getDate());
+				}
+				return (comparison == 0) ? t1.getName().compareTo(t2.getName()) : comparison;
+			}
+		});
+		Tag important = new Tag("important", 1000.0);
+		long budget = total / 2;
+		long excess = total + TagSizes.estimate("important", important) - (long) (budget * 0.9);
+		Set<String> evicted = new HashSet<String>();
+		for (int i=0; excess > 0; i++) {
+			excess -= TagSizes.estimate(added.get(i).getName(), added.get(i));
+			evicted.add(added.get(i).getName());
+		}
+
+		cloud.setMaxBytes(budget);
+		cloud.addTag(important);
+
+		assertEquals("remaining", 2001 - evicted.size(), cloud.size());
+		for (String name : evicted) {
+			assertNull(name + " evicted", cloud.getTag(name));
+		}
+		assertNotNull("important kept", cloud.getTag("important"));
+		assertEquals("bytes", sumOfEstimates(cloud), cloud.getEstimatedBytes());
+		assertTrue("within budget", cloud.getEstimatedBytes() <= budget * 0.9);
+	}
+
+	public void testBudgetKeptWhileAdding() {
+		Cloud cloud = new Cloud();
+		cloud.setMaxBytes(50000);
+		for (int i=0; i<5000; i++) {
+			cloud.addTag(new Tag("word" + (i % 700), null, i % 13, new Date(i)));
+			assertTrue("within budget", cloud.getEstimatedBytes() <= 50000);
+		}
+		assertEquals("bytes", sumOfEstimates(cloud), cloud.getEstimatedBytes());
+	}
+
+}
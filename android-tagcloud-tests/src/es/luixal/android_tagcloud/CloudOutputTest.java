@@ -0,0 +1,183 @@
+package es.luixal.android_tagcloud;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import es.luixal.android_tagcloud.filters.MinLengthFilter;
+import es.luixal.android_tagcloud.filters.RegExFilter;
+
+public class CloudOutputTest {
+
+	/**
+	 * Cloud computing its output tags with the list based code of the first
+	 * versions of the library.
+	 */
+	static class ListCloud extends Cloud {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected List<Tag> getOutputTags() {
+			List<Tag> emptyList = new LinkedList<Tag>();
+			double max = 0.0;
+			Date now = new Date();
+			List<Tag> result = new LinkedList<Tag>();
+			Iterator<Tag> it = getCloud().values().iterator();
+			while (it.hasNext()) {
+				Tag tag = it.next();
+				if (! isValid(tag)) {
+					it.remove();
+					continue;
+				}
+				if (tag.getScore() < getThreshold())
+					continue;
+				if (getTagLifetime() > 0 && tag.getDate() != null && (now.getTime() - tag.getDate().getTime()) > getTagLifetime())
+					continue;
+				if (isOutputTagFiltered(tag))
+					continue;
+				result.add(tag);
+				if (tag.getScore() > max) {
+					max = tag.getScore();
+				}
+			}
+			if (Double.isInfinite(max) || Double.isNaN(max) || max <= 0.0)
+				return emptyList;
+
+			it = result.iterator();
+			while (it.hasNext()) {
+				Tag tag = it.next();
+				tag.normalize(max);
+				if (tag.getNormScore() < getNormThreshold()) {
+					it.remove();
+					continue;
+				}
+				tag.setWeight(getMinWeight() + tag.getNormScore() * (getMaxWeight() - getMinWeight()));
+			}
+
+			if (getMaxTagsToDisplay() < 0 || size() <= getMaxTagsToDisplay()) {
+				for (Tag tag : result) {
+					adjustTagCase(tag);
+				}
+				return result;
+			}
+			Collections.sort(result, new Tag.ScoreComparatorDesc());
+			List<Tag> top = new LinkedList<Tag>();
+			for (Tag tag : result) {
+				if (top.size() == getMaxTagsToDisplay())
+					break;
+				adjustTagCase(tag);
+				top.add(tag);
+			}
+			return top;
+		}
+
+	}
+
+	private static List<String> describe(List<Tag> tags) {
+		List<String> result = new ArrayList<String>();
+		for (Tag tag : tags) {
+			result.add(tag.getName() + " " + tag.getScore() + " " + tag.getNormScore() + " " + tag.getWeight());
+		}
+		return result;
+	}
+
+	private static void configure(Cloud cloud, long seed) {
+		Random random = new Random(seed);
+		int[] maxTags = { -1, 0, 5, 40, 1000 };
+		cloud.setMaxTagsToDisplay(maxTags[random.nextInt(maxTags.length)]);
+		cloud.setThreshold(random.nextBoolean() ? 0.0 : random.nextInt(10));
+		cloud.setNormThreshold(random.nextBoolean() ? 0.0 : random.nextDouble() / 2);
+		cloud.setTagLifetime(random.nextBoolean() ? -1 : 50000);
+		cloud.setTagCase(Cloud.Case.values()[random.nextInt(Cloud.Case.values().length)]);
+		if (random.nextBoolean()) {
+			cloud.addOutputFilter(new MinLengthFilter(5));
+		}
+		if (random.nextBoolean()) {
+			cloud.addOutputFilter(new RegExFilter(".*[0-4]"));
+		}
+	}
+
+	private static void fill(Cloud cloud, long seed, long now) {
+		Random random = new Random(seed);
+		int n = random.nextInt(300);
+		for (int i=0; i<n; i++) {
+			String name = (random.nextBoolean() ? "Tag" : "word") + random.nextInt(200);
+			// ages 10 s away from the lifetime, so that no tag expires during the test
+			long age = random.nextInt(40000) + (random.nextBoolean() ? 0 : 60000);
+			Tag tag = new Tag(name, null, 1 + random.nextInt(30), new Date(now - age));
+			cloud.addTag(tag);
+		}
+		// invalid tags put in the map directly are removed by the output computation
+		cloud.getCloud().put("zero", new Tag("zero", null, 0.0, new Date(now)));
+	}
+
+	public void testSameOutputAsListPipeline() {
+		long now = System.currentTimeMillis();
+		for (long seed=0; seed<300; seed++) {
+			Cloud cloud = new Cloud();
+			Cloud expected = new ListCloud();
+			configure(cloud, seed);
+			configure(expected, seed);
+			fill(cloud, seed, now);
+			fill(expected, seed, now);
+
+			List<String> actualTags = describe(cloud.tags(new Tag.ScoreComparatorDesc()));
+			assertEquals("seed " + seed, describe(expected.tags(new Tag.ScoreComparatorDesc())), actualTags);
+			assertEquals("size " + seed, expected.size(), cloud.size());
+			assertEquals("explain " + seed, actualTags,
+					describe(cloud.explain(new Tag.ScoreComparatorDesc()).getTags()));
+		}
+	}
+
+	public void testOverriddenTagFilterIsCalled() {
+		Cloud cloud = new Cloud() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean isOutputTagFiltered(Tag tag) {
+				return tag.getName().startsWith("x") || super.isOutputTagFiltered(tag);
+			}
+		};
+		cloud.addOutputFilter(new MinLengthFilter(3));
+		cloud.addTag(new Tag("xml", 2.0));
+		cloud.addTag(new Tag("java", 1.0));
+		cloud.addTag(new Tag("go", 3.0));
+		List<Tag> tags = cloud.tags();
+		assertEquals("filtered", 1, tags.size());
+		assertEquals("accepted", "java", tags.get(0).getName());
+		assertEquals("profiled", 1, cloud.explain(new Tag.NameComparatorAsc()).getTags().size());
+	}
+
+	public void testOverriddenTrimIsCalled() {
+		final int[] calls = new int[1];
+		Cloud cloud = new Cloud() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected List<Tag> removeExceedingTags(List<Tag> tags) {
+				calls[0]++;
+				List<Tag> result = new ArrayList<Tag>();
+				for (Tag tag : tags) {
+					if (tag.getScore() > 1.0) {
+						result.add(tag);
+					}
+				}
+				return result;
+			}
+		};
+		cloud.addTag(new Tag("java", 2.0));
+		cloud.addTag(new Tag("go", 1.0));
+		List<Tag> tags = cloud.tags();
+		assertEquals("calls", 1, calls[0]);
+		assertEquals("trimmed", 1, tags.size());
+		assertEquals("kept", "java", tags.get(0).getName());
+	}
+
+}
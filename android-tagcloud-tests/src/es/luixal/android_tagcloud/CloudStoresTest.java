@@ -0,0 +1,135 @@
+package es.luixal.android_tagcloud;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+public class CloudStoresTest {
+
+	private static final String[] FORMATS = {
+		"http://example.com/search?q=%s", "http://example.com/tags/%s.html", "http://example.com/"
+	};
+
+	private static final Cloud.Case[] CASES = { Cloud.Case.LOWER, Cloud.Case.UPPER, Cloud.Case.CAPITALIZATION };
+
+	/**
+	 * @return The name, score, link and date of the tags, and their weight if they are output tags
+	 */
+	private static List<String> describe(List<Tag> tags, boolean weights) {
+		List<String> result = new ArrayList<String>();
+		for (Tag tag : tags) {
+			result.add(describe(tag) + (weights ? " " + tag.getWeight() : ""));
+		}
+		return result;
+	}
+
+	private static String describe(Tag tag) {
+		return (tag == null) ? null : tag.getName() + " " + tag.getScore() + " " + tag.getLink() + " " + date(tag);
+	}
+
+	/**
+	 * @return The date of a tag, "now" for the tags dated when added to each cloud
+	 */
+	static String date(Tag tag) {
+		return (tag.getDate().getTime() < 1000000000L) ? tag.getDate().toString() : "now";
+	}
+
+	private static String word(Random random) {
+		String[] stems = { "tag", "Tag", "TAG", "café", "Café", "cloud" };
+		return stems[random.nextInt(stems.length)] + random.nextInt(100);
+	}
+
+	private static Cloud[] clouds() {
+		return new Cloud[] {
+			new Cloud(new HashMap<String, Tag>()),
+			new Cloud(new ColumnarTagStore(new TermDictionary())),
+			new Cloud(new OffHeapTagStore())
+		};
+	}
+
+	public void testSameOperationsOnEveryStore() {
+		for (long seed=0; seed<20; seed++) {
+			Random random = new Random(seed);
+			Cloud[] clouds = clouds();
+			for (Cloud cloud : clouds) {
+				cloud.getEstimatedBytes();
+			}
+			for (int op=0; op<2000; op++) {
+				int kind = random.nextInt(100);
+				String name = word(random);
+				if (kind < 40) {
+					Date date = new Date(1000L * random.nextInt(1000));
+					double score = 1 + random.nextInt(20);
+					for (Cloud cloud : clouds) {
+						cloud.addTag(new Tag(name, null, score, date));
+					}
+				} else if (kind < 50) {
+					String text = name + " " + word(random) + " " + word(random);
+					String format = FORMATS[random.nextInt(FORMATS.length)];
+					for (Cloud cloud : clouds) {
+						cloud.addText(text, format);
+					}
+				} else if (kind < 65) {
+					for (Cloud cloud : clouds) {
+						cloud.removeTag(name);
+					}
+				} else if (kind < 80) {
+					String expected = describe(clouds[0].getTag(name));
+					for (int i=1; i<clouds.length; i++) {
+						assertEquals("getTag " + seed + " " + op, expected, describe(clouds[i].getTag(name)));
+					}
+				} else if (kind < 90) {
+					List<String> expected = describe(clouds[0].tags(), true);
+					for (int i=1; i<clouds.length; i++) {
+						assertEquals("tags " + seed + " " + op, expected, describe(clouds[i].tags(), true));
+					}
+				} else if (kind < 95) {
+					Cloud.Case tagCase = CASES[random.nextInt(CASES.length)];
+					for (Cloud cloud : clouds) {
+						cloud.setTagCase(tagCase);
+					}
+				} else {
+					String format = FORMATS[random.nextInt(FORMATS.length)];
+					for (Cloud cloud : clouds) {
+						cloud.setDefaultLink(format);
+						cloud.addTag(name);
+					}
+				}
+			}
+
+			// the case adjusted by tags() and getTag() is kept by every store
+			List<String> expected = describe(clouds[0].allTags(new Tag.NameComparatorAsc()), false);
+			for (int i=1; i<clouds.length; i++) {
+				assertEquals("allTags " + seed + " " + i, expected, describe(clouds[i].allTags(new Tag.NameComparatorAsc()), false));
+			}
+
+			for (Cloud cloud : clouds) {
+				for (Tag tag : cloud.allTags()) {
+					cloud.removeTag(tag);
+				}
+				assertEquals("size " + seed, 0, cloud.size());
+				assertEquals("bytes " + seed, 0, cloud.getEstimatedBytes());
+				cloud.close();
+			}
+		}
+	}
+
+	public void testChangesOtherThanCaseAreNotStored() {
+		for (Cloud cloud : clouds()) {
+			cloud.setTagCase(Cloud.Case.UPPER);
+			cloud.addTag(new Tag("java", 2.0));
+			Tag tag = cloud.getTag("java");
+			assertEquals("case", "JAVA", tag.getName());
+			tag.setScore(5.0);
+			boolean copies = ! (cloud.getCloud() instanceof HashMap);
+			assertEquals("score", copies ? 2.0 : 5.0, cloud.getTag("java").getScore(), 0.0);
+			assertEquals("stored case", "JAVA", cloud.allTags().get(0).getName());
+			cloud.close();
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package es.luixal.android_tagcloud;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ColumnarTagStoreTest {
+
+	private static Object[] serialize(Object... objects) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		for (Object object : objects) {
+			out.writeObject(object);
+		}
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		Object[] read = new Object[objects.length];
+		for (int i=0; i<read.length; i++) {
+			read[i] = in.readObject();
+		}
+		return read;
+	}
+
+	public void testDeserializedStoresDontGrowTheDefaultDictionary() throws Exception {
+		ColumnarTagStore first = new ColumnarTagStore(TermDictionary.getDefault());
+		ColumnarTagStore second = new ColumnarTagStore(TermDictionary.getDefault());
+		first.put("alpha", new Tag("alpha", 2.0));
+		second.put("beta", new Tag("beta", 3.0));
+		int defaultSize = TermDictionary.getDefault().size();
+
+		Object[] read = serialize(first, second);
+		ColumnarTagStore firstRead = (ColumnarTagStore) read[0];
+		ColumnarTagStore secondRead = (ColumnarTagStore) read[1];
+
+		assertTrue("new dictionary", firstRead.getDictionary() != TermDictionary.getDefault());
+		assertTrue("shared within the stream", firstRead.getDictionary() == secondRead.getDictionary());
+		assertEquals("default dictionary", defaultSize, TermDictionary.getDefault().size());
+		assertEquals("terms", 2, firstRead.getDictionary().size());
+		assertEquals("score", 2.0, firstRead.get("alpha").getScore(), 0.0);
+		assertEquals("score", 3.0, secondRead.get("beta").getScore(), 0.0);
+
+		// each stream gets its own dictionary
+		ColumnarTagStore again = (ColumnarTagStore) serialize(first)[0];
+		assertTrue("other stream", again.getDictionary() != firstRead.getDictionary());
+	}
+
+	public void testStoresOfOtherDictionariesStaySeparate() throws Exception {
+		ColumnarTagStore first = new ColumnarTagStore(new TermDictionary());
+		ColumnarTagStore second = new ColumnarTagStore(new TermDictionary());
+		first.put("alpha", new Tag("alpha"));
+		second.put("beta", new Tag("beta"));
+
+		Object[] read = serialize(first, second);
+		assertTrue("separate dictionaries",
+				((ColumnarTagStore) read[0]).getDictionary() != ((ColumnarTagStore) read[1]).getDictionary());
+	}
+
+	public void testCloudRoundTrip() throws Exception {
+		Cloud cloud = new Cloud(new ColumnarTagStore(new TermDictionary()));
+		cloud.setDefaultLink("http://example.com/%s");
+		cloud.addText("one two two three three three");
+		Cloud read = (Cloud) serialize(cloud)[0];
+
+		assertTrue("columnar", read.getCloud() instanceof ColumnarTagStore);
+		Map<String, Tag> expected = new HashMap<String, Tag>(cloud.getCloud());
+		Map<String, Tag> actual = new HashMap<String, Tag>(read.getCloud());
+		assertEquals("keys", expected.keySet(), actual.keySet());
+		for (String key : expected.keySet()) {
+			assertEquals(key, expected.get(key).getScore(), actual.get(key).getScore(), 0.0);
+			assertEquals(key, expected.get(key).getLink(), actual.get(key).getLink());
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package es.luixal.android_tagcloud;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+public class OffHeapTagStoreTest {
+
+	private static final String[] FORMATS = {
+		"http://example.com/search?q=%s", "http://example.com/tags/%s.html", "http://example.com/"
+	};
+
+	/**
+	 * @return The name, score, weight, link and date of the tags, which Tag.equals() doesn't compare
+	 */
+	private static List<String> describe(List<Tag> tags) {
+		List<String> result = new ArrayList<String>();
+		for (Tag tag : tags) {
+			result.add(tag.getName() + " " + tag.getScore() + " " + tag.getWeight()
+					+ " " + tag.getLink() + " " + CloudStoresTest.date(tag));
+		}
+		return result;
+	}
+
+	private static String word(Random random) {
+		// a few multi-byte names, and names differing only by case
+		String[] stems = { "tag", "Tag", "año", "日本", "cloud" };
+		return stems[random.nextInt(stems.length)] + random.nextInt(200);
+	}
+
+	public void testSameTagsAsHashMap() {
+		Random random = new Random(1);
+		OffHeapTagStore store = new OffHeapTagStore(4);
+		Cloud expected = new Cloud(new HashMap<String, Tag>());
+		Cloud actual = new Cloud(store);
+		// tags() adjusts the case of the tags of a HashMap in place, and puts the
+		// adjusted copies back in the store (see also CloudStoresTest)
+		for (int op=0; op<20000; op++) {
+			int kind = random.nextInt(100);
+			if (kind < 50) {
+				String link = random.nextBoolean() ? null : "http://example.com/" + random.nextInt(10);
+				Date date = new Date(1000L * random.nextInt(1000));
+				Tag tag = new Tag(word(random), link, 1 + random.nextInt(20), date);
+				expected.addTag(new Tag(tag));
+				actual.addTag(new Tag(tag));
+			} else if (kind < 65) {
+				StringBuilder text = new StringBuilder();
+				for (int i=0; i<5; i++) {
+					text.append(word(random)).append(' ');
+				}
+				String format = FORMATS[random.nextInt(FORMATS.length)];
+				expected.addText(text.toString(), format);
+				actual.addText(text.toString(), format);
+			} else if (kind < 95) {
+				String name = word(random);
+				expected.removeTag(name);
+				actual.removeTag(name);
+			} else if (kind < 97) {
+				// not CASE_SENSITIVE, which changes the keys of the tags added after it
+				Cloud.Case[] cases = { Cloud.Case.LOWER, Cloud.Case.UPPER, Cloud.Case.CAPITALIZATION };
+				Cloud.Case tagCase = cases[random.nextInt(cases.length)];
+				expected.setTagCase(tagCase);
+				actual.setTagCase(tagCase);
+			} else {
+				String format = FORMATS[random.nextInt(FORMATS.length)];
+				expected.setDefaultLink(format);
+				actual.setDefaultLink(format);
+				String name = word(random);
+				expected.addTag(name);
+				actual.addTag(name);
+			}
+			if (op % 1000 == 0) {
+				assertEquals("tags after " + op, describe(expected.tags()), describe(actual.tags()));
+			}
+		}
+		assertEquals("size", expected.size(), actual.size());
+		assertEquals("tags", describe(expected.tags()), describe(actual.tags()));
+		assertTrue("templates by format", store.getTemplateCount() <= FORMATS.length);
+		actual.close();
+	}
+
+	public void testTemplatesInternedByFormat() {
+		OffHeapTagStore store = new OffHeapTagStore();
+		Cloud cloud = new Cloud(store);
+		for (int i=0; i<100; i++) {
+			cloud.addText("one two three", "http://example.com/%s");
+			cloud.setDefaultLink("http://example.com/" + (i % 2) + "/%s");
+			cloud.addTag("four");
+		}
+		assertEquals("templates", 3, store.getTemplateCount());
+		assertEquals("link", "http://example.com/one", cloud.getTag("one").getLink());
+		assertEquals("link", "http://example.com/1/four", cloud.getTag("four").getLink());
+		cloud.close();
+	}
+
+	public void testCapacityLimit() {
+		assertThrows("capacity", IllegalArgumentException.class, new Runnable() {
+			public void run() {
+				new OffHeapTagStore(OffHeapTagStore.MAX_CAPACITY + 1);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,79 @@
+package es.luixal.android_tagcloud;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RenderPlanTest {
+
+	private static Tag tag(String name, double weight) {
+		Tag tag = new Tag(name);
+		tag.setWeight(weight);
+		return tag;
+	}
+
+	private static List<Tag> tags(Tag... tags) {
+		List<Tag> list = new ArrayList<Tag>();
+		for (Tag tag : tags) {
+			list.add(tag);
+		}
+		return list;
+	}
+
+	public void testRangesAndSizes() {
+		Tag[] tags = { tag("java", 12), tag("été", 20.4), tag("😀", 31.6) };
+		RenderPlan plan = RenderPlan.build(tags(tags));
+
+		assertEquals("text", "java été 😀 ", plan.getText());
+		assertEquals("count", 3, plan.getCount());
+		int[] starts = { 0, 5, 9 };
+		int[] ends = { 4, 8, 11 };
+		for (int i=0; i<plan.getCount(); i++) {
+			assertEquals("start " + i, starts[i], plan.getStart(i));
+			assertEquals("end " + i, ends[i], plan.getEnd(i));
+		}
+		// sizes are the weights rounded as the cloud rounds them
+		assertEquals("size 0", 12, plan.getSize(0));
+		assertEquals("size 1", tags[1].getWeightInt(), plan.getSize(1));
+		assertEquals("size 2", tags[2].getWeightInt(), plan.getSize(2));
+		assertEquals("name", "été", plan.getText().substring(plan.getStart(1), plan.getEnd(1)));
+	}
+
+	public void testEmpty() {
+		RenderPlan plan = RenderPlan.build(new ArrayList<Tag>());
+		assertEquals("text", "", plan.getText());
+		assertEquals("count", 0, plan.getCount());
+		assertEquals("equal", RenderPlan.build(new ArrayList<Tag>()), plan);
+	}
+
+	public void testEquals() {
+		RenderPlan plan = RenderPlan.build(tags(tag("a", 10), tag("b", 20)));
+		RenderPlan same = RenderPlan.build(tags(tag("a", 10), tag("b", 20)));
+		assertEquals("same plan", plan, same);
+		assertEquals("same hash", plan.hashCode(), same.hashCode());
+		assertFalse("null", plan.equals(null));
+		assertFalse("other class", plan.equals(plan.getText()));
+
+		assertFalse("other size", plan.equals(RenderPlan.build(tags(tag("a", 10), tag("b", 21)))));
+		assertFalse("other order", plan.equals(RenderPlan.build(tags(tag("b", 20), tag("a", 10)))));
+		// same text, other ranges
+		assertFalse("other ranges", RenderPlan.build(tags(tag("a b", 10))).equals(
+				RenderPlan.build(tags(tag("a", 10), tag("b", 10)))));
+	}
+
+	public void testBuildFromCloud() {
+		Cloud cloud = new Cloud();
+		cloud.addText("one two two three three three");
+
+		List<Tag> output = cloud.getOutputTags();
+		RenderPlan plan = RenderPlan.build(cloud);
+		assertEquals("count", output.size(), plan.getCount());
+		for (int i=0; i<plan.getCount(); i++) {
+			assertEquals("name " + i, output.get(i).getName(), plan.getText().substring(plan.getStart(i), plan.getEnd(i)));
+			assertEquals("size " + i, output.get(i).getWeightInt(), plan.getSize(i));
+		}
+		assertEquals("same plan", RenderPlan.build(output), plan);
+	}
+
+}
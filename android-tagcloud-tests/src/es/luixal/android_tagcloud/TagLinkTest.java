@@ -0,0 +1,78 @@
+package es.luixal.android_tagcloud;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.IllegalFormatException;
+
+public class TagLinkTest {
+
+	public void testTemplateExpansion() {
+		Tag tag = new Tag("java");
+		tag.setLink(new LinkTemplate("http://example.com/%s/"), "java");
+		assertEquals("link", "http://example.com/java/", tag.getLink());
+		// the template is kept, for the stores and the other readers
+		assertNotNull("template", tag.getLinkTemplate());
+		assertEquals("link again", "http://example.com/java/", tag.getLink());
+
+		tag.setLink("http://example.com/");
+		assertNull("string link", tag.getLinkTemplate());
+		assertEquals("link", "http://example.com/", tag.getLink());
+
+		Tag formatted = new Tag("java");
+		formatted.setLink(new LinkTemplate("http://example.com/%10s"), "java");
+		assertEquals("String.format", String.format("http://example.com/%10s", "java"), formatted.getLink());
+	}
+
+	public void testConcurrentExpansion() throws InterruptedException {
+		final LinkTemplate template = new LinkTemplate("http://example.com/search?q=%s");
+		for (int round=0; round<20; round++) {
+			final Tag[] tags = new Tag[5000];
+			for (int i=0; i<tags.length; i++) {
+				tags[i] = new Tag("tag" + i);
+				tags[i].setLink(template, tags[i].getName());
+			}
+			final String[][] links = new String[2][tags.length];
+			Thread[] readers = new Thread[2];
+			for (int r=0; r<readers.length; r++) {
+				final String[] read = links[r];
+				readers[r] = new Thread(new Runnable() {
+					public void run() {
+						for (int i=0; i<tags.length; i++) {
+							read[i] = tags[i].getLink();
+						}
+					}
+				});
+				readers[r].start();
+			}
+			for (Thread reader : readers) {
+				reader.join();
+			}
+			for (int r=0; r<readers.length; r++) {
+				for (int i=0; i<tags.length; i++) {
+					assertEquals("link " + i, "http://example.com/search?q=tag" + i, links[r][i]);
+				}
+			}
+		}
+	}
+
+	public void testInvalidFormatFailsWhenSet() {
+		assertThrows("template", IllegalFormatException.class, new Runnable() {
+			public void run() {
+				new LinkTemplate("http://example.com/%d");
+			}
+		});
+		final Cloud cloud = new Cloud();
+		cloud.setDefaultLink("http://example.com/%d");
+		assertThrows("addTag", IllegalFormatException.class, new Runnable() {
+			public void run() {
+				cloud.addTag("java");
+			}
+		});
+		assertThrows("addText", IllegalFormatException.class, new Runnable() {
+			public void run() {
+				cloud.addText("java android", "%d");
+			}
+		});
+	}
+
+}
@@ -0,0 +1,112 @@
+package es.luixal.android_tagcloud;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class TagSorterTest {
+
+	/** Pieces of names: cases, letters whose folds differ, Deseret letters (surrogate pairs) */
+	private static final String[] PIECES = {
+		"a", "A", "b", "B", "é", "É", "ß", "ı", "İ", "i", "σ", "ς", "Σ", "𐐀", "𐐨", "1", ""
+	};
+
+	private static final double[] SCORES = { 1.0, 2.0, 2.5, 3.0, 0.0, -0.0 };
+
+	private static final List<Comparator<Tag>> COMPARATORS = new ArrayList<Comparator<Tag>>();
+	static {
+		COMPARATORS.add(new Tag.NameComparatorAsc());
+		COMPARATORS.add(new Tag.NameComparatorDesc());
+		COMPARATORS.add(new Tag.ScoreComparatorAsc());
+		COMPARATORS.add(new Tag.ScoreComparatorDesc());
+		COMPARATORS.add(new Tag.CollatedNameComparatorAsc(Locale.ENGLISH));
+		// not known by TagSorter
+		COMPARATORS.add(new Comparator<Tag>() {
+			public int compare(Tag t1, Tag t2) {
+				return t1.getName().length() - t2.getName().length();
+			}
+		});
+	}
+
+	private static List<Tag> tags(Random random, int n, boolean surrogates) {
+		List<Tag> tags = new ArrayList<Tag>();
+		for (int i=0; i<n; i++) {
+			StringBuilder name = new StringBuilder();
+			int length = 1 + random.nextInt(4);
+			for (int j=0; j<length; j++) {
+				String piece = PIECES[random.nextInt(PIECES.length)];
+				if (surrogates || piece.length() == 1) {
+					name.append(piece);
+				}
+			}
+			tags.add(new Tag(name.toString(), null, SCORES[random.nextInt(SCORES.length)], null));
+		}
+		return tags;
+	}
+
+	private static void assertSameOrder(String message, List<Tag> expected, List<Tag> actual) {
+		assertEquals(message + " size", expected.size(), actual.size());
+		for (int i=0; i<expected.size(); i++) {
+			if (expected.get(i) != actual.get(i))
+				fail(message + " at " + i + ": expected " + expected.get(i).getName() + " but was " + actual.get(i).getName());
+		}
+	}
+
+	public void testSameOrderAsCollectionsSort() {
+		Random random = new Random(1);
+		for (int round=0; round<2000; round++) {
+			List<Tag> tags = tags(random, random.nextInt(80), random.nextBoolean());
+			for (int c=0; c<COMPARATORS.size(); c++) {
+				List<Tag> expected = new ArrayList<Tag>(tags);
+				Collections.sort(expected, COMPARATORS.get(c));
+				List<Tag> actual = new ArrayList<Tag>(tags);
+				TagSorter.sort(actual, COMPARATORS.get(c));
+				assertSameOrder("round " + round + " comparator " + c, expected, actual);
+			}
+		}
+	}
+
+	public void testSurrogatesInLargeLists() {
+		// names equal but for the case of a Deseret letter, in lists above the size of the keyed sort
+		Random random = new Random(2);
+		for (int round=0; round<200; round++) {
+			List<Tag> tags = new ArrayList<Tag>();
+			for (int i=0; i<40; i++) {
+				String letter = random.nextBoolean() ? "𐐀" : "𐐨";
+				tags.add(new Tag(letter + PIECES[random.nextInt(4)], null, 1 + random.nextInt(2), null));
+			}
+			for (int c=0; c<4; c++) {
+				List<Tag> expected = new ArrayList<Tag>(tags);
+				Collections.sort(expected, COMPARATORS.get(c));
+				List<Tag> actual = new ArrayList<Tag>(tags);
+				TagSorter.sort(actual, COMPARATORS.get(c));
+				assertSameOrder("round " + round + " comparator " + c, expected, actual);
+			}
+		}
+	}
+
+	public void testSelectTopScores() {
+		Random random = new Random(3);
+		for (int round=0; round<2000; round++) {
+			List<Tag> tags = tags(random, random.nextInt(80), random.nextBoolean());
+			int k = random.nextInt(90) - 5;
+			List<Tag> expected = new ArrayList<Tag>(tags);
+			Collections.sort(expected, new Tag.ScoreComparatorDesc());
+			expected = expected.subList(0, Math.max(0, Math.min(k, expected.size())));
+
+			Tag[] array = tags.toArray(new Tag[tags.size()]);
+			int selected = TagSorter.selectTopScores(array, array.length, k);
+			List<Tag> actual = new ArrayList<Tag>();
+			for (int i=0; i<selected; i++) {
+				actual.add(array[i]);
+			}
+			assertSameOrder("round " + round + " k " + k, expected, actual);
+		}
+	}
+
+}
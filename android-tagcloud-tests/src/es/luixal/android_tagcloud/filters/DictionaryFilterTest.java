@@ -0,0 +1,82 @@
+package es.luixal.android_tagcloud.filters;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.BitSet;
+import java.util.Iterator;
+
+import es.luixal.android_tagcloud.Tag;
+
+public class DictionaryFilterTest {
+
+	private DictionaryFilter bloomFilter(String... terms) {
+		DictionaryFilter filter = new DictionaryFilter(terms);
+		filter.setBloomFalsePositiveRate(0.01);
+		return filter;
+	}
+
+	public void testSameSizeEditsRebuildTheBloomFilter() {
+		DictionaryFilter filter = bloomFilter("alpha", "beta");
+		assertTrue("gamma accepted", filter.accept(new Tag("gamma")));
+
+		// same number of terms after the edit
+		filter.getDictionary().remove("alpha");
+		filter.getDictionary().add("gamma");
+
+		assertFalse("gamma rejected", filter.accept(new Tag("gamma")));
+		assertTrue("alpha accepted", filter.accept(new Tag("alpha")));
+		assertFalse("beta rejected", filter.accept(new Tag("beta")));
+	}
+
+	public void testIteratorRemoveRebuildsTheBloomFilter() {
+		DictionaryFilter filter = bloomFilter("alpha");
+		assertFalse("alpha rejected", filter.accept(new Tag("alpha")));
+
+		Iterator<String> it = filter.getDictionary().iterator();
+		it.next();
+		it.remove();
+		filter.getDictionary().add("beta");
+
+		assertTrue("alpha accepted", filter.accept(new Tag("alpha")));
+		assertFalse("beta rejected", filter.accept(new Tag("beta")));
+	}
+
+	public void testNoFalseNegatives() {
+		String[] terms = new String[10000];
+		for (int i=0; i<terms.length; i++) {
+			terms[i] = "term" + i;
+		}
+		DictionaryFilter filter = bloomFilter(terms);
+		for (int i=0; i<terms.length; i++) {
+			assertFalse(terms[i] + " rejected", filter.accept(new Tag(terms[i])));
+		}
+		assertEquals("hits", terms.length, filter.getBloomHits());
+
+		int accepted = 0;
+		for (int i=0; i<terms.length; i++) {
+			if (filter.accept(new Tag("other" + i)))
+				accepted++;
+		}
+		assertEquals("other names accepted", terms.length, accepted);
+		assertTrue("false positive rate", filter.getBloomFalsePositives() < terms.length / 20);
+	}
+
+	public void testBatchMatchesAccept() {
+		DictionaryFilter filter = bloomFilter("b", "d");
+		Tag[] tags = { new Tag("a"), new Tag("b"), null, new Tag("d"), new Tag("e") };
+
+		BitSet bits = new BitSet();
+		bits.set(0, 8);
+		filter.acceptAll(tags, tags.length, bits);
+		for (int i=0; i<tags.length; i++) {
+			assertEquals("bit " + i, filter.accept(tags[i]), bits.get(i));
+		}
+
+		int n = filter.filter(tags, tags.length);
+		assertEquals("accepted", 3, n);
+		assertEquals("first", "a", tags[0].getName());
+		assertNull("null tag kept", tags[1]);
+		assertEquals("last", "e", tags[2].getName());
+	}
+
+}
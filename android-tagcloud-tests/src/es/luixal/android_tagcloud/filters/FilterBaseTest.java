@@ -0,0 +1,98 @@
+package es.luixal.android_tagcloud.filters;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import es.luixal.android_tagcloud.Cloud;
+import es.luixal.android_tagcloud.Tag;
+
+public class FilterBaseTest {
+
+	/** Filter of tags, so that arrays of filters can be created without unchecked warnings */
+	interface TestFilter extends Filter<Tag> {
+	}
+
+	/** Filter implementing only the Filter interface, as third-party filters do */
+	static class ShortNameFilter implements TestFilter {
+
+		private static final long serialVersionUID = 1L;
+
+		public boolean accept(Tag tag) {
+			return tag.getName().length() <= 3;
+		}
+
+		public void filter(Collection<Tag> coll) {
+			Iterator<Tag> it = coll.iterator();
+			while (it.hasNext()) {
+				if (! accept(it.next())) {
+					it.remove();
+				}
+			}
+		}
+
+	}
+
+	/** Batch filter */
+	static class LongNameFilter extends MinLengthFilter implements TestFilter {
+
+		private static final long serialVersionUID = 1L;
+
+		LongNameFilter(int minLength) {
+			super(minLength);
+		}
+
+	}
+
+	private Tag[] tags(String... names) {
+		Tag[] tags = new Tag[names.length];
+		for (int i=0; i<names.length; i++) {
+			tags[i] = new Tag(names[i]);
+		}
+		return tags;
+	}
+
+	public void testPlainFilterFallsBackToAccept() {
+		Tag[] tags = tags("one", "three", "two", "four");
+		BitSet bits = new BitSet();
+		FilterBase.acceptAll(new ShortNameFilter(), tags, tags.length, bits);
+		assertEquals("accepted", "{0, 2}", bits.toString());
+
+		assertEquals("count", 2, FilterBase.filter(new ShortNameFilter(), tags, tags.length));
+		assertEquals("first", "one", tags[0].getName());
+		assertEquals("second", "two", tags[1].getName());
+	}
+
+	public void testCloudUsesPlainFilters() {
+		Cloud cloud = new Cloud();
+		cloud.addInputFilter(new NotFilter<Tag>(new ShortNameFilter()));
+		cloud.addOutputFilter(new OrFilter<Tag>(new TestFilter[] { new ShortNameFilter(), new LongNameFilter(5) }));
+		cloud.addText("one three four three seventeen seven");
+
+		List<Tag> tags = cloud.tags();
+		assertEquals("tags", 3, tags.size());
+		for (Tag tag : tags) {
+			assertTrue(tag.getName(), tag.getName().length() >= 5);
+		}
+	}
+
+	public void testCompositeFiltersOnShorterArrays() {
+		NotFilter<Tag> not = new NotFilter<Tag>(new ShortNameFilter());
+		OrFilter<Tag> or = new OrFilter<Tag>(new TestFilter[] { new ShortNameFilter(), new LongNameFilter(5) });
+		// bits of a longer array don't leak into the next calls
+		int[] expected = { 3, 2, 2 };
+		for (int round=0; round<3; round++) {
+			Tag[] tags = tags("one", "three", "four", "two", "seventeen");
+			assertEquals("not", expected[round], not.filter(tags, 5 - round));
+
+			tags = tags("one", "three", "four", "two", "seventeen");
+			int n = or.filter(tags, 5);
+			assertEquals("or", 4, n);
+			assertEquals("or order", "seventeen", tags[3].getName());
+		}
+	}
+
+}
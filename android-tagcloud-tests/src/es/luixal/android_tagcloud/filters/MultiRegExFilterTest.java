@@ -0,0 +1,113 @@
+package es.luixal.android_tagcloud.filters;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import es.luixal.android_tagcloud.Tag;
+
+public class MultiRegExFilterTest {
+
+	/** Expressions combined into the alternation, or matched on their own */
+	private static final String[] REG_EXS = {
+		"a+", "b.*", ".*1", "(ab)+", "[ab]{2}", "a|b1", "(?i)A.*", "(a)(b)?a",
+		// back references, matched on their own
+		"(a)\\1.*", "(\\w)\\1", "(?<x>.)\\k<x>.*", "((a)|b)\\2b",
+		// escaped backslashes, combined
+		"\\\\1.*", "a\\\\",
+		// named groups, duplicated in the alternation
+		"(?<n>a)b*", "(?<n>b)a*",
+		"", ".*",
+	};
+
+	private static String name(Random random) {
+		String alphabet = "aAb1\\";
+		char[] chars = new char[random.nextInt(6)];
+		for (int i=0; i<chars.length; i++) {
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		return new String(chars);
+	}
+
+	private static String[] regExs(Random random) {
+		String[] regExs = new String[1 + random.nextInt(6)];
+		for (int i=0; i<regExs.length; i++) {
+			regExs[i] = REG_EXS[random.nextInt(REG_EXS.length)];
+		}
+		return regExs;
+	}
+
+	public void testSameTagsAsAnOrFilterOfRegExFilters() {
+		Random random = new Random(1);
+		for (int round=0; round<2000; round++) {
+			String[] regExs = regExs(random);
+			RegExFilter[] filters = new RegExFilter[regExs.length];
+			for (int i=0; i<regExs.length; i++) {
+				filters[i] = new RegExFilter(regExs[i]);
+			}
+			OrFilter<Tag> or = new OrFilter<Tag>(filters);
+			MultiRegExFilter multi = new MultiRegExFilter(regExs);
+
+			Tag[] tags = new Tag[20];
+			Tag[] copy = new Tag[tags.length];
+			for (int t=0; t<tags.length; t++) {
+				Tag tag = new Tag(name(random));
+				String context = Arrays.toString(regExs) + " " + tag.getName();
+				tags[t] = tag;
+				copy[t] = tag;
+
+				assertEquals(context, or.accept(tag), multi.accept(tag));
+				int expected = -1;
+				for (int i=0; i<filters.length && expected < 0; i++) {
+					if (filters[i].accept(tag)) {
+						expected = i;
+					}
+				}
+				assertEquals(context + " index", expected, multi.indexOf(tag));
+				assertEquals(context + " expression", expected < 0 ? null : regExs[expected], multi.getMatchingRegEx(tag));
+			}
+
+			int n = FilterBase.filter(or, tags, tags.length);
+			assertEquals("batch " + Arrays.toString(regExs), n, FilterBase.filter(multi, copy, copy.length));
+			assertEquals("batch tags " + Arrays.toString(regExs), Arrays.asList(tags).subList(0, n), Arrays.asList(copy).subList(0, n));
+		}
+	}
+
+	public void testBackReferencesFallBack() {
+		// the group numbers of the second expression would change in the alternation
+		MultiRegExFilter filter = new MultiRegExFilter("(x)y", "(a)\\1b");
+		assertEquals("back reference", 1, filter.indexOf(new Tag("aab")));
+		assertEquals("not matched", -1, filter.indexOf(new Tag("xab")));
+		assertEquals("combined", 0, filter.indexOf(new Tag("xy")));
+
+		// expressions matched on their own keep their priority
+		filter = new MultiRegExFilter("(a)\\1.*", "a.*");
+		assertEquals("first expression", 0, filter.indexOf(new Tag("aab")));
+		assertEquals("second expression", 1, filter.indexOf(new Tag("ab")));
+
+		// an escaped backslash before a digit is not a back reference
+		filter = new MultiRegExFilter("x", "\\\\1");
+		assertEquals("escaped backslash", 1, filter.indexOf(new Tag("\\1")));
+
+		// duplicated group names
+		filter = new MultiRegExFilter("(?<n>a)b", "(?<n>b)a");
+		assertEquals("first named group", 0, filter.indexOf(new Tag("ab")));
+		assertEquals("second named group", 1, filter.indexOf(new Tag("ba")));
+	}
+
+	public void testSetRegExsRecompiles() {
+		List<String> regExs = new ArrayList<String>();
+		regExs.add("a.*");
+		MultiRegExFilter filter = new MultiRegExFilter(regExs);
+		assertTrue("a accepted", filter.accept(new Tag("abc")));
+		filter.setRegExs("b.*", "(c)\\1");
+		assertFalse("a rejected", filter.accept(new Tag("abc")));
+		assertTrue("b accepted", filter.accept(new Tag("bcd")));
+		assertTrue("cc accepted", filter.accept(new Tag("cc")));
+		assertFalse("null name", filter.accept(new Tag()));
+	}
+
+}
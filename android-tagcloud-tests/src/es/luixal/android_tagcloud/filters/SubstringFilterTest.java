@@ -0,0 +1,123 @@
+package es.luixal.android_tagcloud.filters;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import es.luixal.android_tagcloud.Tag;
+
+public class SubstringFilterTest {
+
+	private static String word(Random random, int maxLength) {
+		// letters of both cases, a digit and separators
+		String alphabet = "aAbB1 -";
+		char[] chars = new char[random.nextInt(maxLength + 1)];
+		for (int i=0; i<chars.length; i++) {
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		return new String(chars);
+	}
+
+	private static String lower(String s, boolean ignoreCase) {
+		if (! ignoreCase)
+			return s;
+		char[] chars = s.toCharArray();
+		for (int i=0; i<chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return True if the term occurs in the name, not preceded nor followed by a letter or a digit
+	 */
+	private static boolean occursAsWord(String name, String term) {
+		for (int k = name.indexOf(term); k >= 0; k = name.indexOf(term, k + 1)) {
+			int end = k + term.length();
+			if ((k == 0 || ! Character.isLetterOrDigit(name.charAt(k - 1)))
+					&& (end == name.length() || ! Character.isLetterOrDigit(name.charAt(end)))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return True if a term is found in the name, searched with String methods
+	 */
+	private static boolean found(SubstringFilter.Mode mode, String[] terms, String name, boolean ignoreCase) {
+		name = lower(name, ignoreCase);
+		for (String term : terms) {
+			if (term.length() == 0)
+				continue;
+			term = lower(term, ignoreCase);
+			boolean found;
+			switch (mode) {
+			case PREFIX:
+				found = name.startsWith(term);
+				break;
+			case SUFFIX:
+				found = name.endsWith(term);
+				break;
+			case WHOLE_WORD:
+				found = occursAsWord(name, term);
+				break;
+			default:
+				found = name.contains(term);
+			}
+			if (found)
+				return true;
+		}
+		return false;
+	}
+
+	public void testSameTagsAsStringSearches() {
+		Random random = new Random(1);
+		for (int round=0; round<3000; round++) {
+			String[] terms = new String[1 + random.nextInt(5)];
+			for (int i=0; i<terms.length; i++) {
+				terms[i] = word(random, 3);
+			}
+			for (SubstringFilter.Mode mode : SubstringFilter.Mode.values()) {
+				for (boolean ignoreCase : new boolean[] { false, true }) {
+					SubstringFilter filter = new SubstringFilter(mode, terms);
+					filter.setIgnoreCase(ignoreCase);
+					for (int t=0; t<10; t++) {
+						String name = word(random, 8);
+						String context = mode + (ignoreCase ? " ignoring case " : " ") + Arrays.toString(terms) + " '" + name + "'";
+						assertEquals(context, ! found(mode, terms, name, ignoreCase), filter.accept(new Tag(name)));
+					}
+				}
+			}
+		}
+	}
+
+	public void testWordBoundaries() {
+		SubstringFilter filter = new SubstringFilter(SubstringFilter.Mode.WHOLE_WORD, new String[] { "java", "c" });
+		assertFalse("whole name", filter.accept(new Tag("java")));
+		assertFalse("after a space", filter.accept(new Tag("learn java")));
+		assertFalse("before a hyphen", filter.accept(new Tag("java-based")));
+		assertFalse("between punctuation", filter.accept(new Tag("(c)")));
+		assertTrue("in a word", filter.accept(new Tag("javascript")));
+		assertTrue("after a digit", filter.accept(new Tag("2c")));
+		assertTrue("after an accented letter", filter.accept(new Tag("éjava")));
+		assertFalse("second occurrence", filter.accept(new Tag("javac java")));
+	}
+
+	public void testUpdateRebuildsTheAutomaton() {
+		SubstringFilter filter = new SubstringFilter(SubstringFilter.Mode.CONTAINS, new String[] { "foo" });
+		assertFalse("foo filtered", filter.accept(new Tag("food")));
+		filter.update(new String[] { "bar", "" });
+		assertTrue("foo accepted", filter.accept(new Tag("food")));
+		assertFalse("bar filtered", filter.accept(new Tag("crowbar")));
+		assertTrue("empty term ignored", filter.accept(new Tag("baz")));
+
+		filter.setMode(SubstringFilter.Mode.PREFIX);
+		assertTrue("not a prefix", filter.accept(new Tag("crowbar")));
+		filter.setIgnoreCase(true);
+		assertFalse("prefix ignoring case", filter.accept(new Tag("BARN")));
+		assertTrue("null name", filter.accept(new Tag()));
+	}
+
+}
@@ -0,0 +1,325 @@
+package es.luixal.android_tagcloud.flow;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import es.luixal.android_tagcloud.Cloud;
+import es.luixal.android_tagcloud.Tag;
+
+public class CloudSubscriberTest {
+
+	/**
+	 * Subscription recording the requests of the subscriber.
+	 */
+	private static class RecordingSubscription implements Flow.Subscription {
+
+		long requested = 0;
+
+		boolean cancelled = false;
+
+		public synchronized void request(long n) {
+			requested += n;
+		}
+
+		public synchronized void cancel() {
+			cancelled = true;
+		}
+
+	}
+
+	/**
+	 * Subscriber of the snapshots, keeping the last one.
+	 */
+	private static class SnapshotCollector implements Flow.Subscriber<List<Tag>> {
+
+		final CountDownLatch ended = new CountDownLatch(1);
+
+		List<Tag> last = null;
+
+		int received = 0;
+
+		Throwable error = null;
+
+		public void onSubscribe(Flow.Subscription subscription) {
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		public synchronized void onNext(List<Tag> snapshot) {
+			last = snapshot;
+			received++;
+		}
+
+		public synchronized void onError(Throwable throwable) {
+			error = throwable;
+			ended.countDown();
+		}
+
+		public void onComplete() {
+			ended.countDown();
+		}
+
+		void await() throws InterruptedException {
+			assertTrue("snapshots ended", ended.await(10, TimeUnit.SECONDS));
+		}
+
+	}
+
+	private static CloudSubscriber subscriber(Cloud cloud, ManualScheduler scheduler) {
+		CloudSubscriber subscriber = new CloudSubscriber(cloud, scheduler);
+		subscriber.setMaxQueueDepth(8);
+		subscriber.setBatchSize(4);
+		subscriber.setMaxLatency(30);
+		subscriber.setSnapshotInterval(0);
+		return subscriber;
+	}
+
+	private static double score(Cloud cloud, String name) {
+		synchronized (cloud) {
+			Tag tag = cloud.getTag(name);
+			return tag == null ? 0 : tag.getScore();
+		}
+	}
+
+	public void testDemand() {
+		Cloud cloud = new Cloud();
+		ManualScheduler scheduler = new ManualScheduler();
+		CloudSubscriber subscriber = subscriber(cloud, scheduler);
+		RecordingSubscription subscription = new RecordingSubscription();
+		subscriber.onSubscribe(subscription);
+		assertEquals("first request", 8L, subscription.requested);
+
+		for (int i = 0; i < 30; i++) {
+			subscriber.onNext(new Tag("tag" + (i % 3), 1));
+			// a tag is requested again once its batch is added to the cloud
+			assertEquals("requested after " + (i + 1) + " tags", 8 + 4 * ((i + 1) / 4), subscription.requested);
+			assertEquals("demand after " + (i + 1) + " tags", subscription.requested - (i + 1), subscriber.getDemand());
+			assertEquals("queue depth after " + (i + 1) + " tags", (i + 1) % 4, subscriber.getQueueDepth());
+			assertTrue("requested and not added", subscriber.getDemand() + subscriber.getQueueDepth() <= subscriber.getMaxQueueDepth());
+		}
+		assertEquals("batches", 7L, subscriber.getBatches());
+		assertEquals("applied", 28L, subscriber.getApplied());
+		assertEquals("summed score", 10.0, score(cloud, "tag0"), 0.0);
+
+		subscriber.flush();
+		assertEquals("applied after flush", 30L, subscriber.getApplied());
+		assertEquals("requested after flush", 8L + 30, subscription.requested);
+		assertEquals("summed score after flush", 30.0, score(cloud, "tag0") + score(cloud, "tag1") + score(cloud, "tag2"), 0.0);
+		assertFalse("not cancelled", subscription.cancelled);
+	}
+
+	public void testLatencyFlush() {
+		Cloud cloud = new Cloud();
+		ManualScheduler scheduler = new ManualScheduler();
+		CloudSubscriber subscriber = subscriber(cloud, scheduler);
+		RecordingSubscription subscription = new RecordingSubscription();
+		subscriber.onSubscribe(subscription);
+
+		subscriber.onNext(new Tag("java", 2));
+		assertEquals("latency flush scheduled", 1, scheduler.getPending());
+		assertEquals("latency flush delay", 30L, scheduler.getNextDelay());
+		subscriber.onNext(new Tag("java", 3));
+		assertEquals("one latency flush per batch", 1, scheduler.getPending());
+		assertEquals("not added before the latency", 0.0, score(cloud, "java"), 0.0);
+
+		assertEquals("tasks run", 1, scheduler.runPending());
+		assertEquals("added after the latency", 5.0, score(cloud, "java"), 0.0);
+		assertEquals("batches", 1L, subscriber.getBatches());
+		assertEquals("requested again", 10L, subscription.requested);
+		assertEquals("batch latency recorded", 1L, subscriber.getBatchLatencies().getCount());
+
+		// a batch added by flush() cancels its latency flush
+		subscriber.onNext(new Tag("java", 1));
+		subscriber.flush();
+		assertEquals("latency flush cancelled", 0, scheduler.getPending());
+		assertEquals("flushed", 6.0, score(cloud, "java"), 0.0);
+
+		// a full batch too
+		for (int i = 0; i < 4; i++) {
+			subscriber.onNext(new Tag("kotlin", 1));
+		}
+		assertEquals("latency flush cancelled by a full batch", 0, scheduler.getPending());
+		assertEquals("full batch", 4.0, score(cloud, "kotlin"), 0.0);
+	}
+
+	public void testSnapshots() throws InterruptedException {
+		Cloud cloud = new Cloud();
+		ManualScheduler scheduler = new ManualScheduler();
+		CloudSubscriber subscriber = subscriber(cloud, scheduler);
+		SnapshotCollector collector = new SnapshotCollector();
+		subscriber.getSnapshots().subscribe(collector);
+		RecordingSubscription subscription = new RecordingSubscription();
+		subscriber.onSubscribe(subscription);
+
+		for (int i = 0; i < 4; i++) {
+			subscriber.onNext(new Tag("java", 1));
+		}
+		assertEquals("snapshot scheduled", 1, scheduler.getPending());
+		scheduler.runPending();
+		assertEquals("published", 1L, subscriber.getPublishedSnapshots());
+
+		subscriber.onNext(new Tag("kotlin", 2));
+		subscriber.close();
+		assertTrue("done", subscriber.isDone());
+		assertTrue("cancelled", subscription.cancelled);
+		assertEquals("last batch added", 2.0, score(cloud, "kotlin"), 0.0);
+		assertEquals("nothing left to run", 0, scheduler.getPending());
+		assertFalse("scheduler given to the subscriber not shut down", scheduler.isShutdown());
+
+		collector.await();
+		assertNull("completed", collector.error);
+		assertEquals("last snapshot published", 2L, subscriber.getPublishedSnapshots());
+		assertEquals("snapshots", 2, collector.received);
+		assertEquals("tags of the last snapshot", 2, collector.last.size());
+
+		// tags are ignored after close()
+		subscriber.onNext(new Tag("kotlin", 2));
+		subscriber.flush();
+		assertEquals("ignored after close", 2.0, score(cloud, "kotlin"), 0.0);
+		assertEquals("applied", 5L, subscriber.getApplied());
+	}
+
+	public void testError() throws InterruptedException {
+		Cloud cloud = new Cloud();
+		ManualScheduler scheduler = new ManualScheduler();
+		CloudSubscriber subscriber = subscriber(cloud, scheduler);
+		SnapshotCollector collector = new SnapshotCollector();
+		subscriber.getSnapshots().subscribe(collector);
+		RecordingSubscription subscription = new RecordingSubscription();
+		subscriber.onSubscribe(subscription);
+
+		subscriber.onNext(new Tag("java", 1));
+		IllegalStateException error = new IllegalStateException("producer");
+		subscriber.onError(error);
+		assertTrue("done", subscriber.isDone());
+		assertEquals("error", error, subscriber.getError());
+		assertEquals("batch added before the error", 1.0, score(cloud, "java"), 0.0);
+		assertEquals("latency flush cancelled", 0, scheduler.getPending());
+
+		collector.await();
+		assertEquals("snapshot error", error, collector.error);
+
+		subscriber.onComplete();
+		assertEquals("error kept", error, subscriber.getError());
+	}
+
+	public void testClosedCloud() throws InterruptedException {
+		Cloud cloud = new Cloud();
+		ManualScheduler scheduler = new ManualScheduler();
+		CloudSubscriber subscriber = subscriber(cloud, scheduler);
+		SnapshotCollector collector = new SnapshotCollector();
+		subscriber.getSnapshots().subscribe(collector);
+		RecordingSubscription subscription = new RecordingSubscription();
+		subscriber.onSubscribe(subscription);
+
+		cloud.close();
+		for (int i = 0; i < 4; i++) {
+			subscriber.onNext(new Tag("java", 1));
+		}
+		assertTrue("done", subscriber.isDone());
+		assertNotNull("error of the cloud", subscriber.getError());
+		assertTrue("cancelled", subscription.cancelled);
+		assertEquals("nothing requested again", 8L, subscription.requested);
+		assertEquals("nothing applied", 0L, subscriber.getApplied());
+
+		collector.await();
+		assertEquals("snapshot error", subscriber.getError(), collector.error);
+
+		// the error of the last batch of close() ends the snapshots too
+		subscriber = subscriber(cloud, scheduler);
+		collector = new SnapshotCollector();
+		subscriber.getSnapshots().subscribe(collector);
+		subscriber.onSubscribe(new RecordingSubscription());
+		subscriber.onNext(new Tag("java", 1));
+		subscriber.close();
+		assertNotNull("error of the last batch", subscriber.getError());
+		collector.await();
+		assertEquals("snapshot error of the last batch", subscriber.getError(), collector.error);
+	}
+
+	/**
+	 * A thread holding the lock of the cloud may call the subscriber while
+	 * another thread adds a batch.
+	 */
+	public void testCloudLock() throws InterruptedException {
+		final Cloud cloud = new Cloud();
+		ManualScheduler scheduler = new ManualScheduler();
+		final CloudSubscriber subscriber = subscriber(cloud, scheduler);
+		subscriber.onSubscribe(new RecordingSubscription());
+
+		Thread producer = new Thread(new Runnable() {
+			public void run() {
+				for (int i = 0; i < 4; i++) {
+					subscriber.onNext(new Tag("java", 1));
+				}
+			}
+		});
+		synchronized (cloud) {
+			producer.start();
+			// waits until the producer waits for the lock of the cloud with its full batch
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (producer.getState() != Thread.State.BLOCKED && producer.isAlive() && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals("producer waiting for the cloud", Thread.State.BLOCKED, producer.getState());
+			assertEquals("queue depth", 4, subscriber.getQueueDepth());
+			subscriber.flush();
+			assertEquals("flushed by the lock holder", 4.0, cloud.getTag("java").getScore(), 0.0);
+		}
+		producer.join(10000);
+		assertFalse("producer ended", producer.isAlive());
+		assertEquals("one batch", 1L, subscriber.getBatches());
+		assertEquals("added once", 4.0, score(cloud, "java"), 0.0);
+	}
+
+	public void testSubmissionPublisher() throws InterruptedException {
+		Cloud cloud = new Cloud();
+		ManualScheduler scheduler = new ManualScheduler();
+		// the publisher delivers the tags when its tasks are run
+		ManualScheduler delivery = new ManualScheduler();
+		SubmissionPublisher<Tag> publisher = new SubmissionPublisher<Tag>(delivery, 64);
+		CloudSubscriber subscriber = subscriber(cloud, scheduler);
+		SnapshotCollector collector = new SnapshotCollector();
+		subscriber.getSnapshots().subscribe(collector);
+		publisher.subscribe(subscriber);
+		delivery.runPending();
+
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			names.add("tag" + (i % 7));
+			publisher.submit(new Tag(names.get(i), 1));
+			assertTrue("buffered", publisher.estimateMaximumLag() <= 64);
+		}
+		while (delivery.runPending() > 0) {
+			assertTrue("requested and not added", subscriber.getDemand() + subscriber.getQueueDepth() <= subscriber.getMaxQueueDepth());
+		}
+		assertEquals("delivered", 0, publisher.estimateMaximumLag());
+		assertEquals("batches", 12L, subscriber.getBatches());
+		assertEquals("queue depth", 2, subscriber.getQueueDepth());
+		assertEquals("demand", 6L, subscriber.getDemand());
+
+		// the latency flush adds the last batch
+		scheduler.runPending();
+		assertEquals("applied", 50L, subscriber.getApplied());
+		publisher.close();
+		while (delivery.runPending() > 0) {
+			// delivers the completion
+		}
+		assertTrue("done", subscriber.isDone());
+		assertNull("no error", subscriber.getError());
+
+		collector.await();
+		double total = 0;
+		for (Tag tag : collector.last) {
+			total += tag.getScore();
+		}
+		assertEquals("tags of the last snapshot", 7, collector.last.size());
+		assertEquals("scores of the last snapshot", 50.0, total, 0.0);
+	}
+
+}
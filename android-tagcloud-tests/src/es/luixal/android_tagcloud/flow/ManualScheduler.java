@@ -0,0 +1,165 @@
+package es.luixal.android_tagcloud.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler of the tests, whose tasks are run by hand, whatever their delay.
+ * Only one-shot tasks of a Runnable are supported.
+ */
+public class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+	private class Task implements ScheduledFuture<Object> {
+
+		private final Runnable runnable;
+
+		private final long delay;
+
+		private boolean cancelled = false;
+
+		private boolean run = false;
+
+		Task(Runnable runnable, long delay) {
+			this.runnable = runnable;
+			this.delay = delay;
+		}
+
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(delay, TimeUnit.NANOSECONDS);
+		}
+
+		public int compareTo(Delayed other) {
+			return Long.valueOf(delay).compareTo(other.getDelay(TimeUnit.NANOSECONDS));
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			synchronized (ManualScheduler.this) {
+				if (run || cancelled)
+					return false;
+				cancelled = true;
+				tasks.remove(this);
+				return true;
+			}
+		}
+
+		public boolean isCancelled() {
+			synchronized (ManualScheduler.this) {
+				return cancelled;
+			}
+		}
+
+		public boolean isDone() {
+			synchronized (ManualScheduler.this) {
+				return run || cancelled;
+			}
+		}
+
+		public Object get() {
+			throw new UnsupportedOperationException();
+		}
+
+		public Object get(long timeout, TimeUnit unit) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+	private final List<Task> tasks = new ArrayList<Task>();
+
+	private boolean shutdown = false;
+
+	public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+		Task task = new Task(command, unit.toNanos(delay));
+		if (! shutdown) {
+			tasks.add(task);
+		}
+		return task;
+	}
+
+	public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void execute(Runnable command) {
+		schedule(command, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Runs the tasks scheduled before the call, in the order they were scheduled;
+	 * the tasks they schedule are run by the next call.
+	 * @return The number of tasks run
+	 */
+	public int runPending() {
+		List<Task> pending;
+		synchronized (this) {
+			pending = new ArrayList<Task>(tasks);
+			tasks.clear();
+		}
+		int n = 0;
+		for (Task task : pending) {
+			synchronized (this) {
+				if (task.cancelled)
+					continue;
+				task.run = true;
+			}
+			task.runnable.run();
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * @return The number of tasks scheduled and not yet run nor cancelled
+	 */
+	public synchronized int getPending() {
+		return tasks.size();
+	}
+
+	/**
+	 * @return The delay of the next task in milliseconds, -1 if there is none
+	 */
+	public synchronized long getNextDelay() {
+		return tasks.isEmpty() ? -1 : tasks.get(0).getDelay(TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void shutdown() {
+		shutdown = true;
+	}
+
+	public synchronized List<Runnable> shutdownNow() {
+		shutdown = true;
+		List<Runnable> pending = new ArrayList<Runnable>(tasks.size());
+		for (Task task : tasks) {
+			pending.add(task.runnable);
+		}
+		tasks.clear();
+		return pending;
+	}
+
+	public synchronized boolean isShutdown() {
+		return shutdown;
+	}
+
+	public synchronized boolean isTerminated() {
+		return shutdown;
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) {
+		return isTerminated();
+	}
+
+}
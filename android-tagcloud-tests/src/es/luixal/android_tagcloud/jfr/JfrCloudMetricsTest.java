@@ -0,0 +1,165 @@
+package es.luixal.android_tagcloud.jfr;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import es.luixal.android_tagcloud.Cloud;
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.filters.MinLengthFilter;
+import es.luixal.android_tagcloud.metrics.InMemoryCloudMetrics;
+
+public class JfrCloudMetricsTest {
+
+	private static final String ADD_TEXT = "es.luixal.android_tagcloud.AddText";
+
+	private static final String OUTPUT_TAGS = "es.luixal.android_tagcloud.OutputTags";
+
+	private static final String EXPIRY = "es.luixal.android_tagcloud.Expiry";
+
+	private static final String EVICTION = "es.luixal.android_tagcloud.Eviction";
+
+	/**
+	 * Starts a recording of the given events, whatever their duration. The other
+	 * events of the cloud are disabled, as events are enabled by default.
+	 */
+	private static Recording record(String... names) {
+		Recording recording = new Recording();
+		for (String name : new String[] { ADD_TEXT, OUTPUT_TAGS, EXPIRY, EVICTION }) {
+			recording.disable(name);
+		}
+		for (String name : names) {
+			recording.enable(name).withoutThreshold();
+		}
+		recording.start();
+		return recording;
+	}
+
+	/**
+	 * Stops a recording.
+	 * @return The events of the given name, in the order they were committed
+	 */
+	private static List<RecordedEvent> events(Recording recording, String name) throws IOException {
+		recording.stop();
+		Path file = Files.createTempFile("cloud", ".jfr");
+		try {
+			recording.dump(file);
+			List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				if (event.getEventType().getName().equals(name)) {
+					events.add(event);
+				}
+			}
+			return events;
+		} finally {
+			recording.close();
+			Files.delete(file);
+		}
+	}
+
+	public void testDisabledWithoutRecording() throws IOException {
+		JfrCloudMetrics metrics = new JfrCloudMetrics();
+		assertFalse("no recording", metrics.isEnabled());
+
+		Recording recording = record(EXPIRY);
+		assertTrue("recording one of the events", metrics.isEnabled());
+		recording.stop();
+		recording.close();
+		assertFalse("recording stopped", metrics.isEnabled());
+
+		InMemoryCloudMetrics delegate = new InMemoryCloudMetrics();
+		assertTrue("enabled delegate", new JfrCloudMetrics(delegate).isEnabled());
+		delegate.setEnabled(false);
+		assertFalse("disabled delegate", new JfrCloudMetrics(delegate).isEnabled());
+	}
+
+	public void testAddText() throws IOException {
+		Cloud cloud = new Cloud();
+		cloud.setMetrics(new JfrCloudMetrics());
+		cloud.addInputFilter(new MinLengthFilter(4));
+
+		Recording recording = record(ADD_TEXT);
+		String text = "one two three four two three";
+		cloud.addText(text);
+		cloud.addText("five");
+		cloud.tags();
+		List<RecordedEvent> events = events(recording, ADD_TEXT);
+
+		assertEquals("events", 2, events.size());
+		RecordedEvent event = events.get(0);
+		assertEquals("chars", text.length(), event.getInt("chars"));
+		assertEquals("tokens", 6, event.getInt("tokens"));
+		assertEquals("accepted", 3, event.getInt("accepted"));
+		assertEquals("thread", Thread.currentThread().getName(), event.getThread().getJavaName());
+		assertEquals("second text", 1, events.get(1).getInt("tokens"));
+	}
+
+	public void testOutputTagsAndExpiry() throws IOException {
+		InMemoryCloudMetrics delegate = new InMemoryCloudMetrics();
+		Cloud cloud = new Cloud();
+		cloud.setMetrics(new JfrCloudMetrics(delegate));
+		cloud.setMaxTagsToDisplay(5);
+		cloud.setTagLifetime(60000);
+		long now = System.currentTimeMillis();
+		for (int i=0; i<20; i++) {
+			// a third of the tags are older than the lifetime
+			long age = (i % 3 == 0) ? 3600000 : 1000;
+			cloud.addTag(new Tag("tag" + i, null, i + 1, new Date(now - age)));
+		}
+
+		Recording recording = record(OUTPUT_TAGS, EXPIRY);
+		cloud.tags();
+		List<RecordedEvent> outputs = events(recording, OUTPUT_TAGS);
+		assertEquals("output events", 1, outputs.size());
+		assertEquals("input size", 20, outputs.get(0).getInt("inputSize"));
+		assertEquals("output size", 5, outputs.get(0).getInt("outputSize"));
+
+		recording = record(OUTPUT_TAGS, EXPIRY);
+		cloud.tags();
+		List<RecordedEvent> expiries = events(recording, EXPIRY);
+		assertEquals("expiry events", 1, expiries.size());
+		assertEquals("expired", 7, expiries.get(0).getInt("expired"));
+		assertEquals("measures passed to the delegate", 14L, delegate.getExpired());
+	}
+
+	public void testEviction() throws IOException {
+		InMemoryCloudMetrics delegate = new InMemoryCloudMetrics();
+		Cloud cloud = new Cloud();
+		cloud.setMetrics(new JfrCloudMetrics(delegate));
+		for (int i=0; i<200; i++) {
+			cloud.addTag(new Tag("tag" + i, null, i % 7 + 1, new Date(i)));
+		}
+
+		Recording recording = record(EVICTION);
+		cloud.setMaxBytes(cloud.getEstimatedBytes() / 2);
+		cloud.addTag(new Tag("important", null, 1000, new Date(1000)));
+		List<RecordedEvent> events = events(recording, EVICTION);
+
+		assertEquals("events", 1, events.size());
+		RecordedEvent event = events.get(0);
+		assertEquals("evicted", 201L - cloud.size(), event.getInt("evicted"));
+		assertEquals("evicted as counted by the delegate", delegate.getEvicted(), event.getInt("evicted"));
+		assertEquals("freed bytes", delegate.getEvictedBytes(), event.getLong("freedBytes"));
+		assertTrue("bytes freed", event.getLong("freedBytes") > 0);
+	}
+
+	public void testDisabledEventsNotCommitted() throws IOException {
+		Cloud cloud = new Cloud();
+		cloud.setMetrics(new JfrCloudMetrics());
+		Recording recording = record(OUTPUT_TAGS);
+		cloud.addText("one two three");
+		cloud.tags();
+		List<RecordedEvent> events = events(recording, ADD_TEXT);
+		assertEquals("add text not recorded", 0, events.size());
+	}
+
+}
@@ -0,0 +1,277 @@
+package es.luixal.android_tagcloud.layout;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import es.luixal.android_tagcloud.Tag;
+
+/**
+ * Layouts placing again only the words of the tags that changed (FlowLayout
+ * and SpiralLayout).
+ */
+public class IncrementalLayoutTest {
+
+	/** Width of the layouts */
+	private static final float WIDTH = 800;
+
+	static class Measurer implements TextMeasurer {
+
+		public float getWidth(String word, int size) {
+			return word.length() * size * 0.6f;
+		}
+
+		public float getAscent(int size) {
+			return size * 0.8f;
+		}
+
+		public float getDescent(int size) {
+			return size * 0.2f;
+		}
+
+	}
+
+	/**
+	 * Words of a cloud, changed a few at a time.
+	 * The first word keeps the smallest size, so that the cells of a spiral don't change.
+	 */
+	private static class Words {
+
+		final Random random;
+
+		final List<String> names = new ArrayList<String>();
+
+		final Map<String, Integer> sizes = new HashMap<String, Integer>();
+
+		int next = 0;
+
+		Words(int n, long seed) {
+			random = new Random(seed);
+			add(0, 10);
+			for (int i=1; i<n; i++) {
+				add(i, size());
+			}
+		}
+
+		private int size() {
+			return 11 + random.nextInt(30);
+		}
+
+		private void add(int index, int size) {
+			String name = "word" + next++;
+			names.add(index, name);
+			sizes.put(name, Integer.valueOf(size));
+		}
+
+		/**
+		 * Resizes, adds and removes words.
+		 * @return The number of changes counted by the layouts: a resized word is removed and added
+		 */
+		int change(int resized, int added, int removed) {
+			for (int i=0; i<resized; i++) {
+				String name = names.get(1 + random.nextInt(names.size() - 1));
+				int size = sizes.get(name).intValue();
+				sizes.put(name, Integer.valueOf(size == 40 ? 11 : size + 1));
+			}
+			for (int i=0; i<added; i++) {
+				add(1 + random.nextInt(names.size()), size());
+			}
+			for (int i=0; i<removed; i++) {
+				sizes.remove(names.remove(1 + random.nextInt(names.size() - 1)));
+			}
+			return 2 * resized + added + removed;
+		}
+
+		List<Tag> tags() {
+			List<Tag> tags = new ArrayList<Tag>(names.size());
+			for (String name : names) {
+				Tag tag = new Tag(name);
+				tag.setWeight(sizes.get(name).intValue());
+				tags.add(tag);
+			}
+			return tags;
+		}
+
+	}
+
+	private static String describe(List<WordBox> boxes) {
+		StringBuilder builder = new StringBuilder();
+		for (WordBox box : boxes) {
+			builder.append(box.getText()).append('/').append(box.getSize()).append('@')
+					.append(box.getLeft()).append(',').append(box.getTop()).append(' ');
+		}
+		return builder.toString();
+	}
+
+	private static LayoutResult fresh(IncrementalLayout layout, List<Tag> tags) {
+		return layout.layout(tags, new Measurer(), WIDTH);
+	}
+
+	private static FlowLayout flow(FlowLayout.Alignment alignment, float lineSpacing) {
+		FlowLayout layout = new FlowLayout();
+		layout.setAlignment(alignment);
+		layout.setLineSpacing(lineSpacing);
+		return layout;
+	}
+
+	public void testFlowRelayoutMatchesAFullFlow() {
+		FlowLayout.Alignment[] alignments = FlowLayout.Alignment.values();
+		for (int seed=0; seed<30; seed++) {
+			FlowLayout.Alignment alignment = alignments[seed % alignments.length];
+			float lineSpacing = seed % 2 * 3.5f;
+			FlowLayout layout = flow(alignment, lineSpacing);
+			Measurer measurer = new Measurer();
+			Words words = new Words(300, seed);
+			LayoutResult previous = layout.layout(words.tags(), measurer, WIDTH);
+			assertEquals("first layout", 1L, layout.getFullLayouts());
+
+			for (int round=1; round<=10; round++) {
+				String context = "seed " + seed + ", round " + round;
+				String before = describe(previous.getBoxes());
+				// resized only, added only, removed only, then all of them
+				int kind = round % 4;
+				words.change(kind == 0 || kind == 1 ? 3 : 0, kind == 0 || kind == 2 ? 4 : 0, kind == 0 || kind == 3 ? 4 : 0);
+				List<Tag> tags = words.tags();
+
+				LayoutResult result = layout.layout(tags, measurer, WIDTH);
+				assertEquals(context + ": incremental layouts", (long) round, layout.getIncrementalLayouts());
+				assertEquals(context + ": full layouts", 1L, layout.getFullLayouts());
+
+				LayoutResult expected = fresh(flow(alignment, lineSpacing), tags);
+				assertEquals(context + ": same boxes", describe(expected.getBoxes()), describe(result.getBoxes()));
+				assertEquals(context + ": same width", expected.getWidth(), result.getWidth(), 0.0);
+				assertEquals(context + ": same height", expected.getHeight(), result.getHeight(), 0.0);
+				assertEquals(context + ": previous boxes kept", before, describe(previous.getBoxes()));
+				previous = result;
+			}
+		}
+	}
+
+	public void testSpiralRelayoutKeepsWordsApart() {
+		for (int seed=0; seed<5; seed++) {
+			SpiralLayout layout = new SpiralLayout();
+			Measurer measurer = new Measurer();
+			Words words = new Words(300, seed);
+			LayoutResult previous = layout.layout(words.tags(), measurer, WIDTH);
+
+			for (int round=1; round<=10; round++) {
+				String context = "seed " + seed + ", round " + round;
+				String before = describe(previous.getBoxes());
+				words.change(3, 4, 4);
+				List<Tag> tags = words.tags();
+
+				LayoutResult result = layout.layout(tags, measurer, WIDTH);
+				assertEquals(context + ": incremental layouts", (long) round, layout.getIncrementalLayouts());
+				assertEquals(context + ": full layouts", 1L, layout.getFullLayouts());
+				assertEquals(context + ": previous boxes kept", before, describe(previous.getBoxes()));
+
+				List<WordBox> boxes = result.getBoxes();
+				assertEquals(context + ": one box per tag", tags.size(), boxes.size());
+				for (int i=0; i<boxes.size(); i++) {
+					WordBox box = boxes.get(i);
+					assertEquals(context + ": box of the tag", tags.get(i).getName(), box.getText());
+					assertEquals(context + ": size of the tag", tags.get(i).getWeightInt(), box.getSize());
+					assertTrue(context + ": " + box + " in the area", box.getLeft() >= 0 && box.getRight() <= result.getWidth()
+							&& box.getTop() >= 0 && box.getBottom() <= result.getHeight() + 0.001f);
+					for (int j=0; j<i; j++) {
+						assertFalse(context + ": " + box + " overlaps " + boxes.get(j), box.intersects(boxes.get(j)));
+					}
+				}
+
+				// the words kept stay in place, the area may only move up or down
+				Map<String, WordBox> last = new HashMap<String, WordBox>();
+				for (WordBox box : previous.getBoxes()) {
+					last.put(box.getText(), box);
+				}
+				Float dy = null;
+				for (WordBox box : boxes) {
+					WordBox kept = last.get(box.getText());
+					if (kept == null || kept.getSize() != box.getSize())
+						continue;
+					if (dy == null) {
+						dy = Float.valueOf(box.getTop() - kept.getTop());
+					}
+					assertEquals(context + ": " + box.getText() + " left", kept.getLeft(), box.getLeft(), 0.0);
+					assertEquals(context + ": " + box.getText() + " top", kept.getTop() + dy.floatValue(), box.getTop(), 0.01);
+				}
+				assertNotNull(context + ": words kept", dy);
+				previous = result;
+			}
+		}
+	}
+
+	private void checkFullLayoutFallback(IncrementalLayout layout, IncrementalLayout reference) {
+		Measurer measurer = new Measurer();
+		Words words = new Words(300, 7);
+		layout.layout(words.tags(), measurer, WIDTH);
+		long full = 1;
+		long incremental = 0;
+
+		// a few changes
+		words.change(2, 2, 2);
+		layout.layout(words.tags(), measurer, WIDTH);
+		assertEquals("few changes", ++incremental, layout.getIncrementalLayouts());
+
+		// more changes than 25% of the tags
+		int changes = words.change(20, 20, 20);
+		assertTrue("changes: " + changes, changes > 0.25f * words.names.size());
+		List<Tag> tags = words.tags();
+		LayoutResult result = layout.layout(tags, measurer, WIDTH);
+		assertEquals("many changes", ++full, layout.getFullLayouts());
+		assertEquals("same as a new layout", describe(fresh(reference, tags).getBoxes()), describe(result.getBoxes()));
+
+		// the threshold is a setting
+		layout.setRelayoutThreshold(0.5f);
+		words.change(20, 20, 20);
+		layout.layout(words.tags(), measurer, WIDTH);
+		assertEquals("within a larger threshold", ++incremental, layout.getIncrementalLayouts());
+		layout.setRelayoutThreshold(0.25f);
+
+		// the width, the measurer or a reset forget the last placement
+		layout.layout(words.tags(), measurer, WIDTH + 1);
+		assertEquals("other width", ++full, layout.getFullLayouts());
+		layout.layout(words.tags(), new Measurer(), WIDTH + 1);
+		assertEquals("other measurer", ++full, layout.getFullLayouts());
+		layout.reset();
+		words.change(1, 0, 0);
+		tags = words.tags();
+		result = layout.layout(tags, measurer, WIDTH);
+		assertEquals("reset", ++full, layout.getFullLayouts());
+		assertEquals("same as a new layout after a reset", describe(fresh(reference, tags).getBoxes()), describe(result.getBoxes()));
+
+		// no relayout without a threshold
+		layout.setRelayoutThreshold(0);
+		words.change(1, 0, 0);
+		layout.layout(words.tags(), measurer, WIDTH);
+		assertEquals("no threshold", ++full, layout.getFullLayouts());
+		assertEquals("incremental layouts", incremental, layout.getIncrementalLayouts());
+	}
+
+	public void testFlowFullLayoutFallback() {
+		checkFullLayoutFallback(new FlowLayout(), new FlowLayout());
+	}
+
+	public void testSpiralFullLayoutFallback() {
+		checkFullLayoutFallback(new SpiralLayout(), new SpiralLayout());
+	}
+
+	public void testSpiralFallsBackWhenTheCellsChange() {
+		SpiralLayout layout = new SpiralLayout();
+		Measurer measurer = new Measurer();
+		Words words = new Words(300, 11);
+		layout.layout(words.tags(), measurer, WIDTH);
+
+		// the smallest word gets larger, so do the cells of the grid
+		words.sizes.put(words.names.get(0), Integer.valueOf(40));
+		List<Tag> tags = words.tags();
+		LayoutResult result = layout.layout(tags, measurer, WIDTH);
+		assertEquals("full layouts", 2L, layout.getFullLayouts());
+		assertEquals("incremental layouts", 0L, layout.getIncrementalLayouts());
+		assertEquals("same as a new layout", describe(fresh(new SpiralLayout(), tags).getBoxes()), describe(result.getBoxes()));
+	}
+
+}
@@ -0,0 +1,89 @@
+package es.luixal.android_tagcloud.layout;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+public class MeasureCacheTest {
+
+	/** Measurer counting its calls, a character is size / 2 wide */
+	static class CountingMeasurer implements TextMeasurer {
+
+		int widths = 0;
+
+		public float getWidth(String word, int size) {
+			widths++;
+			return word.length() * size / 2f;
+		}
+
+		public float getAscent(int size) {
+			return size * 0.8f;
+		}
+
+		public float getDescent(int size) {
+			return size * 0.2f;
+		}
+
+	}
+
+	private static void measureWords(MeasureCache cache, int words) {
+		for (int i=0; i<words; i++) {
+			assertEquals("width", ("word" + i).length() * (10 + i % 3) / 2f, cache.getWidth("word" + i, 10 + i % 3), 0.0);
+		}
+	}
+
+	public void testDefaultCapacityMissesLargeClouds() {
+		CountingMeasurer measurer = new CountingMeasurer();
+		MeasureCache cache = new MeasureCache(measurer);
+		measureWords(cache, 3000);
+		measureWords(cache, 3000);
+		assertEquals("measured twice", 6000, measurer.widths);
+		assertEquals("hits", 0, cache.getHits());
+	}
+
+	public void testEnsureCapacityKeepsTheWords() {
+		CountingMeasurer measurer = new CountingMeasurer();
+		MeasureCache cache = new MeasureCache(measurer);
+		cache.ensureCapacity(6000);
+		assertEquals("capacity", 6000, cache.getCapacity());
+		cache.ensureCapacity(100);
+		assertEquals("never shrinks", 6000, cache.getCapacity());
+
+		measureWords(cache, 3000);
+		measureWords(cache, 3000);
+		assertEquals("measured once", 3000, measurer.widths);
+		assertEquals("hits", 3000, cache.getHits());
+		assertEquals("misses", 3000, cache.getMisses());
+	}
+
+	public void testSetCapacityEvictsLeastRecentlyUsed() {
+		CountingMeasurer measurer = new CountingMeasurer();
+		MeasureCache cache = new MeasureCache(measurer, 10);
+		for (int i=0; i<10; i++) {
+			cache.getWidth("w" + i, 12);
+		}
+		cache.getWidth("w0", 12);
+		cache.setCapacity(3);
+		assertEquals("size", 3, cache.size());
+
+		measurer.widths = 0;
+		cache.getWidth("w0", 12);
+		cache.getWidth("w9", 12);
+		cache.getWidth("w8", 12);
+		assertEquals("recent widths kept", 0, measurer.widths);
+		cache.getWidth("w1", 12);
+		assertEquals("old width evicted", 1, measurer.widths);
+		assertEquals("size", 3, cache.size());
+
+		assertThrows("capacity", IllegalArgumentException.class, new Runnable() {
+			public void run() {
+				new MeasureCache(new CountingMeasurer()).setCapacity(0);
+			}
+		});
+	}
+
+	public void testMetricsCachedPerSize() {
+		MeasureCache cache = new MeasureCache(new CountingMeasurer());
+		assertEquals("ascent", 8f, cache.getAscent(10), 1e-6);
+		assertEquals("descent", 2f, cache.getDescent(10), 1e-6);
+	}
+
+}
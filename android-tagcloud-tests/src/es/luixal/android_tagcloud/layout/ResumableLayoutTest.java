@@ -0,0 +1,184 @@
+package es.luixal.android_tagcloud.layout;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.schedule.ManualClock;
+import es.luixal.android_tagcloud.schedule.ManualFrameScheduler;
+import es.luixal.android_tagcloud.schedule.TaskRunner;
+
+/**
+ * Layouts computed in steps (FlowLayout and SpiralLayout), driven by a clock
+ * that each measure of a word moves by 1 microsecond.
+ */
+public class ResumableLayoutTest {
+
+	private static final long US = 1000L;
+
+	/** Budget of a step */
+	private static final long BUDGET = 50 * US;
+
+	/** Measurer whose measures take 1 microsecond of the clock */
+	static class SlowMeasurer implements TextMeasurer {
+
+		final ManualClock clock;
+
+		SlowMeasurer(ManualClock clock) {
+			this.clock = clock;
+		}
+
+		public float getWidth(String word, int size) {
+			clock.advance(US);
+			return word.length() * size * 0.6f;
+		}
+
+		public float getAscent(int size) {
+			return size * 0.8f;
+		}
+
+		public float getDescent(int size) {
+			return size * 0.2f;
+		}
+
+	}
+
+	private static List<Tag> tags(int n, long seed) {
+		Random random = new Random(seed);
+		List<Tag> tags = new ArrayList<Tag>();
+		for (int i=0; i<n; i++) {
+			Tag tag = new Tag("word" + i);
+			tag.setWeight(10 + random.nextInt(30));
+			tags.add(tag);
+		}
+		return tags;
+	}
+
+	private static String describe(List<WordBox> boxes) {
+		StringBuilder builder = new StringBuilder();
+		for (WordBox box : boxes) {
+			builder.append(box.getText()).append('@').append(box.getLeft()).append(',').append(box.getTop()).append(' ');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Steps a task until it's done, checking that each step stops at its
+	 * deadline and that the boxes of the results are kept by the next steps.
+	 * @return The results after each step
+	 */
+	private static List<List<WordBox>> stepToTheEnd(LayoutTask task, ManualClock clock) {
+		List<List<WordBox>> results = new ArrayList<List<WordBox>>();
+		boolean done = false;
+		for (int steps=0; ! done; steps++) {
+			assertTrue("too many steps", steps < 10000);
+			long start = clock.peek();
+			done = task.step(clock, start + BUDGET);
+			long elapsed = clock.peek() - start;
+			// at most the budget, plus the words measured or placed between two reads of the clock
+			assertTrue("step of " + elapsed + " ns", done || elapsed <= BUDGET + 20 * US);
+			List<WordBox> boxes = task.getResult().getBoxes();
+			if (! results.isEmpty()) {
+				List<WordBox> previous = results.get(results.size() - 1);
+				assertTrue("results grow", boxes.size() >= previous.size());
+			}
+			results.add(boxes);
+		}
+		return results;
+	}
+
+	private void checkSteppedLayoutMatchesTheLayout(IncrementalLayout stepped, IncrementalLayout reference) {
+		ManualClock clock = new ManualClock(US);
+		List<Tag> tags = tags(300, 1);
+		List<List<WordBox>> results = stepToTheEnd(stepped.start(tags, new SlowMeasurer(clock), 800), clock);
+		assertTrue("several steps: " + results.size(), results.size() > 5);
+
+		LayoutResult expected = reference.layout(tags, new SlowMeasurer(new ManualClock()), 800);
+		assertEquals("same layout", describe(expected.getBoxes()), describe(results.get(results.size() - 1)));
+	}
+
+	public void testFlowStepsMatchTheLayout() {
+		checkSteppedLayoutMatchesTheLayout(new FlowLayout(), new FlowLayout());
+	}
+
+	public void testSpiralStepsMatchTheLayout() {
+		checkSteppedLayoutMatchesTheLayout(new SpiralLayout(), new SpiralLayout());
+	}
+
+	public void testFlowGrowsFromTheTop() {
+		ManualClock clock = new ManualClock(US);
+		List<List<WordBox>> results = stepToTheEnd(new FlowLayout().start(tags(300, 2), new SlowMeasurer(clock), 800), clock);
+		List<WordBox> last = results.get(results.size() - 1);
+		for (List<WordBox> boxes : results) {
+			// complete lines, in the order of the tags, at their final place
+			assertEquals("lines from the top", describe(last.subList(0, boxes.size())), describe(boxes));
+		}
+	}
+
+	public void testSpiralGrowsLargestWordsFirst() {
+		ManualClock clock = new ManualClock(US);
+		List<List<WordBox>> results = stepToTheEnd(new SpiralLayout().start(tags(300, 3), new SlowMeasurer(clock), 800), clock);
+		List<WordBox> last = results.get(results.size() - 1);
+		int partial = 0;
+		for (List<WordBox> boxes : results) {
+			if (boxes.isEmpty() || boxes.size() == last.size())
+				continue;
+			partial++;
+			int smallestPlaced = Integer.MAX_VALUE;
+			for (WordBox box : boxes) {
+				smallestPlaced = Math.min(smallestPlaced, box.getSize());
+			}
+			int placedOfSmallest = 0;
+			int ofSmallest = 0;
+			for (WordBox box : boxes) {
+				assertTrue("larger words placed first", box.getSize() >= smallestPlaced);
+				if (box.getSize() == smallestPlaced) {
+					placedOfSmallest++;
+				}
+			}
+			for (WordBox box : last) {
+				if (box.getSize() > smallestPlaced) {
+					assertTrue(box.getText() + " placed", describe(boxes).contains(box.getText() + "@"));
+				} else if (box.getSize() == smallestPlaced) {
+					ofSmallest++;
+				}
+			}
+			assertTrue("placed of the smallest size", placedOfSmallest <= ofSmallest);
+		}
+		assertTrue("partial results: " + partial, partial > 0);
+	}
+
+	private void checkRestartCancelsThePreviousTask(IncrementalLayout layout, IncrementalLayout reference) {
+		ManualClock clock = new ManualClock(US);
+		ManualFrameScheduler frames = new ManualFrameScheduler();
+		TaskRunner runner = new TaskRunner(frames, clock, BUDGET);
+		SlowMeasurer measurer = new SlowMeasurer(clock);
+
+		LayoutTask first = layout.start(tags(300, 4), measurer, 800);
+		runner.start(first, null);
+		frames.runFrame();
+		int placed = first.getResult().getBoxes().size();
+
+		List<Tag> tags = tags(200, 5);
+		LayoutTask second = layout.start(tags, measurer, 800);
+		runner.start(second, null);
+		frames.runFrames(10000);
+		assertFalse("done", runner.isRunning());
+		assertEquals("first task not stepped again", placed, first.getResult().getBoxes().size());
+
+		LayoutResult expected = reference.layout(tags, new SlowMeasurer(new ManualClock()), 800);
+		assertEquals("same layout", describe(expected.getBoxes()), describe(second.getResult().getBoxes()));
+	}
+
+	public void testFlowRestartCancelsThePreviousTask() {
+		checkRestartCancelsThePreviousTask(new FlowLayout(), new FlowLayout());
+	}
+
+	public void testSpiralRestartCancelsThePreviousTask() {
+		checkRestartCancelsThePreviousTask(new SpiralLayout(), new SpiralLayout());
+	}
+
+}
@@ -0,0 +1,117 @@
+package es.luixal.android_tagcloud.layout;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import es.luixal.android_tagcloud.Tag;
+
+public class ViewportTest {
+
+	private static WordBox box(String name, float left, float top, float height) {
+		WordBox box = new WordBox(new Tag(name), 12, 50, height * 0.8f, height * 0.2f);
+		box.setPosition(left, top);
+		return box;
+	}
+
+	/** Words of a column, one every 20 pixels from 0 to 2000, 15 pixels high */
+	private static List<WordBox> column() {
+		List<WordBox> boxes = new ArrayList<WordBox>();
+		for (int i=0; i<100; i++) {
+			boxes.add(box("w" + i, 0, i * 20, 15));
+		}
+		return boxes;
+	}
+
+	private static Set<String> names(List<WordBox> boxes) {
+		Set<String> names = new HashSet<String>();
+		for (WordBox box : boxes) {
+			names.add(box.getText());
+		}
+		return names;
+	}
+
+	public void testWindowMovesWhenTheBandLeavesIt() {
+		Viewport viewport = new Viewport(new LayoutResult(column(), 100, 2000), 100);
+		assertEquals("size", 100, viewport.size());
+
+		final List<WordBox> words = viewport.getWords(400, 600);
+		assertEquals("updates", 1, viewport.getUpdates());
+		assertEquals("window top", 300f, viewport.getWindowTop(), 0.0);
+		assertEquals("window bottom", 700f, viewport.getWindowBottom(), 0.0);
+		// w15 (300 to 315) to w34 (680 to 695)
+		assertEquals("words", 20, words.size());
+		assertTrue("first", names(words).contains("w15"));
+		assertTrue("last", names(words).contains("w34"));
+
+		// scrolling within the window returns the same list
+		assertTrue("same list", viewport.getWords(450, 650) == words);
+		assertTrue("same list", viewport.getWords(300, 700) == words);
+		assertEquals("updates", 1, viewport.getUpdates());
+
+		// leaving the window moves it around the band
+		List<WordBox> moved = viewport.getWords(650, 850);
+		assertEquals("updates", 2, viewport.getUpdates());
+		assertEquals("window top", 550f, viewport.getWindowTop(), 0.0);
+		assertEquals("window bottom", 950f, viewport.getWindowBottom(), 0.0);
+		assertEquals("words", names(viewport.find(550, 950)), names(moved));
+
+		assertThrows("unmodifiable", UnsupportedOperationException.class, new Runnable() {
+			public void run() {
+				words.clear();
+			}
+		});
+	}
+
+	public void testNegativeMarginUsesTheHeightOfTheBand() {
+		Viewport viewport = new Viewport(new LayoutResult(column(), 100, 2000), -1);
+		viewport.getWords(1000, 1300);
+		assertEquals("window top", 700f, viewport.getWindowTop(), 0.0);
+		assertEquals("window bottom", 1600f, viewport.getWindowBottom(), 0.0);
+
+		viewport.getWords(650, 950);
+		assertEquals("updates", 2, viewport.getUpdates());
+		assertEquals("window top", 350f, viewport.getWindowTop(), 0.0);
+		assertEquals("window bottom", 1250f, viewport.getWindowBottom(), 0.0);
+	}
+
+	public void testFindsBoxesTallerThanTheBand() {
+		List<WordBox> boxes = column();
+		// starts far above the band and ends below it
+		boxes.add(box("tall", 60, 100, 900));
+		Viewport viewport = new Viewport(new LayoutResult(boxes, 200, 2000), 0);
+
+		Set<String> found = names(viewport.find(500, 510));
+		assertTrue("tall", found.contains("tall"));
+		assertTrue("w25", found.contains("w25"));
+		assertEquals("count", 2, found.size());
+
+		assertFalse("above the tall box", names(viewport.find(0, 50)).contains("tall"));
+		assertFalse("below the tall box", names(viewport.find(1000, 1100)).contains("tall"));
+	}
+
+	public void testFindMatchesAScanOfAllBoxes() {
+		Random random = new Random(3);
+		List<WordBox> boxes = new ArrayList<WordBox>();
+		for (int i=0; i<2000; i++) {
+			boxes.add(box("w" + i, random.nextInt(500), random.nextInt(10000), 5 + random.nextInt(200)));
+		}
+		Viewport viewport = new Viewport(new LayoutResult(boxes, 600, 10200), 0);
+		for (int k=0; k<200; k++) {
+			float top = random.nextInt(10500) - 200;
+			float bottom = top + random.nextInt(400);
+			Set<String> expected = new HashSet<String>();
+			for (WordBox box : boxes) {
+				if (box.getBottom() > top && box.getTop() < bottom) {
+					expected.add(box.getText());
+				}
+			}
+			assertEquals("band " + top + " to " + bottom, expected, names(viewport.find(top, bottom)));
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package es.luixal.android_tagcloud.metrics;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+public class HistogramTest {
+
+	public void testPercentilesWithinRelativeError() {
+		Histogram h = new Histogram();
+		for (long v=1; v<=100000; v++) {
+			h.record(v * 1000);
+		}
+		assertEquals("count", 100000, h.getCount());
+		assertEquals("max", 100000000L, h.getMax());
+		assertEquals("p50", 50000000.0, h.getPercentile(50), 50000000.0 * 0.07);
+		assertEquals("p99", 99000000.0, h.getPercentile(99), 99000000.0 * 0.07);
+		assertEquals("p100", 100000000L, h.getPercentile(100));
+	}
+
+	public void testAddMergesHistograms() {
+		Histogram a = new Histogram();
+		Histogram b = new Histogram();
+		for (int i=0; i<100; i++) {
+			a.record(10);
+			b.record(1000);
+		}
+		a.add(b);
+		assertEquals("count", 200, a.getCount());
+		assertEquals("sum", 101000, a.getSum());
+		assertEquals("max", 1000, a.getMax());
+		assertEquals("p50", 10, a.getPercentile(50));
+		assertEquals("p99", 1000.0, a.getPercentile(99), 1000 * 0.07);
+		assertEquals("other unchanged", 100, b.getCount());
+	}
+
+}
@@ -0,0 +1,56 @@
+package es.luixal.android_tagcloud.schedule;
+
+/**
+ * Clock of the tests, moved by hand, and optionally by each read so that code
+ * waiting for a deadline makes progress.
+ */
+public class ManualClock implements Clock {
+
+	private long now = 0;
+
+	private long tick = 0;
+
+	private long reads = 0;
+
+	/**
+	 * Clock moved by hand only.
+	 */
+	public ManualClock() {
+	}
+
+	/**
+	 * @param tick Time added after each read, in nanoseconds
+	 */
+	public ManualClock(long tick) {
+		this.tick = tick;
+	}
+
+	public long nanoTime() {
+		reads++;
+		long time = now;
+		now += tick;
+		return time;
+	}
+
+	/**
+	 * @param nanos Time to add, in nanoseconds
+	 */
+	public void advance(long nanos) {
+		now += nanos;
+	}
+
+	/**
+	 * @return The current time, without counting a read
+	 */
+	public long peek() {
+		return now;
+	}
+
+	/**
+	 * @return The number of reads of the clock
+	 */
+	public long getReads() {
+		return reads;
+	}
+
+}
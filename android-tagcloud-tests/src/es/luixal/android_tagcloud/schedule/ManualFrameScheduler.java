@@ -0,0 +1,68 @@
+package es.luixal.android_tagcloud.schedule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frame scheduler of the tests, whose frames are run by hand.
+ */
+public class ManualFrameScheduler implements FrameScheduler {
+
+	private final List<Runnable> posted = new ArrayList<Runnable>();
+
+	private int frames = 0;
+
+	public void post(Runnable frame) {
+		posted.add(frame);
+	}
+
+	public void cancel(Runnable frame) {
+		while (posted.remove(frame)) {
+			// removes every posting of the callback
+		}
+	}
+
+	/**
+	 * Runs the callbacks posted before the frame; the callbacks they post run
+	 * at the next frame.
+	 * @return The number of callbacks run
+	 */
+	public int runFrame() {
+		List<Runnable> callbacks = new ArrayList<Runnable>(posted);
+		posted.clear();
+		frames++;
+		for (Runnable callback : callbacks) {
+			callback.run();
+		}
+		return callbacks.size();
+	}
+
+	/**
+	 * Runs frames until no callback is posted.
+	 * @param maxFrames The maximum number of frames to run
+	 * @return The number of frames run
+	 */
+	public int runFrames(int maxFrames) {
+		int n = 0;
+		while (! posted.isEmpty() && n < maxFrames) {
+			runFrame();
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * @return The number of callbacks posted for the next frame
+	 */
+	public int getPending() {
+		return posted.size();
+	}
+
+	/**
+	 * @return The number of frames run
+	 */
+	public int getFrames() {
+		return frames;
+	}
+
+}
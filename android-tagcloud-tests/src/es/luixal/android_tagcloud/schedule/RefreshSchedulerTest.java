@@ -0,0 +1,138 @@
+package es.luixal.android_tagcloud.schedule;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RefreshSchedulerTest {
+
+	private static final long MS = 1000000L;
+
+	/** Refresh recording the time it ran at */
+	static class Refresh implements Runnable {
+
+		final ManualClock clock;
+		final List<Long> times = new ArrayList<Long>();
+
+		Refresh(ManualClock clock) {
+			this.clock = clock;
+		}
+
+		public void run() {
+			times.add(Long.valueOf(clock.peek()));
+		}
+
+	}
+
+	public void testRequestsCoalescedInOneFrame() {
+		ManualClock clock = new ManualClock();
+		ManualFrameScheduler frames = new ManualFrameScheduler();
+		Refresh refresh = new Refresh(clock);
+		RefreshScheduler scheduler = new RefreshScheduler(frames, clock, refresh);
+
+		for (int i=0; i<100; i++) {
+			scheduler.request();
+		}
+		assertEquals("posted once", 1, frames.getPending());
+		assertTrue("dirty", scheduler.isDirty());
+		assertEquals("not yet refreshed", 0, refresh.times.size());
+
+		frames.runFrame();
+		assertEquals("refreshes", 1, refresh.times.size());
+		assertEquals("counted refreshes", 1, scheduler.getRefreshes());
+		assertEquals("requests", 100, scheduler.getRequests());
+		assertFalse("clean", scheduler.isDirty());
+		assertEquals("nothing posted", 0, frames.getPending());
+
+		// no request, no refresh
+		frames.runFrame();
+		assertEquals("idle frame", 1, refresh.times.size());
+	}
+
+	public void testOneRefreshPerFrameWithoutInterval() {
+		ManualClock clock = new ManualClock();
+		ManualFrameScheduler frames = new ManualFrameScheduler();
+		Refresh refresh = new Refresh(clock);
+		RefreshScheduler scheduler = new RefreshScheduler(frames, clock, refresh);
+
+		for (int frame=0; frame<10; frame++) {
+			scheduler.request();
+			scheduler.request();
+			clock.advance(16 * MS);
+			frames.runFrame();
+		}
+		assertEquals("refreshes", 10, refresh.times.size());
+	}
+
+	public void testInterval() {
+		ManualClock clock = new ManualClock();
+		ManualFrameScheduler frames = new ManualFrameScheduler();
+		Refresh refresh = new Refresh(clock);
+		RefreshScheduler scheduler = new RefreshScheduler(frames, clock, refresh);
+		scheduler.setIntervalNanos(100 * MS);
+		scheduler.request();
+		scheduler.flush();
+		assertEquals("flushed at 0", 0L, refresh.times.get(0).longValue());
+
+		// 30 frames of 16 ms with a request each: the interval counts from the last refresh
+		for (int frame=0; frame<30; frame++) {
+			scheduler.request();
+			clock.advance(16 * MS);
+			frames.runFrame();
+		}
+		// 4 refreshes in the frames, after the flush
+		assertEquals("refreshes", 5, refresh.times.size());
+		long[] expected = { 0, 112 * MS, 224 * MS, 336 * MS, 448 * MS };
+		for (int i=0; i<expected.length; i++) {
+			assertEquals("refresh " + i, expected[i], refresh.times.get(i).longValue());
+		}
+		assertEquals("counted refreshes", 5, scheduler.getRefreshes());
+		// the last request waits for the next frame after the interval
+		assertTrue("dirty", scheduler.isDirty());
+		assertEquals("posted", 1, frames.getPending());
+		assertEquals("frames", 30, frames.getFrames());
+	}
+
+	public void testFlush() {
+		ManualClock clock = new ManualClock();
+		ManualFrameScheduler frames = new ManualFrameScheduler();
+		Refresh refresh = new Refresh(clock);
+		RefreshScheduler scheduler = new RefreshScheduler(frames, clock, refresh);
+		scheduler.setIntervalNanos(100 * MS);
+
+		assertFalse("clean", scheduler.flush());
+		scheduler.request();
+		assertTrue("flushed", scheduler.flush());
+		assertEquals("refreshes", 1, refresh.times.size());
+		assertEquals("frame cancelled", 0, frames.getPending());
+
+		// flush() ignores the interval
+		clock.advance(MS);
+		scheduler.request();
+		assertTrue("flushed again", scheduler.flush());
+		assertEquals("refreshes", 2, refresh.times.size());
+		frames.runFrames(10);
+		assertEquals("no frame refresh", 2, refresh.times.size());
+	}
+
+	public void testCancel() {
+		ManualClock clock = new ManualClock();
+		ManualFrameScheduler frames = new ManualFrameScheduler();
+		Refresh refresh = new Refresh(clock);
+		RefreshScheduler scheduler = new RefreshScheduler(frames, clock, refresh);
+
+		scheduler.request();
+		scheduler.cancel();
+		assertFalse("clean", scheduler.isDirty());
+		assertEquals("frame cancelled", 0, frames.getPending());
+		frames.runFrame();
+		assertEquals("refreshes", 0, refresh.times.size());
+
+		// requests after a cancellation are refreshed as usual
+		scheduler.request();
+		frames.runFrame();
+		assertEquals("refreshed", 1, refresh.times.size());
+	}
+
+}
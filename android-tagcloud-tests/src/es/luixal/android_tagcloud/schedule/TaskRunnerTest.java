@@ -0,0 +1,118 @@
+package es.luixal.android_tagcloud.schedule;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TaskRunnerTest {
+
+	private static final long MS = 1000000L;
+
+	/** Task doing units of work of 1 ms each, checking its deadline after each one */
+	static class CountingTask implements Task {
+
+		final ManualClock clock;
+		final int units;
+		int done = 0;
+		final List<Integer> unitsPerStep = new ArrayList<Integer>();
+		final List<Long> deadlines = new ArrayList<Long>();
+
+		CountingTask(ManualClock clock, int units) {
+			this.clock = clock;
+			this.units = units;
+		}
+
+		public boolean step(Clock clock, long deadline) {
+			deadlines.add(Long.valueOf(deadline));
+			int before = done;
+			while (done < units) {
+				this.clock.advance(MS);
+				done++;
+				if (clock.nanoTime() >= deadline)
+					break;
+			}
+			unitsPerStep.add(Integer.valueOf(done - before));
+			return done == units;
+		}
+
+	}
+
+	/** Listener recording the steps */
+	static class Steps implements TaskRunner.Listener {
+
+		int steps = 0;
+		int done = 0;
+
+		public void stepped(Task task, boolean done) {
+			steps++;
+			if (done) {
+				this.done++;
+			}
+		}
+
+	}
+
+	public void testStepStopsAtItsDeadline() {
+		ManualClock clock = new ManualClock();
+		ManualFrameScheduler frames = new ManualFrameScheduler();
+		TaskRunner runner = new TaskRunner(frames, clock, 5 * MS);
+		CountingTask task = new CountingTask(clock, 23);
+		Steps steps = new Steps();
+
+		runner.start(task, steps);
+		assertEquals("nothing before the first frame", 0, task.done);
+		assertTrue("running", runner.isRunning());
+
+		long start = clock.peek();
+		frames.runFrame();
+		assertEquals("deadline", start + 5 * MS, task.deadlines.get(0).longValue());
+		assertEquals("first step", 5, task.unitsPerStep.get(0).intValue());
+		assertEquals("one frame posted", 1, frames.getPending());
+
+		// 10 ms pass between frames: the budget starts at the frame
+		clock.advance(10 * MS);
+		frames.runFrames(100);
+		assertEquals("steps", 5, task.unitsPerStep.size());
+		assertEquals("units per step", "[5, 5, 5, 5, 3]", task.unitsPerStep.toString());
+		assertEquals("listener steps", 5, steps.steps);
+		assertEquals("listener done", 1, steps.done);
+		assertFalse("not running", runner.isRunning());
+		assertEquals("no frame posted", 0, frames.getPending());
+	}
+
+	public void testRestartCancelsThePreviousTask() {
+		ManualClock clock = new ManualClock();
+		ManualFrameScheduler frames = new ManualFrameScheduler();
+		TaskRunner runner = new TaskRunner(frames, clock, 2 * MS);
+		CountingTask first = new CountingTask(clock, 10);
+		CountingTask second = new CountingTask(clock, 10);
+		Steps firstSteps = new Steps();
+
+		runner.start(first, firstSteps);
+		frames.runFrame();
+		assertEquals("first stepped once", 1, first.unitsPerStep.size());
+
+		runner.start(second, null);
+		frames.runFrames(100);
+		assertEquals("first not stepped again", 1, first.unitsPerStep.size());
+		assertEquals("first listener", 1, firstSteps.steps);
+		assertEquals("first not done", 0, firstSteps.done);
+		assertEquals("second done", 10, second.done);
+		assertFalse("not running", runner.isRunning());
+	}
+
+	public void testCancelBeforeTheFirstFrame() {
+		ManualClock clock = new ManualClock();
+		ManualFrameScheduler frames = new ManualFrameScheduler();
+		TaskRunner runner = new TaskRunner(frames, clock, 2 * MS);
+		CountingTask task = new CountingTask(clock, 10);
+
+		runner.start(task, null);
+		runner.cancel();
+		assertFalse("not running", runner.isRunning());
+		assertEquals("frames", 0, frames.runFrames(100));
+		assertEquals("never stepped", 0, task.unitsPerStep.size());
+	}
+
+}
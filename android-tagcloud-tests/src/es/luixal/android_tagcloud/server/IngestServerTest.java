@@ -0,0 +1,159 @@
+package es.luixal.android_tagcloud.server;
+
+import static es.luixal.android_tagcloud.test.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import es.luixal.android_tagcloud.Cloud;
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.filters.FilterBase;
+
+public class IngestServerTest {
+
+	/**
+	 * Client of a server on the loopback address.
+	 */
+	private static class Client {
+
+		private final Socket socket;
+
+		private final OutputStream out;
+
+		private final BufferedReader in;
+
+		Client(IngestServer server) throws IOException {
+			socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			socket.setSoTimeout(10000);
+			out = socket.getOutputStream();
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		}
+
+		void send(String lines) throws IOException {
+			out.write(lines.getBytes(StandardCharsets.UTF_8));
+			out.flush();
+		}
+
+		/**
+		 * @return The lines of an answer, without its empty line
+		 */
+		List<String> answer() throws IOException {
+			List<String> lines = new ArrayList<String>();
+			for (String line = in.readLine(); ; line = in.readLine()) {
+				assertNotNull("end of the answer", line);
+				if (line.isEmpty())
+					return lines;
+				lines.add(line);
+			}
+		}
+
+		void close() throws IOException {
+			socket.close();
+		}
+
+	}
+
+	private static Tag tag(Cloud cloud, String name) {
+		synchronized (cloud) {
+			return cloud.getTag(name);
+		}
+	}
+
+	public void testLines() throws IOException {
+		Cloud cloud = new Cloud();
+		IngestServer server = new IngestServer(cloud);
+		Client client = new Client(server);
+		client.send("java\t3\nandroid\nkotlin\t2\t1000\r\nkotlin\t\t\nhello world hello\n");
+		client.send("bad\tscore\n");
+		client.send("!flush\n");
+		assertEquals("flush answer", 0, client.answer().size());
+
+		assertEquals("score", 3.0, tag(cloud, "java").getScore(), 0.0);
+		assertEquals("default score", 1.0, tag(cloud, "android").getScore(), 0.0);
+		assertEquals("merged", 3.0, tag(cloud, "kotlin").getScore(), 0.0);
+		assertEquals("text", 2.0, tag(cloud, "hello").getScore(), 0.0);
+		assertEquals("lines", 7, server.getLines());
+		assertEquals("rejected", 1, server.getRejectedLines());
+		assertNull("error", server.getError());
+
+		client.close();
+		server.close();
+		assertTrue("closed", server.isClosed());
+	}
+
+	public void testTop() throws IOException {
+		Cloud cloud = new Cloud();
+		IngestServer server = new IngestServer(cloud);
+		Client client = new Client(server);
+		// the tags sent before on the same connection are included
+		client.send("a\t1\nb\t5\nc\t3\n!top 2\n");
+		List<String> top = client.answer();
+		assertEquals("top", 2, top.size());
+		assertEquals("first", "b", top.get(0).split("\t")[0]);
+		assertEquals("second", "c", top.get(1).split("\t")[0]);
+		assertEquals("score", 5.0, Double.parseDouble(top.get(0).split("\t")[1]), 0.0);
+
+		client.send("!top\n");
+		assertEquals("default top", 3, client.answer().size());
+		client.send("!top x\n!unknown\n!flush\n");
+		assertEquals("flush answer", 0, client.answer().size());
+		assertEquals("queries", 2, server.getQueries());
+		assertEquals("rejected", 2, server.getRejectedLines());
+
+		client.close();
+		server.close();
+	}
+
+	public void testOverlongLine() throws IOException {
+		Cloud cloud = new Cloud();
+		IngestServer server = new IngestServer(cloud);
+		Client client = new Client(server);
+		char[] name = new char[IngestServer.INPUT_BUFFER + 1000];
+		Arrays.fill(name, 'x');
+		client.send(new String(name) + "\t1\n");
+		client.send("after\t2\n!flush\n");
+		assertEquals("flush answer", 0, client.answer().size());
+
+		assertEquals("rejected", 1, server.getRejectedLines());
+		assertEquals("size", 1, cloud.size());
+		assertEquals("next line", 2.0, tag(cloud, "after").getScore(), 0.0);
+
+		client.close();
+		server.close();
+	}
+
+	public void testStopsOnCloudError() throws IOException {
+		final RuntimeException failure = new IllegalStateException("filter failed");
+		Cloud cloud = new Cloud();
+		cloud.addInputFilter(new FilterBase<Tag>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean accept(Tag tag) {
+				if (tag.getName().equals("boom"))
+					throw failure;
+				return true;
+			}
+		});
+		IngestServer server = new IngestServer(cloud);
+		Client client = new Client(server);
+		client.send("fine\nboom\n!flush\n");
+
+		// the server closes the connection instead of answering
+		assertNull("closed connection", client.in.readLine());
+		assertTrue("closed", server.isClosed());
+		assertTrue("error", server.getError() == failure);
+		assertEquals("batches", 0, server.getBatches());
+		server.close();
+		client.close();
+	}
+
+}
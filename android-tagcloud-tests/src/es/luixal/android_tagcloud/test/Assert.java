@@ -0,0 +1,64 @@
+package es.luixal.android_tagcloud.test;
+
+/**
+ * Checks of the tests, throwing an AssertionError when they fail.
+ */
+public final class Assert {
+
+	private Assert() {
+	}
+
+	public static void fail(String message) {
+		throw new AssertionError(message);
+	}
+
+	public static void assertTrue(String message, boolean condition) {
+		if (! condition)
+			fail(message);
+	}
+
+	public static void assertFalse(String message, boolean condition) {
+		if (condition)
+			fail(message);
+	}
+
+	public static void assertEquals(String message, Object expected, Object actual) {
+		if (expected == null ? actual != null : ! expected.equals(actual))
+			fail(message + ": expected <" + expected + "> but was <" + actual + ">");
+	}
+
+	public static void assertEquals(String message, long expected, long actual) {
+		if (expected != actual)
+			fail(message + ": expected <" + expected + "> but was <" + actual + ">");
+	}
+
+	public static void assertEquals(String message, double expected, double actual, double delta) {
+		if (Math.abs(expected - actual) > delta)
+			fail(message + ": expected <" + expected + "> but was <" + actual + ">");
+	}
+
+	public static void assertNull(String message, Object actual) {
+		if (actual != null)
+			fail(message + ": expected null but was <" + actual + ">");
+	}
+
+	public static void assertNotNull(String message, Object actual) {
+		if (actual == null)
+			fail(message + ": expected a value");
+	}
+
+	/**
+	 * Checks that a task throws an exception of the given class.
+	 */
+	public static void assertThrows(String message, Class<? extends Throwable> expected, Runnable task) {
+		try {
+			task.run();
+		} catch (Throwable t) {
+			if (expected.isInstance(t))
+				return;
+			fail(message + ": expected " + expected.getName() + " but got " + t);
+		}
+		fail(message + ": expected " + expected.getName());
+	}
+
+}
@@ -0,0 +1,77 @@
+package es.luixal.android_tagcloud.test;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the tests found in the class path directory: the public methods whose
+ * name starts with "test" of the classes whose name ends with "Test", each on a
+ * new instance. Exits with status 1 if a test fails.
+ *
+ * Usage: TestRunner [regex of the class names]
+ */
+public class TestRunner {
+
+	public static void main(String[] args) throws Exception {
+		Pattern include = (args.length > 0) ? Pattern.compile(args[0]) : null;
+		File root = new File(TestRunner.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		List<String> classes = new ArrayList<String>();
+		findClasses(root, "", classes);
+		Collections.sort(classes);
+
+		int run = 0;
+		int failed = 0;
+		for (String name : classes) {
+			if (include != null && ! include.matcher(name).find())
+				continue;
+			Class<?> cls = Class.forName(name);
+			Method[] methods = cls.getMethods();
+			Arrays.sort(methods, new Comparator<Method>() {
+				public int compare(Method m1, Method m2) {
+					return m1.getName().compareTo(m2.getName());
+				}
+			});
+			for (Method method : methods) {
+				if (! method.getName().startsWith("test") || method.getParameterTypes().length != 0
+						|| Modifier.isStatic(method.getModifiers()))
+					continue;
+				run++;
+				long start = System.nanoTime();
+				try {
+					method.invoke(cls.getDeclaredConstructor().newInstance());
+					System.out.println(String.format("ok   %s.%s (%d ms)", cls.getSimpleName(), method.getName(),
+							(System.nanoTime() - start) / 1000000));
+				} catch (InvocationTargetException e) {
+					failed++;
+					System.out.println(String.format("FAIL %s.%s", cls.getSimpleName(), method.getName()));
+					e.getCause().printStackTrace(System.out);
+				}
+			}
+		}
+		System.out.println(String.format("%d tests, %d failed", run, failed));
+		System.exit(failed > 0 ? 1 : 0);
+	}
+
+	private static void findClasses(File dir, String prefix, List<String> classes) {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				findClasses(file, prefix + name + ".", classes);
+			} else if (name.endsWith("Test.class") && name.indexOf('$') < 0) {
+				classes.add(prefix + name.substring(0, name.length() - ".class".length()));
+			}
+		}
+	}
+
+}
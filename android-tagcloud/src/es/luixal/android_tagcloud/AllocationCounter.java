@@ -0,0 +1,63 @@
+package es.luixal.android_tagcloud;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads the number of bytes allocated by the current thread, on VMs providing
+ * com.sun.management.ThreadMXBean (HotSpot, OpenJ9). The management classes are
+ * looked up by reflection, as they don't exist on Android.
+ * The VM counts allocations by default; where it doesn't, the counting is
+ * enabled when the class is loaded, so that the library's profiles and the
+ * benchmarks read the same counter.
+ */
+public final class AllocationCounter {
+
+	/** ThreadMXBean of the VM, null if allocations can't be read */
+	private static final Object THREADS;
+
+	/** ThreadMXBean.getThreadAllocatedBytes(long) */
+	private static final Method ALLOCATED_BYTES;
+
+	static {
+		Object threads = null;
+		Method allocatedBytes = null;
+		try {
+			threads = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+			Class<?> cls = Class.forName("com.sun.management.ThreadMXBean");
+			if (cls.isInstance(threads) && Boolean.TRUE.equals(cls.getMethod("isThreadAllocatedMemorySupported").invoke(threads))) {
+				cls.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(threads, Boolean.TRUE);
+				allocatedBytes = cls.getMethod("getThreadAllocatedBytes", long.class);
+			}
+		} catch (Throwable e) {
+			// management classes not available, or counting not allowed
+			allocatedBytes = null;
+		}
+		THREADS = (allocatedBytes == null) ? null : threads;
+		ALLOCATED_BYTES = allocatedBytes;
+	}
+
+	private AllocationCounter() {
+	}
+
+	/**
+	 * @return True if the allocations of the threads can be read
+	 */
+	public static boolean isSupported() {
+		return ALLOCATED_BYTES != null;
+	}
+
+	/**
+	 * @return The number of bytes allocated so far by the current thread, -1 if not supported
+	 */
+	public static long currentThread() {
+		if (ALLOCATED_BYTES == null)
+			return -1;
+
+		try {
+			return ((Long) ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId())).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+}
@@ -1,29 +1,34 @@
 package es.luixal.android_tagcloud;
 
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import es.luixal.android_tagcloud.filters.Filter;
+import es.luixal.android_tagcloud.filters.FilterBase;
+import es.luixal.android_tagcloud.metrics.CloudMetrics;
+import es.luixal.android_tagcloud.metrics.NoOpCloudMetrics;
 
 /**
  * Class representing a tag cloud.
  */
-public class Cloud implements Serializable {
+public class Cloud implements Serializable, Closeable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -53,6 +58,9 @@ public class Cloud implements Serializable {
     
 	/** Format string representing the default link. */
 	private String defaultLink = null;
+	
+	/** Compiled default link, built on first use. */
+	transient private LinkTemplate defaultLinkTemplate = null;
 
     /** Minimum weight value. */
     private double minWeight = 0.0;
@@ -94,6 +102,42 @@ public class Cloud implements Serializable {
     /** Filters to decide whether a tag should be displayed. */
     private Set<Filter<Tag>> outputFilters = new HashSet<Filter<Tag>>();
     
+    /** Whether the class of the cloud overrides the list based output hooks, checked when first needed. */
+    transient private boolean outputHooksChecked = false;
+    transient private boolean tagFilterOverridden = false;
+    transient private boolean listTrimOverridden = false;
+    
+    /** Metrics receiving the measures of the cloud operations. */
+    transient private CloudMetrics metrics = null;
+    
+    /** Memory budget in bytes, 0 or less for unlimited. */
+    private long maxBytes = 0;
+    
+    /** Estimated memory used by the tags, kept up to date once it has been computed. */
+    transient private long estimatedBytes = 0;
+    
+    /** Whether estimatedBytes has been computed. */
+    transient private boolean bytesTracked = false;
+    
+    /** Account of the cloud in its memory registry, null if the cloud is not registered. */
+    transient private MemoryRegistry.Account memoryAccount = null;
+
+    /** True once the cloud has been closed. */
+    transient private boolean closed = false;
+    
+    /** Ratio of the budget the cloud is reduced to when the budget is exceeded. */
+    private static final double EVICTION_RATIO = 0.9;
+    
+    /** Reverse of the order in which tags are evicted (lowest score first, then oldest first). */
+    private static final Comparator<EvictionCandidate> EVICTION_ORDER_REVERSED = new Comparator<EvictionCandidate>() {
+    	public int compare(EvictionCandidate c1, EvictionCandidate c2) {
+    		return c2.compareTo(c1.score, c1.time, c1.key);
+    	}
+    };
+    
+    /** Number of tags extracted from a text before they are filtered and added in bulk. */
+    private static final int TEXT_BATCH_SIZE = 1024;
+    
     /**
      * Default constructor.
      */
@@ -126,13 +170,39 @@ public class Cloud implements Serializable {
     	setLocale(locale);
     }
 
+    /**
+     * Constructs a Cloud object storing its tags in the given map, e.g. a
+     * ColumnarTagStore sharing a TermDictionary with other clouds, or an
+     * OffHeapTagStore for clouds of millions of tags.
+     * The map must be empty and is owned by the cloud: it is closed with the
+     * cloud if it is Closeable (see close()).
+     * A ColumnarTagStore or an OffHeapTagStore returns copies of its tags: the
+     * cloud puts back the tags whose case it adjusts in getTag() and tags(), but
+     * other changes made to the returned tags (score, link...) are not stored,
+     * unlike in a HashMap. Other maps must keep the tags they are given.
+     * @param tags The map of the tags
+     */
+    public Cloud(Map<String, Tag> tags) {
+    	if (! tags.isEmpty())
+    		throw new IllegalArgumentException("The map of the tags must be empty");
+    	setCloud(tags);
+    }
+
     /**
      * Copy constructor.
+     * The copy stores its tags in the same kind of map.
      * @param other Cloud to copy
      */
     public Cloud(Cloud other)
     {
-    	this.setCloud(new HashMap<String, Tag>(other.getCloud()));
+    	Map<String, Tag> tags = other.getCloud();
+    	if (tags instanceof ColumnarTagStore) {
+    		this.setCloud(new ColumnarTagStore((ColumnarTagStore) tags));
+    	} else if (tags instanceof OffHeapTagStore) {
+    		this.setCloud(new OffHeapTagStore((OffHeapTagStore) tags));
+    	} else {
+    		this.setCloud(new HashMap<String, Tag>(tags));
+    	}
         this.setMinWeight(other.getMinWeight());
         this.setMaxWeight(other.getMaxWeight());
         this.setMaxTagsToDisplay(other.getMaxTagsToDisplay());
@@ -146,6 +216,8 @@ public class Cloud implements Serializable {
         this.setRounding(other.getRounding());
         this.setInputFilters(new HashSet<Filter<Tag>>(other.getInputFilters()));
         this.setOutputFilters(new HashSet<Filter<Tag>>(other.getOutputFilters()));
+        this.setMaxBytes(other.getMaxBytes());
+        this.setMemoryRegistry(other.getMemoryRegistry());
     }
 
     /**
@@ -153,22 +225,114 @@ public class Cloud implements Serializable {
      * @param tag
      */
     public void addTag(Tag tag) {
-    	if (! isValid(tag))
-    		return;
+    	checkOpen();
+    	CloudMetrics metrics = getMetrics();
+    	if (metrics.isEnabled()) {
+    		long start = System.nanoTime();
+    		addTag(tag, metrics);
+    		metrics.ingestionTime(System.nanoTime() - start, 1);
+    		metrics.distinctTags(size());
+    		metrics.estimatedBytes(getEstimatedBytes());
+    	} else {
+    		addTag(tag, null);
+    	}
+    }
 
-    	String key = extractKey(tag.getName());
+    /**
+     * Adds a tag to the cloud.
+     * @param tag The tag to add
+     * @param metrics Metrics counting the tags, null if metrics are disabled
+     */
+    private void addTag(Tag tag, CloudMetrics metrics) {
+    	if (metrics != null) {
+    		metrics.tagsIngested(1);
+    	}
+
+    	if (! isValid(tag)) {
+    		if (metrics != null) {
+    			metrics.tagsRejected(null, 1);
+    		}
+    		return;
+    	}
 
     	// check whether the tag satisfies the input filters
     	for (Filter<Tag> filter : inputFilters) {
     		if (! filter.accept(tag)) {
+    			if (metrics != null) {
+    				metrics.tagsRejected(filter, 1);
+    			}
     			return;
     		}
     	}
 
-    	// if tag link is null, give a default link (if provided)
-		if (tag.getLink() == null) {
+    	if (mergeTag(tag) && metrics != null) {
+    		metrics.tagsMerged(1);
+    	}
+    	
+    	enforceBudget(metrics);
+    }
+
+    /**
+     * Adds the first n tags of an array to the cloud.
+     * Input filters are applied to the whole array before the tags are merged.
+     * The content of the array is modified.
+     * @param tags Array of tags
+     * @param n Number of tags to add
+     * @param metrics Metrics counting the tags, null if metrics are disabled
+     * @return The number of tags accepted by the input filters
+     */
+    private int addTags(Tag[] tags, int n, CloudMetrics metrics) {
+    	int count = 0;
+    	for (int i=0; i<n; i++) {
+    		if (isValid(tags[i])) {
+    			tags[count++] = tags[i];
+    		}
+    	}
+    	if (metrics != null) {
+    		metrics.tagsIngested(n);
+    		if (count < n) {
+    			metrics.tagsRejected(null, n - count);
+    		}
+    	}
+
+    	// keeps the tags satisfying the input filters
+    	Iterator<Filter<Tag>> it = inputFilters.iterator();
+    	while (it.hasNext() && count > 0) {
+    		Filter<Tag> filter = it.next();
+    		int accepted = FilterBase.filter(filter, tags, count);
+    		if (metrics != null && accepted < count) {
+    			metrics.tagsRejected(filter, count - accepted);
+    		}
+    		count = accepted;
+    	}
+
+    	int merged = 0;
+    	for (int i=0; i<count; i++) {
+    		if (mergeTag(tags[i])) {
+    			merged++;
+    		}
+    	}
+    	if (metrics != null && merged > 0) {
+    		metrics.tagsMerged(merged);
+    	}
+    	
+    	enforceBudget(metrics);
+    	return count;
+    }
+
+    /**
+     * Merges a valid tag, accepted by the input filters, with the cloud.
+     * @param tag The tag to merge
+     * @return True if a tag with the same name was already present in the cloud
+     */
+    private boolean mergeTag(Tag tag) {
+    	String key = extractKey(tag.getName());
+
+    	// if tag link is null, give a default link (if provided),
+		// expanded only when the link is requested
+		if (! tag.hasLink()) {
 			if (getDefaultLink() != null) {
-				tag.setLink(String.format(getDefaultLink(), tag.getName()));
+				tag.setLink(getDefaultLinkTemplate(), tag.getName());
 			}
 		}
 
@@ -179,8 +343,8 @@ public class Cloud implements Serializable {
     		tag.add(existingTag.getScore());
 
     		// if tag link is null, keep existing link
-    		if (tag.getLink() == null) {
-   				tag.setLink(existingTag.getLink());
+    		if (! tag.hasLink()) {
+   				tag.copyLink(existingTag);
     		}
 
     		// update tag date
@@ -189,7 +353,14 @@ public class Cloud implements Serializable {
     		}
     	}
 
+    	if (bytesTracked) {
+    		if (existingTag != null) {
+    			estimatedBytes -= charge(key, existingTag);
+    		}
+    		estimatedBytes += charge(key, tag);
+    	}
     	cloud.put(key, tag);
+    	return (existingTag != null);
     }
 
 	/**
@@ -216,10 +387,17 @@ public class Cloud implements Serializable {
     public void addTags(Collection<Tag> tags) {
 		if (tags == null)
 			return;
+		checkOpen();
 		
-		Iterator<Tag> it = tags.iterator();
-		while (it.hasNext()) {
-			addTag(it.next());
+		CloudMetrics metrics = getMetrics();
+		if (metrics.isEnabled()) {
+			long start = System.nanoTime();
+			addTags(tags.toArray(new Tag[tags.size()]), tags.size(), metrics);
+			metrics.ingestionTime(System.nanoTime() - start, tags.size());
+			metrics.distinctTags(size());
+			metrics.estimatedBytes(getEstimatedBytes());
+		} else {
+			addTags(tags.toArray(new Tag[tags.size()]), tags.size(), null);
 		}
 	}
 
@@ -233,22 +411,56 @@ public class Cloud implements Serializable {
 	public void addText(String text, String linkFormat) {
 		if (getWordPattern() == null || text == null)
 			return;
+		checkOpen();
+		
+		CloudMetrics metrics = getMetrics();
+		if (! metrics.isEnabled()) {
+			metrics = null;
+		}
+		long start = 0L;
+		if (metrics != null) {
+			metrics.textStarted();
+			start = System.nanoTime();
+		}
+		int words = 0;
+		int accepted = 0;
 		
     	Pattern pattern = Pattern.compile(getWordPattern());
 		Matcher matcher = pattern.matcher(text);
+		Tag[] batch = new Tag[TEXT_BATCH_SIZE];
+		int count = 0;
 		String word;
+		Tag tag;
 		
+		LinkTemplate template = null;
 		if (linkFormat != null) {
-			while (matcher.find()) {
-				word = matcher.group(0);
-				addTag(new Tag(word, String.format(linkFormat, word)));
+			template = linkFormat.equals(getDefaultLink()) ? getDefaultLinkTemplate() : new LinkTemplate(linkFormat);
+		}
+		
+		while (matcher.find()) {
+			word = matcher.group(0);
+			tag = new Tag(word, null);
+			if (template != null) {
+				// the link is expanded only when it is requested
+				tag.setLink(template, word);
 			}
-		} else {
-			while (matcher.find()) {
-				word = matcher.group(0);
-				addTag(new Tag(word, null));
+			batch[count++] = tag;
+			words++;
+			
+			if (count == batch.length) {
+				accepted += addTags(batch, count, metrics);
+				count = 0;
 			}
 		}
+		accepted += addTags(batch, count, metrics);
+		
+		if (metrics != null) {
+			long nanos = System.nanoTime() - start;
+			metrics.ingestionTime(nanos, words);
+			metrics.textAdded(text.length(), words, accepted, nanos);
+			metrics.distinctTags(size());
+			metrics.estimatedBytes(getEstimatedBytes());
+		}
 	}
 	
 	/**
@@ -262,14 +474,17 @@ public class Cloud implements Serializable {
 	/**
 	 * Returns the tag with the given name, or null if
 	 * the tag is not present in the cloud.
+	 * When the tags are stored in a ColumnarTagStore or an OffHeapTagStore, the
+	 * tag is a copy (see Cloud(Map)).
 	 * @param name Tag name
 	 * @return The tag with the specified name
 	 */
 	public Tag getTag(String name) {
+		checkOpen();
 		Tag tag = cloud.get(extractKey(name));
 		
 		if (tag != null) {
-			adjustTagCase(tag);
+			adjustReadTagCase(tag);
 		}
 		
 		return tag;
@@ -295,8 +510,14 @@ public class Cloud implements Serializable {
     public void removeTag(String name) {
     	if (name == null)
     		return;
+    	checkOpen();
    	
-    	cloud.remove(extractKey(name));
+    	String key = extractKey(name);
+    	Tag removed = cloud.remove(key);
+    	if (removed != null && bytesTracked) {
+    		estimatedBytes -= charge(key, removed);
+    		reportBytes();
+    	}
     }
 
     /**
@@ -338,84 +559,232 @@ public class Cloud implements Serializable {
 	 */
 	public List<Tag> tags(Comparator<? super Tag> comparator) {
 		List<Tag> result = getOutputTags();
-		Collections.sort(result, comparator);
+		TagSorter.sort(result, comparator);
 		return result;
 	}
 
+	/**
+	 * Computes the tags to display like tags(comparator) does, and reports for each
+	 * stage of the computation the number of tags dropped, the time spent and the
+	 * memory allocated (when the VM can tell, which Android VMs can't).
+	 * It helps to tune thresholds and filters. Subclasses overriding
+	 * getOutputTags(), or filterOutputTags() without overriding isOutputTagFiltered(),
+	 * are not taken into account.
+	 * @param comparator The Comparator that determines the ordering
+	 * @return The report, including the output tags
+	 */
+	public OutputProfile explain(Comparator<? super Tag> comparator) {
+		OutputProfile profile = new OutputProfile();
+		List<Tag> result = computeOutputTags(profile);
+		TagSorter.sort(result, comparator);
+		profile.stage(OutputProfile.SORT, null, result.size(), result.size());
+		profile.finished(result);
+		return profile;
+	}
+
     /**
      * Returns the list of tags composing the resulting cloud. 
      * @return List of tags to display.
      */
     protected List<Tag> getOutputTags() {
-    	List<Tag> emptyList = new LinkedList<Tag>();
-    	
-    	if (getCloud() == null)
-    		return emptyList;
-    	
-		double max = 0.0;
-		Date now = new Date();
-		List<Tag> result = new LinkedList<Tag>();
-    	Tag tag;
-    	
-		Iterator<Tag> it = getCloud().values().iterator();
-    	while (it.hasNext()) {
-    		tag = it.next();
-    		
-    		// Removes non valid tags from the cloud
-    		if (! isValid(tag)) {
-    			it.remove();
-    			continue;
-    		}
-    		
-    		// Ignores tags with score under the threshold
-    		if (tag.getScore() < getThreshold()) {
-    			continue;
-    		}
-    		
-    		// Ignores too old tags
-    		if (getTagLifetime() > 0 && tag.getDate() != null && (now.getTime() - tag.getDate().getTime()) > getTagLifetime()) {
-    			continue;
-    		}
-
-    		// Ignores tags not accepted by one or more output filters
-    		if (isOutputTagFiltered(tag)) {
-    			continue;
-    		}
-
-    		// Adds the tag to the temporary list
-    		result.add(tag);
-    		
-    		// Updates max score
-    		if (tag.getScore() > max) {
-    			max = tag.getScore();
-    		}
-    	}
-
-		if (Double.isInfinite(max) || Double.isNaN(max) || max <= 0.0)
-			return emptyList;
+    	return computeOutputTags(null);
+    }
 
-		it = result.iterator();
-		while (it.hasNext()) {
-			tag = it.next();
+    /**
+     * Computes the list of tags composing the resulting cloud.
+     * @param profile Report receiving the details of each stage, null if not needed
+     * @return List of tags to display.
+     */
+    private List<Tag> computeOutputTags(OutputProfile profile) {
+		checkOpen();
+		if (getCloud() == null)
+			return new ArrayList<Tag>(0);
+		
+		CloudMetrics metrics = getMetrics();
+		if (! metrics.isEnabled()) {
+			metrics = null;
+		}
+		long start = 0L;
+		int size = getCloud().size();
+		if (metrics != null) {
+			metrics.outputStarted();
+			start = System.nanoTime();
+		}
+		int invalid = 0;
+		int belowThreshold = 0;
+		int expired = 0;
+		
+		// allocated per call: a cloud doesn't keep an array as large as its largest size
+		Tag[] tags = new Tag[size];
+		int collected = 0;
+		int count = 0;
+		checkOutputHooks();
+		
+		try {
+			boolean filtered = tagFilterOverridden || (getOutputFilters() != null && ! getOutputFilters().isEmpty());
+			double threshold = getThreshold();
+			long lifetime = getTagLifetime();
+			long now = System.currentTimeMillis();
+			double max = 0.0;
+			Map.Entry<String, Tag> entry;
+			Tag tag;
 			
-			// Calculates normalized score
-			tag.normalize(max);
+			Iterator<Map.Entry<String, Tag>> it = getCloud().entrySet().iterator();
+			while (it.hasNext()) {
+				entry = it.next();
+				tag = entry.getValue();
+				
+				// Removes non valid tags from the cloud
+				if (! isValid(tag)) {
+					it.remove();
+					invalid++;
+					if (bytesTracked) {
+						estimatedBytes -= charge(entry.getKey(), tag);
+					}
+					continue;
+				}
+				
+				// Ignores tags with score under the threshold
+				if (tag.getScore() < threshold) {
+					belowThreshold++;
+					continue;
+				}
+				
+				// Ignores too old tags
+				if (lifetime > 0 && tag.getDate() != null && (now - tag.getDate().getTime()) > lifetime) {
+					expired++;
+					continue;
+				}
+	
+				tags[collected++] = tag;
+				
+				// Updates max score (computed after output filters if there are any)
+				if (! filtered && tag.getScore() > max) {
+					max = tag.getScore();
+				}
+			}
+	
+			count = collected;
+			if (profile != null) {
+				profile.scanned();
+				profile.counted(OutputProfile.INVALID, size, size - invalid);
+				profile.counted(OutputProfile.THRESHOLD, size - invalid, collected + expired);
+				profile.counted(OutputProfile.TAG_LIFETIME, collected + expired, collected);
+			}
 			
-			// Ignores tags with score under the threshold
-    		if (tag.getNormScore() < getNormThreshold()) {
-    			it.remove();
-    			continue;
-    		}
-    		
-    		// Sets the tag weight basing on the normalized score
-    		tag.setWeight(getMinWeight() + tag.getNormScore() * (getMaxWeight() - getMinWeight()));
+			if (filtered) {
+				// Ignores tags not accepted by one or more output filters
+				if (profile == null || tagFilterOverridden) {
+					int accepted = filterOutputTags(tags, count);
+					if (profile != null) {
+						profile.stage("isOutputTagFiltered", null, count, accepted);
+					}
+					count = accepted;
+				} else {
+					for (Filter<Tag> filter : getOutputFilters()) {
+						int accepted = FilterBase.filter(filter, tags, count);
+						profile.stage(filter.getClass().getSimpleName(), filter, count, accepted);
+						count = accepted;
+					}
+				}
+	
+				for (int i=0; i<count; i++) {
+					if (tags[i].getScore() > max) {
+						max = tags[i].getScore();
+					}
+				}
+			}
+	
+			if (Double.isInfinite(max) || Double.isNaN(max) || max <= 0.0) {
+				if (profile != null) {
+					profile.stage(OutputProfile.NORM_THRESHOLD, null, count, 0);
+				}
+				count = 0;
+				return new ArrayList<Tag>(0);
+			}
+	
+			double normThreshold = getNormThreshold();
+			double minWeight = getMinWeight();
+			double weightRange = getMaxWeight() - getMinWeight();
+			int kept = 0;
+			for (int i=0; i<count; i++) {
+				tag = tags[i];
+				
+				// Calculates normalized score
+				tag.normalize(max);
+				
+				// Ignores tags with score under the threshold
+				if (tag.getNormScore() < normThreshold) {
+					continue;
+				}
+				
+				// Sets the tag weight basing on the normalized score
+				tag.setWeight(minWeight + tag.getNormScore() * weightRange);
+				tags[kept++] = tag;
+			}
+			if (profile != null) {
+				profile.stage(OutputProfile.NORM_THRESHOLD, null, count, kept);
+			}
+	
+			List<Tag> result;
+			if (listTrimOverridden) {
+				List<Tag> list = new ArrayList<Tag>(kept);
+				for (int i=0; i<kept; i++) {
+					list.add(tags[i]);
+				}
+				result = new ArrayList<Tag>(removeExceedingTags(list));
+				count = result.size();
+			} else {
+				count = removeExceedingTags(tags, kept);
+				result = new ArrayList<Tag>(count);
+				for (int i=0; i<count; i++) {
+					result.add(tags[i]);
+				}
+			}
+			if (profile != null) {
+				profile.stage(OutputProfile.MAX_TAGS_TO_DISPLAY, null, kept, count);
+			}
+			return result;
+		} finally {
+			if (metrics != null) {
+				metrics.outputTime(System.nanoTime() - start, size, count);
+				if (expired > 0) {
+					metrics.tagsExpired(expired);
+				}
+				metrics.distinctTags(size());
+				metrics.estimatedBytes(getEstimatedBytes());
+			}
 		}
+	}
 
-    	result = removeExceedingTags(result);
-    	
-    	return result;
-    }
-    
+	/**
+	 * Checks whether the class of the cloud overrides isOutputTagFiltered(Tag) or
+	 * removeExceedingTags(List), which the output computation then calls instead
+	 * of the array based methods.
+	 */
+	private void checkOutputHooks() {
+		if (outputHooksChecked)
+			return;
+		tagFilterOverridden = overrides("isOutputTagFiltered", Tag.class);
+		listTrimOverridden = overrides("removeExceedingTags", List.class);
+		outputHooksChecked = true;
+	}
+
+	/**
+	 * @return True if a subclass of Cloud, up to the class of the cloud, declares the method
+	 */
+	private boolean overrides(String name, Class<?> parameterType) {
+		for (Class<?> cls = getClass(); cls != Cloud.class; cls = cls.getSuperclass()) {
+			try {
+				cls.getDeclaredMethod(name, parameterType);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// not declared by this class
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Returns a list containing all tags present in the cloud,
 	 * sorted using the given comparator.
@@ -425,7 +794,7 @@ public class Cloud implements Serializable {
 	 */
 	public List<Tag> allTags(Comparator<? super Tag> comparator) {
 		List<Tag> result = allTags();
-		Collections.sort(result, comparator);
+		TagSorter.sort(result, comparator);
 		return result;
 	}
 
@@ -435,6 +804,7 @@ public class Cloud implements Serializable {
    	 * @return A List containing all cloud tags
 	 */
 	public List<Tag> allTags() {
+		checkOpen();
 		return new ArrayList<Tag>(getCloud().values());
 	}
 
@@ -442,6 +812,7 @@ public class Cloud implements Serializable {
 	 * @return The total number of tags contained in the cloud
 	 */
 	public int size() {
+		checkOpen();
 		if (getCloud() == null) {
 			return 0;
 		} else {
@@ -453,8 +824,193 @@ public class Cloud implements Serializable {
 	 * Removes all tags in the cloud.
 	 */
 	public void clear() {
+		checkOpen();
 		if (getCloud() != null) {
 			getCloud().clear();
+			estimatedBytes = 0;
+			reportBytes();
+		}
+	}
+
+	/**
+	 * Returns the estimated memory used by the tags of the cloud: tag objects, names,
+	 * keys, links, dates and map entries. Objects shared between tags (link templates,
+	 * terms of the dictionary of a ColumnarTagStore) are not counted.
+	 * The size is computed when it is first requested, then kept up to date as tags
+	 * are added and removed. Changes made directly to the map returned by getCloud()
+	 * are not accounted.
+	 * @return The estimated number of bytes
+	 */
+	public long getEstimatedBytes() {
+		checkOpen();
+		if (! bytesTracked) {
+			long bytes = 0;
+			if (getCloud() != null) {
+				for (Map.Entry<String, Tag> entry : getCloud().entrySet()) {
+					bytes += charge(entry.getKey(), entry.getValue());
+				}
+			}
+			estimatedBytes = bytes;
+			bytesTracked = true;
+		}
+		return estimatedBytes;
+	}
+
+	/**
+	 * Evicts tags if the cloud exceeds its budget or if its memory registry exceeds its budget.
+	 * @param metrics Metrics counting the evicted tags, null if metrics are disabled
+	 */
+	private void enforceBudget(CloudMetrics metrics) {
+		if (maxBytes <= 0 && memoryAccount == null)
+			return;
+
+		long bytes = getEstimatedBytes();
+		long target = -1;
+		if (maxBytes > 0 && bytes > maxBytes) {
+			target = (long) (maxBytes * EVICTION_RATIO);
+		}
+		if (memoryAccount != null) {
+			memoryAccount.registry.update(memoryAccount, bytes);
+			long share = memoryAccount.registry.getTargetBytes(bytes, EVICTION_RATIO);
+			if (share >= 0 && (target < 0 || share < target)) {
+				target = share;
+			}
+		}
+		
+		if (target >= 0) {
+			evict(target, metrics);
+		}
+	}
+
+	/**
+	 * Removes the least important tags (lowest score, then oldest) until the
+	 * estimated memory of the cloud is at most the given size.
+	 * Tags are evicted below the budget, so that the next tags don't trigger an
+	 * eviction each.
+	 * The tags to evict are selected in one pass over the cloud, keeping the
+	 * least important ones in a heap, without sorting the whole cloud.
+	 * @param targetBytes The size to reach
+	 * @param metrics Metrics counting the evicted tags, null if metrics are disabled
+	 */
+	private void evict(long targetBytes, CloudMetrics metrics) {
+		long start = 0L;
+		if (metrics != null) {
+			metrics.evictionStarted();
+			start = System.nanoTime();
+		}
+		long bytes = getEstimatedBytes();
+		long excess = bytes - targetBytes;
+		
+		// the least important tags whose sizes add up to the excess, most important at the head
+		PriorityQueue<EvictionCandidate> candidates = new PriorityQueue<EvictionCandidate>(16, EVICTION_ORDER_REVERSED);
+		long selected = 0;
+		Iterator<Map.Entry<String, Tag>> it = getCloud().entrySet().iterator();
+		while (excess > 0 && it.hasNext()) {
+			Map.Entry<String, Tag> entry = it.next();
+			String key = entry.getKey();
+			Tag tag = entry.getValue();
+			double score = tag.getScore();
+			long time = (tag.getDate() == null) ? Long.MIN_VALUE : tag.getDate().getTime();
+			if (selected < excess || candidates.peek().compareTo(score, time, key) > 0) {
+				EvictionCandidate candidate = new EvictionCandidate(key, score, time, charge(key, tag));
+				candidates.add(candidate);
+				selected += candidate.bytes;
+				while (selected - candidates.peek().bytes >= excess) {
+					selected -= candidates.poll().bytes;
+				}
+			}
+		}
+		
+		int evicted = candidates.size();
+		for (EvictionCandidate candidate : candidates) {
+			getCloud().remove(candidate.key);
+		}
+		estimatedBytes -= selected;
+		reportBytes();
+		
+		if (metrics != null) {
+			metrics.tagsEvicted(evicted, bytes - estimatedBytes, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Closes the cloud: closes the map of its tags if it is Closeable (e.g. an
+	 * OffHeapTagStore, whose memory is then released), and removes the cloud from
+	 * its memory registry. Methods reading or modifying the tags then throw an
+	 * IllegalStateException. Closing the cloud again has no effect.
+	 */
+	public void close() {
+		if (closed)
+			return;
+
+		closed = true;
+		if (memoryAccount != null) {
+			memoryAccount.registry.close(memoryAccount);
+			memoryAccount = null;
+		}
+		if (cloud instanceof Closeable) {
+			try {
+				((Closeable) cloud).close();
+			} catch (IOException e) {
+				throw new IllegalStateException(e.toString());
+			}
+		}
+	}
+
+	/**
+	 * @return True if the cloud has been closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("The cloud is closed");
+	}
+
+	/**
+	 * Returns the size charged to the cloud for a tag: estimated and recorded in
+	 * the tag the first time, then the recorded size, so that the cloud subtracts
+	 * what it added although the tag changes meanwhile (link expanded when first
+	 * requested, name changed to the case of the cloud). Tags read from a
+	 * ColumnarTagStore or an OffHeapTagStore are created from the stored data, and
+	 * are estimated each time from the same data.
+	 * @param key The map key of the tag
+	 * @param tag The tag
+	 * @return The estimated number of bytes
+	 */
+	private long charge(String key, Tag tag) {
+		int bytes = tag.getChargedBytes();
+		if (bytes == 0) {
+			bytes = (int) Math.min(estimate(key, tag), Integer.MAX_VALUE);
+			tag.setChargedBytes(bytes);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Estimates the memory used by a tag and its map entry.
+	 * @param key The map key of the tag
+	 * @param tag The tag
+	 * @return The estimated number of bytes
+	 */
+	private long estimate(String key, Tag tag) {
+		if (cloud instanceof ColumnarTagStore) {
+			return TagSizes.estimateRow(tag);
+		} else if (cloud instanceof OffHeapTagStore) {
+			return TagSizes.estimateRecord(key, tag);
+		} else {
+			return TagSizes.estimate(key, tag);
+		}
+	}
+
+	/**
+	 * Reports the estimated memory of the cloud to its memory registry.
+	 */
+	private void reportBytes() {
+		if (memoryAccount != null) {
+			memoryAccount.registry.update(memoryAccount, getEstimatedBytes());
 		}
 	}
 
@@ -487,6 +1043,38 @@ public class Cloud implements Serializable {
     	}
 	}
 	
+	/**
+	 * Adjusts the case of a tag read from the map. The copies returned by a
+	 * ColumnarTagStore or an OffHeapTagStore are put back when their name changes,
+	 * as the tags of a HashMap change in place. They are found by the key of
+	 * their name, which is their key unless the tag case has been changed from
+	 * CASE_SENSITIVE since they were added; the others keep their stored case.
+	 * @param tag The tag read from the map
+	 */
+	private void adjustReadTagCase(Tag tag) {
+		if (! (cloud instanceof ColumnarTagStore || cloud instanceof OffHeapTagStore)) {
+			adjustTagCase(tag);
+			return;
+		}
+		String name = tag.getName();
+		adjustTagCase(tag);
+		if (name.equals(tag.getName()))
+			return;
+
+		String key = extractKey(name);
+		Tag stored = cloud.get(key);
+		if (stored == null || ! name.equals(stored.getName()))
+			return;
+		cloud.put(key, tag);
+		if (bytesTracked) {
+			long bytes = estimate(key, tag) - estimate(key, stored);
+			if (bytes != 0) {
+				estimatedBytes += bytes;
+				reportBytes();
+			}
+		}
+	}
+
 	/**
 	 * Returns a string where the first letter is upper case, the other letters are lower case.
 	 * @param s
@@ -503,46 +1091,71 @@ public class Cloud implements Serializable {
 	/**
 	 * Removes the exceeding tags when the resulting cloud has more tags
 	 * than the maximum allowed, and adjust the case of the tags. 
+	 * Called by the output computation instead of removeExceedingTags(Tag[], int)
+	 * when a subclass overrides it.
 	 * @param tags List of tags
 	 */
 	protected List<Tag> removeExceedingTags(List<Tag> tags) {
-		if (getMaxTagsToDisplay() < 0 || size() <= getMaxTagsToDisplay()) {
-			// only adjusts tag case
-	    	Iterator<Tag> it = tags.iterator();  	
-	    	while (it.hasNext()) {
-	    		adjustTagCase(it.next());
-	    	}
-	    	
-	    	return tags;
-		} else {
-			// removes less important elements and adjusts tag case
-			List<Tag> result = new LinkedList<Tag>();
-			
-			Collections.sort(tags, new Tag.ScoreComparatorDesc());
-			
-			Tag tag;
-			int counter = 1;
-			
-	    	Iterator<Tag> it = tags.iterator();  	
-	    	while (it.hasNext()) {
-	    		tag = it.next();
-	    		
-	    		if (counter <= getMaxTagsToDisplay()) {
-	    			adjustTagCase(tag);
-	    			result.add(tag);
-	    		} else {
-	    			break;
-	    		}
-	    		
-	    		counter++;
-	    	}
-	    	
-	    	return result;
+		Tag[] array = tags.toArray(new Tag[tags.size()]);
+		int count = removeExceedingTags(array, array.length);
+		return new ArrayList<Tag>(Arrays.asList(array).subList(0, count));
+	}
+
+	/**
+	 * Removes the exceeding tags when the resulting cloud has more tags
+	 * than the maximum allowed, and adjust the case of the tags.
+	 * The remaining tags are moved at the beginning of the array, sorted by
+	 * decreasing score if some tags have been removed.
+	 * @param tags Array of tags
+	 * @param n Number of tags in the array
+	 * @return The number of remaining tags
+	 */
+	protected int removeExceedingTags(Tag[] tags, int n) {
+		if (getMaxTagsToDisplay() >= 0 && size() > getMaxTagsToDisplay()) {
+			// keeps the most important tags
+			n = TagSorter.selectTopScores(tags, n, getMaxTagsToDisplay());
+		}
+		
+		// adjusts tag case
+		for (int i=0; i<n; i++) {
+			adjustReadTagCase(tags[i]);
+		}
+		
+		return n;
+	}
+
+	/**
+	 * Moves the tags satisfying output filters at the beginning of the array. 
+	 * If a subclass overrides isOutputTagFiltered(), the tags are checked with it.
+	 * @param tags Tags to check
+	 * @param n Number of tags to check
+	 * @return The number of tags accepted
+	 */
+	protected int filterOutputTags(Tag[] tags, int n) {
+		checkOutputHooks();
+		if (tagFilterOverridden) {
+			int accepted = 0;
+			for (int i=0; i<n; i++) {
+				if (! isOutputTagFiltered(tags[i])) {
+					tags[accepted++] = tags[i];
+				}
+			}
+			return accepted;
 		}
+		if (getOutputFilters() == null)
+			return n;
+		
+		Iterator<Filter<Tag>> it = getOutputFilters().iterator();
+		while (it.hasNext() && n > 0) {
+			n = FilterBase.filter(it.next(), tags, n);
+		}
+		
+		return n;
 	}
 
 	/**
 	 * Checks whether a tag to display satisfies output filters. 
+	 * Called for each tag by filterOutputTags() when a subclass overrides it.
 	 * @param tag The tag to check
 	 * @return True if the tag should be discarded, false if it should be accepted
 	 */
@@ -712,6 +1325,8 @@ public class Cloud implements Serializable {
 	 */
 	protected void setCloud(Map<String, Tag> cloud) {
 		this.cloud = cloud;
+		this.bytesTracked = false;
+		reportBytes();
 	}
 
 	/**
@@ -806,6 +1421,17 @@ public class Cloud implements Serializable {
 	 */
 	public void setDefaultLink(String defaultLink) {
 		this.defaultLink = defaultLink;
+		this.defaultLinkTemplate = null;
+	}
+
+	/**
+	 * @return The compiled default link, null if there is no default link
+	 */
+	private LinkTemplate getDefaultLinkTemplate() {
+		if (defaultLinkTemplate == null && defaultLink != null) {
+			defaultLinkTemplate = new LinkTemplate(defaultLink);
+		}
+		return defaultLinkTemplate;
 	}
 
 	/**
@@ -850,6 +1476,64 @@ public class Cloud implements Serializable {
 		this.rounding = rounding;
 	}
 
+	/**
+	 * @return The metrics receiving the measures of the cloud operations
+	 */
+	public CloudMetrics getMetrics() {
+		return (metrics == null) ? NoOpCloudMetrics.INSTANCE : metrics;
+	}
+
+	/**
+	 * Sets the metrics receiving the measures of the cloud operations.
+	 * Metrics are not serialized with the cloud.
+	 * @param metrics The metrics, null to disable them
+	 */
+	public void setMetrics(CloudMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return The memory budget in bytes, 0 or less for unlimited
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Sets the memory budget of the cloud. When the estimated memory of the cloud
+	 * (see getEstimatedBytes()) exceeds the budget after tags are added, the least
+	 * important tags (lowest score, then oldest) are evicted until the cloud uses
+	 * 90% of the budget.
+	 * @param maxBytes The budget in bytes, 0 or less for unlimited
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return The memory registry accounting the cloud, null if the cloud is not registered
+	 */
+	public MemoryRegistry getMemoryRegistry() {
+		return (memoryAccount == null) ? null : memoryAccount.registry;
+	}
+
+	/**
+	 * Registers the cloud in a memory registry, which enforces a budget for a group of clouds
+	 * (e.g. MemoryRegistry.getDefault() for the whole process).
+	 * Registrations are not serialized with the cloud.
+	 * @param registry The registry, null to unregister the cloud
+	 */
+	public void setMemoryRegistry(MemoryRegistry registry) {
+		if (memoryAccount != null) {
+			memoryAccount.registry.close(memoryAccount);
+			memoryAccount = null;
+		}
+		if (registry != null) {
+			memoryAccount = registry.open(this);
+			reportBytes();
+		}
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -860,6 +1544,7 @@ public class Cloud implements Serializable {
 		result = prime * result
 				+ ((inputFilters == null) ? 0 : inputFilters.hashCode());
 		result = prime * result + ((locale == null) ? 0 : locale.hashCode());
+		result = prime * result + (int) (maxBytes ^ (maxBytes >>> 32));
 		result = prime * result + maxTagsToDisplay;
 		long temp;
 		temp = Double.doubleToLongBits(maxWeight);
@@ -910,6 +1595,8 @@ public class Cloud implements Serializable {
 				return false;
 		} else if (!locale.equals(other.locale))
 			return false;
+		if (maxBytes != other.maxBytes)
+			return false;
 		if (maxTagsToDisplay != other.maxTagsToDisplay)
 			return false;
 		if (Double.doubleToLongBits(maxWeight) != Double
@@ -949,4 +1636,38 @@ public class Cloud implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Tag considered for eviction, with the values it's ordered by.
+	 */
+	private static final class EvictionCandidate {
+
+		final String key;
+		final double score;
+		final long time;
+		final long bytes;
+
+		EvictionCandidate(String key, double score, long time, long bytes) {
+			this.key = key;
+			this.score = score;
+			this.time = time;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Compares the candidate with a tag in the eviction order: lowest score
+		 * first, then oldest first (tags without a date first), then by key.
+		 */
+		int compareTo(double score, long time, String key) {
+			int comparison = Double.compare(this.score, score);
+			if (comparison == 0) {
+				comparison = (this.time < time) ? -1 : ((this.time == time) ? 0 : 1);
+			}
+			if (comparison == 0) {
+				comparison = this.key.compareTo(key);
+			}
+			return comparison;
+		}
+
+	}
+
 }
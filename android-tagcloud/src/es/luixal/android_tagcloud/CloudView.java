@@ -1,74 +1,595 @@
 package es.luixal.android_tagcloud;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Looper;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
 import android.text.style.AbsoluteSizeSpan;
 import android.util.AttributeSet;
 import android.widget.TextView;
 
+import es.luixal.android_tagcloud.layout.CloudLayout;
+import es.luixal.android_tagcloud.layout.LayoutResult;
+import es.luixal.android_tagcloud.layout.LayoutTask;
+import es.luixal.android_tagcloud.layout.MeasureCache;
+import es.luixal.android_tagcloud.layout.ResumableLayout;
+import es.luixal.android_tagcloud.layout.Viewport;
+import es.luixal.android_tagcloud.layout.WordBox;
+import es.luixal.android_tagcloud.schedule.Clock;
+import es.luixal.android_tagcloud.schedule.RefreshScheduler;
+import es.luixal.android_tagcloud.schedule.Task;
+import es.luixal.android_tagcloud.schedule.TaskRunner;
+
+/**
+ * TextView displaying a tag cloud.
+ * The text is computed on a background thread by refresh(). As the cloud is read
+ * by that thread, it must be modified through the view, or while synchronizing
+ * on the cloud (see getCloud()).
+ * By default, the cloud is displayed as a spanned text wrapped by the TextView.
+ * With a cloud layout (see setCloudLayout()), the view places and draws the
+ * words itself. It then only draws the words of the visible part of the view,
+ * so that a large cloud in a scroll container costs in proportion to what is
+ * on screen. With a frame budget (see setFrameBudget()), the words are placed
+ * on the UI thread a bit at each frame, and shown as they are placed.
+ * Tags added through the view mark it dirty: it's refreshed at the next frame,
+ * once for all the tags added meanwhile (see setRefreshInterval()).
+ */
 public class CloudView extends TextView {
 
+	/** Executor shared by the views that don't have their own */
+	private static ExecutorService defaultExecutor = null;
+
 	private Cloud cloud;
-	
-	
+
+	/** Executor computing the render plans */
+	private Executor executor = null;
+
+	/** Number of the last refresh, older refreshes are cancelled */
+	private volatile int generation = 0;
+
+	/** Plan of the text displayed by the view, null if it hasn't been refreshed */
+	private volatile RenderPlan lastPlan = null;
+
+	/**
+	 * Spans already created, by text size and by occurrence of the size in the text.
+	 * Spans are immutable, so the same ones are set again on each refresh.
+	 * Only used on the UI thread.
+	 */
+	private final ArrayList<ArrayList<AbsoluteSizeSpan>> spans = new ArrayList<ArrayList<AbsoluteSizeSpan>>();
+
+	/** Layout of the words, null to display a spanned text */
+	private CloudLayout cloudLayout = null;
+
+	/** Words placed by the last layout, only used on the UI thread */
+	private LayoutResult layoutResult = null;
+
+	/** Words of the last layout by position, only used on the UI thread */
+	private Viewport viewport = null;
+
+	/** Space around the visible part of the view whose words are looked up with it */
+	private float viewportMargin = -1;
+
+	/** Number of word widths cached, 0 to size the cache from the number of words */
+	private int measureCacheCapacity = 0;
+
+	/** Time of the layout at each frame in nanoseconds, 0 to place the words on the executor */
+	private long frameBudget = 0;
+
+	/** Runner of the layouts placed at each frame, null until one is placed */
+	private TaskRunner runner = null;
+
+	/** Frames of the view, null until one is needed */
+	private ViewFrameScheduler frames = null;
+
+	/** Refreshes requested by the tags added through the view, null until a tag is added */
+	private RefreshScheduler refreshes = null;
+
+	/** Minimum time between two refreshes requested by added tags in nanoseconds, 0 for one per frame */
+	private long refreshInterval = 0;
+
+	/** Requests a refresh from the UI thread */
+	private final Runnable refreshRequest = new Runnable() {
+		public void run() {
+			getRefreshScheduler().request();
+		}
+	};
+
+	/** Visible part of the view, while it's drawn */
+	private final Rect clip = new Rect();
+
+	/** Measures of the words, kept while the layout is set */
+	private MeasureCache measurer = null;
+
+	/** Paint of the words, and scale of their sizes */
+	private Paint wordPaint = null;
+	private float density = 1;
+
 	public CloudView(Context context) {
 		super(context);
 		this.cloud = new Cloud();
 		this.cloud.setMaxWeight(80d);
 	}
-	
+
 	public CloudView(Context context, AttributeSet attrs) {
 		super(context, attrs);
 		this.cloud = new Cloud();
 		this.cloud.setMaxWeight(80d);
 	}
-	
+
 	public CloudView(Context context, AttributeSet attrs, int defStyle) {
 		super(context, attrs, defStyle);
 		this.cloud = new Cloud();
 		this.cloud.setMaxWeight(80d);
 	}
-	
+
+	/**
+	 * Updates the text of the view with the current tags of the cloud.
+	 * The text is computed on the executor of the view, then set on the UI thread.
+	 * If refresh() is called again before the text is set, the older refresh is
+	 * cancelled. If the text and the sizes are the same as the ones displayed,
+	 * the text is not set again. Pending refreshes requested by added tags are
+	 * cancelled. Must be called on the UI thread.
+	 */
 	public void refresh() {
-		this.setText(this.genSpannableString());
+		final int refresh = ++generation;
+		if (refreshes != null) {
+			refreshes.cancel();
+		}
+		if (runner != null) {
+			runner.cancel();
+		}
+		if (cloudLayout != null) {
+			refreshLayout(refresh, cloudLayout);
+			return;
+		}
+
+		getExecutor().execute(new Runnable() {
+			public void run() {
+				if (refresh != generation)
+					return;
+
+				final RenderPlan plan;
+				synchronized (cloud) {
+					plan = RenderPlan.build(cloud);
+				}
+
+				if (refresh != generation || plan.equals(lastPlan))
+					return;
+
+				post(new Runnable() {
+					public void run() {
+						if (refresh == generation) {
+							lastPlan = plan;
+							setText(genSpannableString(plan));
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Places the words on the executor of the view, then draws them on the UI thread.
+	 * With a frame budget, the words are placed on the UI thread, a bit at each frame.
+	 */
+	private void refreshLayout(final int refresh, final CloudLayout layout) {
+		final float width = getWidth() - getPaddingLeft() - getPaddingRight();
+		if (width <= 0) {
+			// refreshed again when the view gets its size
+			return;
+		}
+		if (measurer == null) {
+			wordPaint = new Paint(getPaint());
+			density = getResources().getDisplayMetrics().density;
+			measurer = new MeasureCache(new PaintTextMeasurer(wordPaint, density),
+					(measureCacheCapacity > 0) ? measureCacheCapacity : MeasureCache.DEFAULT_CAPACITY);
+		}
+		final MeasureCache measurer = this.measurer;
+		final boolean sizedFromWords = measureCacheCapacity <= 0;
+		final float margin = viewportMargin;
+		final boolean progressive = frameBudget > 0 && layout instanceof ResumableLayout;
+
+		getExecutor().execute(new Runnable() {
+			public void run() {
+				if (refresh != generation)
+					return;
+
+				// the weights of the output tags change with the next computation
+				List<Tag> tags;
+				synchronized (cloud) {
+					List<Tag> output = cloud.getOutputTags();
+					tags = new ArrayList<Tag>(output.size());
+					for (Tag tag : output) {
+						tags.add(new Tag(tag));
+					}
+				}
+
+				if (refresh != generation)
+					return;
+
+				if (sizedFromWords) {
+					// keeps the widths of the words of this layout and of the previous one
+					measurer.ensureCapacity(2 * tags.size());
+				}
+
+				if (progressive) {
+					final List<Tag> copies = tags;
+					post(new Runnable() {
+						public void run() {
+							if (refresh == generation) {
+								startLayout(refresh, ((ResumableLayout) layout).start(copies, measurer, width), margin);
+							}
+						}
+					});
+					return;
+				}
+
+				final LayoutResult result = layout.layout(tags, measurer, width);
+				final Viewport index = new Viewport(result, margin);
+				post(new Runnable() {
+					public void run() {
+						if (refresh == generation) {
+							showLayout(result, index);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Places the words at each frame, within the frame budget.
+	 * Until the layout is done, the words placed so far are drawn without a viewport.
+	 */
+	private void startLayout(final int refresh, LayoutTask task, final float margin) {
+		if (runner == null) {
+			runner = new TaskRunner(getFrameScheduler(), Clock.SYSTEM, frameBudget);
+		}
+		runner.setBudgetNanos(frameBudget);
+		runner.start(task, new TaskRunner.Listener() {
+			public void stepped(Task task, boolean done) {
+				if (refresh != generation)
+					return;
+				LayoutResult result = ((LayoutTask) task).getResult();
+				showLayout(result, done ? new Viewport(result, margin) : null);
+			}
+		});
+	}
+
+	private void showLayout(LayoutResult result, Viewport index) {
+		boolean resized = (layoutResult == null) || (layoutResult.getHeight() != result.getHeight());
+		layoutResult = result;
+		viewport = index;
+		if (resized) {
+			requestLayout();
+		}
+		invalidate();
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		if (cloudLayout != null && w != oldw) {
+			refresh();
+		}
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+		if (cloudLayout != null && layoutResult != null) {
+			int height = (int) Math.ceil(layoutResult.getHeight()) + getPaddingTop() + getPaddingBottom();
+			setMeasuredDimension(getMeasuredWidth(), resolveSize(height, heightMeasureSpec));
+		}
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if (cloudLayout != null && layoutResult != null && canvas.getClipBounds(clip)) {
+			float left = getPaddingLeft();
+			float top = getPaddingTop();
+			wordPaint.setColor(getCurrentTextColor());
+			boolean indexed = viewport != null;
+			List<WordBox> words = indexed ? viewport.getWords(clip.top - top, clip.bottom - top) : layoutResult.getBoxes();
+			for (int i=0; i<words.size(); i++) {
+				WordBox box = words.get(i);
+				if (!indexed && (box.getBottom() < clip.top - top || box.getTop() > clip.bottom - top))
+					continue;
+				wordPaint.setTextSize(box.getSize() * density);
+				canvas.drawText(box.getText(), left + box.getLeft(), top + box.getBaseline(), wordPaint);
+			}
+		}
 	}
-	
+
+	/**
+	 * @return The layout of the words, null if the cloud is displayed as a spanned text
+	 */
+	public CloudLayout getCloudLayout() {
+		return cloudLayout;
+	}
+
+	/**
+	 * Sets the layout of the words, e.g. a FlowLayout, and refreshes the view.
+	 * The view then draws the words itself, so the TextView text is cleared,
+	 * and its height is the height of the layout. The width of the layout is
+	 * the width of the view, which should not depend on its content.
+	 * The words are measured with the paint of the view at the time the layout
+	 * is set; measures are cached while the layout is set.
+	 * Layouts extending IncrementalLayout remember the last placement, so that a
+	 * refresh only places the words of the tags that changed: an instance should
+	 * not be shared between views.
+	 * Must be called on the UI thread.
+	 * @param cloudLayout The layout, null to display the cloud as a spanned text
+	 */
+	public void setCloudLayout(CloudLayout cloudLayout) {
+		this.cloudLayout = cloudLayout;
+		this.layoutResult = null;
+		this.viewport = null;
+		this.lastPlan = null;
+		if (cloudLayout == null) {
+			measurer = null;
+			wordPaint = null;
+		} else {
+			setText("");
+		}
+		refresh();
+	}
+
+	/**
+	 * @return The space around the visible part of the view whose words are looked up with it,
+	 * negative for the height of the visible part
+	 */
+	public float getViewportMargin() {
+		return viewportMargin;
+	}
+
+	/**
+	 * Sets the space around the visible part of the view whose words are looked
+	 * up with it, in pixels. While the view scrolls within this space, the same
+	 * words are drawn without looking them up again. Applies from the next refresh.
+	 * @param viewportMargin The space, negative for the height of the visible part
+	 */
+	public void setViewportMargin(float viewportMargin) {
+		this.viewportMargin = viewportMargin;
+	}
+
+	/**
+	 * @return The number of word widths cached by the layout, 0 if the cache is sized from the number of words
+	 */
+	public int getMeasureCacheCapacity() {
+		return measureCacheCapacity;
+	}
+
+	/**
+	 * Sets the number of word widths (one per word and text size) cached while
+	 * the layout is set. By default the cache holds the widths of twice the
+	 * number of output tags, and at least MeasureCache.DEFAULT_CAPACITY, so that
+	 * the words of a refresh are found in it whatever the size of the cloud.
+	 * @param capacity The number of widths, 0 to size the cache from the number of words
+	 */
+	public void setMeasureCacheCapacity(int capacity) {
+		this.measureCacheCapacity = Math.max(0, capacity);
+		if (measurer != null && capacity > 0) {
+			measurer.setCapacity(capacity);
+		}
+	}
+
+	/**
+	 * @return The time of the layout at each frame in nanoseconds, 0 if the words are placed on the executor
+	 */
+	public long getFrameBudget() {
+		return frameBudget;
+	}
+
+	/**
+	 * Sets the time the layout may take at each frame. With a budget, and a
+	 * layout implementing ResumableLayout (e.g. FlowLayout or SpiralLayout), the
+	 * words of a refresh are placed on the UI thread at each frame until they
+	 * are all placed, and the words placed so far are drawn at each frame, so
+	 * that the first words of a large cloud show up without waiting for the
+	 * whole layout. Without a budget, the words are placed on the executor and
+	 * drawn when they are all placed. Applies from the next refresh.
+	 * @param frameBudget The time in nanoseconds, e.g. 4000000 for 4 ms; 0 to place the words on the executor
+	 */
+	public void setFrameBudget(long frameBudget) {
+		this.frameBudget = frameBudget;
+	}
+
+	/**
+	 * @return The minimum time between two refreshes requested by added tags in nanoseconds, 0 for one per frame
+	 */
+	public long getRefreshInterval() {
+		return refreshInterval;
+	}
+
+	/**
+	 * Sets the minimum time between two refreshes requested by the tags added
+	 * through the view. Tags added within the interval are shown by a single
+	 * refresh, at the first frame after it. Must be called on the UI thread.
+	 * @param refreshInterval The time in nanoseconds, e.g. 250000000 for 250 ms; 0 for one refresh per frame
+	 */
+	public void setRefreshInterval(long refreshInterval) {
+		this.refreshInterval = refreshInterval;
+		if (refreshes != null) {
+			refreshes.setIntervalNanos(refreshInterval);
+		}
+	}
+
+	/**
+	 * Refreshes the view now if tags have been added through it since the last
+	 * refresh, instead of waiting for the next frame. Must be called on the UI thread.
+	 * @return True if the view was refreshed
+	 */
+	public boolean flushRefresh() {
+		return (refreshes != null) && refreshes.flush();
+	}
+
+	/**
+	 * Returns the cloud displayed by the view.
+	 * While a refresh is running, the cloud is read by a background thread:
+	 * modify it within a synchronized (cloud) block.
+	 * @return The cloud
+	 */
 	public Cloud getCloud() {
 		return this.cloud;
 	}
-	
+
+	/**
+	 * Adds a tag to the cloud, and marks the view dirty: it's refreshed at a
+	 * next frame, once for all the tags added meanwhile. May be called from
+	 * any thread.
+	 * @param tag The tag
+	 */
 	public void addTag(Tag tag) {
-		this.cloud.addTag(tag);
+		synchronized (cloud) {
+			this.cloud.addTag(tag);
+		}
+		requestRefresh();
 	}
-	
+
+	/**
+	 * Adds a tag to the cloud, and marks the view dirty.
+	 * @param name The name of the tag
+	 */
 	public void addTag(String name) {
-		this.cloud.addTag(name);
+		synchronized (cloud) {
+			this.cloud.addTag(name);
+		}
+		requestRefresh();
 	}
-	
+
+	/**
+	 * Adds tags to the cloud, and marks the view dirty.
+	 * @param tags The tags
+	 */
 	public void addTags(Collection<Tag> tags) {
-		this.cloud.addTags(tags);
+		synchronized (cloud) {
+			this.cloud.addTags(tags);
+		}
+		requestRefresh();
 	}
-	
+
+	/**
+	 * Adds tags to the cloud, and marks the view dirty.
+	 * @param tagNames The names of the tags
+	 */
 	public void addTags(String... tagNames) {
-		for (String tagName:tagNames) {
-			this.cloud.addTag(new Tag(tagName));
+		synchronized (cloud) {
+			for (String tagName:tagNames) {
+				this.cloud.addTag(new Tag(tagName));
+			}
+		}
+		requestRefresh();
+	}
+
+	/**
+	 * Requests a refresh at a next frame, from the UI thread.
+	 */
+	private void requestRefresh() {
+		if (Looper.myLooper() == Looper.getMainLooper()) {
+			getRefreshScheduler().request();
+		} else {
+			post(refreshRequest);
+		}
+	}
+
+	private RefreshScheduler getRefreshScheduler() {
+		if (refreshes == null) {
+			refreshes = new RefreshScheduler(getFrameScheduler(), Clock.SYSTEM, new Runnable() {
+				public void run() {
+					refresh();
+				}
+			});
+			refreshes.setIntervalNanos(refreshInterval);
+		}
+		return refreshes;
+	}
+
+	private ViewFrameScheduler getFrameScheduler() {
+		if (frames == null) {
+			frames = new ViewFrameScheduler(this);
 		}
+		return frames;
 	}
-	
-	private SpannableStringBuilder genSpannableString() {
-		List<Tag> tags = this.cloud.getOutputTags();
-		SpannableStringBuilder builder = new SpannableStringBuilder();
-		for (Tag tag:tags) {
-			int start = builder.length();
-			int end = builder.length() + tag.getName().length();
-			builder.append(tag.getName() + " ");
-			builder.setSpan(new AbsoluteSizeSpan(tag.getWeightInt(), true), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+	/**
+	 * @return The executor computing the text of the view
+	 */
+	public Executor getExecutor() {
+		return (executor != null) ? executor : getDefaultExecutor();
+	}
+
+	/**
+	 * Sets the executor computing the text of the view.
+	 * By default, a single background thread is shared by all views.
+	 * @param executor The executor, null for the default one
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	private static synchronized Executor getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "CloudView");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				}
+			});
+		}
+		return defaultExecutor;
+	}
+
+	private SpannableStringBuilder genSpannableString(RenderPlan plan) {
+		SpannableStringBuilder builder = new SpannableStringBuilder(plan.getText());
+		// a span can only be set once in a text, so the n-th tag of a size gets the n-th span of the size
+		int[] occurrences = new int[spans.size()];
+		for (int i=0; i<plan.getCount(); i++) {
+			int size = Math.max(plan.getSize(i), 0);
+			if (size >= occurrences.length) {
+				int[] grown = new int[size + 1];
+				System.arraycopy(occurrences, 0, grown, 0, occurrences.length);
+				occurrences = grown;
+			}
+			AbsoluteSizeSpan span = getSpan(size, occurrences[size]++);
+			builder.setSpan(span, plan.getStart(i), plan.getEnd(i), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
 		}
 		return builder;
 	}
-	
+
+	/**
+	 * Returns a pooled span.
+	 * @param size The text size of the span
+	 * @param occurrence The occurrence of the size in the text
+	 * @return The span
+	 */
+	private AbsoluteSizeSpan getSpan(int size, int occurrence) {
+		while (spans.size() <= size) {
+			spans.add(null);
+		}
+		ArrayList<AbsoluteSizeSpan> pool = spans.get(size);
+		if (pool == null) {
+			pool = new ArrayList<AbsoluteSizeSpan>();
+			spans.set(size, pool);
+		}
+		while (pool.size() <= occurrence) {
+			pool.add(new AbsoluteSizeSpan(size, true));
+		}
+		return pool.get(occurrence);
+	}
+
 }
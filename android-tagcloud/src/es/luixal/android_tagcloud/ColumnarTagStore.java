@@ -0,0 +1,428 @@
+package es.luixal.android_tagcloud;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map of the tags of a cloud storing each tag as a row of primitive columns:
+ * the ids of its key and of its name in a TermDictionary, its score, its date
+ * and its link. Clouds sharing a dictionary share a single copy of each term,
+ * and a tag takes about 50 bytes instead of about 200 in a HashMap.
+ * Use it for many clouds over the same vocabulary, e.g.
+ * new Cloud(new ColumnarTagStore(TermDictionary.getDefault())).
+ * Tags are created when they are read, e.g. when the output tags are computed:
+ * changes made to a tag returned by the map are not stored, the tag must be put
+ * again. Normalized scores and weights are not stored, as for serialized tags.
+ * Keys and tags can't be null. Like HashMap, the map is not thread safe.
+ * The map is serialized as a HashMap. Maps deserialized from the same stream
+ * share a new dictionary if they shared one, whether it was the default one or
+ * not, so that reading serialized clouds doesn't grow the default dictionary
+ * for the life of the process. To move a deserialized map to another
+ * dictionary, copy it: new ColumnarTagStore(dictionary).putAll(map).
+ */
+public class ColumnarTagStore extends AbstractMap<String, Tag> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Date of the tags without date */
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private final TermDictionary dictionary;
+
+	/** Number of rows */
+	private int size = 0;
+
+	/** Id of the key of each row */
+	private int[] keys;
+
+	/** Id of the name of each row */
+	private int[] names;
+
+	private double[] scores;
+
+	private long[] dates;
+
+	/** Link of each row: null, a String, or a LinkTemplate whose argument is the name */
+	private Object[] links;
+
+	/** Open addressing index of the rows by key id: row + 1, 0 for a free slot; at most 3/4 full */
+	private int[] index;
+
+	/** Number of rows added and removed, checked by the iterators */
+	private int modCount = 0;
+
+	/**
+	 * @param dictionary The dictionary of the keys and names, usually shared by many maps
+	 */
+	public ColumnarTagStore(TermDictionary dictionary) {
+		this(dictionary, 16);
+	}
+
+	/**
+	 * @param dictionary The dictionary of the keys and names, usually shared by many maps
+	 * @param capacity The number of tags stored before the columns grow
+	 */
+	public ColumnarTagStore(TermDictionary dictionary, int capacity) {
+		this.dictionary = dictionary;
+		allocate(Math.max(4, capacity));
+	}
+
+	/**
+	 * Copy constructor, the copy shares the dictionary of the map.
+	 * @param other The map to copy
+	 */
+	public ColumnarTagStore(ColumnarTagStore other) {
+		this.dictionary = other.dictionary;
+		this.size = other.size;
+		this.keys = other.keys.clone();
+		this.names = other.names.clone();
+		this.scores = other.scores.clone();
+		this.dates = other.dates.clone();
+		this.links = other.links.clone();
+		this.index = other.index.clone();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return row(key) >= 0;
+	}
+
+	@Override
+	public Tag get(Object key) {
+		int row = row(key);
+		return (row >= 0) ? tag(row) : null;
+	}
+
+	@Override
+	public Tag put(String key, Tag tag) {
+		if (key == null || tag == null)
+			throw new NullPointerException();
+
+		int id = dictionary.intern(key);
+		int slot = slot(id);
+		int row = index[slot] - 1;
+		Tag previous = null;
+		if (row >= 0) {
+			previous = tag(row);
+		} else {
+			if (size == keys.length) {
+				grow();
+				slot = slot(id);
+			}
+			row = size++;
+			keys[row] = id;
+			index[slot] = row + 1;
+			modCount++;
+		}
+
+		names[row] = dictionary.intern(tag.getName());
+		scores[row] = tag.getScore();
+		dates[row] = (tag.getDate() != null) ? tag.getDate().getTime() : NO_DATE;
+		links[row] = linkOf(tag);
+		return previous;
+	}
+
+	@Override
+	public Tag remove(Object key) {
+		int row = row(key);
+		if (row < 0)
+			return null;
+
+		Tag removed = tag(row);
+		removeRow(row);
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(index, 0);
+		Arrays.fill(links, 0, size, null);
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Tag>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Tag>>() {
+			@Override
+			public Iterator<Map.Entry<String, Tag>> iterator() {
+				return new RowIterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public void clear() {
+				ColumnarTagStore.this.clear();
+			}
+		};
+	}
+
+	/**
+	 * @return The dictionary of the keys and names
+	 */
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Returns the link of a tag as it is stored: templates are kept when their
+	 * argument is the name of the tag, other links are expanded.
+	 * @return Null, a String or a LinkTemplate
+	 */
+	static Object linkOf(Tag tag) {
+		LinkTemplate template = tag.getLinkTemplate();
+		if (template != null && tag.getName().equals(tag.getLinkArgument()))
+			return template;
+		return tag.getLink();
+	}
+
+	/**
+	 * Creates the tag of a row.
+	 */
+	private Tag tag(int row) {
+		String name = dictionary.getTerm(names[row]);
+		Tag tag = new Tag(name, null, scores[row], (dates[row] != NO_DATE) ? new Date(dates[row]) : null);
+		Object link = links[row];
+		if (link instanceof LinkTemplate) {
+			tag.setLink((LinkTemplate) link, name);
+		} else if (link != null) {
+			tag.setLink((String) link);
+		}
+		return tag;
+	}
+
+	/**
+	 * @return The row of a key, -1 if there is none
+	 */
+	private int row(Object key) {
+		if (!(key instanceof String))
+			return -1;
+		// looking up a key doesn't add it to the dictionary
+		int id = dictionary.find((String) key);
+		return (id >= 0) ? index[slot(id)] - 1 : -1;
+	}
+
+	/**
+	 * @return The slot of the index holding a key, or the free slot where it would be added
+	 */
+	private int slot(int id) {
+		int mask = index.length - 1;
+		int slot = hash(id) & mask;
+		while (index[slot] != 0 && keys[index[slot] - 1] != id) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Removes a row, the last row takes its place.
+	 */
+	private void removeRow(int row) {
+		removeSlot(slot(keys[row]));
+		int last = --size;
+		if (row != last) {
+			index[slot(keys[last])] = row + 1;
+			keys[row] = keys[last];
+			names[row] = names[last];
+			scores[row] = scores[last];
+			dates[row] = dates[last];
+			links[row] = links[last];
+		}
+		links[last] = null;
+		modCount++;
+	}
+
+	/**
+	 * Frees a slot of the index, moving back the next slots of its cluster
+	 * that can't be reached any more.
+	 */
+	private void removeSlot(int slot) {
+		int mask = index.length - 1;
+		int free = slot;
+		index[free] = 0;
+		for (int next = (free + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+			int home = hash(keys[index[next] - 1]) & mask;
+			// the free slot is between the home of the key and its slot
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				index[free] = index[next];
+				index[next] = 0;
+				free = next;
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		names = new int[capacity];
+		scores = new double[capacity];
+		dates = new long[capacity];
+		links = new Object[capacity];
+		int slots = 8;
+		while (3 * slots < 4 * capacity) {
+			slots <<= 1;
+		}
+		index = new int[slots];
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldNames = names;
+		double[] oldScores = scores;
+		long[] oldDates = dates;
+		Object[] oldLinks = links;
+		allocate(oldKeys.length + (oldKeys.length >> 1));
+		System.arraycopy(oldKeys, 0, keys, 0, size);
+		System.arraycopy(oldNames, 0, names, 0, size);
+		System.arraycopy(oldScores, 0, scores, 0, size);
+		System.arraycopy(oldDates, 0, dates, 0, size);
+		System.arraycopy(oldLinks, 0, links, 0, size);
+		for (int row=0; row<size; row++) {
+			index[slot(keys[row])] = row + 1;
+		}
+	}
+
+	private Object writeReplace() {
+		return new SerializedForm(this);
+	}
+
+	/**
+	 * Tags of the map, serialized as a HashMap.
+	 */
+	private static final class SerializedForm implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final HashMap<String, Tag> tags;
+
+		/** Token of the dictionary of the map, null in the streams written before it */
+		private final TermDictionary.Token dictionary;
+
+		SerializedForm(ColumnarTagStore store) {
+			this.tags = new HashMap<String, Tag>(store);
+			this.dictionary = store.dictionary.getToken();
+		}
+
+		private Object readResolve() {
+			TermDictionary dictionary = (this.dictionary != null) ? this.dictionary.getDictionary() : new TermDictionary();
+			ColumnarTagStore store = new ColumnarTagStore(dictionary, tags.size());
+			store.putAll(tags);
+			return store;
+		}
+
+	}
+
+	/**
+	 * Entry of a row, created when it's read. Setting its value puts the tag in the map.
+	 */
+	private final class Entry implements Map.Entry<String, Tag> {
+
+		private final String key;
+
+		private Tag tag;
+
+		Entry(String key, Tag tag) {
+			this.key = key;
+			this.tag = tag;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public Tag getValue() {
+			return tag;
+		}
+
+		public Tag setValue(Tag value) {
+			Tag previous = tag;
+			put(key, value);
+			tag = value;
+			return previous;
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ tag.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry<?, ?>))
+				return false;
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			return key.equals(other.getKey()) && tag.equals(other.getValue());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + tag;
+		}
+
+	}
+
+	/**
+	 * Iterator over the rows. Removing a row moves the last row in its place,
+	 * so the iterator reads that row next.
+	 */
+	private final class RowIterator implements Iterator<Map.Entry<String, Tag>> {
+
+		/** Next row */
+		private int next = 0;
+
+		/** Row last returned, -1 if there is none */
+		private int last = -1;
+
+		private int expectedModCount = modCount;
+
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		public Map.Entry<String, Tag> next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next >= size)
+				throw new NoSuchElementException();
+
+			last = next++;
+			return new Entry(dictionary.getTerm(keys[last]), tag(last));
+		}
+
+		public void remove() {
+			if (last < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+
+			removeRow(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+
+	}
+
+}
@@ -0,0 +1,70 @@
+package es.luixal.android_tagcloud;
+
+import java.io.Serializable;
+
+/**
+ * Precompiled link format string.
+ * Format strings without any format specifier, or with a single %s specifier,
+ * are expanded by concatenation; other format strings are passed to String.format().
+ * The expanded link is the same as String.format(format, argument).
+ */
+final class LinkTemplate implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Format string */
+	private final String format;
+
+	/** Text before the %s specifier, null if the format string is not a simple one */
+	private final String prefix;
+
+	/** Text after the %s specifier, null if there is no %s specifier */
+	private final String suffix;
+
+	/**
+	 * Compiles a format string.
+	 * @param format Format string (e.g. "/www.google.com/search?q=%s")
+	 * @throws java.util.IllegalFormatException If the format string can't format a string,
+	 * so that it fails when the link is set rather than when it is expanded
+	 */
+	public LinkTemplate(String format) {
+		this.format = format;
+
+		int first = format.indexOf('%');
+		if (first < 0) {
+			// constant link
+			prefix = format;
+			suffix = null;
+		} else if (format.startsWith("%s", first) && format.indexOf('%', first + 2) < 0) {
+			prefix = format.substring(0, first);
+			suffix = format.substring(first + 2);
+		} else {
+			prefix = null;
+			suffix = null;
+			String.format(format, "");
+		}
+	}
+
+	/**
+	 * Expands the format string.
+	 * @param argument The argument substituted to the format specifier
+	 * @return The link
+	 */
+	public String format(String argument) {
+		if (prefix == null) {
+			return String.format(format, argument);
+		} else if (suffix == null) {
+			return prefix;
+		} else {
+			return prefix + argument + suffix;
+		}
+	}
+
+	/**
+	 * @return The format string
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+}
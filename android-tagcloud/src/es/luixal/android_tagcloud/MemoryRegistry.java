@@ -0,0 +1,157 @@
+package es.luixal.android_tagcloud;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts the estimated memory of a group of clouds and enforces a budget for
+ * the whole group (see Cloud.setMemoryRegistry()).
+ * When the total exceeds the budget, each cloud of the group evicts its least
+ * important tags the next time tags are added to it, in proportion to its size.
+ * Clouds only evict their own tags, from the thread adding tags to them, so the
+ * registry can be shared by clouds used from different threads. Clouds that
+ * don't receive tags are not reduced.
+ * Clouds are referenced weakly: the memory of a cloud is no longer accounted
+ * once the cloud has been garbage collected.
+ */
+public class MemoryRegistry {
+
+	/** Registry of the process */
+	private static final MemoryRegistry DEFAULT = new MemoryRegistry();
+
+	/** Sum of the sizes reported by the clouds */
+	private final AtomicLong totalBytes = new AtomicLong();
+
+	/** Budget in bytes, 0 or less for unlimited */
+	private volatile long maxBytes = 0;
+
+	/** Accounts of the registered clouds */
+	private final Set<Account> accounts = Collections.synchronizedSet(new HashSet<Account>());
+
+	/** Accounts of the clouds that have been garbage collected */
+	private final ReferenceQueue<Cloud> released = new ReferenceQueue<Cloud>();
+
+	/**
+	 * Memory reported by a cloud.
+	 */
+	static final class Account extends WeakReference<Cloud> {
+
+		/** Registry of the cloud */
+		final MemoryRegistry registry;
+
+		/** Size last reported by the cloud */
+		volatile long bytes = 0;
+
+		Account(Cloud cloud, MemoryRegistry registry) {
+			super(cloud, registry.released);
+			this.registry = registry;
+		}
+
+	}
+
+	/**
+	 * @return The registry shared by the whole process
+	 */
+	public static MemoryRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Opens the account of a cloud.
+	 */
+	Account open(Cloud cloud) {
+		expunge();
+		Account account = new Account(cloud, this);
+		accounts.add(account);
+		return account;
+	}
+
+	/**
+	 * Updates the size of a cloud.
+	 */
+	void update(Account account, long bytes) {
+		long delta = bytes - account.bytes;
+		if (delta != 0) {
+			account.bytes = bytes;
+			totalBytes.addAndGet(delta);
+		}
+	}
+
+	/**
+	 * Closes the account of a cloud, its memory is no longer accounted.
+	 */
+	void close(Account account) {
+		if (accounts.remove(account)) {
+			totalBytes.addAndGet(-account.bytes);
+			account.bytes = 0;
+		}
+	}
+
+	/**
+	 * Returns the size a cloud should be reduced to, so that the total gets back
+	 * below the given ratio of the budget.
+	 * @param bytes The size of the cloud
+	 * @param ratio The ratio of the budget to get back to
+	 * @return The target size of the cloud, -1 if the budget is not exceeded
+	 */
+	long getTargetBytes(long bytes, double ratio) {
+		long max = maxBytes;
+		if (max <= 0 || totalBytes.get() <= max)
+			return -1;
+
+		// the budget may be exceeded because of clouds that no longer exist
+		expunge();
+		long total = totalBytes.get();
+		if (total <= max)
+			return -1;
+
+		return (long) (bytes * (max * ratio / total));
+	}
+
+	/**
+	 * Removes the accounts of the clouds that have been garbage collected.
+	 */
+	private void expunge() {
+		Reference<? extends Cloud> reference;
+		while ((reference = released.poll()) != null) {
+			close((Account) reference);
+		}
+	}
+
+	/**
+	 * @return The estimated memory of the registered clouds in bytes
+	 */
+	public long getTotalBytes() {
+		expunge();
+		return totalBytes.get();
+	}
+
+	/**
+	 * @return The number of registered clouds
+	 */
+	public int getCloudCount() {
+		expunge();
+		return accounts.size();
+	}
+
+	/**
+	 * @return The budget in bytes, 0 or less for unlimited
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Sets the memory budget of the registered clouds.
+	 * @param maxBytes The budget in bytes, 0 or less for unlimited
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+}
@@ -0,0 +1,751 @@
+package es.luixal.android_tagcloud;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map of the tags of a cloud stored outside of the Java heap, in direct
+ * ByteBuffers, so that clouds of millions of tags don't weigh on the garbage
+ * collector:
+ * <ul>
+ * <li>an arena holding the keys, names and links as UTF-8 bytes</li>
+ * <li>a record of each tag: hash and position of its key, name and link in
+ * the arena, link template, score and date</li>
+ * <li>an open addressing index of the records by key</li>
+ * </ul>
+ * Link templates, shared by many tags, stay on the heap, a single one per
+ * format string. Names that are the same as their key are only stored once.
+ * The arena is compacted when half of it is made of strings of removed tags.
+ * A map holds at most MAX_CAPACITY tags, and at most 2 GB of keys, names and
+ * links; beyond either limit put() throws an IllegalStateException and leaves
+ * the map unchanged.
+ * Use it with new Cloud(new OffHeapTagStore()).
+ * Tags are created when they are read: changes made to a tag returned by the
+ * map are not stored, the tag must be put again. Normalized scores and weights
+ * are not stored, as for serialized tags. Keys and tags can't be null. Like
+ * HashMap, the map is not thread safe; reads don't modify it, so they can run
+ * in several threads while none writes.
+ * The memory of the map is held until the map is closed (see Cloud.close())
+ * and its buffers are garbage collected; any use of a closed map throws an
+ * IllegalStateException. The map is serialized as a HashMap, and deserialized
+ * in a new OffHeapTagStore.
+ */
+public class OffHeapTagStore extends AbstractMap<String, Tag> implements Closeable, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Fields of a record: offset in the record */
+	private static final int KEY_HASH = 0;
+	private static final int KEY_OFFSET = 4;
+	private static final int KEY_LENGTH = 8;
+	private static final int NAME_OFFSET = 12;
+	private static final int NAME_LENGTH = 16;
+	private static final int LINK_OFFSET = 20;
+	private static final int LINK_LENGTH = 24;
+	private static final int TEMPLATE = 28;
+	private static final int SCORE = 32;
+	private static final int DATE = 40;
+
+	/** Size of a record */
+	static final int RECORD = 48;
+
+	/** Maximum number of tags, for the offsets of the records to fit an int */
+	public static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD;
+
+	/** Maximum size of the arena */
+	private static final int MAX_ARENA = Integer.MAX_VALUE;
+
+	/** Name offset of the names that are the same as their key, length of the missing links */
+	private static final int NONE = -1;
+
+	/** Date of the tags without date */
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	/** Garbage of the arena below which it is not compacted */
+	private static final int MIN_COMPACTION = 1 << 16;
+
+	/** Records of the tags, null once the map is closed */
+	private ByteBuffer records;
+
+	/** Keys, names and links */
+	private ByteBuffer arena;
+
+	/** Index of the records by key hash: record + 1, 0 for a free slot; at most 3/4 full */
+	private ByteBuffer index;
+
+	/** Number of records */
+	private int size = 0;
+
+	/** Capacity of the records */
+	private int capacity;
+
+	/** Number of slots of the index */
+	private int slots;
+
+	/** Bytes of the arena in use, including garbage */
+	private int arenaSize = 0;
+
+	/** Bytes of the arena of removed strings */
+	private int garbage = 0;
+
+	/** Link templates by id, and ids by format string */
+	private final List<LinkTemplate> templates = new ArrayList<LinkTemplate>();
+	private final Map<String, Integer> templateIds = new HashMap<String, Integer>();
+
+	/** Number of records added and removed, checked by the iterators */
+	private int modCount = 0;
+
+	public OffHeapTagStore() {
+		this(1024);
+	}
+
+	/**
+	 * @param capacity The number of tags stored before the buffers grow, at most MAX_CAPACITY
+	 */
+	public OffHeapTagStore(int capacity) {
+		if (capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("Capacity above " + MAX_CAPACITY + ": " + capacity);
+		allocate(Math.max(4, capacity));
+		arena = allocateDirect(Math.max(4, capacity) * 16);
+	}
+
+	/**
+	 * Copy constructor.
+	 * @param other The map to copy, must not be closed
+	 */
+	public OffHeapTagStore(OffHeapTagStore other) {
+		other.checkOpen();
+		allocate(other.capacity);
+		arena = allocateDirect(other.arena.capacity());
+		copy(other.records, records, other.size * RECORD);
+		copy(other.arena, arena, other.arenaSize);
+		copy(other.index, index, other.slots * 4);
+		this.size = other.size;
+		this.arenaSize = other.arenaSize;
+		this.garbage = other.garbage;
+		this.templates.addAll(other.templates);
+		this.templateIds.putAll(other.templateIds);
+	}
+
+	@Override
+	public int size() {
+		checkOpen();
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		checkOpen();
+		return (key instanceof String) && record((String) key, utf8((String) key)) >= 0;
+	}
+
+	@Override
+	public Tag get(Object key) {
+		checkOpen();
+		if (!(key instanceof String))
+			return null;
+		int record = record((String) key, utf8((String) key));
+		return (record >= 0) ? tag(record) : null;
+	}
+
+	@Override
+	public Tag put(String key, Tag tag) {
+		checkOpen();
+		if (key == null || tag == null)
+			throw new NullPointerException();
+
+		byte[] keyBytes = utf8(key);
+		byte[] nameBytes = tag.getName().equals(key) ? null : utf8(tag.getName());
+		Object link = ColumnarTagStore.linkOf(tag);
+		byte[] linkBytes = (link instanceof String) ? utf8((String) link) : null;
+		int hash = key.hashCode();
+		int slot = slot(hash, keyBytes);
+		int record = index.getInt(4 * slot) - 1;
+
+		// room for all the strings, so that the map is left unchanged if there is none
+		reserve(((record < 0) ? keyBytes.length : 0)
+				+ ((nameBytes != null) ? nameBytes.length : 0)
+				+ ((linkBytes != null) ? linkBytes.length : 0));
+		Tag previous = null;
+		if (record >= 0) {
+			previous = tag(record);
+		} else {
+			if (size == capacity) {
+				grow();
+				slot = slot(hash, keyBytes);
+			}
+			record = size++;
+			int position = record * RECORD;
+			records.putInt(position + KEY_HASH, hash);
+			records.putInt(position + KEY_OFFSET, append(keyBytes));
+			records.putInt(position + KEY_LENGTH, keyBytes.length);
+			records.putInt(position + NAME_OFFSET, NONE);
+			records.putInt(position + NAME_LENGTH, 0);
+			records.putInt(position + LINK_OFFSET, 0);
+			records.putInt(position + LINK_LENGTH, NONE);
+			index.putInt(4 * slot, record + 1);
+			modCount++;
+		}
+		set(record, nameBytes, link, linkBytes, tag);
+		compactIfNeeded();
+		return previous;
+	}
+
+	@Override
+	public Tag remove(Object key) {
+		checkOpen();
+		if (!(key instanceof String))
+			return null;
+		int record = record((String) key, utf8((String) key));
+		if (record < 0)
+			return null;
+
+		Tag removed = tag(record);
+		removeRecord(record);
+		compactIfNeeded();
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		checkOpen();
+		for (int slot=0; slot<slots; slot++) {
+			index.putInt(4 * slot, 0);
+		}
+		size = 0;
+		arenaSize = 0;
+		garbage = 0;
+		templates.clear();
+		templateIds.clear();
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Tag>> entrySet() {
+		checkOpen();
+		return new AbstractSet<Map.Entry<String, Tag>>() {
+			@Override
+			public Iterator<Map.Entry<String, Tag>> iterator() {
+				checkOpen();
+				return new RecordIterator();
+			}
+
+			@Override
+			public int size() {
+				return OffHeapTagStore.this.size();
+			}
+
+			@Override
+			public void clear() {
+				OffHeapTagStore.this.clear();
+			}
+		};
+	}
+
+	/**
+	 * Releases the buffers of the map. Their memory is freed when they are
+	 * garbage collected. The map can't be used any more; closing it again has
+	 * no effect.
+	 */
+	public void close() {
+		records = null;
+		arena = null;
+		index = null;
+		size = 0;
+		templates.clear();
+		templateIds.clear();
+	}
+
+	/**
+	 * @return True if the map has been closed
+	 */
+	public boolean isClosed() {
+		return records == null;
+	}
+
+	/**
+	 * @return The number of bytes of the buffers of the map
+	 */
+	public long getCapacityBytes() {
+		checkOpen();
+		return (long) records.capacity() + arena.capacity() + index.capacity();
+	}
+
+	/**
+	 * @return The number of link templates of the map
+	 */
+	int getTemplateCount() {
+		return templates.size();
+	}
+
+	private void checkOpen() {
+		if (records == null)
+			throw new IllegalStateException("The tag store is closed");
+	}
+
+	/**
+	 * Sets the name, score, date and link of a record. Strings equal to the
+	 * ones of the record are kept in place.
+	 * @param nameBytes The name, null if it's the same as the key
+	 * @param link The link of the tag (see ColumnarTagStore.linkOf())
+	 * @param linkBytes The link if it's a String
+	 */
+	private void set(int record, byte[] nameBytes, Object link, byte[] linkBytes, Tag tag) {
+		int position = record * RECORD;
+		int nameOffset = records.getInt(position + NAME_OFFSET);
+		int nameLength = records.getInt(position + NAME_LENGTH);
+		if (nameBytes == null) {
+			if (nameOffset != NONE) {
+				garbage += nameLength;
+				records.putInt(position + NAME_OFFSET, NONE);
+				records.putInt(position + NAME_LENGTH, 0);
+			}
+		} else if (nameOffset == NONE || !equalsAt(nameOffset, nameLength, nameBytes)) {
+			if (nameOffset != NONE) {
+				garbage += nameLength;
+			}
+			records.putInt(position + NAME_OFFSET, append(nameBytes));
+			records.putInt(position + NAME_LENGTH, nameBytes.length);
+		}
+
+		records.putDouble(position + SCORE, tag.getScore());
+		records.putLong(position + DATE, (tag.getDate() != null) ? tag.getDate().getTime() : NO_DATE);
+
+		int linkOffset = records.getInt(position + LINK_OFFSET);
+		int linkLength = records.getInt(position + LINK_LENGTH);
+		if (linkBytes != null) {
+			if (linkLength == NONE || !equalsAt(linkOffset, linkLength, linkBytes)) {
+				if (linkLength != NONE) {
+					garbage += linkLength;
+				}
+				records.putInt(position + LINK_OFFSET, append(linkBytes));
+				records.putInt(position + LINK_LENGTH, linkBytes.length);
+			}
+		} else if (linkLength != NONE) {
+			garbage += linkLength;
+			records.putInt(position + LINK_LENGTH, NONE);
+		}
+		records.putInt(position + TEMPLATE, (link instanceof LinkTemplate) ? templateId((LinkTemplate) link) : NONE);
+	}
+
+	/**
+	 * Creates the tag of a record.
+	 */
+	private Tag tag(int record) {
+		int position = record * RECORD;
+		int nameOffset = records.getInt(position + NAME_OFFSET);
+		String name = (nameOffset == NONE)
+				? decode(records.getInt(position + KEY_OFFSET), records.getInt(position + KEY_LENGTH))
+				: decode(nameOffset, records.getInt(position + NAME_LENGTH));
+		long date = records.getLong(position + DATE);
+		Tag tag = new Tag(name, null, records.getDouble(position + SCORE), (date != NO_DATE) ? new Date(date) : null);
+
+		int template = records.getInt(position + TEMPLATE);
+		int linkLength = records.getInt(position + LINK_LENGTH);
+		if (template != NONE) {
+			tag.setLink(templates.get(template), name);
+		} else if (linkLength != NONE) {
+			tag.setLink(decode(records.getInt(position + LINK_OFFSET), linkLength));
+		}
+		return tag;
+	}
+
+	/**
+	 * @return The key of a record
+	 */
+	private String key(int record) {
+		int position = record * RECORD;
+		return decode(records.getInt(position + KEY_OFFSET), records.getInt(position + KEY_LENGTH));
+	}
+
+	/**
+	 * @return The id of the template of the same format string, added if there is none
+	 */
+	private int templateId(LinkTemplate template) {
+		Integer id = templateIds.get(template.getFormat());
+		if (id == null) {
+			id = Integer.valueOf(templates.size());
+			templates.add(template);
+			templateIds.put(template.getFormat(), id);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * @return The record of a key, -1 if there is none
+	 */
+	private int record(String key, byte[] bytes) {
+		return index.getInt(4 * slot(key.hashCode(), bytes)) - 1;
+	}
+
+	/**
+	 * @return The slot of the index holding a key, or the free slot where it would be added
+	 */
+	private int slot(int hash, byte[] key) {
+		int mask = slots - 1;
+		for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+			int record = index.getInt(4 * slot) - 1;
+			if (record < 0)
+				return slot;
+			int position = record * RECORD;
+			if (records.getInt(position + KEY_HASH) == hash
+					&& equalsAt(records.getInt(position + KEY_OFFSET), records.getInt(position + KEY_LENGTH), key))
+				return slot;
+		}
+	}
+
+	/**
+	 * @return The slot of the index holding a record
+	 */
+	private int slotOf(int record) {
+		int mask = slots - 1;
+		int slot = mix(records.getInt(record * RECORD + KEY_HASH)) & mask;
+		while (index.getInt(4 * slot) != record + 1) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int mix(int hash) {
+		int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Removes a record, the last record takes its place.
+	 */
+	private void removeRecord(int record) {
+		int position = record * RECORD;
+		garbage += records.getInt(position + KEY_LENGTH);
+		if (records.getInt(position + NAME_OFFSET) != NONE) {
+			garbage += records.getInt(position + NAME_LENGTH);
+		}
+		if (records.getInt(position + LINK_LENGTH) != NONE) {
+			garbage += records.getInt(position + LINK_LENGTH);
+		}
+
+		removeSlot(slotOf(record));
+		int last = --size;
+		if (record != last) {
+			index.putInt(4 * slotOf(last), record + 1);
+			int from = last * RECORD;
+			for (int i=0; i<RECORD; i+=8) {
+				records.putLong(position + i, records.getLong(from + i));
+			}
+		}
+		modCount++;
+	}
+
+	/**
+	 * Frees a slot of the index, moving back the next slots of its cluster
+	 * that can't be reached any more.
+	 */
+	private void removeSlot(int slot) {
+		int mask = slots - 1;
+		int free = slot;
+		index.putInt(4 * free, 0);
+		for (int next = (free + 1) & mask; index.getInt(4 * next) != 0; next = (next + 1) & mask) {
+			int record = index.getInt(4 * next) - 1;
+			int home = mix(records.getInt(record * RECORD + KEY_HASH)) & mask;
+			// the free slot is between the home of the key and its slot
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				index.putInt(4 * free, record + 1);
+				index.putInt(4 * next, 0);
+				free = next;
+			}
+		}
+	}
+
+	/**
+	 * Makes room in the arena for bytes to append, compacting it if it would
+	 * grow beyond MAX_ARENA otherwise.
+	 * @throws IllegalStateException If the live strings and the bytes don't fit in MAX_ARENA
+	 */
+	private void reserve(int bytes) {
+		long required = (long) arenaSize + bytes;
+		if (required <= arena.capacity())
+			return;
+		if (required > MAX_ARENA) {
+			if (required - garbage > MAX_ARENA)
+				throw new IllegalStateException("The tag store is full: its keys, names and links would take more than "
+						+ MAX_ARENA + " bytes");
+			compact();
+			required = (long) arenaSize + bytes;
+			if (required <= arena.capacity())
+				return;
+		}
+		long grown = Math.max(arena.capacity() + (arena.capacity() >> 1), required);
+		ByteBuffer larger = allocateDirect((int) Math.min(MAX_ARENA, grown));
+		copy(arena, larger, arenaSize);
+		arena = larger;
+	}
+
+	/**
+	 * Appends bytes to the arena, which must have room for them (see reserve()).
+	 * @return The offset of the bytes
+	 */
+	private int append(byte[] bytes) {
+		int offset = arenaSize;
+		arena.position(offset);
+		arena.put(bytes);
+		arenaSize += bytes.length;
+		return offset;
+	}
+
+	private boolean equalsAt(int offset, int length, byte[] bytes) {
+		if (length != bytes.length)
+			return false;
+		for (int i=0; i<length; i++) {
+			if (arena.get(offset + i) != bytes[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes a string of the arena with absolute reads, which leave the
+	 * buffer unchanged for the other readers.
+	 */
+	private String decode(int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i=0; i<length; i++) {
+			bytes[i] = arena.get(offset + i);
+		}
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	private static byte[] utf8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	/**
+	 * Copies the strings of the records to a new arena when half of the arena is garbage.
+	 */
+	private void compactIfNeeded() {
+		if (garbage < MIN_COMPACTION || 2 * garbage < arenaSize)
+			return;
+		compact();
+	}
+
+	/**
+	 * Copies the strings of the records to a new arena, without the garbage.
+	 */
+	private void compact() {
+		ByteBuffer old = arena;
+		arena = allocateDirect((int) Math.min(MAX_ARENA, Math.max(arenaSize - garbage, 1024) * 3L / 2));
+		arenaSize = 0;
+		garbage = 0;
+		for (int record=0; record<size; record++) {
+			int position = record * RECORD;
+			records.putInt(position + KEY_OFFSET, move(old, records.getInt(position + KEY_OFFSET), records.getInt(position + KEY_LENGTH)));
+			if (records.getInt(position + NAME_OFFSET) != NONE) {
+				records.putInt(position + NAME_OFFSET, move(old, records.getInt(position + NAME_OFFSET), records.getInt(position + NAME_LENGTH)));
+			}
+			if (records.getInt(position + LINK_LENGTH) != NONE) {
+				records.putInt(position + LINK_OFFSET, move(old, records.getInt(position + LINK_OFFSET), records.getInt(position + LINK_LENGTH)));
+			}
+		}
+	}
+
+	/**
+	 * Appends bytes of an old arena to the arena.
+	 * @return The new offset of the bytes
+	 */
+	private int move(ByteBuffer old, int offset, int length) {
+		byte[] bytes = new byte[length];
+		old.position(offset);
+		old.get(bytes);
+		return append(bytes);
+	}
+
+	/**
+	 * Allocates the records and the index.
+	 */
+	private void allocate(int capacity) {
+		this.capacity = capacity;
+		records = allocateDirect(capacity * RECORD);
+		slots = 8;
+		while (3 * slots < 4 * capacity) {
+			slots <<= 1;
+		}
+		index = allocateDirect(4 * slots);
+	}
+
+	/**
+	 * @throws IllegalStateException If the map holds MAX_CAPACITY tags
+	 */
+	private void grow() {
+		if (capacity >= MAX_CAPACITY)
+			throw new IllegalStateException("The tag store is full: it holds " + MAX_CAPACITY + " tags");
+		ByteBuffer oldRecords = records;
+		allocate(Math.min(MAX_CAPACITY, capacity + (capacity >> 1)));
+		copy(oldRecords, records, size * RECORD);
+		for (int record=0; record<size; record++) {
+			int mask = slots - 1;
+			int slot = mix(records.getInt(record * RECORD + KEY_HASH)) & mask;
+			while (index.getInt(4 * slot) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index.putInt(4 * slot, record + 1);
+		}
+	}
+
+	private static ByteBuffer allocateDirect(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Copies the first bytes of a buffer to another one.
+	 */
+	private static void copy(ByteBuffer from, ByteBuffer to, int length) {
+		ByteBuffer source = from.duplicate();
+		source.position(0);
+		source.limit(length);
+		to.position(0);
+		to.put(source);
+	}
+
+	private Object writeReplace() {
+		checkOpen();
+		return new SerializedForm(this);
+	}
+
+	/**
+	 * Tags of the map, serialized as a HashMap.
+	 */
+	private static final class SerializedForm implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final HashMap<String, Tag> tags;
+
+		SerializedForm(OffHeapTagStore store) {
+			this.tags = new HashMap<String, Tag>(store);
+		}
+
+		private Object readResolve() {
+			OffHeapTagStore store = new OffHeapTagStore(Math.max(tags.size(), 16));
+			store.putAll(tags);
+			return store;
+		}
+
+	}
+
+	/**
+	 * Entry of a record, created when it's read. Setting its value puts the tag in the map.
+	 */
+	private final class Entry implements Map.Entry<String, Tag> {
+
+		private final String key;
+
+		private Tag tag;
+
+		Entry(String key, Tag tag) {
+			this.key = key;
+			this.tag = tag;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public Tag getValue() {
+			return tag;
+		}
+
+		public Tag setValue(Tag value) {
+			Tag previous = tag;
+			put(key, value);
+			tag = value;
+			return previous;
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ tag.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry<?, ?>))
+				return false;
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			return key.equals(other.getKey()) && tag.equals(other.getValue());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + tag;
+		}
+
+	}
+
+	/**
+	 * Iterator over the records. Removing a record moves the last record in
+	 * its place, so the iterator reads that record next.
+	 */
+	private final class RecordIterator implements Iterator<Map.Entry<String, Tag>> {
+
+		/** Next record */
+		private int next = 0;
+
+		/** Record last returned, -1 if there is none */
+		private int last = -1;
+
+		private int expectedModCount = modCount;
+
+		public boolean hasNext() {
+			checkOpen();
+			return next < size;
+		}
+
+		public Map.Entry<String, Tag> next() {
+			checkOpen();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next >= size)
+				throw new NoSuchElementException();
+
+			last = next++;
+			return new Entry(key(last), tag(last));
+		}
+
+		public void remove() {
+			checkOpen();
+			if (last < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+
+			removeRecord(last);
+			compactIfNeeded();
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+
+	}
+
+}
@@ -0,0 +1,264 @@
+package es.luixal.android_tagcloud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import es.luixal.android_tagcloud.filters.Filter;
+
+/**
+ * Report of an output computation, returned by Cloud.explain().
+ * It tells, for each stage of the computation, how many tags entered the stage,
+ * how many were kept, the time spent and the memory allocated.
+ * Stages are, in order: invalid, threshold, tagLifetime, each output filter,
+ * normThreshold, maxTagsToDisplay and sort.
+ * The first three stages are evaluated in a single scan of the cloud, whose time
+ * and allocations are reported by getScanNanos() and getScanAllocatedBytes().
+ */
+public class OutputProfile {
+
+	/** Tags removed from the cloud because they are not valid */
+	public static final String INVALID = "invalid";
+
+	/** Tags with a score under the threshold */
+	public static final String THRESHOLD = "threshold";
+
+	/** Tags older than the tag lifetime */
+	public static final String TAG_LIFETIME = "tagLifetime";
+
+	/** Tags with a normalized score under the normalized threshold (includes the normalization) */
+	public static final String NORM_THRESHOLD = "normThreshold";
+
+	/** Tags exceeding the maximum number of tags to display */
+	public static final String MAX_TAGS_TO_DISPLAY = "maxTagsToDisplay";
+
+	/** Sort of the output tags */
+	public static final String SORT = "sort";
+
+	/**
+	 * A stage of the output computation.
+	 */
+	public static class Stage {
+
+		private final String name;
+		private final Filter<Tag> filter;
+		private final int in;
+		private final int out;
+		private final long nanos;
+		private final long allocatedBytes;
+
+		Stage(String name, Filter<Tag> filter, int in, int out, long nanos, long allocatedBytes) {
+			this.name = name;
+			this.filter = filter;
+			this.in = in;
+			this.out = out;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		/**
+		 * @return The stage name, one of the constants of OutputProfile, or the class name of an output filter
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The output filter applied by the stage, null if the stage is not an output filter
+		 */
+		public Filter<Tag> getFilter() {
+			return filter;
+		}
+
+		/**
+		 * @return The number of tags entering the stage
+		 */
+		public int getIn() {
+			return in;
+		}
+
+		/**
+		 * @return The number of tags kept by the stage
+		 */
+		public int getOut() {
+			return out;
+		}
+
+		/**
+		 * @return The number of tags dropped by the stage
+		 */
+		public int getDropped() {
+			return in - out;
+		}
+
+		/**
+		 * @return The time spent in the stage in nanoseconds, -1 if the stage is part of the scan
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return The number of bytes allocated by the stage, -1 if unknown or if the stage is part of the scan
+		 */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+	}
+
+	private final List<Stage> stages = new ArrayList<Stage>();
+
+	private List<Tag> tags = null;
+
+	private long scanNanos = 0;
+
+	private long scanAllocatedBytes = -1;
+
+	/** Time and allocations at the end of the previous stage */
+	private long lastNanos;
+	private long lastAllocatedBytes;
+
+	/** Time and allocations at the beginning of the computation */
+	private final long startNanos;
+	private final long startAllocatedBytes;
+
+	private long totalNanos = 0;
+
+	private long totalAllocatedBytes = -1;
+
+	OutputProfile() {
+		startAllocatedBytes = lastAllocatedBytes = AllocationCounter.currentThread();
+		startNanos = lastNanos = System.nanoTime();
+	}
+
+	/**
+	 * Records the time and the allocations of the scan of the cloud.
+	 */
+	void scanned() {
+		scanNanos = elapsedNanos();
+		scanAllocatedBytes = allocatedBytes();
+	}
+
+	/**
+	 * Records a stage evaluated during the scan of the cloud.
+	 */
+	void counted(String name, int in, int out) {
+		stages.add(new Stage(name, null, in, out, -1, -1));
+	}
+
+	/**
+	 * Records a stage that ended now.
+	 */
+	void stage(String name, Filter<Tag> filter, int in, int out) {
+		long nanos = elapsedNanos();
+		long allocated = allocatedBytes();
+		stages.add(new Stage(name, filter, in, out, nanos, allocated));
+	}
+
+	/**
+	 * Records the result of the computation.
+	 */
+	void finished(List<Tag> tags) {
+		totalNanos = System.nanoTime() - startNanos;
+		long allocated = AllocationCounter.currentThread();
+		totalAllocatedBytes = (allocated < 0 || startAllocatedBytes < 0) ? -1 : allocated - startAllocatedBytes;
+		this.tags = tags;
+	}
+
+	private long elapsedNanos() {
+		long now = System.nanoTime();
+		long nanos = now - lastNanos;
+		lastNanos = now;
+		return nanos;
+	}
+
+	private long allocatedBytes() {
+		long now = AllocationCounter.currentThread();
+		long allocated = (now < 0 || lastAllocatedBytes < 0) ? -1 : now - lastAllocatedBytes;
+		lastAllocatedBytes = now;
+		return allocated;
+	}
+
+	/**
+	 * @return The stages of the computation, in order
+	 */
+	public List<Stage> getStages() {
+		return Collections.unmodifiableList(stages);
+	}
+
+	/**
+	 * @param name A stage name
+	 * @return The first stage with the given name, null if there is none
+	 */
+	public Stage getStage(String name) {
+		for (Stage stage : stages) {
+			if (stage.getName().equals(name)) {
+				return stage;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The output tags, as returned by Cloud.tags()
+	 */
+	public List<Tag> getTags() {
+		return tags;
+	}
+
+	/**
+	 * @return The time of the scan of the cloud in nanoseconds
+	 */
+	public long getScanNanos() {
+		return scanNanos;
+	}
+
+	/**
+	 * @return The number of bytes allocated by the scan of the cloud, -1 if unknown
+	 */
+	public long getScanAllocatedBytes() {
+		return scanAllocatedBytes;
+	}
+
+	/**
+	 * @return The time of the whole computation in nanoseconds
+	 */
+	public long getNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return The number of bytes allocated by the whole computation, -1 if unknown
+	 */
+	public long getAllocatedBytes() {
+		return totalAllocatedBytes;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format(Locale.US, "%-24s %10s %10s %10s %12s %12s%n",
+				"stage", "in", "out", "dropped", "time ms", "alloc bytes"));
+		for (Stage stage : stages) {
+			builder.append(String.format(Locale.US, "%-24s %10d %10d %10d %12s %12s%n",
+					stage.getName(), stage.getIn(), stage.getOut(), stage.getDropped(),
+					millis(stage.getNanos()), bytes(stage.getAllocatedBytes())));
+		}
+		builder.append(String.format(Locale.US, "%-24s %10s %10s %10s %12s %12s%n",
+				"(scan)", "", "", "", millis(scanNanos), bytes(scanAllocatedBytes)));
+		builder.append(String.format(Locale.US, "%-24s %10s %10d %10s %12s %12s",
+				"total", "", (tags == null) ? 0 : tags.size(), "", millis(totalNanos), bytes(totalAllocatedBytes)));
+		return builder.toString();
+	}
+
+	private static String millis(long nanos) {
+		return (nanos < 0) ? "-" : String.format(Locale.US, "%.3f", nanos / 1e6);
+	}
+
+	private static String bytes(long bytes) {
+		return (bytes < 0) ? "-" : Long.toString(bytes);
+	}
+
+}
@@ -0,0 +1,50 @@
+package es.luixal.android_tagcloud;
+
+import android.graphics.Paint;
+
+import es.luixal.android_tagcloud.layout.TextMeasurer;
+
+/**
+ * Measurer of the words drawn with a Paint.
+ * Text sizes are in density independent pixels, like the sizes of the spans
+ * set by CloudView, and measures are in pixels.
+ * The paint is only used by the measurer, which serializes its calls.
+ */
+public class PaintTextMeasurer implements TextMeasurer {
+
+	private final Paint paint;
+
+	private final float density;
+
+	/**
+	 * @param paint The paint of the words, copied
+	 * @param density The scale of density independent pixels (DisplayMetrics.density)
+	 */
+	public PaintTextMeasurer(Paint paint, float density) {
+		this.paint = new Paint(paint);
+		this.density = density;
+	}
+
+	public synchronized float getWidth(String word, int size) {
+		paint.setTextSize(size * density);
+		return paint.measureText(word);
+	}
+
+	public synchronized float getAscent(int size) {
+		paint.setTextSize(size * density);
+		return -paint.ascent();
+	}
+
+	public synchronized float getDescent(int size) {
+		paint.setTextSize(size * density);
+		return paint.descent();
+	}
+
+	/**
+	 * @return The scale of density independent pixels
+	 */
+	public float getDensity() {
+		return density;
+	}
+
+}
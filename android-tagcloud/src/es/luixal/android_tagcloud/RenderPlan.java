@@ -0,0 +1,133 @@
+package es.luixal.android_tagcloud;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What a CloudView displays: the text made of the output tag names separated by
+ * spaces, and for each tag the range of its name in the text and its text size.
+ * A plan doesn't depend on Android classes, so it can be computed on any thread
+ * and tested on a plain JVM; the view turns it into spans on the UI thread.
+ */
+public final class RenderPlan {
+
+	/** Text of the cloud */
+	private final String text;
+
+	/** Start of the name of each tag in the text */
+	private final int[] starts;
+
+	/** End (exclusive) of the name of each tag in the text */
+	private final int[] ends;
+
+	/** Text size of each tag */
+	private final int[] sizes;
+
+	private RenderPlan(String text, int[] starts, int[] ends, int[] sizes) {
+		this.text = text;
+		this.starts = starts;
+		this.ends = ends;
+		this.sizes = sizes;
+	}
+
+	/**
+	 * Builds the plan of the tags to display of a cloud.
+	 * The cloud must not be modified during the call.
+	 * @param cloud The cloud
+	 * @return The plan
+	 */
+	public static RenderPlan build(Cloud cloud) {
+		return build(cloud.getOutputTags());
+	}
+
+	/**
+	 * Builds the plan of a list of tags, in the order of the list.
+	 * The text size of each tag is its weight rounded with getWeightInt().
+	 * @param tags The tags, with their weight set
+	 * @return The plan
+	 */
+	public static RenderPlan build(List<Tag> tags) {
+		int n = tags.size();
+		int[] starts = new int[n];
+		int[] ends = new int[n];
+		int[] sizes = new int[n];
+
+		int length = 0;
+		for (int i=0; i<n; i++) {
+			length += tags.get(i).getName().length() + 1;
+		}
+
+		StringBuilder builder = new StringBuilder(length);
+		for (int i=0; i<n; i++) {
+			Tag tag = tags.get(i);
+			starts[i] = builder.length();
+			builder.append(tag.getName());
+			ends[i] = builder.length();
+			builder.append(' ');
+			sizes[i] = tag.getWeightInt();
+		}
+
+		return new RenderPlan(builder.toString(), starts, ends, sizes);
+	}
+
+	/**
+	 * @return The text of the cloud
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return The number of tags
+	 */
+	public int getCount() {
+		return sizes.length;
+	}
+
+	/**
+	 * @param i Index of a tag
+	 * @return The start of the name of the tag in the text
+	 */
+	public int getStart(int i) {
+		return starts[i];
+	}
+
+	/**
+	 * @param i Index of a tag
+	 * @return The end (exclusive) of the name of the tag in the text
+	 */
+	public int getEnd(int i) {
+		return ends[i];
+	}
+
+	/**
+	 * @param i Index of a tag
+	 * @return The text size of the tag
+	 */
+	public int getSize(int i) {
+		return sizes[i];
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + text.hashCode();
+		result = prime * result + Arrays.hashCode(sizes);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		final RenderPlan other = (RenderPlan) obj;
+		return text.equals(other.text) && Arrays.equals(starts, other.starts)
+				&& Arrays.equals(ends, other.ends) && Arrays.equals(sizes, other.sizes);
+	}
+
+}
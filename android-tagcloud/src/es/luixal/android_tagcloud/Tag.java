@@ -1,8 +1,10 @@
 package es.luixal.android_tagcloud;
 
 import java.io.Serializable;
+import java.text.Collator;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Locale;
 
 /**
  * Class representing a tag 
@@ -11,12 +13,22 @@ public class Tag implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/** Comparator used to sort tags having the same score */
+	private static final Comparator<Tag> NAME_COMPARATOR = new NameComparatorAsc();
+
 	/** Tag name */
 	private String name = null;
 	
 	/** Link associated with the tag */
 	private String link = null;
 	
+	/** Template of the link, expanded when the link is first requested. Kept
+	 *  once expanded, so that threads reading the tag concurrently all find it. */
+	private LinkTemplate linkTemplate = null;
+	
+	/** Argument of the link template */
+	private String linkArgument = null;
+	
 	/** Numerical value associated with the tag */
 	private double score = 1.0;
 	
@@ -29,6 +41,9 @@ public class Tag implements Serializable {
 	/** Creation date of the tag */
 	private Date date = new Date();
 
+	/** Estimated size charged to the clouds holding the tag, recorded when first estimated, 0 until then */
+	transient private int chargedBytes = 0;
+
 	/**
 	 * Default constructor
 	 */
@@ -115,10 +130,10 @@ public class Tag implements Serializable {
 	public Tag(Tag tag)
 	{
 		setName(tag.getName());
-		setLink(tag.getLink());
+		copyLink(tag);
 		setScore(tag.getScore());
 		setNormScore(tag.getNormScore());
-		setWeight(getWeight());
+		setWeight(tag.getWeight());
 		setDate(tag.getDate());
 	}
 
@@ -163,6 +178,15 @@ public class Tag implements Serializable {
 	 * @return The tag link
 	 */
 	public String getLink() {
+		String link = this.link;
+		if (link == null) {
+			LinkTemplate template = linkTemplate;
+			if (template != null) {
+				// the expansion is the same whichever thread stores it
+				link = template.format(linkArgument);
+				this.link = link;
+			}
+		}
 		return link;
 	}
 
@@ -172,6 +196,75 @@ public class Tag implements Serializable {
 	 */
 	public void setLink(String link) {
 		this.link = link;
+		this.linkTemplate = null;
+		this.linkArgument = null;
+	}
+
+	/**
+	 * Sets the tag link as a template, expanded when the link is first requested
+	 * @param template The link template
+	 * @param argument The argument of the template
+	 */
+	void setLink(LinkTemplate template, String argument) {
+		this.link = null;
+		this.linkTemplate = template;
+		this.linkArgument = argument;
+	}
+
+	/**
+	 * Sets the tag link to the link of another tag, without expanding it
+	 * @param tag The tag to copy the link from
+	 */
+	void copyLink(Tag tag) {
+		this.link = tag.link;
+		this.linkTemplate = tag.linkTemplate;
+		this.linkArgument = tag.linkArgument;
+	}
+
+	/**
+	 * @return True if the tag has a link (possibly not expanded yet)
+	 */
+	boolean hasLink() {
+		return (link != null || linkTemplate != null);
+	}
+
+	/**
+	 * @return The link template, null if the link is not a template
+	 */
+	LinkTemplate getLinkTemplate() {
+		return linkTemplate;
+	}
+
+	/**
+	 * @return The argument of the link template
+	 */
+	String getLinkArgument() {
+		return linkArgument;
+	}
+
+	/**
+	 * @return The estimated size charged to the clouds holding the tag, 0 if not estimated yet
+	 */
+	int getChargedBytes() {
+		return chargedBytes;
+	}
+
+	/**
+	 * @param chargedBytes The estimated size charged to the clouds holding the tag
+	 */
+	void setChargedBytes(int chargedBytes) {
+		this.chargedBytes = chargedBytes;
+	}
+
+	/**
+	 * @return The estimated memory used by the link, not counting the strings shared with the name
+	 */
+	long getLinkSize() {
+		long size = TagSizes.sizeOf(link);
+		if (linkArgument != name) {
+			size += TagSizes.sizeOf(linkArgument);
+		}
+		return size;
 	}
 
 	/**
@@ -355,6 +448,30 @@ public class Tag implements Serializable {
 		
 	}
 
+	/**
+	 * Compares two tags by name in ascending order, using the collation rules of a locale
+	 */
+	static public class CollatedNameComparatorAsc implements Comparator<Tag> {
+
+		private final Collator collator;
+
+		public CollatedNameComparatorAsc(Locale locale) {
+			this.collator = Collator.getInstance(locale);
+		}
+
+		public int compare(Tag o1, Tag o2) {
+			return collator.compare(o1.getName(), o2.getName());
+		}
+
+		/**
+		 * @return The Collator used to compare names
+		 */
+		public Collator getCollator() {
+			return collator;
+		}
+		
+	}
+
 	/**
 	 * Compares two tags by score in ascending order
 	 */
@@ -365,7 +482,7 @@ public class Tag implements Serializable {
 			
 			// if the score is the same sort by name
 			if (scoreComparison == 0) {
-				return (new NameComparatorAsc()).compare(o1, o2);
+				return NAME_COMPARATOR.compare(o1, o2);
 			} else {
 				return scoreComparison;
 			}
@@ -382,7 +499,7 @@ public class Tag implements Serializable {
 			
 			// if the score is the same sort by name
 			if (scoreComparison == 0) {
-				return (new NameComparatorAsc()).compare(o1, o2);
+				return NAME_COMPARATOR.compare(o1, o2);
 			} else {
 				return scoreComparison;
 			}
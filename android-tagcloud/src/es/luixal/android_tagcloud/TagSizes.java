@@ -0,0 +1,121 @@
+package es.luixal.android_tagcloud;
+
+/**
+ * Estimates the memory used by the tags of a cloud.
+ * Sizes are the ones of a VM with 4 byte references and 8 byte alignment
+ * (Dalvik, ART, HotSpot with compressed references), strings are counted
+ * with 2 bytes per character. Shared objects (link templates, terms of a
+ * TermDictionary) are not counted.
+ */
+final class TagSizes {
+
+	/** Tag object: header, 5 references, 3 doubles, 1 int */
+	private static final int TAG = 64;
+
+	/** Date object */
+	private static final int DATE = 24;
+
+	/** String object without its characters */
+	private static final int STRING = 24;
+
+	/** Char array header */
+	private static final int ARRAY = 16;
+
+	/** HashMap entry and its share of the table (load factor 0.75) */
+	private static final int MAP_ENTRY = 40;
+
+	/** Row of a ColumnarTagStore: columns and index slots, with their spare capacity */
+	private static final int COLUMNS_ROW = 48;
+
+	/** Index slots of a record of an OffHeapTagStore, with their spare capacity */
+	private static final int INDEX_SLOT = 8;
+
+	private TagSizes() {
+	}
+
+	/**
+	 * Estimates the memory used by a tag and its map entry.
+	 * @param key The map key of the tag
+	 * @param tag The tag
+	 * @return The estimated number of bytes
+	 */
+	static long estimate(String key, Tag tag) {
+		String name = tag.getName();
+		long size = MAP_ENTRY + TAG + sizeOf(name);
+		// the key is usually the name itself, it is counted only if it differs from the name
+		// so that a tag is given the same size whichever equal key is used
+		if (key != name && ! key.equals(name)) {
+			size += sizeOf(key);
+		}
+		if (tag.getDate() != null) {
+			size += DATE;
+		}
+		return size + tag.getLinkSize();
+	}
+
+	/**
+	 * Estimates the memory used by a tag stored in a ColumnarTagStore.
+	 * Terms are shared through the dictionary of the map and are not counted.
+	 * @param tag The tag
+	 * @return The estimated number of bytes
+	 */
+	static long estimateRow(Tag tag) {
+		Object link = ColumnarTagStore.linkOf(tag);
+		return COLUMNS_ROW + ((link instanceof String) ? sizeOf((String) link) : 0);
+	}
+
+	/**
+	 * Estimates the memory used by a tag stored in an OffHeapTagStore, outside
+	 * of the heap: its record, its share of the index, and its strings in UTF-8.
+	 * @param key The map key of the tag
+	 * @param tag The tag
+	 * @return The estimated number of bytes
+	 */
+	static long estimateRecord(String key, Tag tag) {
+		String name = tag.getName();
+		long size = OffHeapTagStore.RECORD + INDEX_SLOT + utf8Length(key);
+		if (! key.equals(name)) {
+			size += utf8Length(name);
+		}
+		Object link = ColumnarTagStore.linkOf(tag);
+		if (link instanceof String) {
+			size += utf8Length((String) link);
+		}
+		return size;
+	}
+
+	/**
+	 * @return The number of bytes of a string in UTF-8
+	 */
+	private static int utf8Length(String s) {
+		int length = 0;
+		for (int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				// the low surrogate is counted with the high one
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Estimates the memory used by a string.
+	 * @param s The string, may be null
+	 * @return The estimated number of bytes
+	 */
+	static long sizeOf(String s) {
+		if (s == null)
+			return 0;
+
+		return STRING + ((ARRAY + 2L * s.length() + 7) & ~7L);
+	}
+
+}
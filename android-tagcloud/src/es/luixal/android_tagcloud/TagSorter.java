@@ -0,0 +1,361 @@
+package es.luixal.android_tagcloud;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Sorts tags with the comparators defined in Tag.
+ * Sort keys (case folded names, collation keys, scores) are computed once per tag
+ * and the sort works on an array of indexes, so names are not case folded again
+ * at each comparison. The ordering is the same as the one of the comparators,
+ * equal tags keep their relative order.
+ * Other comparators, and names containing surrogates, are sorted with the
+ * comparator through Collections.sort().
+ * The tags with the highest scores can also be selected without sorting the whole array.
+ */
+final class TagSorter {
+
+	/** Below this size tags are sorted with the comparator itself */
+	private static final int MIN_KEYED_SORT = 16;
+
+	private static final int NAME_ASC = 0;
+	private static final int NAME_DESC = 1;
+	private static final int SCORE_ASC = 2;
+	private static final int SCORE_DESC = 3;
+	private static final int COLLATED_NAME_ASC = 4;
+
+	/** Sort order */
+	private final int order;
+
+	/** Tags to sort */
+	private final Tag[] tags;
+
+	/** Case folded name of each tag, computed when first needed */
+	private String[] foldedNames;
+
+	/** Collation key of the name of each tag */
+	private CollationKey[] collationKeys;
+
+	/** Score of each tag */
+	private double[] scores;
+
+	private TagSorter(int order, Tag[] tags) {
+		this.order = order;
+		this.tags = tags;
+	}
+
+	/**
+	 * Sorts a list of tags.
+	 * @param tags The list to sort
+	 * @param comparator The Comparator that determines the ordering
+	 */
+	static void sort(List<Tag> tags, Comparator<? super Tag> comparator) {
+		int n = tags.size();
+		if (n < MIN_KEYED_SORT || orderOf(comparator) < 0) {
+			Collections.sort(tags, comparator);
+			return;
+		}
+
+		Tag[] array = tags.toArray(new Tag[n]);
+		sort(array, n, comparator);
+
+		ListIterator<Tag> it = tags.listIterator();
+		for (int i=0; i<n; i++) {
+			it.next();
+			it.set(array[i]);
+		}
+	}
+
+	/**
+	 * Sorts the first n tags of an array.
+	 * @param tags The array to sort
+	 * @param n The number of tags to sort
+	 * @param comparator The Comparator that determines the ordering
+	 */
+	static void sort(Tag[] tags, int n, Comparator<? super Tag> comparator) {
+		int order = orderOf(comparator);
+		if (n < MIN_KEYED_SORT || order < 0 || (order != COLLATED_NAME_ASC && hasSurrogates(tags, n))) {
+			Arrays.sort(tags, 0, n, comparator);
+			return;
+		}
+
+		TagSorter sorter = new TagSorter(order, tags);
+		sorter.computeKeys(n, comparator);
+
+		int[] indexes = new int[n];
+		for (int i=0; i<n; i++) {
+			indexes[i] = i;
+		}
+		sorter.mergeSort(indexes, new int[n], 0, n);
+
+		Tag[] sorted = new Tag[n];
+		for (int i=0; i<n; i++) {
+			sorted[i] = tags[indexes[i]];
+		}
+		System.arraycopy(sorted, 0, tags, 0, n);
+	}
+
+	/**
+	 * Moves the k tags with the highest scores at the beginning of the array,
+	 * sorted by decreasing score. The result is the same as sorting the whole
+	 * array with ScoreComparatorDesc and keeping the first k tags, but only
+	 * the selected tags are sorted, and the memory used is proportional to k.
+	 * @param tags The array of tags
+	 * @param n The number of tags in the array
+	 * @param k The number of tags to select
+	 * @return The number of selected tags
+	 */
+	static int selectTopScores(Tag[] tags, int n, int k) {
+		if (k >= n) {
+			sort(tags, n, new Tag.ScoreComparatorDesc());
+			return n;
+		}
+		if (k <= 0)
+			return 0;
+
+		// bounded heap whose root is the least important selected tag;
+		// tags are compared without sort keys, which would take memory for all the tags
+		int[] heap = new int[k];
+		for (int i=0; i<k; i++) {
+			heap[i] = i;
+			siftUp(tags, heap, i);
+		}
+		for (int i=k; i<n; i++) {
+			if (compareScores(tags, i, heap[0]) < 0) {
+				heap[0] = i;
+				siftDown(tags, heap, k);
+			}
+		}
+
+		// selected tags in their original order, so that the stable sort keeps equal tags in that order
+		Arrays.sort(heap);
+		Tag[] selected = new Tag[k];
+		for (int i=0; i<k; i++) {
+			selected[i] = tags[heap[i]];
+		}
+		sort(selected, k, new Tag.ScoreComparatorDesc());
+		System.arraycopy(selected, 0, tags, 0, k);
+		return k;
+	}
+
+	/**
+	 * Returns the sort order corresponding to a comparator, -1 if the comparator is not known.
+	 */
+	private static int orderOf(Comparator<?> comparator) {
+		if (comparator == null)
+			return -1;
+
+		// subclasses may redefine the ordering
+		Class<?> cls = comparator.getClass();
+		if (cls == Tag.NameComparatorAsc.class) {
+			return NAME_ASC;
+		} else if (cls == Tag.NameComparatorDesc.class) {
+			return NAME_DESC;
+		} else if (cls == Tag.ScoreComparatorAsc.class) {
+			return SCORE_ASC;
+		} else if (cls == Tag.ScoreComparatorDesc.class) {
+			return SCORE_DESC;
+		} else if (cls == Tag.CollatedNameComparatorAsc.class) {
+			return COLLATED_NAME_ASC;
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Tells whether a name of the first n tags contains a surrogate, which fold()
+	 * can't fold as String.compareToIgnoreCase() does on every VM.
+	 */
+	private static boolean hasSurrogates(Tag[] tags, int n) {
+		for (int i=0; i<n; i++) {
+			String name = tags[i].getName();
+			for (int j=0; j<name.length(); j++) {
+				char c = name.charAt(j);
+				if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Computes the sort keys of the first n tags.
+	 */
+	private void computeKeys(int n, Comparator<? super Tag> comparator) {
+		if (order == SCORE_ASC || order == SCORE_DESC) {
+			scores = new double[n];
+			for (int i=0; i<n; i++) {
+				scores[i] = tags[i].getScore();
+			}
+		}
+
+		if (order == COLLATED_NAME_ASC) {
+			Collator collator = ((Tag.CollatedNameComparatorAsc) comparator).getCollator();
+			collationKeys = new CollationKey[n];
+			for (int i=0; i<n; i++) {
+				collationKeys[i] = collator.getCollationKey(tags[i].getName());
+			}
+		} else {
+			foldedNames = new String[n];
+		}
+	}
+
+	/**
+	 * Returns the case folded name of the tag at an index.
+	 */
+	private String foldedName(int i) {
+		String name = foldedNames[i];
+		if (name == null) {
+			name = fold(tags[i].getName());
+			foldedNames[i] = name;
+		}
+		return name;
+	}
+
+	/**
+	 * Compares the tags at two indexes.
+	 * Tags that are equal for the comparator are ordered by index, as a stable sort would do.
+	 */
+	private int compare(int a, int b) {
+		int comparison;
+		switch (order) {
+		case NAME_DESC:
+			comparison = foldedName(b).compareTo(foldedName(a));
+			break;
+		case SCORE_ASC:
+			comparison = Double.compare(scores[a], scores[b]);
+			if (comparison == 0) {
+				comparison = foldedName(a).compareTo(foldedName(b));
+			}
+			break;
+		case SCORE_DESC:
+			comparison = Double.compare(scores[b], scores[a]);
+			if (comparison == 0) {
+				comparison = foldedName(a).compareTo(foldedName(b));
+			}
+			break;
+		case COLLATED_NAME_ASC:
+			comparison = collationKeys[a].compareTo(collationKeys[b]);
+			break;
+		default:
+			comparison = foldedName(a).compareTo(foldedName(b));
+			break;
+		}
+		return (comparison != 0) ? comparison : (a - b);
+	}
+
+	/**
+	 * Compares the tags at two indexes by decreasing score, then by name ignoring case,
+	 * then by index, as compare() does with SCORE_DESC.
+	 */
+	private static int compareScores(Tag[] tags, int a, int b) {
+		int comparison = Double.compare(tags[b].getScore(), tags[a].getScore());
+		if (comparison == 0) {
+			comparison = tags[a].getName().compareToIgnoreCase(tags[b].getName());
+		}
+		return (comparison != 0) ? comparison : (a - b);
+	}
+
+	/**
+	 * Moves up the last entry of a heap of tag indexes ordered with the greatest index at the root.
+	 */
+	private static void siftUp(Tag[] tags, int[] heap, int i) {
+		int index = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (compareScores(tags, heap[parent], index) >= 0)
+				break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = index;
+	}
+
+	/**
+	 * Moves down the root of a heap of tag indexes ordered with the greatest index at the root.
+	 */
+	private static void siftDown(Tag[] tags, int[] heap, int size) {
+		int index = heap[0];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && compareScores(tags, heap[child + 1], heap[child]) > 0) {
+				child++;
+			}
+			if (compareScores(tags, index, heap[child]) >= 0)
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = index;
+	}
+
+	/**
+	 * Stable merge sort of indexes[from, to).
+	 */
+	private void mergeSort(int[] indexes, int[] buffer, int from, int to) {
+		if (to - from < 8) {
+			// insertion sort
+			for (int i=from+1; i<to; i++) {
+				int index = indexes[i];
+				int j = i - 1;
+				while (j >= from && compare(indexes[j], index) > 0) {
+					indexes[j + 1] = indexes[j];
+					j--;
+				}
+				indexes[j + 1] = index;
+			}
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		mergeSort(indexes, buffer, from, mid);
+		mergeSort(indexes, buffer, mid, to);
+		if (compare(indexes[mid - 1], indexes[mid]) <= 0)
+			return;
+
+		System.arraycopy(indexes, from, buffer, from, to - from);
+		int i = from, j = mid, k = from;
+		while (i < mid && j < to) {
+			if (compare(buffer[j], buffer[i]) < 0) {
+				indexes[k++] = buffer[j++];
+			} else {
+				indexes[k++] = buffer[i++];
+			}
+		}
+		while (i < mid) {
+			indexes[k++] = buffer[i++];
+		}
+		while (j < to) {
+			indexes[k++] = buffer[j++];
+		}
+	}
+
+	/**
+	 * Case folds a string without surrogates the same way String.compareToIgnoreCase()
+	 * compares characters. Supplementary characters are folded as code points by
+	 * recent VMs and char by char by older ones, so they are left to the comparator.
+	 */
+	static String fold(String s) {
+		char[] chars = null;
+		for (int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			char f = Character.toLowerCase(Character.toUpperCase(c));
+			if (f != c) {
+				if (chars == null) {
+					chars = s.toCharArray();
+				}
+				chars[i] = f;
+			}
+		}
+		return (chars == null) ? s : new String(chars);
+	}
+
+}
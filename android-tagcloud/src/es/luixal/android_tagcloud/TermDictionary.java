@@ -0,0 +1,127 @@
+package es.luixal.android_tagcloud;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary giving each term a compact int id, so that clouds over the same
+ * vocabulary share a single copy of each term (see ColumnarTagStore).
+ * Ids are assigned in the order terms are first interned, from 0. Terms are
+ * never removed: the dictionary suits vocabularies that stop growing, e.g. the
+ * words of a language or the tags of a site. A dictionary is freed with the
+ * last store using it; the default one lives as long as the process, so
+ * deserialized stores don't use it (see ColumnarTagStore).
+ * Lookups don't lock; interning a new term locks the dictionary. The dictionary
+ * can be shared by clouds used from different threads.
+ */
+public class TermDictionary {
+
+	/** Dictionary of the process */
+	private static final TermDictionary DEFAULT = new TermDictionary();
+
+	/** Id of each term */
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+	/** Term of each id, replaced by a larger copy when full */
+	private volatile String[] terms = new String[256];
+
+	/** Number of terms, only modified while holding the lock */
+	private int count = 0;
+
+	/** Stands for the dictionary in the serialized stores */
+	private final Token token = new Token(this);
+
+	/**
+	 * Serialized by the stores in place of their dictionary. The stores of a
+	 * stream that shared a dictionary share a single token once deserialized,
+	 * and through it a single new dictionary.
+	 */
+	static final class Token implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The dictionary, created when a deserialized token is first used */
+		private transient TermDictionary dictionary;
+
+		Token(TermDictionary dictionary) {
+			this.dictionary = dictionary;
+		}
+
+		synchronized TermDictionary getDictionary() {
+			if (dictionary == null) {
+				dictionary = new TermDictionary();
+			}
+			return dictionary;
+		}
+
+	}
+
+	/**
+	 * @return The dictionary shared by the whole process
+	 */
+	public static TermDictionary getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the id of a term, giving it one if it doesn't have one yet.
+	 * @param term The term
+	 * @return The id of the term
+	 */
+	public int intern(String term) {
+		Integer id = ids.get(term);
+		if (id != null)
+			return id.intValue();
+
+		synchronized (this) {
+			id = ids.get(term);
+			if (id != null)
+				return id.intValue();
+
+			String[] array = terms;
+			if (count == array.length) {
+				String[] grown = new String[2 * count];
+				System.arraycopy(array, 0, grown, 0, count);
+				array = grown;
+			}
+			// the term is stored before its id is published
+			array[count] = term;
+			terms = array;
+			ids.put(term, Integer.valueOf(count));
+			return count++;
+		}
+	}
+
+	/**
+	 * Returns the id of a term, without giving it one.
+	 * @param term The term
+	 * @return The id of the term, -1 if it hasn't been interned
+	 */
+	public int find(String term) {
+		Integer id = ids.get(term);
+		return (id != null) ? id.intValue() : -1;
+	}
+
+	/**
+	 * @param id The id of a term, as returned by intern()
+	 * @return The term
+	 */
+	public String getTerm(int id) {
+		return terms[id];
+	}
+
+	/**
+	 * @return The token standing for the dictionary in the serialized stores
+	 */
+	Token getToken() {
+		return token;
+	}
+
+	/**
+	 * @return The number of terms
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+}
@@ -0,0 +1,80 @@
+package es.luixal.android_tagcloud;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.View;
+
+import es.luixal.android_tagcloud.schedule.FrameScheduler;
+
+/**
+ * Scheduler running the frames of a view: callbacks of the Choreographer from
+ * Android 4.1, so that they run before the view is drawn, and callbacks posted
+ * to the view every 16 ms before. Must be used on the UI thread.
+ */
+public class ViewFrameScheduler implements FrameScheduler {
+
+	/** Time between two frames before Android 4.1 */
+	private static final long FRAME_MILLIS = 16;
+
+	private final View view;
+
+	/** Frames of the Choreographer, null before Android 4.1 */
+	private final ChoreographerFrames frames;
+
+	/**
+	 * @param view The view whose frames are scheduled
+	 */
+	public ViewFrameScheduler(View view) {
+		this.view = view;
+		this.frames = (Build.VERSION.SDK_INT >= 16) ? new ChoreographerFrames() : null;
+	}
+
+	public void post(Runnable frame) {
+		if (frames != null) {
+			frames.post(frame);
+		} else {
+			view.postDelayed(frame, FRAME_MILLIS);
+		}
+	}
+
+	public void cancel(Runnable frame) {
+		if (frames != null) {
+			frames.cancel(frame);
+		} else {
+			view.removeCallbacks(frame);
+		}
+	}
+
+	/**
+	 * Callbacks of the Choreographer, in a class of their own so that the
+	 * Choreographer is not loaded before Android 4.1.
+	 */
+	private static final class ChoreographerFrames {
+
+		/** Callback of each posted frame */
+		private final Map<Runnable, Choreographer.FrameCallback> callbacks = new HashMap<Runnable, Choreographer.FrameCallback>();
+
+		void post(final Runnable frame) {
+			Choreographer.FrameCallback callback = new Choreographer.FrameCallback() {
+				public void doFrame(long frameTimeNanos) {
+					callbacks.remove(frame);
+					frame.run();
+				}
+			};
+			callbacks.put(frame, callback);
+			Choreographer.getInstance().postFrameCallback(callback);
+		}
+
+		void cancel(Runnable frame) {
+			Choreographer.FrameCallback callback = callbacks.remove(frame);
+			if (callback != null) {
+				Choreographer.getInstance().removeFrameCallback(callback);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,225 @@
+package es.luixal.android_tagcloud.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over a set of strings.
+ * The automaton finds all the strings occurring in a text with a single pass
+ * over the text, whatever the number of strings.
+ * States are numbered in breadth-first order and transitions are stored in flat
+ * arrays, sorted by character within each state.
+ */
+class AhoCorasick {
+
+	/** Index of the first transition of each state (one more entry for the end) */
+	private final int[] firstEdge;
+
+	/** Transition characters */
+	private final char[] edgeChars;
+
+	/** Transition targets */
+	private final int[] edgeTargets;
+
+	/** Failure transition of each state */
+	private final int[] fail;
+
+	/** Length of the string ending at each state, 0 if no string ends there */
+	private final int[] length;
+
+	/** Next state on the failure chain where a string ends, -1 if there is none */
+	private final int[] outLink;
+
+	/**
+	 * Builds the automaton.
+	 * @param strings Strings to search (empty strings are ignored)
+	 */
+	public AhoCorasick(Collection<String> strings) {
+		// builds the trie
+		List<Map<Character, Integer>> children = new ArrayList<Map<Character, Integer>>();
+		List<Integer> ends = new ArrayList<Integer>();
+		children.add(new HashMap<Character, Integer>());
+		ends.add(0);
+
+		Iterator<String> it = strings.iterator();
+		while (it.hasNext()) {
+			String s = it.next();
+			if (s == null || s.length() == 0)
+				continue;
+
+			int node = 0;
+			for (int i=0; i<s.length(); i++) {
+				Character c = s.charAt(i);
+				Integer child = children.get(node).get(c);
+				if (child == null) {
+					child = children.size();
+					children.get(node).put(c, child);
+					children.add(new HashMap<Character, Integer>());
+					ends.add(0);
+				}
+				node = child;
+			}
+			ends.set(node, s.length());
+		}
+
+		// renumbers the states in breadth-first order and flattens the transitions
+		int states = children.size();
+		int[] order = new int[states];
+		int[] rank = new int[states];
+		int head = 0, tail = 1;
+		while (head < tail) {
+			int node = order[head++];
+			Character[] chars = children.get(node).keySet().toArray(new Character[0]);
+			Arrays.sort(chars);
+			for (int i=0; i<chars.length; i++) {
+				int child = children.get(node).get(chars[i]);
+				rank[child] = tail;
+				order[tail++] = child;
+			}
+		}
+
+		firstEdge = new int[states + 1];
+		edgeChars = new char[states - 1];
+		edgeTargets = new int[states - 1];
+		length = new int[states];
+		int edge = 0;
+		for (int state=0; state<states; state++) {
+			int node = order[state];
+			firstEdge[state] = edge;
+			length[state] = ends.get(node);
+			Character[] chars = children.get(node).keySet().toArray(new Character[0]);
+			Arrays.sort(chars);
+			for (int i=0; i<chars.length; i++) {
+				edgeChars[edge] = chars[i];
+				edgeTargets[edge] = rank[children.get(node).get(chars[i])];
+				edge++;
+			}
+		}
+		firstEdge[states] = edge;
+
+		// computes failure and output links, parents come before children
+		fail = new int[states];
+		outLink = new int[states];
+		outLink[0] = -1;
+		for (int state=0; state<states; state++) {
+			for (int e=firstEdge[state]; e<firstEdge[state + 1]; e++) {
+				int child = edgeTargets[e];
+				if (state == 0) {
+					fail[child] = 0;
+				} else {
+					int f = fail[state];
+					int next;
+					while ((next = next(f, edgeChars[e])) < 0 && f != 0) {
+						f = fail[f];
+					}
+					fail[child] = (next < 0) ? 0 : next;
+				}
+				int f = fail[child];
+				outLink[child] = (length[f] > 0) ? f : outLink[f];
+			}
+		}
+	}
+
+	/**
+	 * Tells whether one of the strings occurs in the text.
+	 */
+	public boolean occursIn(String text, boolean ignoreCase) {
+		int state = 0;
+		for (int i=0; i<text.length(); i++) {
+			state = step(state, text.charAt(i), ignoreCase);
+			if (length[state] > 0 || outLink[state] >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tells whether the text starts with one of the strings.
+	 */
+	public boolean isPrefixOf(String text, boolean ignoreCase) {
+		int state = 0;
+		for (int i=0; i<text.length(); i++) {
+			state = next(state, ignoreCase ? Character.toLowerCase(text.charAt(i)) : text.charAt(i));
+			if (state < 0) {
+				return false;
+			}
+			if (length[state] > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tells whether the text ends with one of the strings.
+	 */
+	public boolean isSuffixOf(String text, boolean ignoreCase) {
+		int state = 0;
+		for (int i=0; i<text.length(); i++) {
+			state = step(state, text.charAt(i), ignoreCase);
+		}
+		return (state != 0 && (length[state] > 0 || outLink[state] >= 0));
+	}
+
+	/**
+	 * Tells whether one of the strings occurs in the text as a whole word,
+	 * that is not preceded nor followed by a letter or a digit.
+	 */
+	public boolean occursAsWordIn(String text, boolean ignoreCase) {
+		int state = 0;
+		for (int i=0; i<text.length(); i++) {
+			state = step(state, text.charAt(i), ignoreCase);
+			if (i + 1 < text.length() && Character.isLetterOrDigit(text.charAt(i + 1))) {
+				continue;
+			}
+			for (int s = (length[state] > 0) ? state : outLink[state]; s >= 0; s = outLink[s]) {
+				int start = i + 1 - length[s];
+				if (start == 0 || ! Character.isLetterOrDigit(text.charAt(start - 1))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Follows goto and failure transitions for a character.
+	 */
+	private int step(int state, char c, boolean ignoreCase) {
+		if (ignoreCase) {
+			c = Character.toLowerCase(c);
+		}
+		int next;
+		while ((next = next(state, c)) < 0 && state != 0) {
+			state = fail[state];
+		}
+		return (next < 0) ? 0 : next;
+	}
+
+	/**
+	 * Returns the goto transition of a state, -1 if there is none.
+	 */
+	private int next(int state, char c) {
+		int low = firstEdge[state];
+		int high = firstEdge[state + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char m = edgeChars[mid];
+			if (m < c) {
+				low = mid + 1;
+			} else if (m > c) {
+				high = mid - 1;
+			} else {
+				return edgeTargets[mid];
+			}
+		}
+		return -1;
+	}
+
+}
@@ -1,5 +1,7 @@
 package es.luixal.android_tagcloud.filters;
 
+import java.util.BitSet;
+
 /**
  * Logical AND of two or more filters
  */
@@ -26,4 +28,33 @@ public class AndFilter<E> extends FilterBase<E> {
 		return false;
 	}
 
+	@Override
+	public void acceptAll(E[] items, int n, BitSet out) {
+		if (filters != null && filters.length > 0) {
+			// each filter only checks the objects accepted by the previous ones
+			out.set(0, n);
+			for (int i=0; i<filters.length; i++) {
+				for (int j = out.nextSetBit(0); j >= 0 && j < n; j = out.nextSetBit(j + 1)) {
+					if (! filters[i].accept(items[j])) {
+						out.clear(j);
+					}
+				}
+			}
+		} else {
+			out.clear(0, n);
+		}
+	}
+
+	@Override
+	public int filter(E[] items, int n) {
+		if (filters != null && filters.length > 0) {
+			for (int i=0; i<filters.length && n > 0; i++) {
+				n = FilterBase.filter(filters[i], items, n);
+			}
+			return n;
+		}
+	
+		return 0;
+	}
+
 }
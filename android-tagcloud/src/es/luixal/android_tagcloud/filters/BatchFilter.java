@@ -0,0 +1,30 @@
+package es.luixal.android_tagcloud.filters;
+
+import java.util.BitSet;
+
+/**
+ * Filter able to check arrays of objects at once.
+ * FilterBase implements it with loops over accept(); filters override the
+ * methods when checking many objects at once is cheaper.
+ * FilterBase.acceptAll() and FilterBase.filter() check arrays with any filter.
+ */
+public interface BatchFilter<E> extends Filter<E> {
+
+	/**
+	 * Tells which of the first n objects of the array are accepted by the filter.
+	 * @param items Objects to consider
+	 * @param n Number of objects to consider
+	 * @param out Bit i is set if items[i] is accepted, cleared if it is discarded
+	 */
+	public void acceptAll(E[] items, int n, BitSet out);
+
+	/**
+	 * Moves the objects accepted by the filter among the first n objects of the array
+	 * to the beginning of the array, keeping their order.
+	 * @param items Objects to filter
+	 * @param n Number of objects to filter
+	 * @return The number of accepted objects
+	 */
+	public int filter(E[] items, int n);
+
+}
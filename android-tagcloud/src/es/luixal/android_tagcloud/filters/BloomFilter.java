@@ -0,0 +1,112 @@
+package es.luixal.android_tagcloud.filters;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Register blocked Bloom filter over strings.
+ * All the bits of an entry live in the same 64 bit word, so a lookup is one
+ * memory access and one mask comparison, without a loop over the hash functions.
+ * The filter never answers "absent" for an added string; it may answer "present"
+ * for a string that was never added, with a probability close to the configured rate.
+ * The hash is derived from String.hashCode(), which the string computes once and
+ * caches: a name checked by the filter then looked up in a set is hashed once.
+ */
+class BloomFilter {
+
+	/** Bits per entry added to the size of a classic Bloom filter, for the collisions within a word */
+	private static final double WORD_OVERHEAD = 1.5;
+
+	/** Bit array */
+	private final long[] bits;
+
+	/** Number of words minus one (the number of words is a power of two) */
+	private final int wordMask;
+
+	/** Number of bits set per entry */
+	private final int hashes;
+
+	/** Number of entries the filter was built from */
+	private final int entries;
+
+	/**
+	 * Builds a filter containing the given strings.
+	 * @param strings Strings to add
+	 * @param falsePositiveRate Expected false positive rate (between 0.0 and 1.0, exclusive)
+	 */
+	public BloomFilter(Collection<String> strings, double falsePositiveRate) {
+		entries = strings.size();
+		int n = Math.max(entries, 1);
+
+		// number of bits and hash functions of a classic Bloom filter, with more bits
+		// as the bits of an entry share a word
+		double ln2 = Math.log(2.0);
+		double m = WORD_OVERHEAD * Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+		hashes = Math.max(1, Math.min(8, (int) Math.round(-Math.log(falsePositiveRate) / ln2)));
+
+		int words = 1;
+		while (words < m / 64 && words < (1 << 28)) {
+			words <<= 1;
+		}
+		wordMask = words - 1;
+		bits = new long[words];
+
+		Iterator<String> it = strings.iterator();
+		while (it.hasNext()) {
+			add(it.next());
+		}
+	}
+
+	/**
+	 * Adds a string to the filter.
+	 * @param s The string to add
+	 */
+	public void add(String s) {
+		long h = mix(s);
+		bits[(int) (h >>> 32) & wordMask] |= bitsOf(h);
+	}
+
+	/**
+	 * Tells whether the string may have been added to the filter.
+	 * @param s The string to check
+	 * @return False if the string has definitely not been added, true otherwise
+	 */
+	public boolean mightContain(String s) {
+		long h = mix(s);
+		long mask = bitsOf(h);
+		return (bits[(int) (h >>> 32) & wordMask] & mask) == mask;
+	}
+
+	/**
+	 * @return The number of entries the filter was built from
+	 */
+	public int size() {
+		return entries;
+	}
+
+	/**
+	 * @return The bits of an entry in its word, 6 bits of a second hash per bit
+	 * (the word is selected by the high bits of the first one)
+	 */
+	private long bitsOf(long h) {
+		long g = h * 0x94D049BB133111EBL;
+		long mask = 0;
+		for (int i=0; i<hashes; i++) {
+			mask |= 1L << (g >>> (6 * i));
+		}
+		return mask;
+	}
+
+	/**
+	 * Spreads the (cached) string hash code over 64 bits.
+	 */
+	private static long mix(String s) {
+		long h = (s == null) ? 0 : s.hashCode();
+		h *= 0x9E3779B97F4A7C15L;
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		h ^= h >>> 32;
+		return h;
+	}
+
+}
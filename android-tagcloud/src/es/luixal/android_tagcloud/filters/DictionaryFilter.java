@@ -3,9 +3,12 @@ package es.luixal.android_tagcloud.filters;
 
 import java.io.InputStream;
 import java.io.Reader;
+import java.util.AbstractSet;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.ResourceBundle;
 import java.util.Scanner;
@@ -25,6 +28,28 @@ public class DictionaryFilter extends TagFilter {
 	
 	/** Name of default resource bundle */
 	final static public String defaultPropertyFile = "dictionary_blacklist";
+
+	/** Expected false positive rate of the Bloom filter, 0.0 when the Bloom filter is disabled */
+	private double bloomFalsePositiveRate = 0.0;
+
+	/** Bloom filter checked before the dictionary, rebuilt on each update */
+	transient private BloomFilter bloomFilter = null;
+
+	/** Number of changes made to the dictionary, and number when the Bloom filter was built */
+	transient private int modCount = 0;
+	transient private int bloomModCount = 0;
+
+	/** View of the dictionary counting its changes, returned by getDictionary() */
+	transient private Set<String> dictionary = null;
+
+	/** Number of names the Bloom filter reported as possibly present */
+	transient private long bloomHits = 0;
+
+	/** Number of names the Bloom filter reported as absent */
+	transient private long bloomMisses = 0;
+
+	/** Number of names the Bloom filter reported as possibly present but not in the dictionary */
+	transient private long bloomFalsePositives = 0;
 	
 	/**
 	 * Default constructor.
@@ -55,6 +80,7 @@ public class DictionaryFilter extends TagFilter {
 	 */
 	public DictionaryFilter(Collection<? extends String> coll) {
 		blackList.addAll(coll);
+		rebuildBloomFilter();
 	}
 	
 	/**
@@ -146,6 +172,7 @@ public class DictionaryFilter extends TagFilter {
 				blackList.add(entry);
 			}
 		}
+		rebuildBloomFilter();
 	}
 	
 	/**
@@ -163,6 +190,7 @@ public class DictionaryFilter extends TagFilter {
 				blackList.add(entry);
 			}
 		}
+		rebuildBloomFilter();
 	}
 
 	/**
@@ -177,24 +205,237 @@ public class DictionaryFilter extends TagFilter {
 				blackList.add(entry);
 			}
 		}
+		rebuildBloomFilter();
 	}
 	
 	@Override
 	public boolean accept(Tag tag) {
 		if (tag == null)
 			return true;
-		
-		if (blackList.contains(tag.getName()))
+
+		if (bloomFalsePositiveRate > 0.0) {
+			// most names are not in the dictionary: the Bloom filter
+			// discards them without looking into the set
+			if (! getBloomFilter().mightContain(tag.getName())) {
+				bloomMisses++;
+				return true;
+			}
+			bloomHits++;
+			if (! blackList.contains(tag.getName())) {
+				bloomFalsePositives++;
+				return true;
+			}
 			return false;
-		else
-			return true;
+		}
+
+		return ! blackList.contains(tag.getName());
+	}
+
+	@Override
+	public void acceptAll(Tag[] tags, int n, BitSet out) {
+		filter(tags, n, null, out);
+	}
+
+	@Override
+	public int filter(Tag[] tags, int n) {
+		return filter(tags, n, tags, null);
+	}
+
+	/**
+	 * Checks the first n tags of an array, counting the Bloom filter statistics
+	 * once for the whole array.
+	 * @param out Array receiving the accepted tags, or null
+	 * @param bits Bits set for the accepted tags, cleared for the others, or null
+	 * @return The number of accepted tags
+	 */
+	private int filter(Tag[] tags, int n, Tag[] out, BitSet bits) {
+		BloomFilter bloom = (bloomFalsePositiveRate > 0.0) ? getBloomFilter() : null;
+		int count = 0;
+		long misses = 0;
+		long hits = 0;
+		long falsePositives = 0;
+		for (int i=0; i<n; i++) {
+			Tag tag = tags[i];
+			boolean accepted;
+			if (tag == null) {
+				accepted = true;
+			} else if (bloom != null && ! bloom.mightContain(tag.getName())) {
+				misses++;
+				accepted = true;
+			} else {
+				accepted = ! blackList.contains(tag.getName());
+				if (bloom != null) {
+					hits++;
+					if (accepted) {
+						falsePositives++;
+					}
+				}
+			}
+			if (bits != null) {
+				bits.set(i, accepted);
+			}
+			if (accepted) {
+				if (out != null) {
+					out[count] = tag;
+				}
+				count++;
+			}
+		}
+		bloomMisses += misses;
+		bloomHits += hits;
+		bloomFalsePositives += falsePositives;
+		return count;
+	}
+
+	/**
+	 * @return The expected false positive rate of the Bloom filter, 0.0 if the Bloom filter is disabled
+	 */
+	public double getBloomFalsePositiveRate() {
+		return bloomFalsePositiveRate;
+	}
+
+	/**
+	 * Puts a Bloom filter in front of the dictionary, so that names not present in
+	 * the dictionary are usually discarded without a set lookup.
+	 * The Bloom filter is rebuilt each time the dictionary is updated.
+	 * It reads one word of memory per name where the set reads its table and an
+	 * entry: it pays off for dictionaries larger than the CPU caches, checked in
+	 * bulk. On HotSpot, a set lookup missing a small dictionary is faster (see
+	 * the DictionaryFilter benchmarks).
+	 * @param falsePositiveRate Expected false positive rate (e.g. 0.01), 0.0 to disable the Bloom filter
+	 */
+	public void setBloomFalsePositiveRate(double falsePositiveRate) {
+		if (falsePositiveRate < 0.0 || falsePositiveRate >= 1.0)
+			throw new IllegalArgumentException("False positive rate must be between 0.0 and 1.0: " + falsePositiveRate);
+		
+		this.bloomFalsePositiveRate = falsePositiveRate;
+		rebuildBloomFilter();
 	}
 
 	/**
+	 * @return The number of names reported as possibly present by the Bloom filter
+	 */
+	public long getBloomHits() {
+		return bloomHits;
+	}
+
+	/**
+	 * @return The number of names discarded by the Bloom filter without a dictionary lookup
+	 */
+	public long getBloomMisses() {
+		return bloomMisses;
+	}
+
+	/**
+	 * @return The number of names reported as possibly present by the Bloom filter but not contained in the dictionary
+	 */
+	public long getBloomFalsePositives() {
+		return bloomFalsePositives;
+	}
+
+	/**
+	 * Resets the Bloom filter statistics.
+	 */
+	public void resetBloomStatistics() {
+		bloomHits = 0;
+		bloomMisses = 0;
+		bloomFalsePositives = 0;
+	}
+
+	/**
+	 * Rebuilds the Bloom filter from the current dictionary.
+	 * The update methods rebuild the Bloom filter, and changes made to the set
+	 * returned by getDictionary() make it rebuilt at the next check, so it
+	 * doesn't have to be called.
+	 */
+	public void rebuildBloomFilter() {
+		bloomModCount = modCount;
+		if (bloomFalsePositiveRate > 0.0) {
+			bloomFilter = new BloomFilter(blackList, bloomFalsePositiveRate);
+		} else {
+			bloomFilter = null;
+		}
+	}
+
+	/**
+	 * Returns the Bloom filter, building it if it is missing (e.g. after deserialization)
+	 * or if the dictionary has been changed since it was built.
+	 */
+	private BloomFilter getBloomFilter() {
+		if (bloomFilter == null || bloomModCount != modCount) {
+			rebuildBloomFilter();
+		}
+		return bloomFilter;
+	}
+
+	/**
+	 * Returns the terms to filter. Changes made to the set are seen by the filter,
+	 * the Bloom filter is rebuilt at the next check.
 	 * @return The list of terms to filter 
 	 */
 	public Set<String> getDictionary() {
-		return blackList;
+		if (dictionary == null) {
+			dictionary = new Dictionary();
+		}
+		return dictionary;
+	}
+
+	/**
+	 * View of the terms counting the changes made through it.
+	 */
+	private final class Dictionary extends AbstractSet<String> {
+
+		@Override
+		public int size() {
+			return blackList.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return blackList.contains(o);
+		}
+
+		@Override
+		public boolean add(String term) {
+			if (! blackList.add(term))
+				return false;
+			modCount++;
+			return true;
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (! blackList.remove(o))
+				return false;
+			modCount++;
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			blackList.clear();
+			modCount++;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			final Iterator<String> it = blackList.iterator();
+			return new Iterator<String>() {
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				public String next() {
+					return it.next();
+				}
+
+				public void remove() {
+					it.remove();
+					modCount++;
+				}
+			};
+		}
+
 	}
 
 	@Override
@@ -1,12 +1,15 @@
 package es.luixal.android_tagcloud.filters;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Base class for object filters.
  */
-public abstract class FilterBase<E> implements Filter<E> {
+public abstract class FilterBase<E> implements BatchFilter<E> {
 
 	private static final long serialVersionUID = 1L;
 
@@ -22,6 +25,20 @@ public abstract class FilterBase<E> implements Filter<E> {
 	 * @param coll Collection of objects to filter
 	 */
 	public void filter(Collection<E> coll) {
+		if (coll instanceof List && coll instanceof RandomAccess) {
+			// compacts the list in place instead of removing elements one at a time
+			List<E> list = (List<E>) coll;
+			int count = 0;
+			for (int i=0; i<list.size(); i++) {
+				E e = list.get(i);
+				if (accept(e)) {
+					list.set(count++, e);
+				}
+			}
+			list.subList(count, list.size()).clear();
+			return;
+		}
+		
 		Iterator<E> it = coll.iterator();
 		
 		while (it.hasNext()) {
@@ -31,4 +48,73 @@ public abstract class FilterBase<E> implements Filter<E> {
 		}
 	}
 
+	/**
+	 * Tells which of the first n objects of the array are accepted by the filter.
+	 * @param items Objects to consider
+	 * @param n Number of objects to consider
+	 * @param out Bit i is set if items[i] is accepted, cleared if it is discarded
+	 */
+	public void acceptAll(E[] items, int n, BitSet out) {
+		for (int i=0; i<n; i++) {
+			out.set(i, accept(items[i]));
+		}
+	}
+
+	/**
+	 * Moves the objects accepted by the filter among the first n objects of the array
+	 * to the beginning of the array, keeping their order.
+	 * @param items Objects to filter
+	 * @param n Number of objects to filter
+	 * @return The number of accepted objects
+	 */
+	public int filter(E[] items, int n) {
+		int count = 0;
+		for (int i=0; i<n; i++) {
+			if (accept(items[i])) {
+				items[count++] = items[i];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Tells which of the first n objects of the array are accepted by a filter,
+	 * in one call if it's a BatchFilter, calling accept() for each object otherwise.
+	 * @param filter The filter
+	 * @param items Objects to consider
+	 * @param n Number of objects to consider
+	 * @param out Bit i is set if items[i] is accepted, cleared if it is discarded
+	 */
+	public static <E> void acceptAll(Filter<E> filter, E[] items, int n, BitSet out) {
+		if (filter instanceof BatchFilter) {
+			((BatchFilter<E>) filter).acceptAll(items, n, out);
+			return;
+		}
+		for (int i=0; i<n; i++) {
+			out.set(i, filter.accept(items[i]));
+		}
+	}
+
+	/**
+	 * Moves the objects accepted by a filter among the first n objects of the array
+	 * to the beginning of the array, keeping their order, in one call if it's a
+	 * BatchFilter, calling accept() for each object otherwise.
+	 * @param filter The filter
+	 * @param items Objects to filter
+	 * @param n Number of objects to filter
+	 * @return The number of accepted objects
+	 */
+	public static <E> int filter(Filter<E> filter, E[] items, int n) {
+		if (filter instanceof BatchFilter)
+			return ((BatchFilter<E>) filter).filter(items, n);
+
+		int count = 0;
+		for (int i=0; i<n; i++) {
+			if (filter.accept(items[i])) {
+				items[count++] = items[i];
+			}
+		}
+		return count;
+	}
+
 }
@@ -1,5 +1,7 @@
 package es.luixal.android_tagcloud.filters;
 
+import java.util.BitSet;
+
 import es.luixal.android_tagcloud.Tag;
 
 /**
@@ -27,6 +29,39 @@ public class LengthFilter extends TagFilter {
 			return true;
 	}
 
+	@Override
+	public void acceptAll(Tag[] tags, int n, BitSet out) {
+		int minLength = getMinLength();
+		int maxLength = getMaxLength();
+		for (int i=0; i<n; i++) {
+			Tag tag = tags[i];
+			if (tag == null || tag.getName() == null) {
+				out.clear(i);
+			} else {
+				int length = tag.getName().length();
+				out.set(i, length >= minLength && length <= maxLength);
+			}
+		}
+	}
+
+	@Override
+	public int filter(Tag[] tags, int n) {
+		int minLength = getMinLength();
+		int maxLength = getMaxLength();
+		int count = 0;
+		for (int i=0; i<n; i++) {
+			Tag tag = tags[i];
+			if (tag == null || tag.getName() == null)
+				continue;
+			
+			int length = tag.getName().length();
+			if (length >= minLength && length <= maxLength) {
+				tags[count++] = tag;
+			}
+		}
+		return count;
+	}
+
 	public int getMinLength() {
 		return minLength;
 	}
@@ -1,5 +1,7 @@
 package es.luixal.android_tagcloud.filters;
 
+import java.util.BitSet;
+
 import es.luixal.android_tagcloud.Tag;
 
 /**
@@ -28,6 +30,37 @@ public class MaxLengthFilter extends TagFilter {
 			return true;
 	}
 
+	@Override
+	public void acceptAll(Tag[] tags, int n, BitSet out) {
+		int maxLength = getMaxLength();
+		for (int i=0; i<n; i++) {
+			Tag tag = tags[i];
+			if (tag == null || tag.getName() == null) {
+				out.clear(i);
+			} else {
+				int length = tag.getName().length();
+				out.set(i, length <= maxLength);
+			}
+		}
+	}
+
+	@Override
+	public int filter(Tag[] tags, int n) {
+		int maxLength = getMaxLength();
+		int count = 0;
+		for (int i=0; i<n; i++) {
+			Tag tag = tags[i];
+			if (tag == null || tag.getName() == null)
+				continue;
+			
+			int length = tag.getName().length();
+			if (length <= maxLength) {
+				tags[count++] = tag;
+			}
+		}
+		return count;
+	}
+
 	public int getMaxLength() {
 		return maxLength;
 	}
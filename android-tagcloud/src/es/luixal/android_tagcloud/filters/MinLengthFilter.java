@@ -1,5 +1,7 @@
 package es.luixal.android_tagcloud.filters;
 
+import java.util.BitSet;
+
 import es.luixal.android_tagcloud.Tag;
 
 /**
@@ -28,6 +30,37 @@ public class MinLengthFilter extends TagFilter {
 			return true;
 	}
 
+	@Override
+	public void acceptAll(Tag[] tags, int n, BitSet out) {
+		int minLength = getMinLength();
+		for (int i=0; i<n; i++) {
+			Tag tag = tags[i];
+			if (tag == null || tag.getName() == null) {
+				out.clear(i);
+			} else {
+				int length = tag.getName().length();
+				out.set(i, length >= minLength);
+			}
+		}
+	}
+
+	@Override
+	public int filter(Tag[] tags, int n) {
+		int minLength = getMinLength();
+		int count = 0;
+		for (int i=0; i<n; i++) {
+			Tag tag = tags[i];
+			if (tag == null || tag.getName() == null)
+				continue;
+			
+			int length = tag.getName().length();
+			if (length >= minLength) {
+				tags[count++] = tag;
+			}
+		}
+		return count;
+	}
+
 	public int getMinLength() {
 		return minLength;
 	}
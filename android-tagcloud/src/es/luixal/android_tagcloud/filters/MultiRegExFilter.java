@@ -0,0 +1,202 @@
+package es.luixal.android_tagcloud.filters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import es.luixal.android_tagcloud.Tag;
+
+/**
+ * Filters tags that don't match any of a set of regular expressions.
+ * It accepts the same tags as an OrFilter of RegExFilters, but the regular
+ * expressions are compiled once into a single alternation, so each name is
+ * checked with one match instead of one match per expression.
+ * Expressions that can't be part of the alternation (e.g. expressions containing
+ * back references, whose group numbers would change) are matched on their own
+ * with a cached Pattern.
+ */
+public class MultiRegExFilter extends TagFilter {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Regular expressions, in order of priority */
+	private String[] regExs = null;
+
+	/** Alternation of the combinable regular expressions, null if there are none */
+	transient private Pattern combined = null;
+
+	/** Group of the alternation matching each regular expression, 0 if not combined */
+	transient private int[] groups = null;
+
+	/** Patterns of the regular expressions not combined, null entries for the combined ones */
+	transient private Pattern[] patterns = null;
+
+	public MultiRegExFilter(String... regExs) {
+		setRegExs(regExs);
+	}
+
+	public MultiRegExFilter(Collection<String> regExs) {
+		setRegExs(regExs.toArray(new String[regExs.size()]));
+	}
+
+	@Override
+	public boolean accept(Tag tag) {
+		return (indexOf(tag) >= 0);
+	}
+
+	/**
+	 * Returns the index of the first regular expression matched by the tag name.
+	 * @param tag The tag to check
+	 * @return The index of the matching regular expression, -1 if there is none
+	 */
+	public int indexOf(Tag tag) {
+		if (tag == null || tag.getName() == null)
+			return -1;
+
+		compile();
+		String name = tag.getName();
+		int found = -1;
+
+		if (combined != null) {
+			Matcher matcher = combined.matcher(name);
+			if (matcher.matches()) {
+				// alternatives are tried in order, so the first group set
+				// corresponds to the first matching regular expression
+				for (int i=0; i<groups.length; i++) {
+					if (groups[i] > 0 && matcher.start(groups[i]) != -1) {
+						found = i;
+						break;
+					}
+				}
+			}
+		}
+
+		// expressions not combined take precedence only if they come first
+		int end = (found < 0) ? patterns.length : found;
+		for (int i=0; i<end; i++) {
+			if (patterns[i] != null && patterns[i].matcher(name).matches()) {
+				return i;
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Returns the first regular expression matched by the tag name.
+	 * @param tag The tag to check
+	 * @return The matching regular expression, null if there is none
+	 */
+	public String getMatchingRegEx(Tag tag) {
+		int index = indexOf(tag);
+		return (index < 0) ? null : regExs[index];
+	}
+
+	/**
+	 * @return The regular expressions
+	 */
+	public String[] getRegExs() {
+		return regExs.clone();
+	}
+
+	/**
+	 * Sets the regular expressions. They are compiled on first use.
+	 * @param regExs The regular expressions to set
+	 */
+	public void setRegExs(String... regExs) {
+		this.regExs = regExs.clone();
+		this.combined = null;
+		this.groups = null;
+		this.patterns = null;
+	}
+
+	/**
+	 * Compiles the regular expressions, if not already done.
+	 */
+	private void compile() {
+		if (patterns != null)
+			return;
+
+		Pattern[] compiled = new Pattern[regExs.length];
+		int[] groupOf = new int[regExs.length];
+		StringBuilder alternation = new StringBuilder();
+		int group = 1;
+
+		for (int i=0; i<regExs.length; i++) {
+			Pattern pattern = Pattern.compile(regExs[i]);
+			if (isCombinable(regExs[i])) {
+				if (alternation.length() != 0) {
+					alternation.append('|');
+				}
+				alternation.append('(').append(regExs[i]).append(')');
+				groupOf[i] = group;
+				// skips the groups of the expression itself
+				group += 1 + pattern.matcher("").groupCount();
+			} else {
+				compiled[i] = pattern;
+			}
+		}
+
+		Pattern alternationPattern = null;
+		if (alternation.length() != 0) {
+			try {
+				alternationPattern = Pattern.compile(alternation.toString());
+			} catch (PatternSyntaxException e) {
+				// e.g. duplicated group names: matches each expression on its own
+				for (int i=0; i<regExs.length; i++) {
+					if (groupOf[i] > 0) {
+						compiled[i] = Pattern.compile(regExs[i]);
+						groupOf[i] = 0;
+					}
+				}
+			}
+		}
+
+		combined = alternationPattern;
+		groups = groupOf;
+		patterns = compiled;
+	}
+
+	/**
+	 * Tells whether a regular expression can be part of the alternation,
+	 * that is whether it doesn't contain back references.
+	 */
+	private static boolean isCombinable(String regEx) {
+		for (int i=0; i<regEx.length() - 1; i++) {
+			if (regEx.charAt(i) == '\\') {
+				char next = regEx.charAt(i + 1);
+				if ((next >= '1' && next <= '9') || next == 'k') {
+					return false;
+				}
+				// skips the escaped character
+				i++;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + Arrays.hashCode(regExs);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		final MultiRegExFilter other = (MultiRegExFilter) obj;
+		if (!Arrays.equals(regExs, other.regExs))
+			return false;
+		return true;
+	}
+
+}
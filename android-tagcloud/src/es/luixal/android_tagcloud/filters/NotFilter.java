@@ -1,5 +1,7 @@
 package es.luixal.android_tagcloud.filters;
 
+import java.util.BitSet;
+
 /**
  * Accept all not null objects
  */
@@ -8,7 +10,7 @@ public class NotFilter<E> extends FilterBase<E> {
 	private static final long serialVersionUID = 1L;
 	
 	private Filter<E> filter = null;
-	
+
 	public NotFilter(Filter<E> filter) {
 		this.filter = filter;
 	}
@@ -22,4 +24,27 @@ public class NotFilter<E> extends FilterBase<E> {
 		return false;
 	}
 
+	@Override
+	public void acceptAll(E[] items, int n, BitSet out) {
+		if (filter != null) {
+			FilterBase.acceptAll(filter, items, n, out);
+			out.flip(0, n);
+		} else {
+			out.clear(0, n);
+		}
+	}
+
+	@Override
+	public int filter(E[] items, int n) {
+		// local, so that threads sharing the filter don't wait for each other
+		BitSet accepted = new BitSet(n);
+		acceptAll(items, n, accepted);
+		
+		int count = 0;
+		for (int i = accepted.nextSetBit(0); i >= 0 && i < n; i = accepted.nextSetBit(i + 1)) {
+			items[count++] = items[i];
+		}
+		return count;
+	}
+
 }
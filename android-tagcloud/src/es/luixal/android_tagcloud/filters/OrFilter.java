@@ -1,5 +1,7 @@
 package es.luixal.android_tagcloud.filters;
 
+import java.util.BitSet;
+
 /**
  * Logical OR of two or more filters
  */
@@ -8,7 +10,7 @@ public class OrFilter<E> extends FilterBase<E> {
 	private static final long serialVersionUID = 1L;
 
 	private Filter<E>[] filters = null;
-	
+
 	public OrFilter(Filter<E>... filters) {
 		this.filters = filters;
 	}
@@ -27,4 +29,32 @@ public class OrFilter<E> extends FilterBase<E> {
 		}
 	}
 
+	@Override
+	public void acceptAll(E[] items, int n, BitSet out) {
+		out.clear(0, n);
+		if (filters != null && filters.length > 0) {
+			// each filter only checks the objects not accepted by the previous ones
+			for (int i=0; i<filters.length; i++) {
+				for (int j = out.nextClearBit(0); j < n; j = out.nextClearBit(j + 1)) {
+					if (filters[i].accept(items[j])) {
+						out.set(j);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public int filter(E[] items, int n) {
+		// allocated per call: the filter may be shared by threads, and batches may be large
+		BitSet accepted = new BitSet(n);
+		acceptAll(items, n, accepted);
+		
+		int count = 0;
+		for (int i = accepted.nextSetBit(0); i >= 0 && i < n; i = accepted.nextSetBit(i + 1)) {
+			items[count++] = items[i];
+		}
+		return count;
+	}
+
 }
@@ -1,5 +1,7 @@
 package es.luixal.android_tagcloud.filters;
 
+import java.util.regex.Pattern;
+
 import es.luixal.android_tagcloud.Tag;
 
 /**
@@ -10,6 +12,9 @@ public class RegExFilter extends TagFilter {
 	private static final long serialVersionUID = 1L;
 	private String regEx = null;
 	
+	/** Compiled regular expression, built on first use */
+	transient private Pattern pattern = null;
+	
 	public RegExFilter(String regEx) {
 		setRegEx(regEx);
 	}
@@ -19,7 +24,7 @@ public class RegExFilter extends TagFilter {
 		if (tag == null || tag.getName() == null)
 			return false;
 
-		if (tag.getName().matches(regEx))
+		if (getPattern().matcher(tag.getName()).matches())
 			return true;
 		else
 			return false;
@@ -38,6 +43,17 @@ public class RegExFilter extends TagFilter {
 	 */
 	public void setRegEx(String regEx) {
 		this.regEx = regEx;
+		this.pattern = null;
+	}
+
+	/**
+	 * @return The compiled regular expression
+	 */
+	protected Pattern getPattern() {
+		if (pattern == null) {
+			pattern = Pattern.compile(regEx);
+		}
+		return pattern;
 	}
 
 	@Override
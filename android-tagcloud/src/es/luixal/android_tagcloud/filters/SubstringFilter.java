@@ -0,0 +1,312 @@
+package es.luixal.android_tagcloud.filters;
+
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.ResourceBundle;
+import java.util.Scanner;
+import java.util.Set;
+
+import es.luixal.android_tagcloud.Tag;
+
+/**
+ * Filters tags with names containing, starting with, or ending with one of a given list of terms.
+ * Terms are compiled into an Aho-Corasick automaton, so each name is checked with
+ * a single pass whatever the number of terms.
+ */
+public class SubstringFilter extends TagFilter {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Where the terms are searched within tag names
+	 */
+	public enum Mode {
+		CONTAINS,		// Names containing a term are filtered
+		PREFIX,			// Names starting with a term are filtered
+		SUFFIX,			// Names ending with a term are filtered
+		WHOLE_WORD		// Names containing a term as a whole word are filtered
+	}
+
+	/** List of terms to filter */
+	private Set<String> blackList = new HashSet<String>();
+
+	/** Where terms are searched */
+	private Mode mode = Mode.CONTAINS;
+
+	/** Whether terms are searched ignoring case */
+	private boolean ignoreCase = false;
+
+	/** Automaton built from the terms */
+	transient private AhoCorasick automaton = null;
+
+	/**
+	 * Use the terms in the provided collection.
+	 * @param mode Where terms are searched
+	 * @param coll Collection of strings to filter.
+	 */
+	public SubstringFilter(Mode mode, Collection<? extends String> coll) {
+		setMode(mode);
+		update(coll);
+	}
+
+	/**
+	 * Use the terms in the provided array.
+	 * @param mode Where terms are searched
+	 * @param entries Array of strings to filter
+	 */
+	public SubstringFilter(Mode mode, String[] entries) {
+		setMode(mode);
+		update(entries);
+	}
+
+	/**
+	 * Use the terms read from the provided InputStrem.
+	 * Each line corresponds to one term.
+	 * @param mode Where terms are searched
+	 * @param is The InputStrem object to read.
+	 */
+	public SubstringFilter(Mode mode, InputStream is) {
+		setMode(mode);
+		update(is);
+	}
+
+	/**
+	 * Use the terms read from the provided Reader.
+	 * Each line corresponds to one term.
+	 * @param mode Where terms are searched
+	 * @param reader The Reader object.
+	 */
+	public SubstringFilter(Mode mode, Reader reader) {
+		setMode(mode);
+		update(reader);
+	}
+
+	/**
+	 * Use the terms read from the provided Scanner object.
+	 * Each line corresponds to one term.
+	 * @param mode Where terms are searched
+	 * @param scanner The Scanner object to read.
+	 */
+	public SubstringFilter(Mode mode, Scanner scanner) {
+		setMode(mode);
+		update(scanner);
+	}
+
+	/**
+	 * Use the keys of the provided ResourceBundle.
+	 * @param mode Where terms are searched
+	 * @param bundle The ResourceBundle object to read.
+	 */
+	public SubstringFilter(Mode mode, ResourceBundle bundle) {
+		setMode(mode);
+		update(bundle);
+	}
+
+	/**
+	 * Reads terms from an InputStream object.
+	 * Each line corresponds to one term.
+	 * @param is The InputStrem object to read.
+	 */
+	public void update(InputStream is) {
+		Scanner scanner = new Scanner(is);
+		update(scanner);
+	}
+
+	/**
+	 * Reads terms from a Reader object.
+	 * Each line corresponds to one term.
+	 * @param reader The Reader object to read.
+	 */
+	public void update(Reader reader) {
+		Scanner scanner = new Scanner(reader);
+		update(scanner);
+	}
+
+	/**
+	 * Reads terms from a Scanner object.
+	 * Each line corresponds to one term.
+	 * @param scanner The Scanner object to read
+	 */
+	public void update(Scanner scanner) {
+		blackList.clear();
+		while (scanner.hasNextLine()) {
+			String entry = scanner.nextLine();
+			if (entry.length() != 0) {
+				blackList.add(entry);
+			}
+		}
+		automaton = null;
+	}
+
+	/**
+	 * Reads terms from a ResourceBundle.
+	 * Each key corresponds to one term.
+	 * @param bundle The ResourceBundle object to read.
+	 */
+	public void update(ResourceBundle bundle) {
+		Enumeration<String> enumeration = bundle.getKeys();
+
+		blackList.clear();
+		while (enumeration.hasMoreElements()) {
+			String entry = enumeration.nextElement();
+			if (entry.length() != 0) {
+				blackList.add(entry);
+			}
+		}
+		automaton = null;
+	}
+
+	/**
+	 * Reads terms from an array of strings.
+	 * @param entries Array of terms
+	 */
+	public void update(String[] entries) {
+		blackList.clear();
+		for (int i=0; i<entries.length; i++) {
+			String entry = entries[i];
+			if (entry != null && entry.length() != 0) {
+				blackList.add(entry);
+			}
+		}
+		automaton = null;
+	}
+
+	/**
+	 * Reads terms from a collection of strings.
+	 * @param coll Collection of terms
+	 */
+	public void update(Collection<? extends String> coll) {
+		blackList.clear();
+		Iterator<? extends String> it = coll.iterator();
+		while (it.hasNext()) {
+			String entry = it.next();
+			if (entry != null && entry.length() != 0) {
+				blackList.add(entry);
+			}
+		}
+		automaton = null;
+	}
+
+	@Override
+	public boolean accept(Tag tag) {
+		if (tag == null || tag.getName() == null)
+			return true;
+
+		AhoCorasick ac = getAutomaton();
+		String name = tag.getName();
+
+		if (mode == Mode.PREFIX) {
+			return ! ac.isPrefixOf(name, ignoreCase);
+		} else if (mode == Mode.SUFFIX) {
+			return ! ac.isSuffixOf(name, ignoreCase);
+		} else if (mode == Mode.WHOLE_WORD) {
+			return ! ac.occursAsWordIn(name, ignoreCase);
+		} else {
+			return ! ac.occursIn(name, ignoreCase);
+		}
+	}
+
+	/**
+	 * @return The list of terms to filter (read only, use the update methods to change it)
+	 */
+	public Set<String> getDictionary() {
+		return Collections.unmodifiableSet(blackList);
+	}
+
+	/**
+	 * @return Where terms are searched
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @param mode Where terms are searched
+	 */
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * @return True if terms are searched ignoring case
+	 */
+	public boolean isIgnoreCase() {
+		return ignoreCase;
+	}
+
+	/**
+	 * @param ignoreCase True to search terms ignoring case
+	 */
+	public void setIgnoreCase(boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+		this.automaton = null;
+	}
+
+	/**
+	 * Returns the automaton, building it if the terms have changed.
+	 */
+	private AhoCorasick getAutomaton() {
+		if (automaton == null) {
+			if (ignoreCase) {
+				Set<String> lowerCase = new HashSet<String>();
+				for (String entry : blackList) {
+					lowerCase.add(toLowerCase(entry));
+				}
+				automaton = new AhoCorasick(lowerCase);
+			} else {
+				automaton = new AhoCorasick(blackList);
+			}
+		}
+		return automaton;
+	}
+
+	/**
+	 * Lower cases a string char by char, the same way names are lower cased while searched.
+	 */
+	private static String toLowerCase(String s) {
+		char[] chars = s.toCharArray();
+		for (int i=0; i<chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result
+				+ ((blackList == null) ? 0 : blackList.hashCode());
+		result = prime * result + (ignoreCase ? 1231 : 1237);
+		result = prime * result + ((mode == null) ? 0 : mode.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		final SubstringFilter other = (SubstringFilter) obj;
+		if (blackList == null) {
+			if (other.blackList != null)
+				return false;
+		} else if (!blackList.equals(other.blackList))
+			return false;
+		if (ignoreCase != other.ignoreCase)
+			return false;
+		if (mode != other.mode)
+			return false;
+		return true;
+	}
+
+}
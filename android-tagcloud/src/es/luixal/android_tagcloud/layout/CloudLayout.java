@@ -0,0 +1,25 @@
+package es.luixal.android_tagcloud.layout;
+
+import java.util.List;
+
+import es.luixal.android_tagcloud.Tag;
+
+/**
+ * Places the words of a cloud in an area.
+ * Layouts don't depend on Android classes: they only need a TextMeasurer, so
+ * they can run on any thread, and on a JVM.
+ */
+public interface CloudLayout {
+
+	/**
+	 * Places the words of the given tags.
+	 * The text size of each word is the weight of its tag rounded with getWeightInt().
+	 * The tags must not be modified during the call.
+	 * @param tags The tags, with their weight set, e.g. as returned by Cloud.tags()
+	 * @param measurer The measurer of the words
+	 * @param width The width of the area
+	 * @return The boxes of the words
+	 */
+	public LayoutResult layout(List<Tag> tags, TextMeasurer measurer, float width);
+
+}
@@ -0,0 +1,360 @@
+package es.luixal.android_tagcloud.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.schedule.Clock;
+
+/**
+ * Layout flowing the words into lines, in the order of the tags, like a text.
+ * Words are separated by the width of a space at their size. Words of a line
+ * share the same baseline, and a word wider than the area gets a line of its own.
+ * When tags change, only the lines they affect are flowed again: a line whose
+ * words are the same as before, and is followed by the same word, is moved to
+ * its new place.
+ * When the layout is computed in steps, the cloud shows up line by line from
+ * its top (see ResumableLayout).
+ */
+public class FlowLayout extends IncrementalLayout {
+
+	/**
+	 * Horizontal alignment of the lines.
+	 */
+	public enum Alignment { LEFT, CENTER, RIGHT }
+
+	private Alignment alignment = Alignment.LEFT;
+
+	private float lineSpacing = 0;
+
+	/** Last layout, lastNames is null if there is none */
+	private TextMeasurer lastMeasurer = null;
+	private float lastWidth = 0;
+	private String[] lastNames = null;
+	private int[] lastSizes = null;
+	private WordBox[] lastBoxes = null;
+
+	/** Lines of the last layout: first box, width, ascent and descent */
+	private int lastLineCount = 0;
+	private int[] lastLineStarts = null;
+	private float[] lastLineWidths = null;
+	private float[] lastLineAscents = null;
+	private float[] lastLineDescents = null;
+
+	@Override
+	protected LayoutTask startLayout(List<Tag> tags, TextMeasurer measurer, float width) {
+		return new Flow(tags, measurer, width, null);
+	}
+
+	@Override
+	protected LayoutResult relayout(List<Tag> tags, TextMeasurer measurer, float width, int maxChanges) {
+		if (lastNames == null || measurer != lastMeasurer || width != lastWidth)
+			return null;
+
+		Map<String, Integer> indexes = new HashMap<String, Integer>(2 * lastNames.length);
+		for (int i=0; i<lastNames.length; i++) {
+			indexes.put(lastNames[i], Integer.valueOf(i));
+		}
+
+		// index of each word in the last layout, -1 for the words added or resized
+		int n = tags.size();
+		int[] matches = new int[n];
+		int matched = 0;
+		for (int i=0; i<n; i++) {
+			Tag tag = tags.get(i);
+			Integer index = indexes.remove(tag.getName());
+			if (index != null && lastSizes[index.intValue()] == tag.getWeightInt()) {
+				matches[i] = index.intValue();
+				matched++;
+			} else {
+				matches[i] = -1;
+			}
+		}
+		if ((n - matched) + (lastNames.length - matched) > maxChanges)
+			return null;
+
+		Flow flow = new Flow(tags, measurer, width, matches);
+		flow.step(Clock.SYSTEM, Long.MAX_VALUE);
+		return flow.getResult();
+	}
+
+	/**
+	 * Flows words into lines, then remembers the layout.
+	 * A line of the last layout is moved instead of being flowed again when it
+	 * starts where a new line starts, with the same words, followed by the same word.
+	 * Until it's done, the result of a flow is made of its complete lines, so
+	 * a cloud shows up from its top.
+	 */
+	private class Flow implements LayoutTask {
+
+		/** Number of words flowed between two reads of the clock */
+		private static final int WORDS_PER_CHECK = 16;
+
+		private final List<Tag> tags;
+		private final TextMeasurer measurer;
+		private final float width;
+
+		/** The index of each word in the last layout, -1 if it's not there; null to flow all the words */
+		private final int[] matches;
+
+		private final List<WordBox> boxes;
+
+		/** Next word, position of the next word, and first word of the current line */
+		private int i = 0;
+		private float x = 0;
+		private float y = 0;
+		private float lineWidth = 0;
+		private int lineStart = 0;
+
+		private LayoutResult result = null;
+
+		/** Lines flowed so far: first box, width, ascent and descent */
+		private int lineCount;
+		private int[] lineStarts;
+		private float[] lineWidths;
+		private float[] lineAscents;
+		private float[] lineDescents;
+
+		Flow(List<Tag> tags, TextMeasurer measurer, float width, int[] matches) {
+			this.tags = tags;
+			this.measurer = measurer;
+			this.width = width;
+			this.matches = matches;
+			this.boxes = new ArrayList<WordBox>(tags.size());
+			startLines();
+		}
+
+		public boolean step(Clock clock, long deadline) {
+			if (result != null)
+				return true;
+
+			int n = tags.size();
+			boolean timed = deadline != Long.MAX_VALUE;
+			int words = 0;
+			while (i < n) {
+				if (timed && ++words % WORDS_PER_CHECK == 0 && clock.nanoTime() >= deadline)
+					return false;
+
+				if (matches != null && boxes.size() == lineStart) {
+					int line = reusableLine(matches, i);
+					if (line >= 0) {
+						int start = lastLineStarts[line];
+						int end = (line + 1 < lastLineCount) ? lastLineStarts[line + 1] : lastNames.length;
+						float baseline = y + lastLineAscents[line];
+						for (int j=start; j<end; j++, i++) {
+							WordBox box = copy(lastBoxes[j], tags.get(i), 0);
+							box.setPosition(box.getLeft(), baseline - box.getAscent());
+							boxes.add(box);
+						}
+						addLine(lineStart, lastLineWidths[line], lastLineAscents[line], lastLineDescents[line]);
+						y = baseline + lastLineDescents[line] + lineSpacing;
+						lineStart = i;
+						continue;
+					}
+				}
+
+				Tag tag = tags.get(i);
+				int size = tag.getWeightInt();
+				float wordWidth = measurer.getWidth(tag.getName(), size);
+				if (boxes.size() > lineStart && x + wordWidth > width) {
+					y = placeLine(boxes, lineStart, lineWidth, width, y);
+					lineStart = boxes.size();
+					x = 0;
+					continue;
+				}
+				WordBox box = new WordBox(tag, size, wordWidth, measurer.getAscent(size), measurer.getDescent(size));
+				box.setPosition(x, 0);
+				boxes.add(box);
+				lineWidth = x + wordWidth;
+				x = lineWidth + measurer.getWidth(" ", size);
+				i++;
+			}
+
+			float height;
+			if (boxes.size() > lineStart) {
+				height = placeLine(boxes, lineStart, lineWidth, width, y) - lineSpacing;
+			} else {
+				height = (lineCount > 0) ? y - lineSpacing : 0;
+			}
+
+			result = new LayoutResult(boxes, resultWidth(), height);
+			remember();
+			return true;
+		}
+
+		public LayoutResult getResult() {
+			if (result != null)
+				return result;
+			// complete lines only, the words of the current line are not placed yet
+			float height = (lineCount > 0) ? y - lineSpacing : 0;
+			return new LayoutResult(new ArrayList<WordBox>(boxes.subList(0, lineStart)), resultWidth(), height);
+		}
+
+		/**
+		 * @return The width of the lines flowed so far
+		 */
+		private float resultWidth() {
+			float maxWidth = 0;
+			for (int l=0; l<lineCount; l++) {
+				maxWidth = Math.max(maxWidth, lineWidths[l]);
+			}
+			return (alignment == Alignment.LEFT) ? maxWidth : Math.max(maxWidth, width);
+		}
+
+		/**
+		 * Aligns the words of a line on a common baseline.
+		 * @return The top of the next line
+		 */
+		private float placeLine(List<WordBox> boxes, int start, float lineWidth, float width, float top) {
+			float ascent = 0;
+			float descent = 0;
+			for (int i=start; i<boxes.size(); i++) {
+				ascent = Math.max(ascent, boxes.get(i).getAscent());
+				descent = Math.max(descent, boxes.get(i).getDescent());
+			}
+
+			float offset = 0;
+			if (alignment == Alignment.CENTER) {
+				offset = Math.max(0, (width - lineWidth) / 2);
+			} else if (alignment == Alignment.RIGHT) {
+				offset = Math.max(0, width - lineWidth);
+			}
+
+			float baseline = top + ascent;
+			for (int i=start; i<boxes.size(); i++) {
+				WordBox box = boxes.get(i);
+				box.setPosition(box.getLeft() + offset, baseline - box.getAscent());
+			}
+			addLine(start, lineWidth, ascent, descent);
+			return baseline + descent + lineSpacing;
+		}
+
+		private void startLines() {
+			int capacity = Math.max(16, lastLineCount);
+			lineStarts = new int[capacity];
+			lineWidths = new float[capacity];
+			lineAscents = new float[capacity];
+			lineDescents = new float[capacity];
+			lineCount = 0;
+		}
+
+		private void addLine(int start, float width, float ascent, float descent) {
+			if (lineCount == lineStarts.length) {
+				lineStarts = resize(lineStarts, 2 * lineCount);
+				lineWidths = resize(lineWidths, 2 * lineCount);
+				lineAscents = resize(lineAscents, 2 * lineCount);
+				lineDescents = resize(lineDescents, 2 * lineCount);
+			}
+			lineStarts[lineCount] = start;
+			lineWidths[lineCount] = width;
+			lineAscents[lineCount] = ascent;
+			lineDescents[lineCount] = descent;
+			lineCount++;
+		}
+
+		private void remember() {
+			int n = boxes.size();
+			lastMeasurer = measurer;
+			lastWidth = width;
+			lastNames = new String[n];
+			lastSizes = new int[n];
+			for (int i=0; i<n; i++) {
+				lastNames[i] = boxes.get(i).getText();
+				lastSizes[i] = boxes.get(i).getSize();
+			}
+			lastBoxes = boxes.toArray(new WordBox[n]);
+			lastLineCount = lineCount;
+			lastLineStarts = lineStarts;
+			lastLineWidths = lineWidths;
+			lastLineAscents = lineAscents;
+			lastLineDescents = lineDescents;
+		}
+
+	}
+
+	/**
+	 * Finds the line of the last layout that can be moved to a new line.
+	 * @param matches The index of each word in the last layout
+	 * @param start The first word of the new line
+	 * @return The line, -1 if there is none
+	 */
+	private int reusableLine(int[] matches, int start) {
+		if (matches[start] < 0)
+			return -1;
+		int line = Arrays.binarySearch(lastLineStarts, 0, lastLineCount, matches[start]);
+		if (line < 0)
+			return -1;
+
+		// same words, and the next word is the one that didn't fit
+		int end = (line + 1 < lastLineCount) ? lastLineStarts[line + 1] : lastNames.length;
+		int next = start + end - matches[start];
+		if (next > matches.length)
+			return -1;
+		for (int i=start+1; i<next; i++) {
+			if (matches[i] != matches[i - 1] + 1)
+				return -1;
+		}
+		if (next == matches.length)
+			return (end == lastNames.length) ? line : -1;
+		return (matches[next] == end) ? line : -1;
+	}
+
+	private static int[] resize(int[] array, int length) {
+		int[] resized = new int[length];
+		System.arraycopy(array, 0, resized, 0, Math.min(array.length, length));
+		return resized;
+	}
+
+	private static float[] resize(float[] array, int length) {
+		float[] resized = new float[length];
+		System.arraycopy(array, 0, resized, 0, Math.min(array.length, length));
+		return resized;
+	}
+
+	@Override
+	protected void forget() {
+		lastMeasurer = null;
+		lastNames = null;
+		lastSizes = null;
+		lastBoxes = null;
+		lastLineCount = 0;
+		lastLineStarts = null;
+		lastLineWidths = null;
+		lastLineAscents = null;
+		lastLineDescents = null;
+	}
+
+	/**
+	 * @return The horizontal alignment of the lines
+	 */
+	public Alignment getAlignment() {
+		return alignment;
+	}
+
+	/**
+	 * @param alignment The horizontal alignment of the lines
+	 */
+	public synchronized void setAlignment(Alignment alignment) {
+		this.alignment = alignment;
+		forget();
+	}
+
+	/**
+	 * @return The space added between lines
+	 */
+	public float getLineSpacing() {
+		return lineSpacing;
+	}
+
+	/**
+	 * @param lineSpacing The space added between lines
+	 */
+	public synchronized void setLineSpacing(float lineSpacing) {
+		this.lineSpacing = lineSpacing;
+		forget();
+	}
+
+}
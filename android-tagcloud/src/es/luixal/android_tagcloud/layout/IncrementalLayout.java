@@ -0,0 +1,140 @@
+package es.luixal.android_tagcloud.layout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.schedule.Clock;
+
+/**
+ * Layout remembering its last placement, so that when few tags are added,
+ * removed or resized, only the words they affect are placed again.
+ * When the changes exceed a ratio of the tags, or when the width or the measurer
+ * change, the words are placed from scratch.
+ * As it keeps the last placement, an instance should lay out a single cloud, e.g.
+ * the cloud of one view. Calls are serialized.
+ * Boxes returned by a layout are never modified by the next ones.
+ * Layouts can be computed in steps (see start()): when the words are placed
+ * again incrementally, it's done in the first step.
+ */
+public abstract class IncrementalLayout implements ResumableLayout {
+
+	/** Ratio of changed tags above which the words are placed from scratch */
+	private float relayoutThreshold = 0.25f;
+
+	private long fullLayouts = 0;
+
+	private long incrementalLayouts = 0;
+
+	public LayoutResult layout(List<Tag> tags, TextMeasurer measurer, float width) {
+		LayoutTask task = start(tags, measurer, width);
+		task.step(Clock.SYSTEM, Long.MAX_VALUE);
+		return task.getResult();
+	}
+
+	public LayoutTask start(final List<Tag> tags, final TextMeasurer measurer, final float width) {
+		return new LayoutTask() {
+			private LayoutTask full = null;
+			private LayoutResult result = null;
+
+			public boolean step(Clock clock, long deadline) {
+				synchronized (IncrementalLayout.this) {
+					if (result != null)
+						return true;
+
+					if (full == null) {
+						if (relayoutThreshold > 0) {
+							int maxChanges = (int) (relayoutThreshold * tags.size());
+							result = relayout(tags, measurer, width, maxChanges);
+						}
+						if (result != null) {
+							incrementalLayouts++;
+							return true;
+						}
+						full = startLayout(tags, measurer, width);
+					}
+
+					if (full.step(clock, deadline)) {
+						result = full.getResult();
+						fullLayouts++;
+						return true;
+					}
+					return false;
+				}
+			}
+
+			public LayoutResult getResult() {
+				synchronized (IncrementalLayout.this) {
+					if (result != null)
+						return result;
+					return (full != null) ? full.getResult() : new LayoutResult(new ArrayList<WordBox>(0), 0, 0);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Starts placing all the words. The task remembers the placement when it's done.
+	 * Steps of the task are run while holding the lock of the layout.
+	 */
+	protected abstract LayoutTask startLayout(List<Tag> tags, TextMeasurer measurer, float width);
+
+	/**
+	 * Places the words that changed since the last layout, and remembers the placement.
+	 * @param maxChanges The maximum number of added, removed or resized tags
+	 * @return The boxes of the words, null if the words must be placed from scratch
+	 */
+	protected abstract LayoutResult relayout(List<Tag> tags, TextMeasurer measurer, float width, int maxChanges);
+
+	/**
+	 * Forgets the last placement.
+	 */
+	protected abstract void forget();
+
+	/**
+	 * Forgets the last placement, the next layout places all the words.
+	 */
+	public synchronized void reset() {
+		forget();
+	}
+
+	/**
+	 * @return The ratio of changed tags above which the words are placed from scratch
+	 */
+	public float getRelayoutThreshold() {
+		return relayoutThreshold;
+	}
+
+	/**
+	 * @param relayoutThreshold The ratio of changed tags above which the words are
+	 * placed from scratch, 0 to always place them from scratch
+	 */
+	public synchronized void setRelayoutThreshold(float relayoutThreshold) {
+		this.relayoutThreshold = relayoutThreshold;
+	}
+
+	/**
+	 * @return The number of layouts that placed all the words
+	 */
+	public synchronized long getFullLayouts() {
+		return fullLayouts;
+	}
+
+	/**
+	 * @return The number of layouts that only placed the words that changed
+	 */
+	public synchronized long getIncrementalLayouts() {
+		return incrementalLayouts;
+	}
+
+	/**
+	 * Returns a copy of a box, for the new tag of the word.
+	 * @param dy The vertical move of the copy
+	 */
+	static WordBox copy(WordBox box, Tag tag, float dy) {
+		WordBox copy = new WordBox(tag, box.getSize(), box.getWidth(), box.getAscent(), box.getDescent());
+		copy.setPosition(box.getLeft(), box.getTop() + dy);
+		return copy;
+	}
+
+}
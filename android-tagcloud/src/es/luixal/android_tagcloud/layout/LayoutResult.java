@@ -0,0 +1,49 @@
+package es.luixal.android_tagcloud.layout;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Words placed by a layout, and the size of the area they cover.
+ */
+public class LayoutResult {
+
+	private final List<WordBox> boxes;
+
+	private final float width;
+
+	private final float height;
+
+	/**
+	 * @param boxes The boxes, in the order of the tags given to the layout
+	 * @param width The width of the area covered by the boxes
+	 * @param height The height of the area covered by the boxes
+	 */
+	public LayoutResult(List<WordBox> boxes, float width, float height) {
+		this.boxes = Collections.unmodifiableList(boxes);
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @return The boxes, in the order of the tags given to the layout
+	 */
+	public List<WordBox> getBoxes() {
+		return boxes;
+	}
+
+	/**
+	 * @return The width of the area covered by the boxes, from 0
+	 */
+	public float getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return The height of the area covered by the boxes, from 0
+	 */
+	public float getHeight() {
+		return height;
+	}
+
+}
@@ -0,0 +1,17 @@
+package es.luixal.android_tagcloud.layout;
+
+import es.luixal.android_tagcloud.schedule.Task;
+
+/**
+ * Layout computed in steps, e.g. a bit at each frame (see ResumableLayout).
+ */
+public interface LayoutTask extends Task {
+
+	/**
+	 * Returns the words placed so far: all the words once the task is done.
+	 * Boxes of a result are not modified by the next steps.
+	 * @return The boxes of the words placed so far
+	 */
+	public LayoutResult getResult();
+
+}
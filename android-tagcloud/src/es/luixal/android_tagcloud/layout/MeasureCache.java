@@ -0,0 +1,192 @@
+package es.luixal.android_tagcloud.layout;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measurer caching the measures of another one.
+ * Word widths are kept per (word, size) in a least recently used cache, so that
+ * the words of a cloud are only measured once while they stay in the cloud.
+ * Ascents and descents are kept per size.
+ * The cache can be shared by layouts computed on different threads; calls to
+ * the cached measurer are serialized.
+ */
+public class MeasureCache implements TextMeasurer {
+
+	/** Default number of cached widths */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * Key of a cached width.
+	 */
+	private static final class Key {
+
+		final String word;
+		final int size;
+
+		Key(String word, int size) {
+			this.word = word;
+			this.size = size;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * word.hashCode() + size;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return size == other.size && word.equals(other.word);
+		}
+
+	}
+
+	private final TextMeasurer measurer;
+
+	private int capacity;
+
+	/** Widths, in access order */
+	private final LinkedHashMap<Key, Float> widths;
+
+	/** Ascent and descent by size */
+	private final Map<Integer, float[]> metrics = new HashMap<Integer, float[]>();
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * @param measurer The measurer to cache
+	 */
+	public MeasureCache(TextMeasurer measurer) {
+		this(measurer, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param measurer The measurer to cache
+	 * @param capacity The maximum number of cached widths
+	 */
+	public MeasureCache(TextMeasurer measurer, int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.measurer = measurer;
+		this.capacity = capacity;
+		this.widths = new LinkedHashMap<Key, Float>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Float> eldest) {
+				// called by put(), under the lock of the cache
+				return size() > MeasureCache.this.capacity;
+			}
+		};
+	}
+
+	public synchronized float getWidth(String word, int size) {
+		Key key = new Key(word, size);
+		Float width = widths.get(key);
+		if (width != null) {
+			hits++;
+			return width.floatValue();
+		}
+		misses++;
+		float measured = measurer.getWidth(word, size);
+		widths.put(key, Float.valueOf(measured));
+		return measured;
+	}
+
+	public synchronized float getAscent(int size) {
+		return getMetrics(size)[0];
+	}
+
+	public synchronized float getDescent(int size) {
+		return getMetrics(size)[1];
+	}
+
+	private float[] getMetrics(int size) {
+		Integer key = Integer.valueOf(size);
+		float[] result = metrics.get(key);
+		if (result == null) {
+			result = new float[] { measurer.getAscent(size), measurer.getDescent(size) };
+			metrics.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets all the measures, e.g. when the font of the measurer changes.
+	 */
+	public synchronized void clear() {
+		widths.clear();
+		metrics.clear();
+	}
+
+	/**
+	 * @return The measurer whose measures are cached
+	 */
+	public TextMeasurer getMeasurer() {
+		return measurer;
+	}
+
+	/**
+	 * @return The maximum number of cached widths
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum number of cached widths, forgetting the least recently
+	 * used ones if there are more.
+	 * @param capacity The maximum number of cached widths
+	 */
+	public synchronized void setCapacity(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.capacity = capacity;
+		Iterator<Key> it = widths.keySet().iterator();
+		for (int n = widths.size(); n > capacity; n--) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Grows the maximum number of cached widths to the given number, e.g. to the
+	 * number of words of the layouts sharing the cache, so that the words are
+	 * not evicted before they are measured again.
+	 * @param capacity The minimum number of cached widths
+	 */
+	public synchronized void ensureCapacity(int capacity) {
+		if (capacity > this.capacity) {
+			this.capacity = capacity;
+		}
+	}
+
+	/**
+	 * @return The number of cached widths
+	 */
+	public synchronized int size() {
+		return widths.size();
+	}
+
+	/**
+	 * @return The number of widths found in the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of widths asked to the cached measurer
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+}
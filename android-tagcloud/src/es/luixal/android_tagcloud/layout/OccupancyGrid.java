@@ -0,0 +1,97 @@
+package es.luixal.android_tagcloud.layout;
+
+/**
+ * Bitmap of the cells of an area covered by placed words.
+ * Each row is a run of bits, so testing whether a rectangle of cells is free
+ * costs one operation per 64 cells of each of its rows.
+ */
+class OccupancyGrid {
+
+	private final int columns;
+
+	private final int rows;
+
+	/** Number of longs of a row */
+	private final int stride;
+
+	private final long[] bits;
+
+	OccupancyGrid(int columns, int rows) {
+		this.columns = columns;
+		this.rows = rows;
+		this.stride = (columns + 63) >>> 6;
+		this.bits = new long[stride * rows];
+	}
+
+	int getColumns() {
+		return columns;
+	}
+
+	int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Tells whether a cell is covered.
+	 */
+	boolean isSet(int column, int row) {
+		return (bits[row * stride + (column >>> 6)] & (1L << column)) != 0;
+	}
+
+	/**
+	 * Tells whether no cell of a rectangle is covered.
+	 * The rectangle must be inside the grid.
+	 * @param column The first column
+	 * @param row The first row
+	 * @param width The number of columns
+	 * @param height The number of rows
+	 */
+	boolean isFree(int column, int row, int width, int height) {
+		int first = column >>> 6;
+		int last = (column + width - 1) >>> 6;
+		long firstMask = -1L << column;
+		long lastMask = -1L >>> (63 - ((column + width - 1) & 63));
+		for (int r=row; r<row+height; r++) {
+			int offset = r * stride;
+			if (first == last) {
+				if ((bits[offset + first] & firstMask & lastMask) != 0)
+					return false;
+			} else {
+				if ((bits[offset + first] & firstMask) != 0 || (bits[offset + last] & lastMask) != 0)
+					return false;
+				for (int i=first+1; i<last; i++) {
+					if (bits[offset + i] != 0)
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Covers or uncovers the cells of a rectangle.
+	 * The rectangle must be inside the grid.
+	 */
+	void set(int column, int row, int width, int height, boolean covered) {
+		int first = column >>> 6;
+		int last = (column + width - 1) >>> 6;
+		long firstMask = -1L << column;
+		long lastMask = -1L >>> (63 - ((column + width - 1) & 63));
+		for (int r=row; r<row+height; r++) {
+			int offset = r * stride;
+			for (int i=first; i<=last; i++) {
+				long mask = -1L;
+				if (i == first)
+					mask &= firstMask;
+				if (i == last)
+					mask &= lastMask;
+				if (covered) {
+					bits[offset + i] |= mask;
+				} else {
+					bits[offset + i] &= ~mask;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package es.luixal.android_tagcloud.layout;
+
+import java.util.List;
+
+import es.luixal.android_tagcloud.Tag;
+
+/**
+ * Layout that can be computed in steps, so that the words of a large cloud can
+ * be placed a few at a time, e.g. within the budget of a frame, and shown as
+ * they are placed.
+ */
+public interface ResumableLayout extends CloudLayout {
+
+	/**
+	 * Starts placing the words of the given tags. Nothing is done until the
+	 * first step of the task.
+	 * @param tags The tags, with their weight set, e.g. as returned by Cloud.tags()
+	 * @param measurer The measurer of the words
+	 * @param width The width of the area
+	 * @return The task placing the words
+	 */
+	public LayoutTask start(List<Tag> tags, TextMeasurer measurer, float width);
+
+}
@@ -0,0 +1,510 @@
+package es.luixal.android_tagcloud.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.schedule.Clock;
+
+/**
+ * Layout placing the words around the center of the area, like Wordle.
+ * Words are placed from the largest to the smallest, each one at the first free
+ * position along an Archimedean spiral turning around the center.
+ * The area is divided into cells, about half as high as the smallest word, and
+ * an occupancy bitmap of the cells tells in a few operations whether a word
+ * overlaps the words already placed. As words are never moved, a position where
+ * a word doesn't fit can't take a word as high and at least as wide: each word
+ * resumes the walk where the last one of its height and no wider one stopped.
+ * The area is as wide as the layout width and as high as the words need.
+ * The spiral starts from an angle drawn from a seed, so the same tags always
+ * give the same layout.
+ * When tags change, the words of the removed and resized tags are taken out of
+ * the bitmap, and the words of the added and resized tags are placed in the free
+ * positions; the other words stay where they are.
+ * When the layout is computed in steps, the cloud grows from its largest words
+ * (see ResumableLayout).
+ */
+public class SpiralLayout extends IncrementalLayout {
+
+	private long seed = 0;
+
+	private float padding = 1;
+
+	private float aspectRatio = 0.6f;
+
+	private float cellSize = 0;
+
+	/**
+	 * A word placed in the grid.
+	 */
+	private static final class Placement {
+
+		/** Box of the word, in the coordinates of the grid */
+		final WordBox box;
+
+		final int column;
+		final int row;
+		final int width;
+		final int height;
+
+		Placement(WordBox box, int column, int row, int width, int height) {
+			this.box = box;
+			this.column = column;
+			this.row = row;
+			this.width = width;
+			this.height = height;
+		}
+
+	}
+
+	/**
+	 * Words placed in a grid.
+	 */
+	private static final class Area {
+
+		final OccupancyGrid grid;
+
+		/** Cells of the grid in spiral order */
+		final int[] positions;
+
+		final float cell;
+
+		/** Words placed, by tag name */
+		Map<String, Placement> placements = new HashMap<String, Placement>();
+
+		Area(OccupancyGrid grid, int[] positions, float cell) {
+			this.grid = grid;
+			this.positions = positions;
+			this.cell = cell;
+		}
+
+		/**
+		 * Places a word at the first free position of the spiral.
+		 * @param box The box of the word
+		 * @param width The number of columns covered by the box
+		 * @param height The number of rows covered by the box
+		 * @param resume For the height of the box, position where the last box of each width was placed
+		 * @return False if the word doesn't fit in the grid
+		 */
+		boolean place(WordBox box, int width, int height, int[] resume) {
+			int columns = grid.getColumns();
+			int rows = grid.getRows();
+			int start = 0;
+			for (int w=1; w<=width; w++) {
+				start = Math.max(start, resume[w]);
+			}
+
+			for (int p=start; p<positions.length; p++) {
+				int column = positions[p] % columns;
+				int row = positions[p] / columns;
+				if (grid.isSet(column, row)) {
+					// a word centered on a covered cell would overlap it
+					continue;
+				}
+				int left = column - width / 2;
+				int top = row - height / 2;
+				if (left >= 0 && left + width <= columns && top >= 0 && top + height <= rows
+						&& grid.isFree(left, top, width, height)) {
+					grid.set(left, top, width, height, true);
+					box.setPosition(left * cell + Math.max(0, (width * cell - box.getWidth()) / 2),
+							top * cell + (height * cell - box.getHeight()) / 2);
+					placements.put(box.getText(), new Placement(box, left, top, width, height));
+					resume[width] = p;
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+	/** Words of the last layout, null if there is none */
+	private Area area = null;
+
+	private TextMeasurer lastMeasurer;
+
+	private float lastWidth;
+
+	@Override
+	protected LayoutTask startLayout(List<Tag> tags, TextMeasurer measurer, float width) {
+		return new Spiral(tags, measurer, width);
+	}
+
+	@Override
+	protected LayoutResult relayout(List<Tag> tags, TextMeasurer measurer, float width, int maxChanges) {
+		if (area == null || measurer != lastMeasurer || width != lastWidth)
+			return null;
+
+		// words of the tags added or resized
+		int n = tags.size();
+		WordBox[] boxes = new WordBox[n];
+		List<Integer> changed = new ArrayList<Integer>();
+		Map<String, Placement> kept = new HashMap<String, Placement>();
+		float minHeight = Float.MAX_VALUE;
+		for (int i=0; i<n; i++) {
+			Tag tag = tags.get(i);
+			int size = tag.getWeightInt();
+			Placement placement = area.placements.get(tag.getName());
+			if (placement != null && placement.box.getSize() == size && !kept.containsKey(tag.getName())) {
+				kept.put(tag.getName(), placement);
+				boxes[i] = copy(placement.box, tag, 0);
+			} else {
+				boxes[i] = measure(tag, measurer);
+				changed.add(Integer.valueOf(i));
+			}
+			minHeight = Math.min(minHeight, boxes[i].getHeight());
+		}
+		int removed = area.placements.size() - kept.size();
+		if (changed.size() + removed > maxChanges || n == 0 || getCell(minHeight) != area.cell)
+			return null;
+
+		// frees the cells of the words removed or resized
+		OccupancyGrid grid = area.grid;
+		for (Placement placement : area.placements.values()) {
+			if (kept.get(placement.box.getText()) != placement) {
+				grid.set(placement.column, placement.row, placement.width, placement.height, false);
+			}
+		}
+		area.placements = kept;
+
+		int[] spans = spans(boxes, grid.getColumns(), area.cell);
+		Integer[] order = order(boxes, changed);
+		int[] resume = new int[grid.getColumns() + 1];
+		int lastHeight = -1;
+		for (Integer index : order) {
+			int i = index.intValue();
+			if (spans[2 * i + 1] != lastHeight) {
+				Arrays.fill(resume, 0);
+				lastHeight = spans[2 * i + 1];
+			}
+			if (!area.place(boxes[i], spans[2 * i], spans[2 * i + 1], resume)) {
+				// the words don't fit any more
+				forget();
+				return null;
+			}
+		}
+
+		if (area.placements.size() != n) {
+			forget();
+		}
+		return result(Arrays.asList(boxes), width);
+	}
+
+	/**
+	 * Places all the words in a new grid, then remembers the layout.
+	 * Words are measured, then placed one by one, from the largest. Until it's
+	 * done, the result of the task is made of the words placed so far, so a
+	 * cloud grows from its largest words.
+	 */
+	private class Spiral implements LayoutTask {
+
+		/** Number of words measured between two reads of the clock */
+		private static final int WORDS_PER_CHECK = 16;
+
+		private final List<Tag> tags;
+		private final TextMeasurer measurer;
+		private final float width;
+
+		private final WordBox[] boxes;
+
+		/** Number of words measured */
+		private int measured = 0;
+
+		/** Indexes of the boxes in placement order, null until all the words are measured */
+		private Integer[] order = null;
+
+		/** Number of columns and rows covered by each box */
+		private int[] spans;
+
+		/** Angle the spiral starts from */
+		private double phase;
+
+		private Area area = null;
+
+		/** Number of words placed in the area */
+		private int placed = 0;
+
+		/** For the current height, position where the last word of each width was placed */
+		private int[] resume;
+		private int lastHeight;
+
+		private LayoutResult result = null;
+
+		Spiral(List<Tag> tags, TextMeasurer measurer, float width) {
+			this.tags = tags;
+			this.measurer = measurer;
+			this.width = width;
+			this.boxes = new WordBox[tags.size()];
+		}
+
+		public boolean step(Clock clock, long deadline) {
+			if (result != null)
+				return true;
+
+			int n = boxes.length;
+			boolean timed = deadline != Long.MAX_VALUE;
+			while (measured < n) {
+				boxes[measured] = measure(tags.get(measured), measurer);
+				measured++;
+				if (timed && measured % WORDS_PER_CHECK == 0 && clock.nanoTime() >= deadline)
+					return false;
+			}
+
+			if (n == 0) {
+				forget();
+				result = new LayoutResult(new ArrayList<WordBox>(0), 0, 0);
+				return true;
+			}
+
+			if (order == null) {
+				order = order(boxes);
+				float minHeight = Float.MAX_VALUE;
+				for (WordBox box : boxes) {
+					minHeight = Math.min(minHeight, box.getHeight());
+				}
+
+				float cell = getCell(minHeight);
+				int columns = Math.max(1, (int) (width / cell));
+				spans = spans(boxes, columns, cell);
+				long cells = 0;
+				int maxRows = 1;
+				for (int i=0; i<n; i++) {
+					cells += (long) spans[2 * i] * spans[2 * i + 1];
+					maxRows = Math.max(maxRows, spans[2 * i + 1]);
+				}
+
+				// room for twice the cells of the words, more if some don't fit
+				phase = new Random(seed).nextDouble() * 2 * Math.PI;
+				int rows = (int) Math.max(2 * maxRows, Math.ceil(2.0 * cells / columns));
+				start(columns, rows, cell);
+				if (timed && clock.nanoTime() >= deadline)
+					return false;
+			}
+
+			while (placed < n) {
+				int i = order[placed].intValue();
+				if (spans[2 * i + 1] != lastHeight) {
+					Arrays.fill(resume, 0);
+					lastHeight = spans[2 * i + 1];
+				}
+				if (area.place(boxes[i], spans[2 * i], spans[2 * i + 1], resume)) {
+					placed++;
+				} else {
+					start(area.grid.getColumns(), 2 * area.grid.getRows(), area.cell);
+				}
+				if (timed && clock.nanoTime() >= deadline)
+					return false;
+			}
+
+			if (area.placements.size() == n) {
+				SpiralLayout.this.area = area;
+				lastMeasurer = measurer;
+				lastWidth = width;
+			} else {
+				// tags with the same name can't be told apart from one layout to the next
+				forget();
+			}
+			result = result(Arrays.asList(boxes), width);
+			return true;
+		}
+
+		/**
+		 * Starts placing the words again in an empty grid.
+		 */
+		private void start(int columns, int rows, float cell) {
+			area = new Area(new OccupancyGrid(columns, rows), spiral(columns, rows, phase), cell);
+			placed = 0;
+			resume = new int[columns + 1];
+			lastHeight = -1;
+		}
+
+		public LayoutResult getResult() {
+			if (result != null)
+				return result;
+			List<WordBox> words = new ArrayList<WordBox>(placed);
+			for (int p=0; p<placed; p++) {
+				words.add(boxes[order[p].intValue()]);
+			}
+			return result(words, width);
+		}
+
+	}
+
+	/**
+	 * Returns copies of the boxes moved to the top of the area, as the words
+	 * only cover a band of the grid.
+	 */
+	private static LayoutResult result(List<WordBox> boxes, float width) {
+		float top = Float.MAX_VALUE;
+		float bottom = -Float.MAX_VALUE;
+		float right = width;
+		for (WordBox box : boxes) {
+			top = Math.min(top, box.getTop());
+			bottom = Math.max(bottom, box.getBottom());
+			right = Math.max(right, box.getRight());
+		}
+		if (boxes.isEmpty())
+			return new LayoutResult(new ArrayList<WordBox>(0), 0, 0);
+		List<WordBox> result = new ArrayList<WordBox>(boxes.size());
+		for (WordBox box : boxes) {
+			result.add(copy(box, box.getTag(), -top));
+		}
+		return new LayoutResult(result, right, bottom - top);
+	}
+
+	private static WordBox measure(Tag tag, TextMeasurer measurer) {
+		int size = tag.getWeightInt();
+		return new WordBox(tag, size, measurer.getWidth(tag.getName(), size),
+				measurer.getAscent(size), measurer.getDescent(size));
+	}
+
+	private static Integer[] order(WordBox[] boxes) {
+		List<Integer> indexes = new ArrayList<Integer>(boxes.length);
+		for (int i=0; i<boxes.length; i++) {
+			indexes.add(Integer.valueOf(i));
+		}
+		return order(boxes, indexes);
+	}
+
+	/**
+	 * Sorts indexes of boxes in placement order: largest words first, in the
+	 * order of the tags for the same size.
+	 */
+	private static Integer[] order(final WordBox[] boxes, List<Integer> indexes) {
+		Integer[] order = indexes.toArray(new Integer[indexes.size()]);
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				int s1 = boxes[i1.intValue()].getSize();
+				int s2 = boxes[i2.intValue()].getSize();
+				if (s1 != s2)
+					return (s1 > s2) ? -1 : 1;
+				return i1.compareTo(i2);
+			}
+		});
+		return order;
+	}
+
+	/**
+	 * @return The number of columns and rows covered by each box, with its padding
+	 */
+	private int[] spans(WordBox[] boxes, int columns, float cell) {
+		int[] spans = new int[2 * boxes.length];
+		for (int i=0; i<boxes.length; i++) {
+			spans[2 * i] = Math.min(columns, Math.max(1, (int) Math.ceil((boxes[i].getWidth() + 2 * padding) / cell)));
+			spans[2 * i + 1] = Math.max(1, (int) Math.ceil((boxes[i].getHeight() + 2 * padding) / cell));
+		}
+		return spans;
+	}
+
+	private float getCell(float minHeight) {
+		return (cellSize > 0) ? cellSize : Math.max(1, minHeight / 2);
+	}
+
+	/**
+	 * Returns the cells of a grid, in the order of an Archimedean spiral starting
+	 * from its center, one cell apart from one turn to the next.
+	 * @return The index of each cell, row * columns + column
+	 */
+	private int[] spiral(int columns, int rows, double phase) {
+		int n = columns * rows;
+		long[] keys = new long[n];
+		double centerX = (columns - 1) / 2.0;
+		double centerY = (rows - 1) / 2.0;
+		for (int row=0; row<rows; row++) {
+			for (int column=0; column<columns; column++) {
+				double x = column - centerX;
+				double y = (row - centerY) / aspectRatio;
+				double radius = Math.sqrt(x * x + y * y);
+				// angle from the start of the spiral, as a fraction of a turn
+				double angle = (Math.atan2(y, x) - phase) / (2 * Math.PI);
+				angle -= Math.floor(angle);
+				// turns of the spiral before the cell
+				double turns = Math.floor(radius - angle + 0.5);
+				float position = (float) (turns + angle);
+				int index = row * columns + column;
+				keys[index] = ((long) Float.floatToIntBits(Math.max(0f, position)) << 32) | index;
+			}
+		}
+		// positive floats sort like their bits
+		Arrays.sort(keys);
+		int[] cells = new int[n];
+		for (int i=0; i<n; i++) {
+			cells[i] = (int) keys[i];
+		}
+		return cells;
+	}
+
+	@Override
+	protected void forget() {
+		area = null;
+		lastMeasurer = null;
+	}
+
+	/**
+	 * @return The seed of the angle the spiral starts from
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param seed The seed of the angle the spiral starts from
+	 */
+	public synchronized void setSeed(long seed) {
+		this.seed = seed;
+		forget();
+	}
+
+	/**
+	 * @return The minimum space around each word
+	 */
+	public float getPadding() {
+		return padding;
+	}
+
+	/**
+	 * @param padding The minimum space around each word
+	 */
+	public synchronized void setPadding(float padding) {
+		this.padding = padding;
+		forget();
+	}
+
+	/**
+	 * @return The ratio of the height to the width of the spiral
+	 */
+	public float getAspectRatio() {
+		return aspectRatio;
+	}
+
+	/**
+	 * @param aspectRatio The ratio of the height to the width of the spiral
+	 */
+	public synchronized void setAspectRatio(float aspectRatio) {
+		this.aspectRatio = aspectRatio;
+		forget();
+	}
+
+	/**
+	 * @return The size of the cells, 0 for half the height of the smallest word
+	 */
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Sets the size of the cells of the area. Smaller cells pack the words
+	 * closer, at the expense of the layout time.
+	 * @param cellSize The size of the cells, 0 for half the height of the smallest word
+	 */
+	public synchronized void setCellSize(float cellSize) {
+		this.cellSize = cellSize;
+		forget();
+	}
+
+}
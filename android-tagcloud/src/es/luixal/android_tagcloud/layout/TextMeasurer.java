@@ -0,0 +1,30 @@
+package es.luixal.android_tagcloud.layout;
+
+/**
+ * Measures words drawn at a given text size, for the cloud layouts.
+ * On Android, the measures come from a Paint (see PaintTextMeasurer); on a JVM,
+ * tests can use a fake measurer with fixed character widths.
+ * All measures are in the unit of the layout, e.g. pixels.
+ */
+public interface TextMeasurer {
+
+	/**
+	 * @param word The word to measure
+	 * @param size The text size, as returned by Tag.getWeightInt()
+	 * @return The width of the word
+	 */
+	public float getWidth(String word, int size);
+
+	/**
+	 * @param size The text size
+	 * @return The distance from the top of a line to its baseline (positive)
+	 */
+	public float getAscent(int size);
+
+	/**
+	 * @param size The text size
+	 * @return The distance from the baseline of a line to its bottom (positive)
+	 */
+	public float getDescent(int size);
+
+}
@@ -0,0 +1,140 @@
+package es.luixal.android_tagcloud.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of the words of a layout by vertical position, telling which words a
+ * visible band of the layout shows, e.g. when a large cloud is scrolled.
+ * The words of a window around the visible band are kept: while the band stays
+ * in the window, e.g. while scrolling slowly, the same list is returned.
+ * When the band leaves the window, the window is moved around it and its words
+ * are found by a binary search, so the cost depends on the number of words of
+ * the window, not on the size of the cloud.
+ * A viewport can be built on any thread, then used by a single thread.
+ */
+public class Viewport {
+
+	/** Boxes sorted by top */
+	private final WordBox[] boxes;
+
+	/** Top of each box */
+	private final float[] tops;
+
+	/** Height of the highest box */
+	private final float maxHeight;
+
+	/** Space kept above and below the visible band, negative for the height of the band */
+	private final float margin;
+
+	/** Current window, empty until the first call to getWords() */
+	private float windowTop = 0;
+	private float windowBottom = 0;
+	private List<WordBox> words = null;
+
+	private long updates = 0;
+
+	/**
+	 * @param layout The layout of the words
+	 * @param margin The space kept above and below the visible band, negative for the height of the band
+	 */
+	public Viewport(LayoutResult layout, float margin) {
+		this.margin = margin;
+		List<WordBox> list = layout.getBoxes();
+		boxes = list.toArray(new WordBox[list.size()]);
+		Arrays.sort(boxes, new Comparator<WordBox>() {
+			public int compare(WordBox b1, WordBox b2) {
+				return Float.compare(b1.getTop(), b2.getTop());
+			}
+		});
+		tops = new float[boxes.length];
+		float max = 0;
+		for (int i=0; i<boxes.length; i++) {
+			tops[i] = boxes[i].getTop();
+			max = Math.max(max, boxes[i].getHeight());
+		}
+		maxHeight = max;
+	}
+
+	/**
+	 * Returns the words to draw for a visible band: the words of the window
+	 * containing the band, in no particular order.
+	 * @param top The top of the band, in the coordinates of the layout
+	 * @param bottom The bottom of the band
+	 * @return The words overlapping the window, unmodifiable
+	 */
+	public List<WordBox> getWords(float top, float bottom) {
+		if (words == null || top < windowTop || bottom > windowBottom) {
+			float space = (margin < 0) ? (bottom - top) : margin;
+			windowTop = top - space;
+			windowBottom = bottom + space;
+			words = Collections.unmodifiableList(find(windowTop, windowBottom));
+			updates++;
+		}
+		return words;
+	}
+
+	/**
+	 * Finds the words overlapping a band.
+	 * @param top The top of the band
+	 * @param bottom The bottom of the band
+	 * @return The words, in no particular order
+	 */
+	public List<WordBox> find(float top, float bottom) {
+		// no word above this one reaches the band
+		int first = firstTopAtLeast(top - maxHeight);
+		List<WordBox> result = new ArrayList<WordBox>();
+		for (int i=first; i<boxes.length && tops[i] < bottom; i++) {
+			if (boxes[i].getBottom() > top) {
+				result.add(boxes[i]);
+			}
+		}
+		return result;
+	}
+
+	private int firstTopAtLeast(float top) {
+		int low = 0;
+		int high = tops.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (tops[middle] < top) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return The number of words of the layout
+	 */
+	public int size() {
+		return boxes.length;
+	}
+
+	/**
+	 * @return The top of the current window
+	 */
+	public float getWindowTop() {
+		return windowTop;
+	}
+
+	/**
+	 * @return The bottom of the current window
+	 */
+	public float getWindowBottom() {
+		return windowBottom;
+	}
+
+	/**
+	 * @return The number of times the window has been moved
+	 */
+	public long getUpdates() {
+		return updates;
+	}
+
+}
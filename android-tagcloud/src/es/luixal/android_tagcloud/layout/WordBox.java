@@ -0,0 +1,133 @@
+package es.luixal.android_tagcloud.layout;
+
+import es.luixal.android_tagcloud.Tag;
+
+/**
+ * Rectangle of a word placed by a layout.
+ * The word is drawn at getLeft(), getBaseline() with the text size getSize().
+ */
+public class WordBox {
+
+	private final Tag tag;
+
+	private final String text;
+
+	private final int size;
+
+	private final float width;
+
+	private final float ascent;
+
+	private final float descent;
+
+	private float left = 0;
+
+	private float top = 0;
+
+	/**
+	 * @param tag The tag of the word
+	 * @param size The text size
+	 * @param width The width of the word
+	 * @param ascent The distance from the top of the word to its baseline
+	 * @param descent The distance from the baseline of the word to its bottom
+	 */
+	public WordBox(Tag tag, int size, float width, float ascent, float descent) {
+		this.tag = tag;
+		this.text = tag.getName();
+		this.size = size;
+		this.width = width;
+		this.ascent = ascent;
+		this.descent = descent;
+	}
+
+	/**
+	 * Moves the box.
+	 * @param left The new left side
+	 * @param top The new top side
+	 */
+	public void setPosition(float left, float top) {
+		this.left = left;
+		this.top = top;
+	}
+
+	/**
+	 * @return The tag of the word
+	 */
+	public Tag getTag() {
+		return tag;
+	}
+
+	/**
+	 * @return The text of the word, the name of the tag when the box was created
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return The text size
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public float getLeft() {
+		return left;
+	}
+
+	public float getTop() {
+		return top;
+	}
+
+	public float getRight() {
+		return left + width;
+	}
+
+	public float getBottom() {
+		return top + ascent + descent;
+	}
+
+	public float getWidth() {
+		return width;
+	}
+
+	public float getHeight() {
+		return ascent + descent;
+	}
+
+	/**
+	 * @return The vertical position of the baseline of the word
+	 */
+	public float getBaseline() {
+		return top + ascent;
+	}
+
+	/**
+	 * @return The distance from the top of the word to its baseline
+	 */
+	public float getAscent() {
+		return ascent;
+	}
+
+	/**
+	 * @return The distance from the baseline of the word to its bottom
+	 */
+	public float getDescent() {
+		return descent;
+	}
+
+	/**
+	 * @param other Another box
+	 * @return True if the boxes overlap
+	 */
+	public boolean intersects(WordBox other) {
+		return left < other.getRight() && other.left < getRight()
+				&& top < other.getBottom() && other.top < getBottom();
+	}
+
+	@Override
+	public String toString() {
+		return text + "@" + size + "[" + left + "," + top + " " + width + "x" + getHeight() + "]";
+	}
+
+}
@@ -0,0 +1,107 @@
+package es.luixal.android_tagcloud.metrics;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.filters.Filter;
+
+/**
+ * Receives measures of the operations of a cloud: counters of the tags added,
+ * rejected, merged and expired, times of ingestion and output computation, and
+ * size of the cloud.
+ * The cloud calls the methods only if isEnabled() returns true, so a disabled
+ * implementation costs one call per operation.
+ * Methods are called by the thread modifying the cloud and should return quickly.
+ */
+public interface CloudMetrics {
+
+	/**
+	 * @return True if the cloud should measure its operations
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * Counts tags submitted to the cloud, valid or not.
+	 * @param count Number of tags
+	 */
+	public void tagsIngested(int count);
+
+	/**
+	 * Counts tags rejected by the cloud.
+	 * @param filter The input filter that rejected the tags, null for invalid tags
+	 * @param count Number of tags
+	 */
+	public void tagsRejected(Filter<Tag> filter, int count);
+
+	/**
+	 * Counts tags merged with a tag already present in the cloud.
+	 * @param count Number of tags
+	 */
+	public void tagsMerged(int count);
+
+	/**
+	 * Counts tags ignored by an output computation because they are older than
+	 * the tag lifetime. Expired tags stay in the cloud, so they are counted
+	 * again by each output computation.
+	 * @param count Number of tags
+	 */
+	public void tagsExpired(int count);
+
+	/**
+	 * Called before tags are evicted because a memory budget is exceeded.
+	 */
+	public void evictionStarted();
+
+	/**
+	 * Counts tags evicted because a memory budget is exceeded, after evictionStarted().
+	 * @param count Number of tags
+	 * @param bytes Estimated memory freed
+	 * @param nanos Time in nanoseconds
+	 */
+	public void tagsEvicted(int count, long bytes, long nanos);
+
+	/**
+	 * Records the time taken to add tags (addTag(), addTags(), addText()).
+	 * @param nanos Time in nanoseconds
+	 * @param count Number of tags submitted
+	 */
+	public void ingestionTime(long nanos, int count);
+
+	/**
+	 * Called before tags are extracted from a text by addText().
+	 */
+	public void textStarted();
+
+	/**
+	 * Records a text added to the cloud, after textStarted().
+	 * @param chars Number of characters of the text
+	 * @param tokens Number of words extracted from the text
+	 * @param accepted Number of words accepted by the input filters
+	 * @param nanos Time in nanoseconds
+	 */
+	public void textAdded(int chars, int tokens, int accepted, long nanos);
+
+	/**
+	 * Called before the tags to display are computed.
+	 */
+	public void outputStarted();
+
+	/**
+	 * Records the time taken to compute the tags to display, after outputStarted().
+	 * @param nanos Time in nanoseconds
+	 * @param size Number of tags in the cloud
+	 * @param count Number of tags to display
+	 */
+	public void outputTime(long nanos, int size, int count);
+
+	/**
+	 * Updates the number of distinct tags in the cloud.
+	 * @param count Number of tags
+	 */
+	public void distinctTags(int count);
+
+	/**
+	 * Updates the estimated memory used by the tags of the cloud.
+	 * @param bytes Number of bytes
+	 */
+	public void estimatedBytes(long bytes);
+
+}
@@ -0,0 +1,149 @@
+package es.luixal.android_tagcloud.metrics;
+
+/**
+ * Thread safe histogram of durations in nanoseconds.
+ * Buckets are logarithmic: each power of two is split into 16 buckets, so
+ * percentiles are given with a relative error below 7%, with a fixed memory
+ * of 8 KB whatever the number of recorded values.
+ */
+public class Histogram {
+
+	/** Number of bits of the sub-buckets of each power of two */
+	private static final int SUB_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+
+	private long count = 0;
+
+	private long sum = 0;
+
+	private long max = 0;
+
+	/**
+	 * Records a value.
+	 * @param nanos Duration in nanoseconds
+	 */
+	public synchronized void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts[indexOf(nanos)]++;
+		count++;
+		sum += nanos;
+		if (nanos > max) {
+			max = nanos;
+		}
+	}
+
+	/**
+	 * Adds the values recorded by another histogram, e.g. by another thread.
+	 * @param other The other histogram
+	 */
+	public void add(Histogram other) {
+		// copies the other histogram first, so that the two locks are never held together
+		long[] otherCounts;
+		long otherCount;
+		long otherSum;
+		long otherMax;
+		synchronized (other) {
+			otherCounts = other.counts.clone();
+			otherCount = other.count;
+			otherSum = other.sum;
+			otherMax = other.max;
+		}
+		synchronized (this) {
+			for (int i=0; i<counts.length; i++) {
+				counts[i] += otherCounts[i];
+			}
+			count += otherCount;
+			sum += otherSum;
+			max = Math.max(max, otherMax);
+		}
+	}
+
+	/**
+	 * Forgets all recorded values.
+	 */
+	public synchronized void reset() {
+		for (int i=0; i<counts.length; i++) {
+			counts[i] = 0;
+		}
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+
+	/**
+	 * @param percentile Percentile, between 0 and 100
+	 * @return The value below which the given percentage of values fall, 0 if there are no values
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (count == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int i=0; i<counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestValueAt(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return The number of recorded values
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The sum of the recorded values
+	 */
+	public synchronized long getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return The mean of the recorded values, 0 if there are no values
+	 */
+	public synchronized double getMean() {
+		return (count == 0) ? 0.0 : (double) sum / count;
+	}
+
+	/**
+	 * @return The highest recorded value
+	 */
+	public synchronized long getMax() {
+		return max;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("count=%d mean=%dns p50=%dns p99=%dns max=%dns",
+				count, (long) getMean(), getPercentile(50), getPercentile(99), max);
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long highestValueAt(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+
+		int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+}
@@ -0,0 +1,247 @@
+package es.luixal.android_tagcloud.metrics;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.filters.Filter;
+
+/**
+ * Metrics kept in memory, to be read by the application (e.g. to log them or
+ * to display them in a debug screen).
+ * Measures can be read from any thread while the cloud is modified.
+ */
+public class InMemoryCloudMetrics implements CloudMetrics {
+
+	private final AtomicLong ingested = new AtomicLong();
+
+	private final AtomicLong invalid = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final AtomicLong merged = new AtomicLong();
+
+	private final AtomicLong expired = new AtomicLong();
+
+	private final AtomicLong evicted = new AtomicLong();
+
+	private final AtomicLong evictedBytes = new AtomicLong();
+
+	/** Rejections of each input filter (filters are compared by identity, as their hash code may be costly) */
+	private final Map<Filter<Tag>, AtomicLong> rejectedByFilter = new IdentityHashMap<Filter<Tag>, AtomicLong>();
+
+	private final Histogram ingestionTimes = new Histogram();
+
+	private final Histogram outputTimes = new Histogram();
+
+	private volatile int distinctTags = 0;
+
+	private volatile long estimatedBytes = 0;
+
+	/** Whether measures are recorded */
+	private volatile boolean enabled = true;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables the measures.
+	 * @param enabled True to record the measures
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void tagsIngested(int count) {
+		ingested.addAndGet(count);
+	}
+
+	public void tagsRejected(Filter<Tag> filter, int count) {
+		rejected.addAndGet(count);
+		if (filter == null) {
+			invalid.addAndGet(count);
+		} else {
+			AtomicLong counter;
+			synchronized (rejectedByFilter) {
+				counter = rejectedByFilter.get(filter);
+				if (counter == null) {
+					counter = new AtomicLong();
+					rejectedByFilter.put(filter, counter);
+				}
+			}
+			counter.addAndGet(count);
+		}
+	}
+
+	public void tagsMerged(int count) {
+		merged.addAndGet(count);
+	}
+
+	public void tagsExpired(int count) {
+		expired.addAndGet(count);
+	}
+
+	public void evictionStarted() {
+	}
+
+	public void tagsEvicted(int count, long bytes, long nanos) {
+		evicted.addAndGet(count);
+		evictedBytes.addAndGet(bytes);
+	}
+
+	public void ingestionTime(long nanos, int count) {
+		ingestionTimes.record(nanos);
+	}
+
+	public void textStarted() {
+	}
+
+	public void textAdded(int chars, int tokens, int accepted, long nanos) {
+	}
+
+	public void outputStarted() {
+	}
+
+	public void outputTime(long nanos, int size, int count) {
+		outputTimes.record(nanos);
+	}
+
+	public void distinctTags(int count) {
+		distinctTags = count;
+	}
+
+	public void estimatedBytes(long bytes) {
+		estimatedBytes = bytes;
+	}
+
+	/**
+	 * @return The number of tags submitted to the cloud
+	 */
+	public long getIngested() {
+		return ingested.get();
+	}
+
+	/**
+	 * @return The number of tags rejected because they were not valid or not accepted by an input filter
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return The number of tags rejected because they were not valid
+	 */
+	public long getInvalid() {
+		return invalid.get();
+	}
+
+	/**
+	 * @param filter An input filter
+	 * @return The number of tags rejected by the filter
+	 */
+	public long getRejected(Filter<Tag> filter) {
+		AtomicLong counter;
+		synchronized (rejectedByFilter) {
+			counter = rejectedByFilter.get(filter);
+		}
+		return (counter == null) ? 0 : counter.get();
+	}
+
+	/**
+	 * @return The number of tags rejected by each input filter
+	 */
+	public Map<Filter<Tag>, Long> getRejectedByFilter() {
+		Map<Filter<Tag>, Long> result = new IdentityHashMap<Filter<Tag>, Long>();
+		synchronized (rejectedByFilter) {
+			for (Map.Entry<Filter<Tag>, AtomicLong> entry : rejectedByFilter.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().get());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The number of tags merged with a tag already present in the cloud
+	 */
+	public long getMerged() {
+		return merged.get();
+	}
+
+	/**
+	 * @return The number of expired tags ignored by output computations
+	 */
+	public long getExpired() {
+		return expired.get();
+	}
+
+	/**
+	 * @return The number of tags evicted because a memory budget was exceeded
+	 */
+	public long getEvicted() {
+		return evicted.get();
+	}
+
+	/**
+	 * @return The estimated memory freed by evictions, in bytes
+	 */
+	public long getEvictedBytes() {
+		return evictedBytes.get();
+	}
+
+	/**
+	 * @return The times taken to add tags, in nanoseconds
+	 */
+	public Histogram getIngestionTimes() {
+		return ingestionTimes;
+	}
+
+	/**
+	 * @return The times taken to compute the tags to display, in nanoseconds
+	 */
+	public Histogram getOutputTimes() {
+		return outputTimes;
+	}
+
+	/**
+	 * @return The number of distinct tags in the cloud
+	 */
+	public int getDistinctTags() {
+		return distinctTags;
+	}
+
+	/**
+	 * @return The estimated memory used by the tags of the cloud, in bytes
+	 */
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	/**
+	 * Resets counters and histograms. Gauges keep their values.
+	 */
+	public void reset() {
+		ingested.set(0);
+		invalid.set(0);
+		rejected.set(0);
+		merged.set(0);
+		expired.set(0);
+		evicted.set(0);
+		evictedBytes.set(0);
+		synchronized (rejectedByFilter) {
+			rejectedByFilter.clear();
+		}
+		ingestionTimes.reset();
+		outputTimes.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "ingested=" + getIngested() + " rejected=" + getRejected() + " (invalid=" + getInvalid()
+				+ ") merged=" + getMerged() + " expired=" + getExpired() + " evicted=" + getEvicted()
+				+ " distinct=" + getDistinctTags() + " bytes=" + getEstimatedBytes()
+				+ " ingestion[" + ingestionTimes + "] output[" + outputTimes + "]";
+	}
+
+}
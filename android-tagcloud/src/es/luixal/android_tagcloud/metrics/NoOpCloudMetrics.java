@@ -0,0 +1,58 @@
+package es.luixal.android_tagcloud.metrics;
+
+import es.luixal.android_tagcloud.Tag;
+import es.luixal.android_tagcloud.filters.Filter;
+
+/**
+ * Metrics ignoring all measures. This is the default metrics of a cloud.
+ * Subclasses can override the methods they need, and isEnabled() to enable them.
+ */
+public class NoOpCloudMetrics implements CloudMetrics {
+
+	/** Shared instance */
+	public static final NoOpCloudMetrics INSTANCE = new NoOpCloudMetrics();
+
+	public boolean isEnabled() {
+		return false;
+	}
+
+	public void tagsIngested(int count) {
+	}
+
+	public void tagsRejected(Filter<Tag> filter, int count) {
+	}
+
+	public void tagsMerged(int count) {
+	}
+
+	public void tagsExpired(int count) {
+	}
+
+	public void evictionStarted() {
+	}
+
+	public void tagsEvicted(int count, long bytes, long nanos) {
+	}
+
+	public void ingestionTime(long nanos, int count) {
+	}
+
+	public void textStarted() {
+	}
+
+	public void textAdded(int chars, int tokens, int accepted, long nanos) {
+	}
+
+	public void outputStarted() {
+	}
+
+	public void outputTime(long nanos, int size, int count) {
+	}
+
+	public void distinctTags(int count) {
+	}
+
+	public void estimatedBytes(long bytes) {
+	}
+
+}
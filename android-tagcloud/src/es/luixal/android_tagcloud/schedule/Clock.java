@@ -0,0 +1,21 @@
+package es.luixal.android_tagcloud.schedule;
+
+/**
+ * Source of time of the scheduled tasks, so that they can be driven by a fake
+ * clock in tests.
+ */
+public interface Clock {
+
+	/** Clock of the system, System.nanoTime() */
+	public static final Clock SYSTEM = new Clock() {
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+
+	/**
+	 * @return The current time in nanoseconds, from an arbitrary origin
+	 */
+	public long nanoTime();
+
+}
@@ -0,0 +1,21 @@
+package es.luixal.android_tagcloud.schedule;
+
+/**
+ * Runs callbacks at the next frame, e.g. from the Choreographer of Android.
+ * Tests can run the frames themselves.
+ */
+public interface FrameScheduler {
+
+	/**
+	 * Runs a callback once, at the next frame.
+	 * @param frame The callback
+	 */
+	public void post(Runnable frame);
+
+	/**
+	 * Cancels a callback that hasn't run yet.
+	 * @param frame The callback
+	 */
+	public void cancel(Runnable frame);
+
+}
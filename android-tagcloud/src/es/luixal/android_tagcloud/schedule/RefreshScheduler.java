@@ -0,0 +1,144 @@
+package es.luixal.android_tagcloud.schedule;
+
+/**
+ * Coalesces the requests to refresh a display, e.g. after each change of a
+ * cloud, into at most one refresh per frame, or per interval of time.
+ * A request marks the display dirty; the refresh runs at the first frame at
+ * least the interval after the last refresh, whatever the number of requests
+ * made meanwhile. flush() refreshes at once when the display is dirty.
+ * Must be used from the thread running the frames.
+ */
+public class RefreshScheduler {
+
+	private final FrameScheduler scheduler;
+
+	private final Clock clock;
+
+	/** Refreshes the display */
+	private final Runnable refresh;
+
+	/** Minimum time between two refreshes in nanoseconds, 0 for one per frame */
+	private long intervalNanos = 0;
+
+	/** True if a refresh has been requested since the last refresh */
+	private boolean dirty = false;
+
+	/** True while the frame is posted */
+	private boolean posted = false;
+
+	/** Time of the last refresh, if refreshed is true */
+	private long lastRefresh = 0;
+	private boolean refreshed = false;
+
+	/** Number of refreshes run, and of requests received */
+	private long refreshes = 0;
+	private long requests = 0;
+
+	private final Runnable frame = new Runnable() {
+		public void run() {
+			posted = false;
+			if (! dirty)
+				return;
+			if (refreshed && clock.nanoTime() - lastRefresh < intervalNanos) {
+				// too early, checked again at the next frame
+				post();
+				return;
+			}
+			refreshNow();
+		}
+	};
+
+	/**
+	 * @param scheduler The scheduler of the frames
+	 * @param clock The clock of the interval
+	 * @param refresh Refreshes the display
+	 */
+	public RefreshScheduler(FrameScheduler scheduler, Clock clock, Runnable refresh) {
+		this.scheduler = scheduler;
+		this.clock = clock;
+		this.refresh = refresh;
+	}
+
+	/**
+	 * Marks the display dirty, so that it's refreshed at a next frame.
+	 */
+	public void request() {
+		requests++;
+		dirty = true;
+		post();
+	}
+
+	/**
+	 * Refreshes the display now if it's dirty.
+	 * @return True if the display was refreshed
+	 */
+	public boolean flush() {
+		if (! dirty)
+			return false;
+		refreshNow();
+		return true;
+	}
+
+	/**
+	 * Forgets the requests made since the last refresh, e.g. because the display
+	 * has been refreshed by other means.
+	 */
+	public void cancel() {
+		dirty = false;
+		if (posted) {
+			scheduler.cancel(frame);
+			posted = false;
+		}
+	}
+
+	/**
+	 * @return True if a refresh has been requested and hasn't run yet
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * @return The minimum time between two refreshes in nanoseconds, 0 for one per frame
+	 */
+	public long getIntervalNanos() {
+		return intervalNanos;
+	}
+
+	/**
+	 * @param intervalNanos The minimum time between two refreshes in nanoseconds, 0 for one per frame
+	 */
+	public void setIntervalNanos(long intervalNanos) {
+		this.intervalNanos = Math.max(0, intervalNanos);
+	}
+
+	/**
+	 * @return The number of refreshes run
+	 */
+	public long getRefreshes() {
+		return refreshes;
+	}
+
+	/**
+	 * @return The number of refreshes requested
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	private void post() {
+		if (! posted) {
+			posted = true;
+			scheduler.post(frame);
+		}
+	}
+
+	private void refreshNow() {
+		cancel();
+		lastRefresh = clock.nanoTime();
+		refreshed = true;
+		refreshes++;
+		refresh.run();
+	}
+
+}
@@ -0,0 +1,17 @@
+package es.luixal.android_tagcloud.schedule;
+
+/**
+ * Computation that can be done in several steps, e.g. a bit at each frame.
+ */
+public interface Task {
+
+	/**
+	 * Does a part of the computation, until it is done or the deadline is reached.
+	 * A step may exceed the deadline by the time of its smallest unit of work.
+	 * @param clock The clock of the deadline
+	 * @param deadline The time the step should end at, Long.MAX_VALUE for no limit
+	 * @return True if the computation is done
+	 */
+	public boolean step(Clock clock, long deadline);
+
+}
@@ -0,0 +1,117 @@
+package es.luixal.android_tagcloud.schedule;
+
+/**
+ * Runs a task a step at each frame, each step with a budget of time.
+ * Starting a task cancels the task being run. Must be used from the thread
+ * running the frames.
+ */
+public class TaskRunner {
+
+	/**
+	 * Receives the progress of a task.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called after each step of a task.
+		 * @param task The task
+		 * @param done True if the task is done
+		 */
+		public void stepped(Task task, boolean done);
+
+	}
+
+	private final FrameScheduler scheduler;
+
+	private final Clock clock;
+
+	private long budgetNanos;
+
+	/** Frame running the current task, null if there is none */
+	private Frame frame = null;
+
+	/**
+	 * Runs the steps of a task.
+	 */
+	private final class Frame implements Runnable {
+
+		final Task task;
+
+		final Listener listener;
+
+		Frame(Task task, Listener listener) {
+			this.task = task;
+			this.listener = listener;
+		}
+
+		public void run() {
+			if (frame != this)
+				return;
+
+			boolean done = task.step(clock, clock.nanoTime() + budgetNanos);
+			if (done) {
+				frame = null;
+			} else {
+				scheduler.post(this);
+			}
+			if (listener != null) {
+				listener.stepped(task, done);
+			}
+		}
+
+	}
+
+	/**
+	 * @param scheduler The scheduler of the frames
+	 * @param clock The clock of the budgets
+	 * @param budgetNanos The time of a step in nanoseconds
+	 */
+	public TaskRunner(FrameScheduler scheduler, Clock clock, long budgetNanos) {
+		this.scheduler = scheduler;
+		this.clock = clock;
+		this.budgetNanos = budgetNanos;
+	}
+
+	/**
+	 * Starts a task at the next frame, cancelling the task being run.
+	 * @param task The task
+	 * @param listener The listener of the steps, may be null
+	 */
+	public void start(Task task, Listener listener) {
+		cancel();
+		frame = new Frame(task, listener);
+		scheduler.post(frame);
+	}
+
+	/**
+	 * Cancels the task being run, its next steps won't run.
+	 */
+	public void cancel() {
+		if (frame != null) {
+			scheduler.cancel(frame);
+			frame = null;
+		}
+	}
+
+	/**
+	 * @return True if a task is being run
+	 */
+	public boolean isRunning() {
+		return frame != null;
+	}
+
+	/**
+	 * @return The time of a step in nanoseconds
+	 */
+	public long getBudgetNanos() {
+		return budgetNanos;
+	}
+
+	/**
+	 * @param budgetNanos The time of a step in nanoseconds
+	 */
+	public void setBudgetNanos(long budgetNanos) {
+		this.budgetNanos = budgetNanos;
+	}
+
+}